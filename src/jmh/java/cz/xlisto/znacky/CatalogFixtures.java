@@ -0,0 +1,72 @@
+package cz.xlisto.znacky;
+
+/**
+ * Třída CatalogFixtures generuje syntetické stránky katalogu dopravních značek.
+ * <p>
+ * Stránky napodobují strukturu katalogu na celysvet.cz: hlavičku s navigací, skripty,
+ * tabulku obrázků s popisem v atributu alt a stránkování s odkazem "další :".
+ */
+public final class CatalogFixtures {
+    /**
+     * Počet položek na jedné stránce katalogu.
+     */
+    public static final int PAGE_SIZE = 20;
+
+    private CatalogFixtures() {
+    }
+
+    /**
+     * Vytvoří HTML jedné stránky katalogu.
+     *
+     * @param pageIndex index stránky (od 0).
+     * @param pageCount celkový počet stránek katalogu.
+     * @param images    počet obrázků na stránce.
+     * @param path      cesta ke stránkám katalogu, například "test-znalosti-dopravnich-znacek-databaze".
+     * @param imageBase základní URL obrázků.
+     * @return HTML stránky.
+     */
+    public static String page(int pageIndex, int pageCount, int images, String path, String imageBase) {
+        StringBuilder html = new StringBuilder(images * 400 + 4096);
+        html.append("<!DOCTYPE html>\n<html lang=\"cs\"><head><meta charset=\"utf-8\">\n")
+                .append("<title>Test znalosti dopravních značek - databáze</title>\n")
+                .append("<link rel=\"stylesheet\" href=\"/css/main.css\">\n")
+                .append("<script>var ads = '<img src=\"tracker.gif\">'; if (a < b) { run(); }</script>\n")
+                .append("<style>.znacka img { border: 0; }</style>\n")
+                .append("</head><body>\n<div id=\"menu\"><ul>\n");
+        for (int i = 0; i < 12; i++) {
+            html.append("<li><a href=\"./rubrika-").append(i).append("\">Rubrika ").append(i).append("</a></li>\n");
+        }
+        html.append("</ul></div>\n<!-- obsah katalogu <img src=\"komentar.png\"> -->\n<table class=\"znacky\">\n");
+        for (int i = 0; i < images; i++) {
+            int number = pageIndex * images + i;
+            String code = (char) ('A' + number % 8) + " " + (number / 8 + 1);
+            html.append("<tr><td class=\"znacka\"><img src=\"").append(imageBase)
+                    .append("low/").append(code.replace(" ", "")).append(".png\" alt=\"Dopravní značka: ")
+                    .append(code).append(" Značka číslo ").append(number)
+                    .append(" &amp; popis\" width=\"80\" height=\"80\"></td>\n")
+                    .append("<td><b>").append(code).append("</b><br>Podrobný popis významu značky, ")
+                    .append("který se zobrazuje vedle obrázku v katalogu.</td></tr>\n");
+        }
+        html.append("</table>\n<div class=\"strankovani\">\n");
+        for (int p = 0; p < pageCount; p++) {
+            html.append("<a href=\"././").append(path).append("?kat=1&amp;od=").append(p * images).append("\">")
+                    .append(p + 1).append("</a> \n");
+        }
+        if (pageIndex + 1 < pageCount) {
+            html.append("<a href=\"././").append(path).append("?kat=1&amp;od=").append((pageIndex + 1) * images)
+                    .append("\">další :</a>\n");
+        }
+        html.append("</div>\n<div id=\"paticka\">&copy; celysvet.cz</div>\n</body></html>\n");
+        return html.toString();
+    }
+
+    /**
+     * Vytvoří HTML stránky katalogu s daným počtem obrázků a výchozí cestou.
+     *
+     * @param images počet obrázků na stránce.
+     * @return HTML stránky.
+     */
+    public static String page(int images) {
+        return page(0, 10, images, "test-znalosti-dopravnich-znacek-databaze", "http://www.celysvet.cz/obrazky/znacky/");
+    }
+}
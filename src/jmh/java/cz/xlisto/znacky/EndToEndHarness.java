@@ -0,0 +1,237 @@
+package cz.xlisto.znacky;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Třída EndToEndHarness měří propustnost celé cesty od načtení katalogu po uložení obrázků.
+ * <p>
+ * Spustí lokální náhradu katalogu (LocalCatalogServer), načte z ní všechny stránky pomocí třídy
+ * WebLoader a stáhne obrázky pomocí třídy ImageSaver do dočasné složky. Na konci vypíše počet
+ * stránek, obrázků a megabajtů za sekundu a medián (p50) a 99. percentil (p99) doby odezvy
+ * jednotlivých požadavků zvlášť pro stránky a obrázky.
+ * <p>
+ * Parametry (všechny volitelné):
+ * <ul>
+ *   <li>--pages N - počet stránek katalogu (výchozí 50).</li>
+ *   <li>--images N - počet obrázků na stránce (výchozí 20).</li>
+ *   <li>--image-bytes N - velikost obrázku v bajtech (výchozí 8192).</li>
+ *   <li>--latency MS - základní zpoždění odpovědi serveru (výchozí 20).</li>
+ *   <li>--jitter MS - maximální náhodný rozptyl zpoždění (výchozí 10).</li>
+ *   <li>--error-rate P - podíl požadavků s odpovědí 503 (výchozí 0).</li>
+ *   <li>--parallelism N - počet současně načítaných stránek (výchozí WebLoader.DEFAULT_PARALLELISM).</li>
+ *   <li>--concurrency N - počet současně stahovaných obrázků (výchozí ImageSaver.DEFAULT_CONCURRENCY).</li>
+ *   <li>--per-host N - limit spojení na jeden server (výchozí ImageSaver.DEFAULT_PER_HOST_LIMIT).</li>
+ * </ul>
+ * <p>
+ * Spuštění: {@code ./gradlew e2eHarness -PharnessArgs="--pages 100 --latency 50"}
+ */
+public final class EndToEndHarness {
+
+    private EndToEndHarness() {
+    }
+
+    /**
+     * Vstupní bod měření.
+     *
+     * @param args parametry měření.
+     * @throws Exception pokud měření nelze provést.
+     */
+    public static void main(String[] args) throws Exception {
+        int pages = intArg(args, "--pages", 50);
+        int images = intArg(args, "--images", CatalogFixtures.PAGE_SIZE);
+        int imageBytes = intArg(args, "--image-bytes", 8192);
+        long latency = intArg(args, "--latency", 20);
+        long jitter = intArg(args, "--jitter", 10);
+        double errorRate = Double.parseDouble(arg(args, "--error-rate", "0"));
+        int parallelism = intArg(args, "--parallelism", WebLoader.DEFAULT_PARALLELISM);
+        int concurrency = intArg(args, "--concurrency", ImageSaver.DEFAULT_CONCURRENCY);
+        int perHost = intArg(args, "--per-host", ImageSaver.DEFAULT_PER_HOST_LIMIT);
+
+        Path directory = Files.createTempDirectory("znacky-e2e");
+        try (LocalCatalogServer server = new LocalCatalogServer(pages, images, latency, jitter, errorRate,
+                imageBytes, Math.max(parallelism, concurrency) * 2)) {
+            TimedTransport transport = new TimedTransport();
+
+            // Fáze načtení katalogu
+            long crawlStart = System.nanoTime();
+            WebLoader loader = new WebLoader(null, transport);
+            loader.loadWebConcurrently(server.catalogUrl(), parallelism);
+            List<SignEntry> entries = loader.getUrlList();
+            double crawlSeconds = (System.nanoTime() - crawlStart) / 1e9;
+
+            // Fáze stažení obrázků
+            long downloadStart = System.nanoTime();
+            DownloadResult result = saveAll(entries, directory.toFile(), concurrency, perHost, transport);
+            double downloadSeconds = (System.nanoTime() - downloadStart) / 1e9;
+
+            System.out.printf(Locale.ROOT, "Katalog: %d stránek × %d obrázků, zpoždění %d ms ± %d ms, chybovost %.3f%n",
+                    pages, images, latency, jitter, errorRate);
+            System.out.printf(Locale.ROOT, "Načtení:  %d/%d položek, %d stránek za %.3f s = %.1f stránek/s, %.1f položek/s%n",
+                    entries.size(), server.imageCount(), transport.pages.count(), crawlSeconds,
+                    transport.pages.count() / crawlSeconds, entries.size() / crawlSeconds);
+            System.out.printf(Locale.ROOT, "Stažení:  %s za %.3f s = %.1f obrázků/s, %.2f MB/s%n",
+                    result, downloadSeconds, result.getSuccesses() / downloadSeconds,
+                    result.getBytes() / 1e6 / downloadSeconds);
+            System.out.printf(Locale.ROOT, "Odezva stránek:  p50 %.1f ms, p99 %.1f ms%n",
+                    transport.pages.percentile(0.50), transport.pages.percentile(0.99));
+            System.out.printf(Locale.ROOT, "Odezva obrázků:  p50 %.1f ms, p99 %.1f ms%n",
+                    transport.images.percentile(0.50), transport.images.percentile(0.99));
+            System.out.printf(Locale.ROOT, "Server: %d požadavků na stránky, %d na obrázky, %d vložených chyb%n",
+                    server.getPageRequests(), server.getImageRequests(), server.getInjectedErrors());
+            System.out.print(RunMetrics.getDefault().getSummary());
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * Stáhne všechny obrázky do dané složky pomocí třídy ImageSaver s vlastním fondem vláken.
+     *
+     * @param entries     položky katalogu.
+     * @param directory   cílová složka.
+     * @param concurrency počet současně stahovaných obrázků.
+     * @param perHost     limit spojení na jeden server.
+     * @param transport   HTTP spojení, přes které jsou obrázky stahovány.
+     * @return souhrnný výsledek stahování.
+     */
+    private static DownloadResult saveAll(List<SignEntry> entries, File directory, int concurrency, int perHost,
+                                          HttpTransport transport) {
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        try {
+            return new ImageSaver(pool, perHost, transport).saveImages(entries, directory, new DownloadListener() {
+            });
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * HTTP spojení, které měří dobu do přijetí hlaviček odpovědi pro stránky a pro obrázky.
+     */
+    private static final class TimedTransport extends HttpTransport {
+        /**
+         * Doby odezvy požadavků na stránky katalogu.
+         */
+        final LatencyRecorder pages = new LatencyRecorder();
+        /**
+         * Doby odezvy požadavků na obrázky.
+         */
+        final LatencyRecorder images = new LatencyRecorder();
+
+        TimedTransport() {
+            super(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+        }
+
+        @Override
+        public PageStream openPage(String url) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            try {
+                return super.openPage(url);
+            } finally {
+                pages.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public ConditionalResponse openPageIfModified(String url, String etag, String lastModified) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            try {
+                return super.openPageIfModified(url, etag, lastModified);
+            } finally {
+                pages.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public InputStream openStream(URI uri) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            try {
+                return super.openStream(uri);
+            } finally {
+                images.record(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public ConditionalResponse openIfModified(URI uri, String etag, String lastModified) throws IOException, InterruptedException {
+            long start = System.nanoTime();
+            try {
+                return super.openIfModified(uri, etag, lastModified);
+            } finally {
+                images.record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Jednoduchý záznam dob odezvy s výpočtem percentilů.
+     */
+    private static final class LatencyRecorder {
+        /**
+         * Zaznamenané doby odezvy v nanosekundách.
+         */
+        private long[] samples = new long[1024];
+        /**
+         * Počet zaznamenaných dob odezvy.
+         */
+        private int size;
+
+        synchronized void record(long nanos) {
+            if (size == samples.length) {
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            samples[size++] = nanos;
+        }
+
+        synchronized int count() {
+            return size;
+        }
+
+        /**
+         * Vrátí percentil zaznamenaných dob odezvy v milisekundách.
+         *
+         * @param quantile požadovaný kvantil (0 až 1).
+         * @return doba odezvy v milisekundách, nebo 0, pokud nebylo nic zaznamenáno.
+         */
+        synchronized double percentile(double quantile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(quantile * size) - 1;
+            return sorted[Math.max(0, Math.min(rank, size - 1))] / 1e6;
+        }
+    }
+
+    private static String arg(String[] args, String name, String defaultValue) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static int intArg(String[] args, String name, int defaultValue) {
+        return Integer.parseInt(arg(args, name, Integer.toString(defaultValue)));
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package cz.xlisto.znacky;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark odvození URI a názvu souboru z URL adresy obrázku, jak jej provádí ImageSaver.
+ * <p>
+ * Zahrnuje kódování pomocí URLEncoder, zpětné nahrazení znaků ':' a '/', sestavení URI
+ * a získání názvu souboru přes Paths.get. Výsledek je uveden na jednu položku.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileNameBenchmark {
+    private static final int URLS = 1000;
+
+    private String[] urls;
+    private URI[] uris;
+
+    @Setup
+    public void setUp() throws URISyntaxException {
+        urls = new String[URLS];
+        uris = new URI[URLS];
+        for (int i = 0; i < URLS; i++) {
+            // Část adres obsahuje mezery a diakritiku, které je nutné zakódovat
+            urls[i] = i % 4 == 0
+                    ? "http://www.celysvet.cz/obrazky/znacky/hi/IP " + i + " zastávka tramvaje.png"
+                    : "http://www.celysvet.cz/obrazky/znacky/hi/A" + i + ".png";
+            uris[i] = ImageSaver.toUri(urls[i]);
+        }
+    }
+
+    /**
+     * Celé odvození: kódování URL, sestavení URI a název souboru.
+     */
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void toUriAndFileName(Blackhole blackhole) throws URISyntaxException {
+        for (String url : urls) {
+            blackhole.consume(ImageSaver.fileNameFor(ImageSaver.toUri(url)));
+        }
+    }
+
+    /**
+     * Pouze kódování URL a sestavení URI.
+     */
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void toUri(Blackhole blackhole) throws URISyntaxException {
+        for (String url : urls) {
+            blackhole.consume(ImageSaver.toUri(url));
+        }
+    }
+
+    /**
+     * Pouze získání názvu souboru z již sestaveného URI.
+     */
+    @Benchmark
+    @OperationsPerInvocation(URLS)
+    public void fileName(Blackhole blackhole) {
+        for (URI uri : uris) {
+            blackhole.consume(ImageSaver.fileNameFor(uri));
+        }
+    }
+}
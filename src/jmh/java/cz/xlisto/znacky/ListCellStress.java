@@ -0,0 +1,282 @@
+package cz.xlisto.znacky;
+
+import com.sun.net.httpserver.HttpServer;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.scene.Scene;
+import javafx.scene.control.ListView;
+import javafx.scene.control.skin.VirtualFlow;
+import javafx.stage.Stage;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Třída ListCellStress měří výkon vykreslování seznamu značek (CustomListCell) pro velké seznamy.
+ * <p>
+ * Pro každou velikost seznamu (výchozí 10 000 a 100 000 položek) změří:
+ * <ul>
+ *   <li>cenu vytvoření jedné buňky (konstruktor se sestavením stromu uzlů),</li>
+ *   <li>dobu a alokace metody updateItem při střídání položek s náhledem v mezipaměti,</li>
+ *   <li>dobu snímku při plynulém posunu seznamu a při skocích na náhodné pozice (p50, p99, maximum),</li>
+ *   <li>počet buněk, které ListView během posunu vytvořil.</li>
+ * </ul>
+ * Náhledy poskytuje lokální HTTP server, takže měření zahrnuje i skutečné načítání a rušení náhledů.
+ * <p>
+ * Měření vyžaduje grafické prostředí (JavaFX Platform). Spuštění:
+ * {@code ./gradlew listStress -PstressArgs="10000 100000"}
+ */
+public final class ListCellStress {
+    /**
+     * Počet snímků měřených v každém scénáři posunu.
+     */
+    private static final int FRAMES = 600;
+    /**
+     * Posun seznamu za jeden snímek v pixelech při plynulém posunu.
+     */
+    private static final double PIXELS_PER_FRAME = 40;
+    /**
+     * Počet položek, jejichž náhledy jsou před měřením metody updateItem načteny do mezipaměti.
+     */
+    private static final int WARM_ENTRIES = 256;
+
+    private ListCellStress() {
+    }
+
+    /**
+     * Vstupní bod měření.
+     *
+     * @param args velikosti seznamů, výchozí 10000 a 100000.
+     * @throws Exception pokud měření nelze provést.
+     */
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0 ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray() : new int[]{10_000, 100_000};
+
+        byte[] png = thumbnailPng();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, png.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(png);
+            }
+        });
+        server.start();
+        String base = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/hi/";
+
+        CountDownLatch started = new CountDownLatch(1);
+        Platform.startup(started::countDown);
+        started.await();
+        try {
+            for (int size : sizes) {
+                List<SignEntry> entries = entries(size, base);
+                ThumbnailCache thumbnails = new ThumbnailCache(ThumbnailCache.DEFAULT_MAX_BYTES);
+                warm(thumbnails, entries);
+                System.out.printf(Locale.ROOT, "== %d položek ==%n", size);
+                onFx(() -> measureCells(thumbnails, entries));
+                scroll(thumbnails, entries, false).get(5, TimeUnit.MINUTES);
+                scroll(thumbnails, entries, true).get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            Platform.exit();
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Změří cenu vytvoření buňky a metody updateItem. Běží ve vlákně JavaFX.
+     *
+     * @param thumbnails mezipaměť náhledů.
+     * @param entries    položky seznamu.
+     */
+    private static void measureCells(ThumbnailCache thumbnails, List<SignEntry> entries) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        // Vytvoření buněk
+        int count = 2_000;
+        CustomListCell[] cells = new CustomListCell[count];
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            cells[i] = new CustomListCell(thumbnails);
+        }
+        long createNanos = System.nanoTime() - start;
+        long createBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+        System.out.printf(Locale.ROOT, "Vytvoření buňky:  %.2f µs, %d B%n", createNanos / 1e3 / count, createBytes / count);
+
+        // Střídání položek s náhledem v mezipaměti, jak se děje při posunu seznamu
+        CustomListCell cell = cells[0];
+        int updates = 200_000;
+        for (int i = 0; i < updates; i++) {
+            cell.updateItem(entries.get(i % WARM_ENTRIES), false);
+        }
+        allocated = threads.getCurrentThreadAllocatedBytes();
+        start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            cell.updateItem(entries.get(i % WARM_ENTRIES), false);
+        }
+        long updateNanos = System.nanoTime() - start;
+        long updateBytes = threads.getCurrentThreadAllocatedBytes() - allocated;
+        System.out.printf(Locale.ROOT, "updateItem:       %.1f ns, %.1f B%n", (double) updateNanos / updates, (double) updateBytes / updates);
+    }
+
+    /**
+     * Zobrazí seznam v okně a změří dobu snímků při posunu.
+     *
+     * @param thumbnails mezipaměť náhledů.
+     * @param entries    položky seznamu.
+     * @param jumps      true pro skoky na náhodné pozice, false pro plynulý posun.
+     * @return Future dokončená po změření všech snímků.
+     */
+    private static CompletableFuture<Void> scroll(ThumbnailCache thumbnails, List<SignEntry> entries, boolean jumps) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            AtomicInteger created = new AtomicInteger();
+            ListView<SignEntry> listView = new ListView<>();
+            listView.setCellFactory(param -> {
+                created.incrementAndGet();
+                return new CustomListCell(thumbnails);
+            });
+            long setupStart = System.nanoTime();
+            listView.setItems(FXCollections.observableArrayList(entries));
+            Stage stage = new Stage();
+            stage.setScene(new Scene(listView, 640, 480));
+            stage.show();
+            long setupNanos = System.nanoTime() - setupStart;
+
+            VirtualFlow<?> flow = (VirtualFlow<?>) listView.lookup(".virtual-flow");
+            long[] frames = new long[FRAMES];
+            new AnimationTimer() {
+                private long previous;
+                private int frame = -10;
+
+                @Override
+                public void handle(long now) {
+                    // Prvních několik snímků slouží k zahřátí
+                    if (frame >= 0) {
+                        frames[frame] = now - previous;
+                    }
+                    previous = now;
+                    frame++;
+                    if (frame == FRAMES) {
+                        stop();
+                        report(jumps ? "Skoky" : "Posun", frames, created.get(), setupNanos);
+                        stage.close();
+                        done.complete(null);
+                        return;
+                    }
+                    if (jumps) {
+                        listView.scrollTo((int) ((frame * 7919L) % entries.size()));
+                    } else {
+                        flow.scrollPixels(PIXELS_PER_FRAME);
+                    }
+                }
+            }.start();
+        });
+        return done;
+    }
+
+    /**
+     * Vypíše statistiku doby snímků.
+     *
+     * @param name       název scénáře.
+     * @param frames     doby snímků v nanosekundách.
+     * @param created    počet buněk vytvořených seznamem.
+     * @param setupNanos doba naplnění a zobrazení seznamu.
+     */
+    private static void report(String name, long[] frames, int created, long setupNanos) {
+        long[] sorted = frames.clone();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.ROOT, "%s: snímek p50 %.2f ms, p99 %.2f ms, max %.2f ms; buněk vytvořeno %d; zobrazení seznamu %.1f ms%n",
+                name, sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6,
+                sorted[sorted.length - 1] / 1e6, created, setupNanos / 1e6);
+    }
+
+    /**
+     * Načte do mezipaměti náhledy prvních položek seznamu.
+     *
+     * @param thumbnails mezipaměť náhledů.
+     * @param entries    položky seznamu.
+     * @throws InterruptedException pokud je čekání přerušeno.
+     */
+    private static void warm(ThumbnailCache thumbnails, List<SignEntry> entries) throws InterruptedException {
+        CountDownLatch loaded = new CountDownLatch(WARM_ENTRIES);
+        for (int i = 0; i < WARM_ENTRIES; i++) {
+            thumbnails.load(entries.get(i).url(), image -> loaded.countDown());
+        }
+        if (!loaded.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Náhledy se nepodařilo načíst");
+        }
+    }
+
+    /**
+     * Vytvoří syntetické položky seznamu.
+     *
+     * @param size počet položek.
+     * @param base základní URL obrázků.
+     * @return seznam položek.
+     */
+    private static List<SignEntry> entries(int size, String base) {
+        List<SignEntry> entries = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String code = (char) ('A' + i % 8) + Integer.toString(i / 8 + 1);
+            entries.add(new SignEntry(code, "Značka číslo " + i, base + code + ".png"));
+        }
+        return entries;
+    }
+
+    /**
+     * Vytvoří obrázek PNG, který lokální server vrací jako obrázek každé značky.
+     *
+     * @return obsah souboru PNG.
+     * @throws IOException pokud obrázek nelze zakódovat.
+     */
+    private static byte[] thumbnailPng() throws IOException {
+        BufferedImage image = new BufferedImage(120, 120, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillOval(0, 0, 120, 120);
+        graphics.setColor(Color.RED);
+        graphics.fillOval(10, 10, 100, 100);
+        graphics.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Spustí akci ve vlákně JavaFX a počká na její dokončení.
+     *
+     * @param action akce.
+     * @throws Exception pokud akce selže.
+     */
+    private static void onFx(Runnable action) throws Exception {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            try {
+                action.run();
+                done.complete(null);
+            } catch (Throwable e) {
+                done.completeExceptionally(e);
+            }
+        });
+        done.get(5, TimeUnit.MINUTES);
+    }
+}
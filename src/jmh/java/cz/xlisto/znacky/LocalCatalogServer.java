@@ -0,0 +1,282 @@
+package cz.xlisto.znacky;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Třída LocalCatalogServer je lokální náhradou katalogu dopravních značek pro měření výkonu.
+ * <p>
+ * Server poskytuje syntetické stránky katalogu ze třídy CatalogFixtures a k nim obrázky pevné
+ * velikosti. Umožňuje nastavit počet stránek, počet obrázků na stránce, zpoždění odpovědi
+ * s náhodným rozptylem a podíl požadavků, na které server odpoví chybou 503. Díky tomu lze měřit
+ * celou cestu načtení katalogu a stažení obrázků bez závislosti na skutečném serveru.
+ * <p>
+ * Stránky jsou dostupné na cestě {@link #CATALOG_PATH}, další stránky jsou určeny parametrem "od"
+ * stejně jako na celysvet.cz. Obrázky jsou dostupné pod cestou {@link #IMAGE_PATH}.
+ */
+public final class LocalCatalogServer implements AutoCloseable {
+    /**
+     * Cesta ke stránkám katalogu.
+     */
+    public static final String CATALOG_PATH = "test-znalosti-dopravnich-znacek-databaze";
+    /**
+     * Cesta k obrázkům značek.
+     */
+    public static final String IMAGE_PATH = "obrazky/znacky/";
+
+    /**
+     * Počet stránek katalogu.
+     */
+    private final int pages;
+    /**
+     * Počet obrázků na jedné stránce katalogu.
+     */
+    private final int imagesPerPage;
+    /**
+     * Základní zpoždění odpovědi v milisekundách.
+     */
+    private final long latencyMillis;
+    /**
+     * Maximální náhodný rozptyl zpoždění odpovědi v milisekundách.
+     */
+    private final long jitterMillis;
+    /**
+     * Podíl požadavků (0 až 1), na které server odpoví chybou 503.
+     */
+    private final double errorRate;
+    /**
+     * Obsah obrázku, který server vrací pro každou značku.
+     */
+    private final byte[] image;
+    /**
+     * HTTP server z JDK.
+     */
+    private final HttpServer server;
+    /**
+     * Vlákna obsluhující požadavky.
+     */
+    private final ExecutorService workers;
+    /**
+     * Počet obsloužených požadavků na stránky katalogu.
+     */
+    private final AtomicLong pageRequests = new AtomicLong();
+    /**
+     * Počet obsloužených požadavků na obrázky.
+     */
+    private final AtomicLong imageRequests = new AtomicLong();
+    /**
+     * Počet požadavků, na které server záměrně odpověděl chybou.
+     */
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    /**
+     * Spustí server na volném portu lokálního rozhraní.
+     *
+     * @param pages         počet stránek katalogu.
+     * @param imagesPerPage počet obrázků na jedné stránce.
+     * @param latencyMillis základní zpoždění odpovědi v milisekundách.
+     * @param jitterMillis  maximální náhodný rozptyl zpoždění v milisekundách.
+     * @param errorRate     podíl požadavků (0 až 1), na které server odpoví chybou 503.
+     * @param imageBytes    velikost obrázku v bajtech.
+     * @param threads       počet vláken obsluhujících požadavky.
+     * @throws IOException pokud server nelze spustit.
+     */
+    public LocalCatalogServer(int pages, int imagesPerPage, long latencyMillis, long jitterMillis,
+                              double errorRate, int imageBytes, int threads) throws IOException {
+        this.pages = pages;
+        this.imagesPerPage = imagesPerPage;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        this.image = new byte[imageBytes];
+        // Pseudonáhodný, ale stálý obsah, aby se obrázky nedaly komprimovat
+        long seed = 0x5DEECE66DL;
+        for (int i = 0; i < image.length; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            image[i] = (byte) (seed >>> 56);
+        }
+
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "local-catalog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/" + CATALOG_PATH, this::servePage);
+        server.createContext("/" + IMAGE_PATH, this::serveImage);
+        server.start();
+    }
+
+    /**
+     * Vrátí URL adresu první stránky katalogu.
+     *
+     * @return URL adresa první stránky.
+     */
+    public String catalogUrl() {
+        return baseUrl() + CATALOG_PATH;
+    }
+
+    /**
+     * Vrátí základní URL serveru končící lomítkem.
+     *
+     * @return základní URL serveru.
+     */
+    public String baseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Vrátí celkový počet obrázků v katalogu.
+     *
+     * @return počet obrázků.
+     */
+    public int imageCount() {
+        return pages * imagesPerPage;
+    }
+
+    /**
+     * Vrátí počet obsloužených požadavků na stránky katalogu.
+     *
+     * @return počet požadavků.
+     */
+    public long getPageRequests() {
+        return pageRequests.get();
+    }
+
+    /**
+     * Vrátí počet obsloužených požadavků na obrázky.
+     *
+     * @return počet požadavků.
+     */
+    public long getImageRequests() {
+        return imageRequests.get();
+    }
+
+    /**
+     * Vrátí počet požadavků, na které server záměrně odpověděl chybou.
+     *
+     * @return počet vložených chyb.
+     */
+    public long getInjectedErrors() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * Obslouží požadavek na stránku katalogu.
+     *
+     * @param exchange HTTP požadavek.
+     * @throws IOException pokud dojde k chybě při odesílání odpovědi.
+     */
+    private void servePage(HttpExchange exchange) throws IOException {
+        pageRequests.incrementAndGet();
+        if (delayOrFail(exchange)) {
+            return;
+        }
+        int pageIndex = (int) (offsetOf(exchange.getRequestURI().getRawQuery()) / imagesPerPage);
+        if (pageIndex < 0 || pageIndex >= pages) {
+            respond(exchange, 404, "text/plain", new byte[0]);
+            return;
+        }
+        byte[] body = CatalogFixtures.page(pageIndex, pages, imagesPerPage, CATALOG_PATH, baseUrl() + IMAGE_PATH)
+                .getBytes(StandardCharsets.UTF_8);
+        respond(exchange, 200, "text/html; charset=utf-8", body);
+    }
+
+    /**
+     * Obslouží požadavek na obrázek značky.
+     *
+     * @param exchange HTTP požadavek.
+     * @throws IOException pokud dojde k chybě při odesílání odpovědi.
+     */
+    private void serveImage(HttpExchange exchange) throws IOException {
+        imageRequests.incrementAndGet();
+        if (delayOrFail(exchange)) {
+            return;
+        }
+        respond(exchange, 200, "image/png", image);
+    }
+
+    /**
+     * Počká nastavené zpoždění a případně odpoví chybou.
+     *
+     * @param exchange HTTP požadavek.
+     * @return true, pokud byla odeslána chybová odpověď.
+     * @throws IOException pokud dojde k chybě při odesílání odpovědi.
+     */
+    private boolean delayOrFail(HttpExchange exchange) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            injectedErrors.incrementAndGet();
+            respond(exchange, 503, "text/plain", "Service Unavailable".getBytes(StandardCharsets.US_ASCII));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Odešle odpověď s daným stavem a tělem.
+     *
+     * @param exchange    HTTP požadavek.
+     * @param status      stavový kód odpovědi.
+     * @param contentType typ obsahu odpovědi.
+     * @param body        tělo odpovědi.
+     * @throws IOException pokud dojde k chybě při odesílání odpovědi.
+     */
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Vrátí hodnotu parametru "od" z dotazové části URL, nebo 0, pokud parametr chybí.
+     *
+     * @param query dotazová část URL, nebo null.
+     * @return posun první položky stránky.
+     */
+    private static long offsetOf(String query) {
+        if (query == null) {
+            return 0;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.startsWith("od=")) {
+                try {
+                    return Long.parseLong(pair.substring(3));
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Zastaví server a jeho vlákna.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+}
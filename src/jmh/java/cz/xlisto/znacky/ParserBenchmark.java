@@ -0,0 +1,81 @@
+package cz.xlisto.znacky;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarky parsování stránky katalogu a formátování popisu značky.
+ * <p>
+ * Stránky jsou generovány třídou CatalogFixtures v několika velikostech, aby bylo možné sledovat
+ * cenu zpracování jedné stránky i jedné položky při růstu katalogu. Spolu s profilerem "gc"
+ * (zapnutým v build.gradle) udává i počet alokovaných bajtů na operaci.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    /**
+     * Počet obrázků na stránce.
+     */
+    @Param({"20", "200", "2000"})
+    public int images;
+
+    private String html;
+    private List<String> descriptions;
+
+    @Setup
+    public void setUp() {
+        html = CatalogFixtures.page(images);
+        descriptions = new ArrayList<>();
+        for (Element img : Jsoup.parse(html).select("img[alt]")) {
+            descriptions.add(img.attr("alt").replace("Dopravní značka:", "").trim());
+        }
+    }
+
+    /**
+     * Parsování celé stránky do seznamu položek pomocí dokumentu Jsoup.
+     */
+    @Benchmark
+    public String parseHTML() {
+        return new ParserHTML(null).parseHTML(html);
+    }
+
+    /**
+     * Formátování popisů všech značek na stránce.
+     */
+    @Benchmark
+    public void formatText(Blackhole blackhole) {
+        for (String description : descriptions) {
+            blackhole.consume(ParserHTML.formatText(description));
+        }
+    }
+
+    /**
+     * Vytvoření položek SignEntry ze všech obrázků na stránce, včetně rozpoznání kódu a kanonické URL.
+     */
+    @Benchmark
+    public void signEntry(Blackhole blackhole) {
+        for (String description : descriptions) {
+            blackhole.consume(SignEntry.fromImage(description, "http://www.celysvet.cz/obrazky/znacky/low/A1.png"));
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package cz.xlisto.znacky;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Srovnání parsování stránky katalogu pomocí dokumentu Jsoup a pomocí streamovaného čtení.
+ * <p>
+ * Varianta DOM odpovídá původnímu postupu: celá stránka je převedena na řetězec a z něj na dokument.
+ * Varianta stream čte stránku přímo z bajtů odpovědi včetně zjištění znakové sady.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserStreamingBenchmark {
+    /**
+     * Počet obrázků na stránce.
+     */
+    @Param({"20", "200", "2000"})
+    public int images;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        body = CatalogFixtures.page(images).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public CatalogPage dom() {
+        String html = new String(body, StandardCharsets.UTF_8);
+        return new ParserHTML(null).parsePage(html, "http://www.celysvet.cz/test-znalosti-dopravnich-znacek-databaze");
+    }
+
+    @Benchmark
+    public CatalogPage stream() throws IOException {
+        return new ParserHTML(null).parsePage(new ByteArrayInputStream(body), null,
+                "http://www.celysvet.cz/test-znalosti-dopravnich-znacek-databaze");
+    }
+}
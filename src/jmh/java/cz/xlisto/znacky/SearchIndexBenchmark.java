@@ -0,0 +1,77 @@
+package cz.xlisto.znacky;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarky vyhledávání v katalogu pomocí třídy SearchIndex.
+ * <p>
+ * Vyhledávání se spouští při každé změně textu vyhledávacího pole, proto musí být výrazně kratší
+ * než jeden snímek (16 ms) i pro katalog se 100 000 položkami. Měřeno je i postupné budování indexu.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SearchIndexBenchmark {
+    /**
+     * Počet položek katalogu.
+     */
+    @Param({"10000", "100000"})
+    public int entries;
+
+    /**
+     * Dotaz do vyhledávacího pole.
+     */
+    @Param({"a1", "zakaz", "b2 vjezdu", "popis"})
+    public String query;
+
+    private List<SignEntry> catalog;
+    private SearchIndex index;
+
+    @Setup
+    public void setUp() {
+        String[] words = {"Zákaz vjezdu", "Konec zákazu", "Hlavní pozemní komunikace", "Přechod pro chodce", "Dej přednost v jízdě"};
+        catalog = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            String code = (char) ('A' + i % 8) + Integer.toString(i / 8 + 1);
+            catalog.add(new SignEntry(code, words[i % words.length] + " číslo " + i + " popis",
+                    "http://www.celysvet.cz/obrazky/znacky/hi/" + code + ".png"));
+        }
+        index = new SearchIndex();
+        index.addAll(catalog);
+    }
+
+    /**
+     * Vyhledání položek podle dotazu.
+     */
+    @Benchmark
+    public List<SignEntry> search() {
+        return index.search(query);
+    }
+
+    /**
+     * Sestavení indexu z celého katalogu.
+     */
+    @Benchmark
+    public SearchIndex build() {
+        SearchIndex built = new SearchIndex();
+        built.addAll(catalog);
+        return built;
+    }
+}
@@ -0,0 +1,152 @@
+package cz.xlisto.znacky;
+
+/**
+ * Třída AdaptiveLimiter řídí počet současných požadavků na jeden server metodou AIMD
+ * (additive increase, multiplicative decrease).
+ * <p>
+ * Dokud server odpovídá rychle a bez chyb, limit se za každou úspěšnou dávku požadavků zvýší o jeden.
+ * Pokud server odpoví stavem 429 nebo 503, vyprší časový limit nebo se doba odezvy výrazně prodlouží
+ * oproti nejlepší pozorované době, limit se sníží na polovinu. Další snížení je možné až po uplynutí
+ * doby odezvy, aby jedna vlna chyb limit nesrazila opakovaně.
+ * <p>
+ * Doba odezvy je vyhlazována exponenciálním průměrem. Nejlepší pozorovaná doba se pomalu posouvá
+ * nahoru, aby se limiter přizpůsobil trvalé změně rychlosti serveru.
+ * <p>
+ * Použití: před požadavkem zavolat {@link #acquire()} a po něm právě jednu z metod
+ * {@link #onSuccess(long)}, {@link #onOverload()} nebo {@link #release()}.
+ */
+public class AdaptiveLimiter {
+    /**
+     * Násobek nejlepší doby odezvy, při jehož překročení vyhlazenou dobou odezvy se limit sníží.
+     */
+    static final double LATENCY_TOLERANCE = 3.0;
+    /**
+     * Koeficient, kterým je limit při přetížení vynásoben.
+     */
+    static final double BACKOFF_RATIO = 0.5;
+    /**
+     * Váha nového vzorku ve vyhlazené době odezvy.
+     */
+    private static final double SMOOTHING = 0.1;
+    /**
+     * Rychlost, kterou se nejlepší doba odezvy posouvá k pozorovaným hodnotám.
+     */
+    private static final double BASELINE_DRIFT = 0.01;
+
+    /**
+     * Nejnižší povolený limit.
+     */
+    private final int minLimit;
+    /**
+     * Nejvyšší povolený limit.
+     */
+    private final int maxLimit;
+    /**
+     * Aktuální limit, neceločíselný kvůli postupnému zvyšování.
+     */
+    private double limit;
+    /**
+     * Počet právě probíhajících požadavků.
+     */
+    private int inFlight;
+    /**
+     * Vyhlazená doba odezvy v nanosekundách.
+     */
+    private double smoothedLatency;
+    /**
+     * Nejlepší pozorovaná doba odezvy v nanosekundách.
+     */
+    private double baselineLatency;
+    /**
+     * Okamžik posledního snížení limitu (System.nanoTime).
+     */
+    private long lastDecrease;
+
+    /**
+     * Konstruktor třídy AdaptiveLimiter.
+     *
+     * @param initialLimit počáteční limit.
+     * @param minLimit     nejnižší povolený limit (alespoň 1).
+     * @param maxLimit     nejvyšší povolený limit.
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Počká, dokud počet probíhajících požadavků neklesne pod limit, a zaregistruje nový požadavek.
+     *
+     * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+     */
+    public synchronized void acquire() throws InterruptedException {
+        while (inFlight >= (int) limit) {
+            wait();
+        }
+        inFlight++;
+    }
+
+    /**
+     * Ukončí úspěšný požadavek a podle jeho doby odezvy limit zvýší nebo sníží.
+     *
+     * @param latencyNanos doba odezvy požadavku v nanosekundách.
+     */
+    public synchronized void onSuccess(long latencyNanos) {
+        inFlight--;
+        if (baselineLatency == 0) {
+            baselineLatency = latencyNanos;
+            smoothedLatency = latencyNanos;
+        } else {
+            smoothedLatency += (latencyNanos - smoothedLatency) * SMOOTHING;
+            baselineLatency = Math.min(latencyNanos, baselineLatency + (latencyNanos - baselineLatency) * BASELINE_DRIFT);
+        }
+        if (smoothedLatency > baselineLatency * LATENCY_TOLERANCE) {
+            decrease();
+        } else {
+            // Přírůstek 1/limit odpovídá zvýšení o jeden za každou dávku požadavků velikosti limitu
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Ukončí požadavek, na který server odpověděl přetížením (429, 503) nebo vypršel jeho časový limit.
+     */
+    public synchronized void onOverload() {
+        inFlight--;
+        decrease();
+        notifyAll();
+    }
+
+    /**
+     * Ukončí požadavek bez vlivu na limit, například při chybě, která nesouvisí se zatížením serveru.
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * @return aktuální limit současných požadavků.
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Sníží limit na polovinu, nejvýše jednou za dobu odezvy.
+     */
+    private void decrease() {
+        long now = System.nanoTime();
+        long cooldown = (long) Math.max(smoothedLatency, 1_000_000);
+        if (now - lastDecrease < cooldown) {
+            return;
+        }
+        lastDecrease = now;
+        limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        // Po snížení se vychází z nejlepší doby odezvy, aby následující vzorky limit hned znovu nesnížily
+        smoothedLatency = baselineLatency;
+    }
+}
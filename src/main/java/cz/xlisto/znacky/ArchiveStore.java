@@ -0,0 +1,326 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Třída ArchiveStore zapisuje stažené obrázky přímo do jednoho archivu ZIP nebo TAR.
+ * <p>
+ * Každý obrázek je při stahování načten do vyrovnávací paměti vypůjčené z fondu BufferPool, zároveň je
+ * počítán jeho otisk SHA-256, a poté je jako celek zapsán do archivu. Obrázky tak nejsou ukládány do
+ * dočasných souborů a celý archiv vzniká jediným průchodem daty. Do archivu zapisuje vždy jen jedno
+ * vlákno, stahování ostatních obrázků mezitím pokračuje.
+ * <p>
+ * Obrázky ve formátu PNG a GIF jsou již komprimované, proto jsou do archivu ZIP uloženy bez komprese
+ * (metoda STORED). Na konec archivu je přidán index {@value #INDEX_ENTRY} s kódem, popisem, URL adresou,
+ * názvem souboru, velikostí a otiskem každého obrázku.
+ * <p>
+ * Archiv je během zápisu pojmenován s příponou ".part" a pod konečným názvem se objeví až po úspěšném
+ * uzavření, takže přerušené stahování nezanechá neúplný archiv.
+ */
+public class ArchiveStore implements ImageStore {
+    /**
+     * Název archivu v cílové složce bez přípony.
+     */
+    public static final String ARCHIVE_NAME = "znacky";
+    /**
+     * Název položky s indexem obrázků v archivu.
+     */
+    public static final String INDEX_ENTRY = "index.tsv";
+    /**
+     * Hlavička indexu.
+     */
+    private static final String HEADER = "#code\tdescription\turl\tname\tsize\tsha256";
+    /**
+     * Velikost bloku formátu TAR.
+     */
+    private static final int TAR_BLOCK = 512;
+    /**
+     * Maximální počet vyrovnávacích pamětí uchovávaných ve fondu.
+     */
+    private static final int POOLED_BUFFERS = 64;
+    private static final Logger logger = LoggerFactory.getLogger(ArchiveStore.class);
+
+    /**
+     * Formát archivu, OutputMode.ZIP nebo OutputMode.TAR.
+     */
+    private final OutputMode format;
+    /**
+     * Soubor archivu s konečným názvem.
+     */
+    private final Path archive;
+    /**
+     * Soubor, do kterého je archiv zapisován.
+     */
+    private final Path partial;
+    /**
+     * Proud dat archivu. Pro formát ZIP je to ZipOutputStream.
+     */
+    private final OutputStream out;
+    /**
+     * Fond vyrovnávacích pamětí pro obsah obrázků, počáteční velikost určuje nastavení aplikace.
+     */
+    private final BufferPool buffers = new BufferPool(Settings.getDefault().getBufferSize(), POOLED_BUFFERS);
+    /**
+     * Názvy položek již zapsaných do archivu.
+     */
+    private final Set<String> names = new HashSet<>();
+    /**
+     * Řádky indexu v pořadí zápisu do archivu.
+     */
+    private final List<String> index = new ArrayList<>();
+    /**
+     * Vyrovnávací paměť pro hlavičku položky TAR.
+     */
+    private final byte[] tarHeader = new byte[TAR_BLOCK];
+
+    /**
+     * Vytvoří archiv v cílové složce.
+     *
+     * @param directory cílová složka.
+     * @param format    formát archivu, OutputMode.ZIP nebo OutputMode.TAR.
+     * @throws IOException pokud archiv nelze vytvořit.
+     */
+    public ArchiveStore(File directory, OutputMode format) throws IOException {
+        if (format != OutputMode.ZIP && format != OutputMode.TAR) {
+            throw new IllegalArgumentException("Nepodporovaný formát archivu: " + format);
+        }
+        this.format = format;
+        this.archive = directory.toPath().resolve(ARCHIVE_NAME + "." + format.externalName());
+        this.partial = archive.resolveSibling(archive.getFileName() + ".part");
+        OutputStream file = new BufferedOutputStream(Files.newOutputStream(partial), 64 * 1024);
+        this.out = format == OutputMode.ZIP ? new ZipOutputStream(file, StandardCharsets.UTF_8) : file;
+    }
+
+    /**
+     * @return soubor archivu s konečným názvem.
+     */
+    public Path getArchive() {
+        return archive;
+    }
+
+    @Override
+    public StoredImage store(SignEntry entry, String fileName, InputStream body) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = buffers.acquire();
+        try {
+            int length = 0;
+            int read;
+            while ((read = body.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = buffers.grow(buffer, length + 1);
+                }
+            }
+            digest.update(buffer, 0, length);
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            boolean written = write(entry, fileName, buffer, length, sha256);
+            return new StoredImage(sha256, length, written ? length : 0);
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    /**
+     * Zapíše obrázek do archivu jako novou položku.
+     * <p>
+     * Položka se stejným názvem může být v archivu jen jednou. Pokud již byla zapsána, obrázek se přeskočí.
+     *
+     * @param entry    položka katalogu.
+     * @param fileName název položky v archivu.
+     * @param content  obsah obrázku.
+     * @param length   délka obsahu v bajtech.
+     * @param sha256   otisk obsahu.
+     * @return true, pokud byl obrázek zapsán.
+     * @throws IOException pokud zápis selže.
+     */
+    private synchronized boolean write(SignEntry entry, String fileName, byte[] content, int length, String sha256) throws IOException {
+        if (!names.add(fileName)) {
+            logger.warn("Položka {} již v archivu je, obrázek {} je přeskočen", fileName, entry.url());
+            return false;
+        }
+        if (format == OutputMode.ZIP) {
+            writeZipEntry(fileName, content, length, true);
+        } else {
+            writeTarEntry(fileName, content, length);
+        }
+        index.add(clean(entry.code()) + "\t" + clean(entry.description()) + "\t" + clean(entry.url()) + "\t"
+                + fileName + "\t" + length + "\t" + sha256);
+        return true;
+    }
+
+    /**
+     * Zapíše položku archivu ZIP.
+     *
+     * @param name    název položky.
+     * @param content obsah položky.
+     * @param length  délka obsahu v bajtech.
+     * @param stored  true pro uložení bez komprese.
+     * @throws IOException pokud zápis selže.
+     */
+    private void writeZipEntry(String name, byte[] content, int length, boolean stored) throws IOException {
+        ZipOutputStream zip = (ZipOutputStream) out;
+        ZipEntry zipEntry = new ZipEntry(name);
+        if (stored) {
+            // Metoda STORED vyžaduje velikost a CRC předem, obsah je však již celý v paměti
+            CRC32 crc = new CRC32();
+            crc.update(content, 0, length);
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(length);
+            zipEntry.setCompressedSize(length);
+            zipEntry.setCrc(crc.getValue());
+        }
+        zip.putNextEntry(zipEntry);
+        zip.write(content, 0, length);
+        zip.closeEntry();
+    }
+
+    /**
+     * Zapíše položku archivu TAR ve formátu ustar: hlavičku, obsah a doplnění na celé bloky.
+     *
+     * @param name    název položky.
+     * @param content obsah položky.
+     * @param length  délka obsahu v bajtech.
+     * @throws IOException pokud zápis selže nebo je název položky delší než 100 bajtů.
+     */
+    private void writeTarEntry(String name, byte[] content, int length) throws IOException {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        if (nameBytes.length > 100) {
+            throw new IOException("Název položky je pro archiv TAR příliš dlouhý: " + name);
+        }
+        byte[] header = tarHeader;
+        Arrays.fill(header, (byte) 0);
+        System.arraycopy(nameBytes, 0, header, 0, nameBytes.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, length);
+        octal(header, 136, 12, System.currentTimeMillis() / 1000);
+        header[156] = '0';
+        ascii(header, 257, "ustar\0");
+        ascii(header, 263, "00");
+        // Kontrolní součet se počítá s polem součtu vyplněným mezerami
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        out.write(header);
+        out.write(content, 0, length);
+        int padding = (TAR_BLOCK - length % TAR_BLOCK) % TAR_BLOCK;
+        if (padding > 0) {
+            Arrays.fill(header, (byte) 0);
+            out.write(header, 0, padding);
+        }
+    }
+
+    /**
+     * Zapíše číslo v osmičkové soustavě doplněné nulami zleva a ukončené nulovým bajtem.
+     *
+     * @param header hlavička TAR.
+     * @param offset začátek pole.
+     * @param length délka pole včetně ukončovacího bajtu.
+     * @param value  zapisovaná hodnota.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        int start = offset + length - 1 - digits.length();
+        for (int i = offset; i < start; i++) {
+            header[i] = '0';
+        }
+        ascii(header, start, digits);
+        header[offset + length - 1] = 0;
+    }
+
+    private static void ascii(byte[] header, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            header[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    /**
+     * Zapíše do archivu index obrázků, dokončí archiv a přejmenuje jej na konečný název.
+     *
+     * @throws IOException pokud zápis selže.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        StringBuilder text = new StringBuilder(HEADER).append('\n');
+        for (String line : index) {
+            text.append(line).append('\n');
+        }
+        byte[] indexBytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        try (OutputStream stream = out) {
+            if (format == OutputMode.ZIP) {
+                writeZipEntry(INDEX_ENTRY, indexBytes, indexBytes.length, false);
+            } else {
+                writeTarEntry(INDEX_ENTRY, indexBytes, indexBytes.length);
+                // Konec archivu TAR tvoří dva prázdné bloky
+                stream.write(new byte[2 * TAR_BLOCK]);
+            }
+        }
+        Files.move(partial, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Archiv uložen: {} ({} obrázků)", archive, index.size());
+    }
+
+    /**
+     * Zahodí neúplný archiv zrušeného ukládání. Předchozí archiv s konečným názvem zůstane zachován.
+     *
+     * @throws IOException pokud neúplný archiv nelze odstranit.
+     */
+    @Override
+    public synchronized void abort() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            // Neúplný archiv se zahazuje, chyba při jeho uzavření není podstatná
+        }
+        Files.deleteIfExists(partial);
+        logger.info("Ukládání do archivu {} bylo zrušeno", archive);
+    }
+
+    /**
+     * Archiv je při každém ukládání vytvořen znovu, proto v něm musí být i obrázky, které se nezměnily.
+     *
+     * @return false.
+     */
+    @Override
+    public boolean retainsPrevious() {
+        return false;
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 musí podporovat každá implementace Javy
+            throw new IllegalStateException(e);
+        }
+    }
+}
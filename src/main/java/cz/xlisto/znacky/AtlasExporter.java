@@ -0,0 +1,514 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Třída AtlasExporter skládá uložené obrázky značek do jednoho nebo několika atlasů (sprite sheet)
+ * a zapisuje k nim index JSON s umístěním každé značky.
+ * <p>
+ * Klient tak celý katalog načte jedním nebo dvěma požadavky místo tisíců samostatných souborů.
+ * Obrázky jsou přidávány během ukládání (viz asDownloadListener) a atlas je sestaven metodou export:
+ * <ol>
+ *   <li>Z hlaviček obrázků jsou zjištěny jejich rozměry, obrázky nejsou dekódovány.</li>
+ *   <li>Obrázky jsou seřazeny podle výšky a rozmístěny algoritmem skyline bottom-left do stránek atlasu
+ *   o zadané maximální velikosti. Když se obrázek do stránky nevejde, začne se nová stránka.</li>
+ *   <li>Stránky jsou vykresleny jedna po druhé, každý obrázek je dekódován právě jednou.
+ *   V paměti je tak vždy jen jedna stránka atlasu.</li>
+ *   <li>Stránky jsou zakódovány stejně úsporně jako optimalizované obrázky (ImagePostProcessor).</li>
+ * </ol>
+ * Výstupy ve složce {@value #ATLAS_DIRECTORY} cílové složky:
+ * <ul>
+ *   <li>atlas-&lt;n&gt;.png - stránky atlasu,</li>
+ *   <li>{@value #INDEX_FILE} - index, který pro kód každé značky uvádí stránku, souřadnice, rozměry a popis.</li>
+ * </ul>
+ * Pokud je zadána maximální velikost značky, větší obrázky jsou před vložením do atlasu zmenšeny.
+ * Mezi obrázky je ponechána mezera {@value #PADDING} px, aby se při filtrování textur nepřekrývaly okraje.
+ */
+public class AtlasExporter {
+    private static final Logger logger = LoggerFactory.getLogger(AtlasExporter.class);
+    /**
+     * Složka s atlasem v cílové složce.
+     */
+    public static final String ATLAS_DIRECTORY = "atlas";
+    /**
+     * Název souboru s indexem atlasu.
+     */
+    public static final String INDEX_FILE = "atlas.json";
+    /**
+     * Výchozí maximální šířka a výška stránky atlasu v pixelech.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    /**
+     * Mezera mezi obrázky v pixelech.
+     */
+    static final int PADDING = 2;
+
+    /**
+     * Cílová složka.
+     */
+    private final Path directory;
+    /**
+     * Maximální šířka a výška stránky atlasu.
+     */
+    private final int pageSize;
+    /**
+     * Maximální šířka a výška značky v atlasu, nebo 0, pokud se obrázky nezmenšují.
+     */
+    private final int spriteSize;
+    /**
+     * Obrázky přidané do atlasu.
+     */
+    private final List<Sprite> sprites = new ArrayList<>();
+
+    /**
+     * Konstruktor třídy AtlasExporter.
+     *
+     * @param directory  cílová složka s uloženými obrázky.
+     * @param pageSize   maximální šířka a výška stránky atlasu v pixelech.
+     * @param spriteSize maximální šířka a výška značky v atlasu, nebo 0, pokud se obrázky nezmenšují.
+     */
+    public AtlasExporter(File directory, int pageSize, int spriteSize) {
+        this.directory = directory.toPath();
+        this.pageSize = pageSize;
+        this.spriteSize = spriteSize;
+    }
+
+    /**
+     * Vytvoří export atlasu podle nastavení aplikace (Settings).
+     * <p>
+     * Atlas lze sestavit jen z obrázků uložených jako soubory, tedy pro způsoby uložení
+     * {@link OutputMode#DIRECTORY} a {@link OutputMode#CONTENT_ADDRESSED}.
+     *
+     * @param directory  cílová složka s uloženými obrázky.
+     * @param outputMode způsob uložení obrázků.
+     * @return export atlasu, nebo null, pokud není v nastavení zapnut nebo jej pro způsob uložení nelze použít.
+     */
+    public static AtlasExporter fromSettings(File directory, OutputMode outputMode) {
+        Settings settings = Settings.getDefault();
+        if (!settings.isAtlasExport()) {
+            return null;
+        }
+        return create(directory, outputMode, settings.getAtlasPageSize(), settings.getAtlasSpriteSize());
+    }
+
+    /**
+     * Vytvoří export atlasu, pokud jej lze pro způsob uložení použít.
+     *
+     * @param directory  cílová složka s uloženými obrázky.
+     * @param outputMode způsob uložení obrázků.
+     * @param pageSize   maximální šířka a výška stránky atlasu v pixelech.
+     * @param spriteSize maximální šířka a výška značky v atlasu, nebo 0, pokud se obrázky nezmenšují.
+     * @return export atlasu, nebo null.
+     */
+    public static AtlasExporter create(File directory, OutputMode outputMode, int pageSize, int spriteSize) {
+        if (outputMode == OutputMode.ZIP || outputMode == OutputMode.TAR) {
+            logger.warn("Atlas nelze sestavit při ukládání do archivu {}", outputMode.externalName());
+            return null;
+        }
+        return new AtlasExporter(directory, pageSize, spriteSize);
+    }
+
+    /**
+     * Vrátí posluchače, který každý uložený nebo nezměněný obrázek přidá do atlasu.
+     *
+     * @return posluchač stahování.
+     */
+    public DownloadListener asDownloadListener() {
+        return new DownloadListener() {
+            @Override
+            public void onCompleted(SignEntry item, File file, long bytes) {
+                add(item, file);
+            }
+
+            @Override
+            public void onSkipped(SignEntry item, File file) {
+                add(item, file);
+            }
+        };
+    }
+
+    /**
+     * Přidá obrázek do atlasu. Metodu lze volat z více vláken.
+     *
+     * @param entry položka katalogu.
+     * @param file  uložený obrázek.
+     */
+    public void add(SignEntry entry, File file) {
+        synchronized (sprites) {
+            sprites.add(new Sprite(entry, file.toPath()));
+        }
+    }
+
+    /**
+     * Sestaví atlas ze všech přidaných obrázků a zapíše stránky a index.
+     *
+     * @return počet značek v atlasu.
+     * @throws IOException pokud nelze zapsat stránky atlasu nebo index.
+     */
+    public int export() throws IOException {
+        List<Sprite> placed = new ArrayList<>();
+        synchronized (sprites) {
+            for (Sprite sprite : sprites) {
+                if (measure(sprite)) {
+                    placed.add(sprite);
+                }
+            }
+        }
+
+        // Vyšší obrázky první, skyline pak ponechá méně nevyužitých míst
+        placed.sort(Comparator.comparingInt((Sprite sprite) -> sprite.height).reversed()
+                .thenComparing(Comparator.comparingInt((Sprite sprite) -> sprite.width).reversed())
+                .thenComparing(sprite -> sprite.entry.code()));
+        List<Skyline> pages = new ArrayList<>();
+        for (Iterator<Sprite> iterator = placed.iterator(); iterator.hasNext(); ) {
+            Sprite sprite = iterator.next();
+            if (!place(sprite, pages)) {
+                logger.warn("Obrázek {} ({}x{}) je větší než stránka atlasu a je vynechán", sprite.file,
+                        sprite.width, sprite.height);
+                iterator.remove();
+            }
+        }
+
+        Path atlas = directory.resolve(ATLAS_DIRECTORY);
+        Files.createDirectories(atlas);
+        List<String> pageNames = new ArrayList<>();
+        for (int page = 0; page < pages.size(); page++) {
+            String name = "atlas-" + page + ".png";
+            pageNames.add(name);
+            writeAtomically(atlas.resolve(name), render(placed, page, pages.get(page)));
+        }
+        writeAtomically(atlas.resolve(INDEX_FILE), index(placed, pageNames).getBytes(StandardCharsets.UTF_8));
+        logger.info("Atlas uložen: {} značek na {} stránkách ve složce {}", placed.size(), pages.size(), atlas);
+        return placed.size();
+    }
+
+    /**
+     * Zjistí rozměry obrázku z jeho hlavičky, bez dekódování obrazových dat.
+     *
+     * @param sprite obrázek.
+     * @return true, pokud se rozměry podařilo zjistit.
+     */
+    private boolean measure(Sprite sprite) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(sprite.file.toFile())) {
+            Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+            if (readers == null || !readers.hasNext()) {
+                logger.warn("Obrázek {} má nepodporovaný formát a je vynechán", sprite.file);
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                if (spriteSize > 0 && (width > spriteSize || height > spriteSize)) {
+                    double ratio = Math.min((double) spriteSize / width, (double) spriteSize / height);
+                    width = Math.max(1, (int) Math.round(width * ratio));
+                    height = Math.max(1, (int) Math.round(height * ratio));
+                }
+                sprite.width = width;
+                sprite.height = height;
+                return true;
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            logger.warn("Obrázek {} nelze načíst a je vynechán: {}", sprite.file, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Umístí obrázek do první stránky, do které se vejde, případně založí novou stránku.
+     *
+     * @param sprite obrázek se zjištěnými rozměry.
+     * @param pages  dosavadní stránky atlasu.
+     * @return false, pokud je obrázek větší než stránka atlasu.
+     */
+    private boolean place(Sprite sprite, List<Skyline> pages) {
+        int width = sprite.width + PADDING;
+        int height = sprite.height + PADDING;
+        if (width > pageSize || height > pageSize) {
+            return false;
+        }
+        for (int page = 0; page < pages.size(); page++) {
+            if (pages.get(page).insert(sprite, width, height)) {
+                sprite.page = page;
+                return true;
+            }
+        }
+        Skyline skyline = new Skyline(pageSize, pageSize);
+        skyline.insert(sprite, width, height);
+        sprite.page = pages.size();
+        pages.add(skyline);
+        return true;
+    }
+
+    /**
+     * Vykreslí jednu stránku atlasu a zakóduje ji do formátu PNG.
+     *
+     * @param sprites umístěné obrázky všech stránek.
+     * @param page    číslo stránky.
+     * @param skyline rozmístění stránky.
+     * @return obsah souboru PNG.
+     * @throws IOException pokud kódování selže.
+     */
+    private byte[] render(List<Sprite> sprites, int page, Skyline skyline) throws IOException {
+        // Stránka je oříznuta na skutečně využitou plochu
+        BufferedImage atlas = new BufferedImage(skyline.usedWidth(), skyline.usedHeight(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = atlas.createGraphics();
+        try {
+            for (Sprite sprite : sprites) {
+                if (sprite.page != page) {
+                    continue;
+                }
+                BufferedImage image = ImageIO.read(sprite.file.toFile());
+                if (image == null) {
+                    throw new IOException("Obrázek " + sprite.file + " nelze dekódovat");
+                }
+                if (image.getWidth() != sprite.width || image.getHeight() != sprite.height) {
+                    image = ImagePostProcessor.scale(image, sprite.width, sprite.height);
+                }
+                graphics.drawImage(image, sprite.x, sprite.y, null);
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return ImagePostProcessor.encodePng(atlas);
+    }
+
+    /**
+     * Sestaví index atlasu ve formátu JSON.
+     * <p>
+     * Klíčem je kód značky. Pokud značka kód nemá nebo je kód již použit, klíčem je název souboru obrázku,
+     * a pokud je použit i ten, název souboru s pořadovým číslem (např. {@code a.png-2}).
+     * Obrázky se stejným kódem jsou seřazeny podle názvu souboru, aby klíče byly při každém exportu stejné.
+     *
+     * @param sprites   umístěné obrázky.
+     * @param pageNames názvy souborů stránek.
+     * @return index ve formátu JSON.
+     */
+    private String index(List<Sprite> sprites, List<String> pageNames) {
+        List<Sprite> ordered = new ArrayList<>(sprites);
+        ordered.sort(Comparator.comparing((Sprite sprite) -> sprite.entry.code())
+                .thenComparing(sprite -> sprite.file.getFileName().toString()));
+        StringBuilder json = new StringBuilder("{\n  \"pages\": [");
+        for (int i = 0; i < pageNames.size(); i++) {
+            json.append(i == 0 ? "" : ", ").append(jsonString(pageNames.get(i)));
+        }
+        json.append("],\n  \"sprites\": {");
+        Set<String> keys = new HashSet<>();
+        boolean first = true;
+        for (Sprite sprite : ordered) {
+            String key = sprite.entry.code();
+            if (key.isEmpty() || !keys.add(key)) {
+                String name = sprite.file.getFileName().toString();
+                key = name;
+                for (int i = 2; !keys.add(key); i++) {
+                    key = name + "-" + i;
+                }
+            }
+            json.append(first ? "\n" : ",\n");
+            first = false;
+            json.append(String.format(Locale.ROOT, "    %s: {\"page\": %d, \"x\": %d, \"y\": %d, \"w\": %d, \"h\": %d, \"description\": %s}",
+                    jsonString(key), sprite.page, sprite.x, sprite.y, sprite.width, sprite.height,
+                    jsonString(sprite.entry.description())));
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escaped.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+                }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+
+    /**
+     * Zapíše soubor přes dočasný soubor, takže klient nikdy nenačte rozepsaný atlas.
+     *
+     * @param target  cílový soubor.
+     * @param content obsah souboru.
+     * @throws IOException pokud zápis selže.
+     */
+    private static void writeAtomically(Path target, byte[] content) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+        Files.write(temp, content);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Obrázek v atlasu a jeho umístění.
+     */
+    private static final class Sprite {
+        private final SignEntry entry;
+        private final Path file;
+        private int width;
+        private int height;
+        private int page;
+        private int x;
+        private int y;
+
+        private Sprite(SignEntry entry, Path file) {
+            this.entry = entry;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Rozmístění jedné stránky atlasu algoritmem skyline bottom-left.
+     * <p>
+     * Horní okraj obsazené plochy je popsán posloupností vodorovných úseků. Obrázek je umístěn tam,
+     * kde bude jeho spodní hrana co nejníže, při shodě tam, kde je úsek nejužší.
+     */
+    private static final class Skyline {
+        private final int width;
+        private final int height;
+        /**
+         * Úseky horního okraje jako trojice {x, y, šířka}, seřazené podle x.
+         */
+        private final List<int[]> segments = new ArrayList<>();
+        private int usedWidth;
+        private int usedHeight;
+
+        private Skyline(int width, int height) {
+            this.width = width;
+            this.height = height;
+            segments.add(new int[]{0, 0, width});
+        }
+
+        /**
+         * Umístí obrázek do stránky.
+         *
+         * @param sprite obrázek, do kterého je zapsána pozice.
+         * @param w      šířka včetně mezery.
+         * @param h      výška včetně mezery.
+         * @return false, pokud se obrázek do stránky nevejde.
+         */
+        private boolean insert(Sprite sprite, int w, int h) {
+            int bestIndex = -1;
+            int bestY = Integer.MAX_VALUE;
+            int bestWidth = Integer.MAX_VALUE;
+            for (int i = 0; i < segments.size(); i++) {
+                int y = fit(i, w, h);
+                if (y >= 0 && (y + h < bestY || (y + h == bestY && segments.get(i)[2] < bestWidth))) {
+                    bestIndex = i;
+                    bestY = y + h;
+                    bestWidth = segments.get(i)[2];
+                }
+            }
+            if (bestIndex < 0) {
+                return false;
+            }
+            int x = segments.get(bestIndex)[0];
+            int y = bestY - h;
+            sprite.x = x;
+            sprite.y = y;
+            usedWidth = Math.max(usedWidth, x + w - PADDING);
+            usedHeight = Math.max(usedHeight, y + h - PADDING);
+
+            // Nový úsek nad obrázkem nahradí úseky, které obrázek překrývá
+            segments.add(bestIndex, new int[]{x, y + h, w});
+            for (int i = bestIndex + 1; i < segments.size(); i++) {
+                int[] segment = segments.get(i);
+                int[] previous = segments.get(i - 1);
+                int overlap = previous[0] + previous[2] - segment[0];
+                if (overlap <= 0) {
+                    break;
+                }
+                segment[0] += overlap;
+                segment[2] -= overlap;
+                if (segment[2] > 0) {
+                    break;
+                }
+                segments.remove(i--);
+            }
+            merge();
+            return true;
+        }
+
+        /**
+         * Zjistí, v jaké výšce by obrázek ležel, pokud by začínal na začátku daného úseku.
+         *
+         * @param index číslo úseku.
+         * @param w     šířka obrázku.
+         * @param h     výška obrázku.
+         * @return souřadnice y horní hrany obrázku, nebo -1, pokud se obrázek nevejde.
+         */
+        private int fit(int index, int w, int h) {
+            int x = segments.get(index)[0];
+            if (x + w > width) {
+                return -1;
+            }
+            int remaining = w;
+            int y = 0;
+            for (int i = index; remaining > 0; i++) {
+                int[] segment = segments.get(i);
+                y = Math.max(y, segment[1]);
+                if (y + h > height) {
+                    return -1;
+                }
+                remaining -= segment[2];
+            }
+            return y;
+        }
+
+        /**
+         * Sloučí sousední úseky ve stejné výšce.
+         */
+        private void merge() {
+            for (int i = 0; i < segments.size() - 1; i++) {
+                int[] segment = segments.get(i);
+                int[] next = segments.get(i + 1);
+                if (segment[1] == next[1]) {
+                    segment[2] += next[2];
+                    segments.remove(i + 1);
+                    i--;
+                }
+            }
+        }
+
+        private int usedWidth() {
+            return Math.max(1, usedWidth);
+        }
+
+        private int usedHeight() {
+            return Math.max(1, usedHeight);
+        }
+    }
+}
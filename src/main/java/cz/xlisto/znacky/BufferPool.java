@@ -0,0 +1,87 @@
+package cz.xlisto.znacky;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Třída BufferPool uchovává bajtová pole pro opakované použití.
+ * <p>
+ * Vlákna, která stahují obrázky, potřebují pro každý obrázek vyrovnávací paměť. Místo alokace nového
+ * pole pro každý obrázek si pole vypůjčí z fondu a po použití jej vrátí. Pokud obrázek nestačí,
+ * pole je zvětšeno a do fondu se vrací již zvětšené pole, takže se velikost polí ustálí na velikosti
+ * největších obrázků. Fond drží nejvýše zadaný počet polí, ostatní vrácená pole jsou zahozena.
+ * <p>
+ * Třída je bezpečná pro použití z více vláken.
+ */
+public class BufferPool {
+    /**
+     * Výchozí velikost nově alokovaného pole v bajtech.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 128 * 1024;
+    /**
+     * Největší pole, které je vráceno do fondu. Větší pole jsou zahozena, aby jeden výjimečně velký
+     * obrázek trvale nedržel velkou část paměti.
+     */
+    static final int MAX_POOLED_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Velikost nově alokovaného pole.
+     */
+    private final int bufferSize;
+    /**
+     * Volná pole připravená k vypůjčení.
+     */
+    private final ArrayBlockingQueue<byte[]> free;
+
+    /**
+     * Konstruktor třídy BufferPool.
+     *
+     * @param bufferSize velikost nově alokovaného pole v bajtech.
+     * @param maxPooled  maximální počet polí uchovávaných ve fondu.
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Vypůjčí si pole z fondu, nebo alokuje nové, pokud je fond prázdný.
+     *
+     * @return pole o velikosti alespoň bufferSize.
+     */
+    public byte[] acquire() {
+        byte[] buffer = free.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Zvětší vypůjčené pole tak, aby mělo alespoň zadanou velikost. Obsah pole je zachován.
+     * <p>
+     * Původní pole se do fondu nevrací, vrátit se má až zvětšené pole.
+     *
+     * @param buffer      vypůjčené pole.
+     * @param minCapacity požadovaná minimální velikost.
+     * @return zvětšené pole se stejným obsahem.
+     */
+    public byte[] grow(byte[] buffer, int minCapacity) {
+        if (minCapacity <= buffer.length) {
+            return buffer;
+        }
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Obrázek je příliš velký pro vyrovnávací paměť");
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max((long) buffer.length * 2, minCapacity));
+        return Arrays.copyOf(buffer, capacity);
+    }
+
+    /**
+     * Vrátí pole do fondu.
+     *
+     * @param buffer pole získané metodou acquire nebo grow.
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length <= MAX_POOLED_SIZE) {
+            free.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package cz.xlisto.znacky;
+
+import java.util.List;
+
+/**
+ * Výsledek parsování jedné stránky katalogu dopravních značek.
+ * <p>
+ * Záznam uchovává položky nalezené na stránce, URL adresu další stránky a rozpoznané stránkování.
+ * Používá se při souběžném načítání stránek, kdy je každá stránka parsována samostatně
+ * a výsledky jsou následně sloučeny v pořadí katalogu.
+ *
+ * @param entries    položky nalezené na stránce.
+ * @param nextUrl    URL adresa další stránky, nebo null, pokud jde o poslední stránku.
+ * @param pagination rozpoznané stránkování, nebo null, pokud jej nelze ze stránky zjistit.
+ */
+public record CatalogPage(List<SignEntry> entries, String nextUrl, Pagination pagination) {
+}
@@ -0,0 +1,430 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Třída CatalogPipeline propojuje načítání katalogu a stahování obrázků do jednoho proudového zpracování.
+ * <p>
+ * Zpracování je rozděleno do tří fází, z nichž každá běží ve vlastních vláknech a předává výsledky
+ * další fázi přes omezenou frontu:
+ * <ol>
+ *   <li>načtení a parsování stránek katalogu (WebLoader.crawl, u více zdrojů WebLoader.crawlSources) do fronty stránek,</li>
+ *   <li>vyřazení duplicit a sloučení položek do katalogu (WebLoader.merge) do fronty položek,</li>
+ *   <li>stažení a zápis obrázků (ImageSaver.Session) několika vlákny.</li>
+ * </ol>
+ * Obrázky se tak začnou stahovat, zatímco se další stránky katalogu teprve načítají. Pokud stahování
+ * nestíhá, plná fronta zastaví předchozí fázi, takže počet rozpracovaných stránek a položek je omezen
+ * kapacitou front bez ohledu na velikost katalogu.
+ * <p>
+ * Zápis obrázku probíhá ve stejném vlákně jako jeho stažení, přímo z proudu dat odpovědi. Samostatná fáze
+ * zápisu by vyžadovala držet celé obrázky ve frontě v paměti.
+ * <p>
+ * Položky čekající na stažení mohou předběhnout ostatní (metoda prioritize, PriorityEntryQueue), například
+ * položky, které uživatel vybral nebo právě vidí v seznamu, i když se stahuje celý katalog.
+ * <p>
+ * Metoda cancel zastaví všechny fáze najednou: přeruší jejich vlákna, probíhající požadavky i čekání
+ * mezi opakovanými pokusy. Neúplný archiv zrušeného ukládání je zahozen. Jedna instance slouží
+ * pro jedno spuštění.
+ */
+public class CatalogPipeline {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogPipeline.class);
+
+    /**
+     * Výchozí kapacita fronty načtených stránek.
+     */
+    public static final int DEFAULT_PAGE_QUEUE = 4;
+    /**
+     * Výchozí kapacita fronty položek čekajících na stažení.
+     */
+    public static final int DEFAULT_ENTRY_QUEUE = 256;
+    /**
+     * Značka konce fronty stránek.
+     */
+    private static final CatalogPage END_OF_PAGES = new CatalogPage(List.of(), null, null);
+    /**
+     * Značka konce fronty položek.
+     */
+    private static final SignEntry END_OF_ENTRIES = new SignEntry("", "", "");
+
+    /**
+     * Načítání katalogu, nebo null, pokud se stahují jen položky předané metodě run.
+     */
+    private final WebLoader webLoader;
+    /**
+     * Stahování obrázků.
+     */
+    private final ImageSaver imageSaver;
+    /**
+     * Maximální počet současně načítaných stránek.
+     */
+    private final int pageParallelism;
+    /**
+     * Počet vláken pro stahování obrázků.
+     */
+    private final int downloaders;
+    /**
+     * Fronta načtených stránek mezi první a druhou fází.
+     */
+    private final BlockingQueue<CatalogPage> pages;
+    /**
+     * Fronta položek mezi druhou a třetí fází.
+     */
+    private final PriorityEntryQueue entries;
+    /**
+     * Relace ukládání, nebo null, pokud ukládání dosud nezačalo.
+     */
+    private volatile ImageSaver.Session session;
+    /**
+     * Vlákna všech fází.
+     */
+    private final List<Thread> threads = new ArrayList<>();
+    /**
+     * Zda bylo zpracování zrušeno.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Konstruktor třídy CatalogPipeline s výchozími kapacitami front.
+     *
+     * @param webLoader       načítání katalogu, nebo null, pokud se stahují jen předané položky.
+     * @param imageSaver      stahování obrázků.
+     * @param pageParallelism maximální počet současně načítaných stránek.
+     * @param downloaders     počet vláken pro stahování obrázků.
+     */
+    public CatalogPipeline(WebLoader webLoader, ImageSaver imageSaver, int pageParallelism, int downloaders) {
+        this(webLoader, imageSaver, pageParallelism, downloaders, DEFAULT_PAGE_QUEUE, DEFAULT_ENTRY_QUEUE);
+    }
+
+    /**
+     * Konstruktor třídy CatalogPipeline.
+     *
+     * @param webLoader       načítání katalogu, nebo null, pokud se stahují jen předané položky.
+     * @param imageSaver      stahování obrázků.
+     * @param pageParallelism maximální počet současně načítaných stránek.
+     * @param downloaders     počet vláken pro stahování obrázků.
+     * @param pageQueue       kapacita fronty načtených stránek.
+     * @param entryQueue      kapacita fronty položek čekajících na stažení.
+     */
+    public CatalogPipeline(WebLoader webLoader, ImageSaver imageSaver, int pageParallelism, int downloaders,
+                           int pageQueue, int entryQueue) {
+        this.webLoader = webLoader;
+        this.imageSaver = imageSaver;
+        this.pageParallelism = pageParallelism;
+        this.downloaders = downloaders;
+        this.pages = new ArrayBlockingQueue<>(pageQueue);
+        this.entries = new PriorityEntryQueue(entryQueue);
+    }
+
+    /**
+     * Načte katalog od zadané stránky a průběžně ukládá obrázky jeho položek.
+     * <p>
+     * Metoda čeká, dokud nejsou zpracovány všechny fáze nebo dokud není zpracování zrušeno.
+     * Načtené položky jsou poté dostupné přes WebLoader.
+     *
+     * @param url        URL adresa první stránky katalogu.
+     * @param directory  cílová složka.
+     * @param outputMode způsob uložení obrázků.
+     * @param listener   posluchač informovaný o uložení nebo selhání každé položky.
+     * @return souhrnný výsledek stahování.
+     * @throws IOException pokud nelze zahájit ukládání do cílové složky.
+     */
+    public DownloadResult run(String url, File directory, OutputMode outputMode, DownloadListener listener) throws IOException {
+        return crawlAndSave(() -> webLoader.crawl(url, pageParallelism, pages::put), directory, outputMode, listener);
+    }
+
+    /**
+     * Souběžně načte katalogy několika zdrojů a průběžně ukládá obrázky jejich položek.
+     * <p>
+     * Každý zdroj je načítán se svými limity (viz WebLoader.crawlSources), položky všech zdrojů
+     * jsou sloučeny bez duplicit a stahovány společnými vlákny stahování.
+     *
+     * @param sources    zdroje katalogu.
+     * @param directory  cílová složka.
+     * @param outputMode způsob uložení obrázků.
+     * @param listener   posluchač informovaný o uložení nebo selhání každé položky.
+     * @return souhrnný výsledek stahování.
+     * @throws IOException pokud nelze zahájit ukládání do cílové složky.
+     */
+    public DownloadResult runSources(List<CatalogSource> sources, File directory, OutputMode outputMode,
+                                     DownloadListener listener) throws IOException {
+        return crawlAndSave(() -> webLoader.crawlSources(sources, pages::put), directory, outputMode, listener);
+    }
+
+    /**
+     * Načte celý katalog od zadané stránky bez stahování obrázků a počká na dokončení načítání.
+     * <p>
+     * Načítání běží ve vlákně zpracování, metoda cancel je proto zastaví stejně jako ostatní fáze.
+     * Načtené položky jsou poté dostupné přes WebLoader. Používá ji synchronizace, která před
+     * stahováním potřebuje celý katalog; obrázky pak stáhne metoda run se seznamem položek.
+     *
+     * @param url URL adresa první stránky katalogu.
+     */
+    public void load(String url) {
+        load(() -> webLoader.loadWebConcurrently(url, pageParallelism));
+    }
+
+    /**
+     * Souběžně načte katalogy několika zdrojů bez stahování obrázků a počká na dokončení načítání.
+     *
+     * @param sources zdroje katalogu.
+     * @see #load(String)
+     */
+    public void loadSources(List<CatalogSource> sources) {
+        load(() -> webLoader.loadSources(sources));
+    }
+
+    /**
+     * Spustí načítání katalogu ve vlákně zpracování a počká na jeho dokončení.
+     *
+     * @param crawl načtení katalogu.
+     */
+    private void load(Stage crawl) {
+        if (webLoader == null) {
+            throw new IllegalStateException("Načítání katalogu vyžaduje WebLoader");
+        }
+        start("pipeline-fetch", crawl);
+        awaitThreads();
+    }
+
+    /**
+     * Spustí fázi načítání stránek, fázi slučování položek a stahování obrázků.
+     *
+     * @param crawl      načtení stránek do fronty stránek.
+     * @param directory  cílová složka.
+     * @param outputMode způsob uložení obrázků.
+     * @param listener   posluchač informovaný o uložení nebo selhání každé položky.
+     * @return souhrnný výsledek stahování.
+     * @throws IOException pokud nelze zahájit ukládání do cílové složky.
+     */
+    private DownloadResult crawlAndSave(Runnable crawl, File directory, OutputMode outputMode, DownloadListener listener) throws IOException {
+        if (webLoader == null) {
+            throw new IllegalStateException("Načítání katalogu vyžaduje WebLoader");
+        }
+        return execute(directory, outputMode, listener, () -> {
+            start("pipeline-fetch", () -> {
+                try {
+                    crawl.run();
+                } finally {
+                    if (!cancelled) {
+                        pages.put(END_OF_PAGES);
+                    }
+                }
+            });
+            start("pipeline-extract", () -> {
+                try {
+                    CatalogPage page;
+                    while (!cancelled && (page = pages.take()) != END_OF_PAGES) {
+                        for (SignEntry entry : webLoader.merge(page)) {
+                            entries.put(entry);
+                        }
+                    }
+                } finally {
+                    endEntries();
+                }
+            });
+        });
+    }
+
+    /**
+     * Uloží obrázky zadaných položek stejnými fázemi stahování a zápisu jako při načítání katalogu.
+     *
+     * @param items      položky katalogu.
+     * @param directory  cílová složka.
+     * @param outputMode způsob uložení obrázků.
+     * @param listener   posluchač informovaný o uložení nebo selhání každé položky.
+     * @return souhrnný výsledek stahování.
+     * @throws IOException pokud nelze zahájit ukládání do cílové složky.
+     */
+    public DownloadResult run(List<SignEntry> items, File directory, OutputMode outputMode, DownloadListener listener) throws IOException {
+        return execute(directory, outputMode, listener, () -> start("pipeline-source", () -> {
+            try {
+                for (SignEntry entry : items) {
+                    entries.put(entry);
+                }
+            } finally {
+                endEntries();
+            }
+        }));
+    }
+
+    /**
+     * Zařadí položky ke stažení před ostatní položky čekající ve frontě. Metodu lze volat z libovolného vlákna.
+     * <p>
+     * Položky nemusí být součástí stahovaného katalogu, jsou staženy stejnou relací ukládání.
+     * Položky, které se již stahují nebo byly staženy, jsou vynechány. Zobrazené položky (VISIBLE)
+     * nahradí dříve zobrazené, viz PriorityEntryQueue.prioritize.
+     *
+     * @param items    položky katalogu.
+     * @param priority úroveň přednosti, SELECTED nebo VISIBLE.
+     * @return počet nově zařazených položek, nebo -1, pokud zpracování již skončilo nebo bylo zrušeno.
+     */
+    public int prioritize(List<SignEntry> items, PriorityEntryQueue.Priority priority) {
+        if (cancelled) {
+            return -1;
+        }
+        ImageSaver.Session current = session;
+        if (current == null) {
+            return entries.prioritize(items, priority);
+        }
+        // Fronta nepozná položky, které již vrátila běžná úroveň, pozná je však relace ukládání
+        List<SignEntry> pending = new ArrayList<>(items.size());
+        for (SignEntry item : items) {
+            if (!current.isStarted(item)) {
+                pending.add(item);
+            }
+        }
+        return entries.prioritize(pending, priority);
+    }
+
+    /**
+     * Zastaví všechny fáze zpracování. Metodu lze volat z libovolného vlákna.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (threads) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+        // Přerušení může zachytit knihovna, ve které vlákno právě čeká, proto jsou fronty
+        // vyprázdněny a doplněny značkami konce, aby žádná fáze nezůstala čekat na frontě
+        pages.clear();
+        entries.clear();
+        pages.offer(END_OF_PAGES);
+        for (int i = 0; i < downloaders; i++) {
+            entries.offer(END_OF_ENTRIES);
+        }
+    }
+
+    /**
+     * @return true, pokud bylo zpracování zrušeno.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Spustí fáze zpracování, počká na jejich dokončení a uzavře ukládání.
+     *
+     * @param directory  cílová složka.
+     * @param outputMode způsob uložení obrázků.
+     * @param listener   posluchač informovaný o uložení nebo selhání každé položky.
+     * @param producers  spustí fáze, které plní frontu položek.
+     * @return souhrnný výsledek stahování.
+     * @throws IOException pokud nelze zahájit ukládání do cílové složky.
+     */
+    private DownloadResult execute(File directory, OutputMode outputMode, DownloadListener listener, Runnable producers) throws IOException {
+        ImageSaver.Session session = imageSaver.openSession(directory, outputMode);
+        this.session = session;
+        try {
+            producers.run();
+            for (int i = 0; i < downloaders; i++) {
+                start("pipeline-download-" + i, () -> {
+                    SignEntry entry;
+                    while (!cancelled && (entry = entries.take()) != END_OF_ENTRIES) {
+                        session.save(entry, listener);
+                    }
+                });
+            }
+            awaitThreads();
+            // Přednostní položky zařazené těsně před skončením vláken stahování
+            for (SignEntry entry : entries.close()) {
+                if (cancelled || Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                session.save(entry, listener);
+            }
+        } finally {
+            entries.close();
+            if (cancelled) {
+                session.cancel();
+            }
+            session.close();
+        }
+        return session.getResult();
+    }
+
+    /**
+     * Vloží do fronty položek značku konce pro každé vlákno stahování.
+     *
+     * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+     */
+    private void endEntries() throws InterruptedException {
+        if (cancelled) {
+            return;
+        }
+        for (int i = 0; i < downloaders; i++) {
+            entries.put(END_OF_ENTRIES);
+        }
+    }
+
+    /**
+     * Spustí vlákno jedné fáze.
+     * <p>
+     * Pokud fáze skončí neočekávanou chybou, je zrušeno celé zpracování, aby ostatní fáze nečekaly
+     * na frontu, kterou již nikdo neplní nebo nevyprazdňuje.
+     *
+     * @param name  název vlákna.
+     * @param stage tělo fáze.
+     */
+    private void start(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            if (cancelled) {
+                return;
+            }
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                // Zpracování bylo zrušeno
+            } catch (RuntimeException e) {
+                logger.error("Fáze {} skončila chybou, zpracování se ruší", name, e);
+                cancel();
+            }
+        }, name);
+        thread.setDaemon(true);
+        synchronized (threads) {
+            threads.add(thread);
+        }
+        thread.start();
+    }
+
+    /**
+     * Počká na dokončení vláken všech fází. Přerušení čekajícího vlákna zruší zpracování.
+     */
+    private void awaitThreads() {
+        List<Thread> started;
+        synchronized (threads) {
+            started = new ArrayList<>(threads);
+        }
+        boolean interrupted = false;
+        for (Thread thread : started) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    cancel();
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Tělo jedné fáze zpracování.
+     */
+    @FunctionalInterface
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+}
@@ -0,0 +1,114 @@
+package cz.xlisto.znacky;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Rozhraní CatalogSource popisuje jeden web, ze kterého lze načíst katalog dopravních značek.
+ * <p>
+ * Zdroj zachycuje pravidla, která se liší web od webu: adresu první stránky katalogu, základní URL
+ * pro relativní odkazy, převod &lt;img&gt; tagu na položku katalogu (včetně rozpoznání, zda obrázek
+ * vůbec je značkou) a text odkazu na další stránku. Dále určuje limity, se kterými se má web načítat,
+ * tedy počet současně načítaných stránek a maximální počet požadavků za sekundu.
+ * <p>
+ * Implementace jsou vyhledávány pomocí ServiceLoader, v modulu jsou deklarovány direktivou
+ * {@code provides cz.xlisto.znacky.CatalogSource with ...} a při spuštění z classpath souborem
+ * META-INF/services/cz.xlisto.znacky.CatalogSource. Implementace musí mít veřejný konstruktor
+ * bez parametrů a musí být bezpečná pro použití z více vláken.
+ */
+public interface CatalogSource {
+
+    /**
+     * @return krátký název zdroje, například "celysvet", podle kterého jej lze vybrat na příkazovém řádku.
+     */
+    String name();
+
+    /**
+     * @return URL adresa první stránky katalogu.
+     */
+    String catalogUrl();
+
+    /**
+     * Vrátí základní URL pro relativní odkazy, pokud ji nelze odvodit z adresy parsované stránky.
+     *
+     * @return základní URL končící lomítkem.
+     */
+    String baseUrl();
+
+    /**
+     * Vytvoří položku katalogu z hodnot atributů &lt;img&gt; tagu.
+     *
+     * @param alt hodnota atributu alt, nebo prázdný řetězec.
+     * @param src hodnota atributu src, nebo prázdný řetězec.
+     * @return položka katalogu, nebo null, pokud obrázek není značkou a má být přeskočen.
+     */
+    SignEntry toEntry(String alt, String src);
+
+    /**
+     * Zjistí, zda odkaz vede na další stránku katalogu.
+     *
+     * @param text text odkazu s normalizovanými bílými znaky, převedený na malá písmena.
+     * @return true, pokud jde o odkaz na další stránku.
+     */
+    boolean isNextLink(String text);
+
+    /**
+     * @return maximální počet současně načítaných stránek tohoto zdroje, výchozí hodnotu určuje nastavení aplikace.
+     */
+    default int parallelism() {
+        return Settings.getDefault().getPageParallelism();
+    }
+
+    /**
+     * @return maximální počet požadavků na stránky za sekundu, nebo 0, pokud počet není omezen.
+     */
+    default double requestsPerSecond() {
+        return 0;
+    }
+
+    /**
+     * Vrátí výchozí zdroj katalogu, databázi dopravních značek na celysvet.cz.
+     *
+     * @return výchozí zdroj.
+     */
+    static CatalogSource getDefault() {
+        return CelysvetSource.INSTANCE;
+    }
+
+    /**
+     * Vyhledá všechny zdroje katalogu dostupné pomocí ServiceLoader.
+     * <p>
+     * Pokud není nalezen žádný zdroj, vrátí seznam s výchozím zdrojem.
+     *
+     * @return seznam zdrojů v pořadí, ve kterém je vrátil ServiceLoader.
+     */
+    static List<CatalogSource> loadAll() {
+        List<CatalogSource> sources = new ArrayList<>();
+        for (CatalogSource source : ServiceLoader.load(CatalogSource.class, CatalogSource.class.getClassLoader())) {
+            sources.add(source);
+        }
+        if (sources.isEmpty()) {
+            sources.add(getDefault());
+        }
+        return sources;
+    }
+
+    /**
+     * Vyhledá zdroj katalogu podle názvu.
+     *
+     * @param name název zdroje.
+     * @return zdroj katalogu.
+     * @throws IllegalArgumentException pokud zdroj s daným názvem neexistuje.
+     */
+    static CatalogSource find(String name) {
+        List<String> names = new ArrayList<>();
+        for (CatalogSource source : loadAll()) {
+            if (source.name().equalsIgnoreCase(name)) {
+                return source;
+            }
+            names.add(source.name());
+        }
+        throw new IllegalArgumentException("Neznámý zdroj katalogu: " + name + " (dostupné: " + String.join(", ", names) + ")");
+    }
+}
@@ -0,0 +1,483 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Třída CatalogSync synchronizuje cílovou složku s aktuálním katalogem podle snímku z předchozí synchronizace.
+ * <p>
+ * Snímek {@value #SNAPSHOT_FILE} v cílové složce obsahuje pro každou značku kód, popis, URL adresu,
+ * název souboru a otisk obsahu SHA-256. Nově načtený katalog je se snímkem porovnán podle kódu značky
+ * (značky bez kódu a opakované kódy podle URL adresy):
+ * <ul>
+ *   <li>přidaná značka - ve snímku není, obrázek je stažen,</li>
+ *   <li>změněná značka - má jinou URL adresu, nebo soubor v cílové složce již neodpovídá otisku ve snímku
+ *   a manifestu (chybí, má jinou velikost nebo byl mezitím stažen jiný obsah), obrázek je stažen znovu,</li>
+ *   <li>odebraná značka - v katalogu již není, její soubor je ponechán, smazán nebo archivován (Removal),</li>
+ *   <li>nezměněná značka - nestahuje se vůbec, na server není odeslán ani podmíněný požadavek.</li>
+ * </ul>
+ * Počet požadavků na obrázky tak odpovídá velikosti změny, nikoli velikosti katalogu. Nezměněné značky
+ * jsou posluchači ohlášeny jako přeskočené (onSkipped), takže na ně mohou navazovat další kroky,
+ * například zpracování obrázků nebo atlas.
+ * <p>
+ * Každá synchronizace zapíše do složky {@code sync/<datum-čas>} seznam změn {@value #REPORT_FILE}
+ * a při archivaci také odebrané obrázky ve složce {@code removed}. Snímek je zapsán až po stažení změn,
+ * přes dočasný soubor. Obrázek, který se nepodařilo stáhnout nebo jehož stažení bylo zrušeno, ve snímku
+ * zůstane v předchozí podobě, takže jej další synchronizace zkusí stáhnout znovu.
+ * <p>
+ * Synchronizace je dostupná jen pro způsob uložení {@link OutputMode#DIRECTORY}, ve kterém každá
+ * značka odpovídá jednomu souboru v cílové složce.
+ */
+public class CatalogSync {
+    private static final Logger logger = LoggerFactory.getLogger(CatalogSync.class);
+    /**
+     * Název souboru snímku v cílové složce.
+     */
+    public static final String SNAPSHOT_FILE = ".znacky-snapshot";
+    /**
+     * Složka se seznamy změn a archivovanými obrázky v cílové složce.
+     */
+    public static final String SYNC_DIRECTORY = "sync";
+    /**
+     * Název souboru se seznamem změn.
+     */
+    public static final String REPORT_FILE = "changes.tsv";
+    /**
+     * Název složky s archivovanými obrázky.
+     */
+    public static final String REMOVED_DIRECTORY = "removed";
+    /**
+     * Hlavička snímku.
+     */
+    private static final String SNAPSHOT_HEADER = "#code\tdescription\turl\tfileName\tsha256";
+    /**
+     * Hlavička seznamu změn.
+     */
+    private static final String REPORT_HEADER = "#change\tcode\tdescription\turl\tpreviousUrl\tsha256\tpreviousSha256";
+    private static final DateTimeFormatter RUN_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss", Locale.ROOT);
+
+    /**
+     * Naložení s obrázky značek, které z katalogu zmizely.
+     */
+    public enum Removal {
+        /**
+         * Obrázek zůstane v cílové složce.
+         */
+        KEEP,
+        /**
+         * Obrázek je smazán.
+         */
+        DELETE,
+        /**
+         * Obrázek je přesunut do složky removed synchronizace.
+         */
+        ARCHIVE;
+
+        /**
+         * Vrátí naložení podle názvu, bez ohledu na velikost písmen.
+         *
+         * @param name název, například "archive".
+         * @return naložení s odebranými obrázky.
+         * @throws IllegalArgumentException pokud název neodpovídá žádné hodnotě.
+         */
+        public static Removal fromName(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * @return název pro příkazový řádek, například "archive".
+         */
+        public String externalName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Druh změny značky.
+     */
+    public enum Change {
+        /**
+         * Značka, která ve snímku nebyla.
+         */
+        ADDED,
+        /**
+         * Značka s jinou URL adresou nebo se souborem, který již neodpovídá snímku.
+         */
+        CHANGED,
+        /**
+         * Značka, která v katalogu již není.
+         */
+        REMOVED,
+        /**
+         * Přidaná nebo změněná značka, jejíž obrázek se nepodařilo stáhnout.
+         */
+        FAILED
+    }
+
+    /**
+     * Záznam snímku pro jednu značku.
+     *
+     * @param code        kód značky.
+     * @param description popis značky.
+     * @param url         URL adresa obrázku.
+     * @param fileName    název souboru v cílové složce.
+     * @param sha256      otisk obsahu SHA-256 v šestnáctkovém zápisu.
+     */
+    public record Item(String code, String description, String url, String fileName, String sha256) {
+    }
+
+    /**
+     * Výsledek synchronizace.
+     *
+     * @param added     počet přidaných značek.
+     * @param changed   počet změněných značek.
+     * @param removed   počet odebraných značek.
+     * @param unchanged počet nezměněných značek, které nebyly staženy.
+     * @param download  výsledek stažení přidaných a změněných obrázků.
+     * @param report    soubor se seznamem změn.
+     */
+    public record Report(int added, int changed, int removed, int unchanged, DownloadResult download, Path report) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "přidáno %d, změněno %d, odebráno %d, beze změny %d, chyb %d",
+                    added, changed, removed, unchanged, download.getFailures());
+        }
+    }
+
+    /**
+     * Stažení přidaných a změněných obrázků.
+     */
+    private final Downloader downloader;
+    /**
+     * Naložení s obrázky odebraných značek.
+     */
+    private final Removal removal;
+
+    /**
+     * Konstruktor třídy CatalogSync.
+     *
+     * @param imageSaver ukládání obrázků použité pro stažení změn.
+     * @param removal    naložení s obrázky odebraných značek.
+     */
+    public CatalogSync(ImageSaver imageSaver, Removal removal) {
+        this((entries, directory, listener) -> imageSaver.saveImages(entries, directory, listener, OutputMode.DIRECTORY), removal);
+    }
+
+    /**
+     * Konstruktor třídy CatalogSync.
+     * <p>
+     * Umožňuje stahovat změny například přes CatalogPipeline, jejíž zpracování lze zrušit.
+     *
+     * @param downloader stažení přidaných a změněných obrázků.
+     * @param removal    naložení s obrázky odebraných značek.
+     */
+    public CatalogSync(Downloader downloader, Removal removal) {
+        this.downloader = downloader;
+        this.removal = removal;
+    }
+
+    /**
+     * Porovná katalog se snímkem, stáhne přidané a změněné obrázky, naloží s odebranými a zapíše nový snímek a seznam změn.
+     * <p>
+     * Pokud katalog nebyl načten celý (complete je false, například protože se některé stránky nepodařilo
+     * načíst), chybějící značky nejsou považovány za odebrané a zůstanou ve snímku.
+     *
+     * @param entries   nově načtený katalog.
+     * @param directory cílová složka.
+     * @param listener  posluchač informovaný o každé značce.
+     * @param complete  true, pokud byl katalog načten celý.
+     * @return výsledek synchronizace.
+     * @throws IOException pokud nelze zapsat snímek nebo seznam změn.
+     */
+    public Report sync(List<SignEntry> entries, File directory, DownloadListener listener, boolean complete) throws IOException {
+        Path root = directory.toPath();
+        Map<String, Item> previous = loadSnapshot(root.resolve(SNAPSHOT_FILE));
+        DownloadManifest manifest = DownloadManifest.load(directory);
+
+        // Porovnání se snímkem, bez jediného požadavku na server
+        Map<String, SignEntry> current = keyed(entries);
+        List<SignEntry> download = new ArrayList<>();
+        Map<SignEntry, Change> changes = new HashMap<>();
+        int unchanged = 0;
+        for (Map.Entry<String, SignEntry> keyed : current.entrySet()) {
+            SignEntry entry = keyed.getValue();
+            Item item = previous.get(keyed.getKey());
+            if (item == null) {
+                changes.put(entry, Change.ADDED);
+                download.add(entry);
+            } else if (!item.url().equals(entry.url()) || !isCurrent(root, item, manifest)) {
+                changes.put(entry, Change.CHANGED);
+                download.add(entry);
+            } else {
+                unchanged++;
+                listener.onSkipped(entry, root.resolve(item.fileName()).toFile());
+            }
+        }
+        int changed = countChanged(changes);
+        logger.info("Synchronizace: přidáno {}, změněno {}, beze změny {}", changes.size() - changed, changed, unchanged);
+
+        // Za stažené se považují jen ohlášené položky, položky zrušeného stahování tak zůstanou ve snímku v předchozí podobě
+        Set<SignEntry> done = ConcurrentHashMap.newKeySet();
+        DownloadListener tracking = listener.andThen(new DownloadListener() {
+            @Override
+            public void onCompleted(SignEntry item, File file, long bytes) {
+                done.add(item);
+            }
+
+            @Override
+            public void onSkipped(SignEntry item, File file) {
+                done.add(item);
+            }
+        });
+        DownloadResult result = download.isEmpty() ? new DownloadResult()
+                : downloader.download(download, directory, tracking);
+
+        // Manifest je po stažení načten znovu, obsahuje otisky nově uložených obrázků
+        manifest = DownloadManifest.load(directory);
+        Map<String, Item> snapshot = new LinkedHashMap<>();
+        List<String> report = new ArrayList<>();
+        for (Map.Entry<String, SignEntry> keyed : current.entrySet()) {
+            SignEntry entry = keyed.getValue();
+            Item item = previous.get(keyed.getKey());
+            Change change = changes.get(entry);
+            DownloadManifest.Entry saved = manifest.get(entry.url());
+            if (change != null && (!done.contains(entry) || saved == null)) {
+                report.add(reportLine(Change.FAILED, entry.code(), entry.description(), entry.url(), item, ""));
+                if (item != null) {
+                    snapshot.put(keyed.getKey(), item);
+                }
+                continue;
+            }
+            if (change == null) {
+                snapshot.put(keyed.getKey(), new Item(entry.code(), entry.description(), entry.url(), item.fileName(), item.sha256()));
+                continue;
+            }
+            snapshot.put(keyed.getKey(), new Item(entry.code(), entry.description(), entry.url(), saved.fileName(), saved.sha256()));
+            report.add(reportLine(change, entry.code(), entry.description(), entry.url(), item, saved.sha256()));
+        }
+
+        String runName = LocalDateTime.now().format(RUN_NAME);
+        Path runDirectory = root.resolve(SYNC_DIRECTORY).resolve(runName);
+        int removed = 0;
+        if (complete) {
+            removed = remove(root, runDirectory, previous, current.keySet(), snapshot, manifest, report);
+        } else {
+            // Neúplný katalog: chybějící značky mohou být jen na nenačtené stránce
+            logger.warn("Katalog nebyl načten celý, odebrané značky se nevyhodnocují");
+            for (Map.Entry<String, Item> item : previous.entrySet()) {
+                snapshot.putIfAbsent(item.getKey(), item.getValue());
+            }
+        }
+
+        Files.createDirectories(runDirectory);
+        Path reportFile = runDirectory.resolve(REPORT_FILE);
+        writeLines(reportFile, REPORT_HEADER, report);
+        List<String> lines = new ArrayList<>(snapshot.size());
+        for (Item item : snapshot.values()) {
+            lines.add(clean(item.code()) + "\t" + clean(item.description()) + "\t" + clean(item.url()) + "\t"
+                    + item.fileName() + "\t" + item.sha256());
+        }
+        writeLines(root.resolve(SNAPSHOT_FILE), SNAPSHOT_HEADER, lines);
+
+        Report syncReport = new Report(changes.size() - changed, changed, removed, unchanged, result, reportFile);
+        logger.info("Synchronizace dokončena: {}, seznam změn {}", syncReport, reportFile);
+        return syncReport;
+    }
+
+    /**
+     * Naloží s obrázky značek, které ve snímku jsou, ale v katalogu již ne, a odebere je z manifestu.
+     * <p>
+     * Stejně je naloženo i s předchozím obrázkem značky, která změnila URL adresu a název souboru.
+     * Soubor, který stále používá jiná značka katalogu, zůstane zachován.
+     *
+     * @param root         cílová složka.
+     * @param runDirectory složka této synchronizace.
+     * @param previous     předchozí snímek.
+     * @param currentKeys  klíče značek v katalogu.
+     * @param snapshot     nový snímek.
+     * @param manifest     manifest cílové složky.
+     * @param report       seznam změn, do kterého jsou odebrané značky přidány.
+     * @return počet odebraných značek.
+     * @throws IOException pokud obrázek nelze přesunout do archivu.
+     */
+    private int remove(Path root, Path runDirectory, Map<String, Item> previous, Set<String> currentKeys,
+                       Map<String, Item> snapshot, DownloadManifest manifest, List<String> report) throws IOException {
+        Set<String> usedFiles = new HashSet<>();
+        Set<String> usedUrls = new HashSet<>();
+        for (Item item : snapshot.values()) {
+            usedFiles.add(item.fileName());
+            usedUrls.add(item.url());
+        }
+        int removed = 0;
+        boolean discarded = false;
+        for (Map.Entry<String, Item> keyed : previous.entrySet()) {
+            Item item = keyed.getValue();
+            if (!currentKeys.contains(keyed.getKey())) {
+                removed++;
+                report.add(reportLine(Change.REMOVED, item.code(), item.description(), "", item, ""));
+            }
+            if (removal == Removal.KEEP || usedFiles.contains(item.fileName())) {
+                continue;
+            }
+            Path file = root.resolve(item.fileName());
+            if (removal == Removal.ARCHIVE && Files.exists(file)) {
+                Path archive = runDirectory.resolve(REMOVED_DIRECTORY);
+                Files.createDirectories(archive);
+                Files.move(file, archive.resolve(item.fileName()), StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(file);
+            }
+            if (!usedUrls.contains(item.url())) {
+                manifest.remove(item.url());
+            }
+            discarded = true;
+        }
+        if (discarded) {
+            manifest.save();
+        }
+        return removed;
+    }
+
+    /**
+     * Zjistí, zda soubor značky v cílové složce stále odpovídá snímku.
+     * <p>
+     * Kontroluje se jen existence a velikost souboru a shoda otisku ve snímku a v manifestu,
+     * obsah souboru se nečte.
+     *
+     * @param root     cílová složka.
+     * @param item     záznam předchozího snímku.
+     * @param manifest manifest cílové složky.
+     * @return true, pokud soubor odpovídá snímku.
+     */
+    private static boolean isCurrent(Path root, Item item, DownloadManifest manifest) {
+        DownloadManifest.Entry saved = manifest.get(item.url());
+        if (saved == null || !saved.fileName().equals(item.fileName()) || !saved.sha256().equals(item.sha256())) {
+            return false;
+        }
+        File file = root.resolve(item.fileName()).toFile();
+        return file.isFile() && file.length() == saved.size();
+    }
+
+    /**
+     * Přiřadí značkám katalogu klíče pro porovnání se snímkem.
+     * <p>
+     * Klíčem je kód značky. Značka bez kódu nebo s kódem, který již použila dřívější značka, má klíčem URL adresu.
+     *
+     * @param entries položky katalogu.
+     * @return značky podle klíče, v pořadí katalogu.
+     */
+    private static Map<String, SignEntry> keyed(List<SignEntry> entries) {
+        Map<String, SignEntry> keyed = new LinkedHashMap<>();
+        for (SignEntry entry : entries) {
+            if (entry.code().isEmpty() || keyed.putIfAbsent(entry.code(), entry) != null) {
+                keyed.putIfAbsent(entry.url(), entry);
+            }
+        }
+        return keyed;
+    }
+
+    /**
+     * Načte snímek z předchozí synchronizace se stejnými klíči, jaké přiřazuje metoda keyed.
+     *
+     * @param file soubor snímku.
+     * @return záznamy snímku podle klíče, nebo prázdná mapa, pokud snímek neexistuje.
+     * @throws IOException pokud snímek nelze načíst.
+     */
+    private static Map<String, Item> loadSnapshot(Path file) throws IOException {
+        Map<String, Item> items = new LinkedHashMap<>();
+        if (!Files.exists(file)) {
+            logger.info("Snímek {} neexistuje, všechny značky budou považovány za přidané", file);
+            return items;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 5) {
+                    logger.warn("Neplatný záznam ve snímku: {}", line);
+                    continue;
+                }
+                Item item = new Item(parts[0], parts[1], parts[2], parts[3], parts[4]);
+                if (item.code().isEmpty() || items.putIfAbsent(item.code(), item) != null) {
+                    items.putIfAbsent(item.url(), item);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static int countChanged(Map<SignEntry, Change> changes) {
+        return (int) changes.values().stream().filter(change -> change == Change.CHANGED).count();
+    }
+
+    private static String reportLine(Change change, String code, String description, String url, Item previous, String sha256) {
+        return change.name().toLowerCase(Locale.ROOT) + "\t" + clean(code) + "\t" + clean(description) + "\t"
+                + clean(url) + "\t" + (previous != null ? clean(previous.url()) : "") + "\t" + sha256 + "\t"
+                + (previous != null ? previous.sha256() : "");
+    }
+
+    /**
+     * Zapíše soubor přes dočasný soubor, aby přerušený zápis nepoškodil předchozí obsah.
+     *
+     * @param file   cílový soubor.
+     * @param header hlavička.
+     * @param lines  řádky souboru.
+     * @throws IOException pokud zápis selže.
+     */
+    private static void writeLines(Path file, String header, List<String> lines) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(header);
+            writer.newLine();
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Stažení přidaných a změněných obrázků do cílové složky.
+     */
+    @FunctionalInterface
+    public interface Downloader {
+        /**
+         * Stáhne obrázky položek do cílové složky způsobem uložení {@link OutputMode#DIRECTORY}.
+         *
+         * @param entries   položky ke stažení.
+         * @param directory cílová složka.
+         * @param listener  posluchač informovaný o uložení nebo selhání každé položky.
+         * @return souhrnný výsledek stahování.
+         * @throws IOException pokud nelze zahájit ukládání do cílové složky.
+         */
+        DownloadResult download(List<SignEntry> entries, File directory, DownloadListener listener) throws IOException;
+    }
+}
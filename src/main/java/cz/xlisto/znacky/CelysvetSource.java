@@ -0,0 +1,80 @@
+package cz.xlisto.znacky;
+
+/**
+ * Třída CelysvetSource je zdrojem katalogu pro databázi dopravních značek na celysvet.cz.
+ * <p>
+ * Pravidla tohoto webu:
+ * <ul>
+ *   <li>Značkou je každý &lt;img&gt; tag, jeho atribut alt začíná textem "Dopravní značka:"
+ *   a obsahuje kód značky, případně zapsaný s mezerou (například "A 1"), a popis.</li>
+ *   <li>Atribut src odkazuje na náhled, obrázek ve vysokém rozlišení má v URL "hi" místo "low".</li>
+ *   <li>Na další stránku vede odkaz s textem "další :".</li>
+ * </ul>
+ */
+public class CelysvetSource implements CatalogSource {
+    /**
+     * Sdílená instance používaná jako výchozí zdroj.
+     */
+    static final CelysvetSource INSTANCE = new CelysvetSource();
+    /**
+     * Text, kterým atribut alt obrázků v katalogu začíná.
+     */
+    private static final String ALT_PREFIX = "Dopravní značka:";
+    /**
+     * Text odkazu na další stránku.
+     */
+    private static final String NEXT_LINK_TEXT = "další :";
+
+    /**
+     * Konstruktor třídy CelysvetSource, volaný pomocí ServiceLoader.
+     */
+    public CelysvetSource() {
+        // Prázdný konstruktor
+    }
+
+    @Override
+    public String name() {
+        return "celysvet";
+    }
+
+    @Override
+    public String catalogUrl() {
+        return WebLoader.DEFAULT_CATALOG_URL;
+    }
+
+    @Override
+    public String baseUrl() {
+        return "http://www.celysvet.cz/";
+    }
+
+    /**
+     * Vytvoří položku katalogu z hodnot atributů &lt;img&gt; tagu.
+     * <p>
+     * Z atributu alt odstraní text "Dopravní značka:", spojí kód značky zapsaný s mezerou
+     * (například "A 1") a oddělí jej od popisu. V URL adrese obrázku nahradí "low" za "hi".
+     *
+     * @param alt hodnota atributu alt.
+     * @param src hodnota atributu src.
+     * @return položka katalogu.
+     */
+    @Override
+    public SignEntry toEntry(String alt, String src) {
+        String label = ParserHTML.formatText(alt.replace(ALT_PREFIX, "").trim());
+        return SignEntry.fromLabel(label, canonicalUrl(src));
+    }
+
+    @Override
+    public boolean isNextLink(String text) {
+        return text.contains(NEXT_LINK_TEXT);
+    }
+
+    /**
+     * Převede URL adresu náhledu obrázku na kanonickou URL adresu obrázku ve vysokém rozlišení.
+     *
+     * @param src URL adresa obrázku z atributu src.
+     * @return kanonická URL adresa.
+     */
+    public static String canonicalUrl(String src) {
+        return src.trim().replace("low", "hi");
+    }
+}
@@ -0,0 +1,345 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Třída ContentAddressedStore ukládá obrázky podle otisku jejich obsahu (content-addressed storage).
+ * <p>
+ * Každý obrázek je při stahování zároveň hashován algoritmem SHA-256. Obsah je uložen jednou do souboru
+ * {@code blobs/<první dva znaky otisku>/<otisk>}. Pokud již soubor se stejným otiskem existuje, obsah se
+ * znovu nezapisuje. Soubor pojmenovaný podle URL adresy obrázku je v cílové složce vytvořen jako pevný
+ * odkaz (hard link) na uložený obsah, takže duplicitní obrázky nezabírají další místo na disku.
+ * Pokud souborový systém pevné odkazy nepodporuje, jsou názvy evidovány pouze v indexu.
+ * <p>
+ * Obrázky menší než {@link #SPILL_THRESHOLD} jsou před zápisem drženy v paměti, takže duplicitní obsah
+ * se na disk nezapíše vůbec. Větší obrázky jsou průběžně zapisovány do dočasného souboru.
+ * <p>
+ * V cílové složce je udržován index {@value #INDEX_FILE}, který pro každý název souboru obsahuje kód
+ * značky, otisk, velikost a URL adresu. Kontrola integrity tak spočívá jen v přepočítání otisku
+ * každého uloženého obsahu jednou, bez ohledu na počet názvů, které na něj odkazují.
+ */
+public class ContentAddressedStore implements ImageStore {
+    /**
+     * Název složky s uloženým obsahem.
+     */
+    public static final String BLOB_DIRECTORY = "blobs";
+    /**
+     * Název souboru indexu v cílové složce.
+     */
+    public static final String INDEX_FILE = "content-index.tsv";
+    /**
+     * Velikost obrázku, od které je obsah při stahování zapisován do dočasného souboru místo do paměti.
+     */
+    static final int SPILL_THRESHOLD = 8 * 1024 * 1024;
+    /**
+     * Hlavička indexu.
+     */
+    private static final String HEADER = "#code\tname\tsha256\tsize\turl";
+    /**
+     * Maximální počet vyrovnávacích pamětí uchovávaných ve fondu.
+     */
+    private static final int POOLED_BUFFERS = 64;
+    private static final Logger logger = LoggerFactory.getLogger(ContentAddressedStore.class);
+
+    /**
+     * Záznam indexu pro jeden název souboru.
+     *
+     * @param code   kód značky.
+     * @param name   název souboru odvozený z URL adresy.
+     * @param sha256 otisk obsahu SHA-256.
+     * @param size   velikost obsahu v bajtech.
+     * @param url    URL adresa obrázku.
+     */
+    public record IndexEntry(String code, String name, String sha256, long size, String url) {
+    }
+
+    /**
+     * Cílová složka.
+     */
+    private final Path directory;
+    /**
+     * Složka s uloženým obsahem.
+     */
+    private final Path blobs;
+    /**
+     * Index seřazený podle názvu souboru.
+     */
+    private final Map<String, IndexEntry> index = new ConcurrentSkipListMap<>();
+    /**
+     * Zda souborový systém cílové složky podporuje pevné odkazy.
+     */
+    private volatile boolean linksSupported = true;
+    /**
+     * Fond vyrovnávacích pamětí pro čtení obrázků, velikost určuje nastavení aplikace.
+     */
+    private final BufferPool buffers = new BufferPool(Settings.getDefault().getBufferSize(), POOLED_BUFFERS);
+
+    /**
+     * Otevře úložiště v cílové složce a načte existující index.
+     *
+     * @param directory cílová složka.
+     * @throws IOException pokud nelze vytvořit složku s obsahem.
+     */
+    public ContentAddressedStore(File directory) throws IOException {
+        this.directory = directory.toPath();
+        this.blobs = this.directory.resolve(BLOB_DIRECTORY);
+        Files.createDirectories(blobs);
+        loadIndex();
+    }
+
+    /**
+     * Otevře úložiště v cílové složce a případně vypne pevné odkazy, jako by je souborový systém nepodporoval.
+     *
+     * @param directory      cílová složka.
+     * @param linksSupported false, pokud mají být názvy souborů evidovány jen v indexu.
+     * @throws IOException pokud nelze vytvořit složku s obsahem.
+     */
+    ContentAddressedStore(File directory, boolean linksSupported) throws IOException {
+        this(directory);
+        this.linksSupported = linksSupported;
+    }
+
+    @Override
+    public StoredImage store(SignEntry entry, String fileName, InputStream body) throws IOException {
+        MessageDigest digest = newSha256();
+        byte[] buffer = buffers.acquire();
+        byte[] content = new byte[0];
+        int length = 0;
+        long size = 0;
+        Path spill = null;
+        OutputStream spillOut = null;
+        try {
+            int read;
+            while ((read = body.read(buffer)) >= 0) {
+                digest.update(buffer, 0, read);
+                size += read;
+                if (spillOut != null) {
+                    spillOut.write(buffer, 0, read);
+                } else if (length + read > SPILL_THRESHOLD) {
+                    // Velký obrázek: dosavadní obsah i zbytek proudu jde do dočasného souboru
+                    spill = tempFile(blobs);
+                    spillOut = Files.newOutputStream(spill, StandardOpenOption.CREATE_NEW);
+                    spillOut.write(content, 0, length);
+                    spillOut.write(buffer, 0, read);
+                    content = null;
+                } else {
+                    if (length + read > content.length) {
+                        content = Arrays.copyOf(content, Math.max(length + read, content.length * 2));
+                    }
+                    System.arraycopy(buffer, 0, content, length, read);
+                    length += read;
+                }
+            }
+            if (spillOut != null) {
+                spillOut.close();
+                spillOut = null;
+            }
+
+            String sha256 = HexFormat.of().formatHex(digest.digest());
+            Path blob = blobPath(sha256);
+            long written = 0;
+            if (!Files.exists(blob)) {
+                Files.createDirectories(blob.getParent());
+                if (spill == null) {
+                    spill = tempFile(blob.getParent());
+                    try (OutputStream out = Files.newOutputStream(spill, StandardOpenOption.CREATE_NEW)) {
+                        out.write(content, 0, length);
+                    }
+                }
+                if (publish(spill, blob)) {
+                    written = size;
+                }
+            }
+            link(fileName, blob);
+            index.put(fileName, new IndexEntry(entry.code(), fileName, sha256, size, entry.url()));
+            return new StoredImage(sha256, size, written);
+        } finally {
+            buffers.release(buffer);
+            if (spillOut != null) {
+                spillOut.close();
+            }
+            if (spill != null) {
+                Files.deleteIfExists(spill);
+            }
+        }
+    }
+
+    /**
+     * Zveřejní zapsaný obsah pod jeho otiskem, pokud jej mezitím nezveřejnilo jiné vlákno.
+     * <p>
+     * Vytvoření pevného odkazu selže, pokud cílový soubor existuje, a slouží tak jako atomická operace
+     * "vytvoř, pokud neexistuje". Stejný obsah stahovaný současně z více URL adres je tak započítán
+     * jako zapsaný jen jednou. Bez podpory pevných odkazů je obsah atomicky přesunut.
+     *
+     * @param temp dočasný soubor se zapsaným obsahem, po návratu je odstraněn nebo přesunut.
+     * @param blob soubor s obsahem.
+     * @return true, pokud byl obsah zveřejněn tímto voláním.
+     * @throws IOException pokud obsah nelze zveřejnit.
+     */
+    private boolean publish(Path temp, Path blob) throws IOException {
+        if (linksSupported) {
+            try {
+                Files.createLink(blob, temp);
+                Files.delete(temp);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                Files.delete(temp);
+                return false;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                // Pevné odkazy nejsou podporovány, obsah je přesunut níže
+            }
+        }
+        if (Files.exists(blob)) {
+            Files.delete(temp);
+            return false;
+        }
+        Files.move(temp, blob, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    /**
+     * Vytvoří v cílové složce pevný odkaz daného názvu na uložený obsah.
+     * <p>
+     * Pokud odkaz již na stejný obsah ukazuje, nic se neděje. Odkaz je vytvořen pod dočasným názvem
+     * a poté atomicky přejmenován, aby nahrazení staršího obsahu nebylo nikdy vidět napůl.
+     *
+     * @param name název souboru.
+     * @param blob soubor s obsahem.
+     * @throws IOException pokud odkaz nelze vytvořit z jiného důvodu než kvůli chybějící podpoře.
+     */
+    private void link(String name, Path blob) throws IOException {
+        if (!linksSupported) {
+            return;
+        }
+        Path target = directory.resolve(name);
+        if (Files.exists(target) && Files.isSameFile(target, blob)) {
+            return;
+        }
+        Path temp = directory.resolve(name + ".link");
+        try {
+            Files.deleteIfExists(temp);
+            Files.createLink(temp, blob);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.deleteIfExists(temp);
+            linksSupported = false;
+            logger.warn("Pevné odkazy nejsou v {} podporovány, názvy souborů jsou evidovány jen v indexu {}: {}",
+                    directory, INDEX_FILE, e.getMessage());
+        }
+    }
+
+    /**
+     * Vrátí cestu k souboru s obsahem daného otisku.
+     *
+     * @param sha256 otisk obsahu.
+     * @return cesta k souboru s obsahem.
+     */
+    Path blobPath(String sha256) {
+        return blobs.resolve(sha256.substring(0, 2)).resolve(sha256);
+    }
+
+    /**
+     * Vrátí záznam indexu pro daný název souboru.
+     *
+     * @param name název souboru.
+     * @return záznam indexu, nebo null.
+     */
+    public IndexEntry get(String name) {
+        return index.get(name);
+    }
+
+    /**
+     * Uloží index do cílové složky. Index je nejprve zapsán do dočasného souboru.
+     *
+     * @throws IOException pokud index nelze zapsat.
+     */
+    @Override
+    public void close() throws IOException {
+        Path file = directory.resolve(INDEX_FILE);
+        Path temp = directory.resolve(INDEX_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (IndexEntry entry : index.values()) {
+                writer.write(clean(entry.code()) + "\t" + entry.name() + "\t" + entry.sha256() + "\t"
+                        + entry.size() + "\t" + clean(entry.url()));
+                writer.newLine();
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Načte index z předchozího ukládání, aby v něm zůstaly i obrázky, které se tentokrát nezměnily.
+     */
+    private void loadIndex() {
+        Path file = directory.resolve(INDEX_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 5) {
+                    continue;
+                }
+                try {
+                    index.put(parts[1], new IndexEntry(parts[0], parts[1], parts[2], Long.parseLong(parts[3]), parts[4]));
+                } catch (NumberFormatException e) {
+                    logger.warn("Neplatný záznam v indexu: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Chyba při načítání indexu {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Vrátí název nového dočasného souboru v dané složce.
+     *
+     * @param directory složka.
+     * @return cesta k dočasnému souboru, který zatím neexistuje.
+     */
+    private static Path tempFile(Path directory) {
+        return directory.resolve(UUID.randomUUID() + ".part");
+    }
+
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 musí podporovat každá implementace Javy
+            throw new IllegalStateException(e);
+        }
+    }
+}
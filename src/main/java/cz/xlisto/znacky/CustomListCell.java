@@ -1,76 +1,176 @@
 package cz.xlisto.znacky;
 
 
-import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
- * Třída CustomListCell rozšiřuje ListCell pro zobrazení pole řetězců.
+ * Třída CustomListCell rozšiřuje ListCell pro zobrazení položky katalogu SignEntry.
  * <p>
  * Tato třída je určena pro použití v ListView a umožňuje přizpůsobit vzhled a obsah jednotlivých buněk.
+ * <p>
+ * Strom uzlů buňky je sestaven jednou v konstruktoru přímo v kódu, bez načítání FXML pro každou buňku.
+ * Buňka drží přímé odkazy na své labely a náhled, takže metoda updateItem neprohledává strom uzlů
+ * a při zobrazení položky s náhledem v mezipaměti nic nealokuje. Díky tomu zůstává posun seznamu
+ * plynulý i pro desítky tisíc položek.
+ * <p>
+ * Buňka zobrazuje náhled obrázku značky. Náhled je načítán na pozadí pomocí ThumbnailCache teprve
+ * ve chvíli, kdy je buňka zobrazena. Pokud je buňka před dokončením načítání použita pro jinou položku,
+ * načítání původního náhledu je zrušeno. Buňka sama slouží jako posluchač načteného náhledu, aby
+ * nebylo nutné pro každé načítání vytvářet novou lambdu.
+ * <p>
+ * O každé nově zobrazené položce může buňka informovat posluchače, například aby se obrázky
+ * zobrazených položek při ukládání stáhly přednostně.
  */
-public class CustomListCell extends ListCell<String[]> {
+public class CustomListCell extends ListCell<SignEntry> implements Consumer<Image> {
     /**
-     * Logger pro zaznamenávání chyb a informací během načítání webových stránek.
-     * <p>
-     * Tento logger je inicializován pomocí třídy LoggerFactory a je použit pro logování
-     * událostí a chyb v rámci třídy CustomListCell.
+     * Styl hlavního řádku buňky s kódem a popisem značky.
      */
-    private static final Logger logger = LoggerFactory.getLogger(CustomListCell.class);
+    private static final String TITLE_STYLE = "-fx-font-weight: bold; -fx-font-size: 16px;";
 
     /**
-     * VBox obsahující obsah buňky ListView.
+     * HBox obsahující obsah buňky ListView.
      * <p>
      * Tato proměnná je inicializována v konstruktoru třídy CustomListCell
-     * načtením FXML souboru a slouží k zobrazení obsahu buňky.
+     * a slouží k zobrazení obsahu buňky.
+     */
+    private final HBox content;
+    /**
+     * Label s kódem značky.
+     */
+    private final Label code = new Label();
+    /**
+     * Label s popisem značky, zobrazený na stejném řádku jako kód.
+     */
+    private final Label description = new Label();
+    /**
+     * Label s URL adresou obrázku.
+     */
+    private final Label url = new Label();
+    /**
+     * Náhled obrázku značky.
+     */
+    private final ImageView thumbnail = new ImageView();
+    /**
+     * Mezipaměť náhledů sdílená všemi buňkami seznamu.
      */
-    private VBox content;
+    private final ThumbnailCache thumbnails;
+    /**
+     * Posluchač informovaný o každé nově zobrazené položce, nebo null.
+     */
+    private final Consumer<SignEntry> onShown;
+    /**
+     * Položka, kterou buňka právě zobrazuje, nebo null.
+     */
+    private SignEntry shown;
+    /**
+     * Probíhající načítání náhledu pro aktuální položku, nebo null.
+     */
+    private Future<?> pendingThumbnail;
 
     /**
      * Konstruktor třídy CustomListCell.
      * <p>
-     * Tento konstruktor načítá FXML soubor `list_item.fxml` a nastavuje kontroler na aktuální instanci.
-     * Inicializuje proměnnou `content` načtením obsahu FXML souboru.
-     * V případě chyby při načítání FXML souboru je vyhozena výjimka IOException a její stack trace je vypsán.
+     * Sestaví strom uzlů buňky: vlevo náhled, vpravo řádek s kódem a popisem značky a pod ním URL adresa.
+     *
+     * @param thumbnails mezipaměť náhledů sdílená všemi buňkami seznamu.
      */
-    public CustomListCell() {
-        try {
-            FXMLLoader loader = new FXMLLoader(getClass().getResource("list_item.fxml"));
-            loader.setController(this);
-            content = loader.load();
-        } catch (IOException e) {
-            logger.error("Chyba při načítání FXML souboru", e);
-        }
+    public CustomListCell(ThumbnailCache thumbnails) {
+        this(thumbnails, null);
+    }
+
+    /**
+     * Konstruktor třídy CustomListCell s posluchačem zobrazených položek.
+     *
+     * @param thumbnails mezipaměť náhledů sdílená všemi buňkami seznamu.
+     * @param onShown    posluchač informovaný ve vlákně JavaFX o každé nově zobrazené položce, nebo null.
+     */
+    public CustomListCell(ThumbnailCache thumbnails, Consumer<SignEntry> onShown) {
+        this.thumbnails = thumbnails;
+        this.onShown = onShown;
+        thumbnail.setFitWidth(ThumbnailCache.THUMBNAIL_SIZE);
+        thumbnail.setFitHeight(ThumbnailCache.THUMBNAIL_SIZE);
+        thumbnail.setPreserveRatio(true);
+        code.setStyle(TITLE_STYLE);
+        description.setStyle(TITLE_STYLE);
+        HBox title = new HBox(4, code, description);
+        content = new HBox(8, thumbnail, new VBox(title, url));
     }
 
     /**
      * Aktualizuje obsah buňky ListView.
      * <p>
      * Tato metoda je volána při každé změně obsahu buňky. Pokud je buňka prázdná nebo je položka null,
-     * nastaví text a grafiku buňky na null. Jinak nastaví texty labelů `text1` a `text2` na hodnoty
-     * z pole `item` a nastaví grafiku buňky na obsah VBoxu `content`.
+     * nastaví text a grafiku buňky na null. Jinak nastaví labely na kód, popis a URL adresu položky `item`
+     * a nastaví grafiku buňky na obsah HBoxu `content`. Pokud buňka tutéž položku již zobrazuje,
+     * nic se nemění.
+     * <p>
+     * Náhled je převzat z mezipaměti, nebo je spuštěno jeho načítání na pozadí. Načítání náhledu
+     * předchozí položky buňky je zrušeno. Nakonec je o zobrazené položce informován posluchač.
      *
-     * @param item  Pole řetězců obsahující data pro buňku.
+     * @param item  Položka katalogu zobrazená v buňce.
      * @param empty Boolean hodnota indikující, zda je buňka prázdná.
      */
     @Override
-    protected void updateItem(String[] item, boolean empty) {
+    protected void updateItem(SignEntry item, boolean empty) {
         super.updateItem(item, empty);
-        Label text1 = (Label) content.lookup("#text1");
-        Label text2 = (Label) content.lookup("#text2");
         if (empty || item == null) {
+            cancelThumbnail();
+            shown = null;
+            thumbnail.setImage(null);
             setText(null);
             setGraphic(null);
-        } else {
-            text1.setText(item[0]);
-            text2.setText(item[1]);
-            setGraphic(content);
+            return;
+        }
+        if (item == shown) {
+            return;
+        }
+        cancelThumbnail();
+        shown = item;
+        code.setText(item.code());
+        description.setText(item.description());
+        url.setText(item.url());
+        Image cached = thumbnails.get(item.url());
+        thumbnail.setImage(cached);
+        if (cached == null) {
+            pendingThumbnail = thumbnails.load(item.url(), this);
+        }
+        setGraphic(content);
+        if (onShown != null) {
+            onShown.accept(item);
+        }
+    }
+
+    /**
+     * Převezme načtený náhled. Volá ThumbnailCache ve vlákně JavaFX.
+     * <p>
+     * Buňka mohla být mezitím použita pro jinou položku, proto je náhled použit jen tehdy,
+     * pokud patří k právě zobrazené položce.
+     *
+     * @param image načtený náhled.
+     */
+    @Override
+    public void accept(Image image) {
+        if (shown != null && thumbnails.get(shown.url()) == image) {
+            thumbnail.setImage(image);
+            pendingThumbnail = null;
+        }
+    }
+
+    /**
+     * Zruší probíhající načítání náhledu, pokud nějaké je.
+     */
+    private void cancelThumbnail() {
+        if (pendingThumbnail != null) {
+            pendingThumbnail.cancel(true);
+            pendingThumbnail = null;
         }
     }
-}
\ No newline at end of file
+}
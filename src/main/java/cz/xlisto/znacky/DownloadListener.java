@@ -0,0 +1,71 @@
+package cz.xlisto.znacky;
+
+import java.io.File;
+
+/**
+ * Rozhraní DownloadListener slouží k průběžnému informování o stažení jednotlivých obrázků.
+ * <p>
+ * Metody jsou volány z vláken, která obrázky stahují, nikoli z JavaFX Application Thread.
+ * Implementace, které aktualizují uživatelské rozhraní, musí použít Platform.runLater().
+ */
+public interface DownloadListener {
+    /**
+     * Volá se po úspěšném uložení obrázku.
+     *
+     * @param item  položka katalogu.
+     * @param file  soubor, do kterého byl obrázek uložen.
+     * @param bytes počet uložených bajtů.
+     */
+    default void onCompleted(SignEntry item, File file, long bytes) {
+    }
+
+    /**
+     * Volá se, pokud byl obrázek přeskočen, protože se od předchozího stažení nezměnil.
+     *
+     * @param item položka katalogu.
+     * @param file soubor s dříve uloženým obrázkem.
+     */
+    default void onSkipped(SignEntry item, File file) {
+    }
+
+    /**
+     * Volá se, pokud se obrázek nepodařilo stáhnout nebo uložit.
+     *
+     * @param item  položka katalogu.
+     * @param error výjimka, která stažení přerušila.
+     */
+    default void onFailed(SignEntry item, Exception error) {
+    }
+
+    /**
+     * Vrátí posluchače, který každou událost předá nejprve tomuto a poté dalšímu posluchači.
+     *
+     * @param next další posluchač, nebo null.
+     * @return složený posluchač, nebo tento posluchač, pokud další posluchač není zadán.
+     */
+    default DownloadListener andThen(DownloadListener next) {
+        if (next == null) {
+            return this;
+        }
+        DownloadListener first = this;
+        return new DownloadListener() {
+            @Override
+            public void onCompleted(SignEntry item, File file, long bytes) {
+                first.onCompleted(item, file, bytes);
+                next.onCompleted(item, file, bytes);
+            }
+
+            @Override
+            public void onSkipped(SignEntry item, File file) {
+                first.onSkipped(item, file);
+                next.onSkipped(item, file);
+            }
+
+            @Override
+            public void onFailed(SignEntry item, Exception error) {
+                first.onFailed(item, error);
+                next.onFailed(item, error);
+            }
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Třída DownloadManifest uchovává záznamy o obrázcích stažených do cílové složky.
+ * <p>
+ * Manifest je uložen v cílové složce v souboru {@value #FILE_NAME}. Pro každou URL adresu obsahuje
+ * název souboru, velikost, validátory HTTP odpovědi (ETag a Last-Modified) a otisk obsahu SHA-256.
+ * Při opakovaném stahování jsou validátory odeslány jako podmíněný požadavek, takže server u
+ * nezměněných obrázků vrátí pouze stav 304 bez obsahu.
+ * <p>
+ * Soubor je textový, jeden záznam na řádek, jednotlivé hodnoty jsou odděleny tabulátorem.
+ */
+public class DownloadManifest {
+    /**
+     * Název souboru manifestu v cílové složce.
+     */
+    public static final String FILE_NAME = ".znacky-manifest";
+    private static final Logger logger = LoggerFactory.getLogger(DownloadManifest.class);
+
+    /**
+     * Záznam o jednom staženém obrázku.
+     *
+     * @param url          URL adresa obrázku.
+     * @param fileName     název souboru v cílové složce.
+     * @param size         velikost souboru v bajtech.
+     * @param etag         hodnota hlavičky ETag, nebo prázdný řetězec.
+     * @param lastModified hodnota hlavičky Last-Modified, nebo prázdný řetězec.
+     * @param sha256       otisk obsahu SHA-256 v šestnáctkovém zápisu.
+     */
+    public record Entry(String url, String fileName, long size, String etag, String lastModified, String sha256) {
+    }
+
+    /**
+     * Soubor manifestu.
+     */
+    private final Path file;
+    /**
+     * Záznamy manifestu, klíčem je URL adresa obrázku.
+     */
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private DownloadManifest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Načte manifest z cílové složky. Pokud soubor manifestu neexistuje, vrátí prázdný manifest.
+     *
+     * @param directory cílová složka.
+     * @return načtený manifest.
+     */
+    public static DownloadManifest load(File directory) {
+        DownloadManifest manifest = new DownloadManifest(new File(directory, FILE_NAME).toPath());
+        if (!Files.exists(manifest.file)) {
+            return manifest;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifest.file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 6) {
+                    continue;
+                }
+                try {
+                    Entry entry = new Entry(parts[0], parts[1], Long.parseLong(parts[2]), parts[3], parts[4], parts[5]);
+                    manifest.entries.put(entry.url(), entry);
+                } catch (NumberFormatException e) {
+                    logger.warn("Neplatný záznam v manifestu: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Chyba při načítání manifestu {}", e.getMessage());
+        }
+        return manifest;
+    }
+
+    /**
+     * Uloží manifest do cílové složky.
+     * <p>
+     * Manifest je nejprve zapsán do dočasného souboru, který pak nahradí původní soubor,
+     * aby přerušený zápis nepoškodil předchozí manifest.
+     */
+    public void save() {
+        Path temp = file.resolveSibling(FILE_NAME + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Entry entry : entries.values()) {
+                writer.write(entry.url() + "\t" + entry.fileName() + "\t" + entry.size() + "\t"
+                        + entry.etag() + "\t" + entry.lastModified() + "\t" + entry.sha256());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            logger.error("Chyba při ukládání manifestu {}", e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.error("Chyba při ukládání manifestu {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Vrátí záznam pro danou URL adresu.
+     *
+     * @param url URL adresa obrázku.
+     * @return záznam, nebo null, pokud obrázek dosud nebyl stažen.
+     */
+    public Entry get(String url) {
+        return entries.get(url);
+    }
+
+    /**
+     * Uloží nebo nahradí záznam o staženém obrázku.
+     *
+     * @param entry záznam o obrázku.
+     */
+    public void put(Entry entry) {
+        entries.put(entry.url(), sanitize(entry));
+    }
+
+    /**
+     * Odstraní záznam o obrázku, který byl z cílové složky odebrán.
+     *
+     * @param url URL adresa obrázku.
+     */
+    public void remove(String url) {
+        entries.remove(url);
+    }
+
+    /**
+     * Nahradí v hodnotách validátorů znaky, které by porušily formát souboru.
+     *
+     * @param entry záznam o obrázku.
+     * @return záznam s upravenými hodnotami.
+     */
+    private static Entry sanitize(Entry entry) {
+        return new Entry(entry.url(), entry.fileName(), entry.size(),
+                clean(entry.etag()), clean(entry.lastModified()), entry.sha256());
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
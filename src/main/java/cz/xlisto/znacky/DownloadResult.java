@@ -0,0 +1,110 @@
+package cz.xlisto.znacky;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Třída DownloadResult shrnuje výsledek stahování obrázků.
+ * <p>
+ * Čítače jsou aktualizovány souběžně z vláken, která obrázky stahují,
+ * proto jsou implementovány pomocí atomických proměnných.
+ */
+public class DownloadResult {
+    /**
+     * Počet úspěšně uložených obrázků.
+     */
+    private final AtomicInteger successes = new AtomicInteger();
+    /**
+     * Počet obrázků, které se nepodařilo stáhnout nebo uložit.
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+    /**
+     * Počet obrázků, které byly přeskočeny, protože se od předchozího stažení nezměnily.
+     */
+    private final AtomicInteger skipped = new AtomicInteger();
+    /**
+     * Celkový počet uložených bajtů.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+    /**
+     * Položky, které se nepodařilo stáhnout ani po opakovaných pokusech.
+     */
+    private final ConcurrentLinkedQueue<SignEntry> failed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Prázdný konstruktor třídy DownloadResult.
+     */
+    public DownloadResult() {
+        // Prázdný konstruktor
+    }
+
+    /**
+     * Zaznamená úspěšně uložený obrázek.
+     *
+     * @param size počet uložených bajtů.
+     */
+    void recordSuccess(long size) {
+        successes.incrementAndGet();
+        bytes.addAndGet(size);
+    }
+
+    /**
+     * Zaznamená obrázek přeskočený kvůli tomu, že se od předchozího stažení nezměnil.
+     */
+    void recordSkipped() {
+        skipped.incrementAndGet();
+    }
+
+    /**
+     * Zaznamená obrázek, který se nepodařilo uložit.
+     *
+     * @param entry položka, kterou se nepodařilo uložit.
+     */
+    void recordFailure(SignEntry entry) {
+        failures.incrementAndGet();
+        failed.add(entry);
+    }
+
+    /**
+     * @return počet úspěšně uložených obrázků.
+     */
+    public int getSuccesses() {
+        return successes.get();
+    }
+
+    /**
+     * @return počet obrázků, které se nepodařilo stáhnout nebo uložit.
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return počet obrázků přeskočených, protože se od předchozího stažení nezměnily.
+     */
+    public int getSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * @return položky, které se nepodařilo stáhnout ani po opakovaných pokusech, například pro další spuštění.
+     */
+    public List<SignEntry> getFailed() {
+        return new ArrayList<>(failed);
+    }
+
+    /**
+     * @return celkový počet uložených bajtů.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "uloženo " + getSuccesses() + ", beze změny " + getSkipped() + ", chyb " + getFailures() + ", " + getBytes() + " B";
+    }
+}
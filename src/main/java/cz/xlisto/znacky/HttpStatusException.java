@@ -0,0 +1,90 @@
+package cz.xlisto.znacky;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Výjimka HttpStatusException signalizuje, že server odpověděl chybovým stavovým kódem.
+ * <p>
+ * Kromě stavového kódu nese i dobu z hlavičky Retry-After, pokud ji server uvedl. Podle těchto údajů
+ * rozhoduje třída RetryPolicy, zda má požadavek opakovat a jak dlouho má před opakováním čekat,
+ * a třída AdaptiveLimiter, zda má snížit počet současných požadavků.
+ */
+public class HttpStatusException extends IOException {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Stavový kód odpovědi serveru.
+     */
+    private final int statusCode;
+    /**
+     * Doba, po kterou má klient podle serveru s dalším požadavkem počkat, nebo null, pokud ji server neuvedl.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * Konstruktor třídy HttpStatusException.
+     *
+     * @param statusCode stavový kód odpovědi serveru.
+     * @param uri        URL adresa požadavku.
+     * @param retryAfter doba z hlavičky Retry-After, nebo null, pokud ji server neuvedl.
+     */
+    public HttpStatusException(int statusCode, URI uri, Duration retryAfter) {
+        super("Server vrátil stav " + statusCode + " pro " + uri);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return stavový kód odpovědi serveru.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return doba z hlavičky Retry-After, nebo null, pokud ji server neuvedl.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * Zjistí, zda stavový kód znamená, že server je přetížen nebo omezuje počet požadavků (429 a 503).
+     *
+     * @return true, pokud server požaduje zpomalení.
+     */
+    public boolean isThrottled() {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    /**
+     * Převede hodnotu hlavičky Retry-After na dobu čekání.
+     * <p>
+     * Hlavička může obsahovat počet sekund nebo datum ve formátu HTTP (RFC 1123).
+     * Datum v minulosti odpovídá nulové době čekání.
+     *
+     * @param value hodnota hlavičky, nebo null.
+     * @return doba čekání, nebo null, pokud hlavička chybí nebo ji nelze rozpoznat.
+     */
+    static Duration parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(trimmed)));
+        } catch (NumberFormatException e) {
+            // Nejde o počet sekund, zkusí se datum
+        }
+        try {
+            Duration delay = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME));
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package cz.xlisto.znacky;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Třída HttpTransport poskytuje sdílené HTTP spojení pro načítání stránek katalogu i stahování obrázků.
+ * <p>
+ * Je postavena nad jednou instancí java.net.http.HttpClient, která udržuje otevřená spojení
+ * (keep-alive) a opakovaně je používá pro další požadavky na stejný server. Pokud to server
+ * podporuje, je použit protokol HTTP/2, který umožňuje posílat více požadavků jedním spojením.
+ * <p>
+ * Hlavní funkce třídy:
+ * <ul>
+ *   <li>Načtení textu stránky s kompresí gzip pomocí metody getText.</li>
+ *   <li>Otevření proudu dat stránky pro streamované parsování pomocí metody openPage.</li>
+ *   <li>Otevření proudu dat obrázku pomocí metody openStream.</li>
+ *   <li>Podmíněné stažení s validátory ETag a Last-Modified pomocí metod openIfModified a openPageIfModified.</li>
+ *   <li>Nastavitelný časový limit pro navázání spojení a pro čtení odpovědi.</li>
+ * </ul>
+ * <p>
+ * Časový limit čtení platí pro čekání na hlavičky odpovědi a poté pro každé čekání na další data těla
+ * odpovědi. Limit požadavku v HttpClient omezuje jen čekání na hlavičky, tělo je proto čteno přes
+ * IdleTimeoutInputStream, který proud uzavře, pokud server po dobu limitu nepošle žádná data.
+ */
+public class HttpTransport {
+    /**
+     * Výchozí časový limit pro navázání spojení.
+     */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    /**
+     * Výchozí časový limit čtení odpovědi serveru.
+     */
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+
+    /**
+     * HTTP klient, který spravuje fond otevřených spojení.
+     */
+    private final HttpClient client;
+    /**
+     * Časový limit čtení: nejdelší čekání na hlavičky odpovědi a na každou další část těla odpovědi.
+     * Lze jej změnit za běhu, uplatní se od dalšího požadavku.
+     */
+    private volatile Duration readTimeout;
+
+    /**
+     * Konstruktor třídy HttpTransport.
+     *
+     * @param connectTimeout časový limit pro navázání spojení.
+     * @param readTimeout    časový limit čtení odpovědi serveru.
+     */
+    public HttpTransport(Duration connectTimeout, Duration readTimeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Vrátí sdílenou instanci třídy HttpTransport s časovými limity podle nastavení aplikace.
+     * <p>
+     * Změna časového limitu odpovědi v souboru settings.ini se ve sdílené instanci uplatní za běhu.
+     *
+     * @return sdílená instance.
+     */
+    public static HttpTransport getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    /**
+     * Nastaví časový limit čtení odpovědi serveru. Probíhající požadavky si ponechají původní limit.
+     *
+     * @param readTimeout časový limit čtení odpovědi serveru.
+     */
+    public void setReadTimeout(Duration readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Načte textový obsah stránky.
+     * <p>
+     * Požadavek je odeslán s hlavičkou Accept-Encoding: gzip. Komprimovaná odpověď je dekomprimována
+     * a převedena na text podle znakové sady z hlavičky Content-Type (výchozí je UTF-8).
+     *
+     * @param url URL adresa stránky.
+     * @return obsah stránky.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    public String getText(String url) throws IOException, InterruptedException {
+        Duration timeout = readTimeout;
+        HttpResponse<InputStream> response = send(URI.create(url), true, timeout);
+        try (InputStream in = decode(response, timeout)) {
+            return new String(in.readAllBytes(), charsetOf(response));
+        }
+    }
+
+    /**
+     * Otevře proud dat stránky pro streamované parsování.
+     * <p>
+     * Požadavek je odeslán s hlavičkou Accept-Encoding: gzip a komprimovaná odpověď je dekomprimována
+     * při čtení. Celá stránka tak není nikdy uložena v paměti.
+     *
+     * @param url URL adresa stránky.
+     * @return proud dat stránky se znakovou sadou z hlavičky Content-Type.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    public PageStream openPage(String url) throws IOException, InterruptedException {
+        Duration timeout = readTimeout;
+        HttpResponse<InputStream> response = send(URI.create(url), true, timeout);
+        return new PageStream(decode(response, timeout), declaredCharset(response));
+    }
+
+    /**
+     * Otevře proud dat z dané URL adresy, například obrázku.
+     * <p>
+     * Volající je zodpovědný za uzavření vráceného proudu, aby se spojení mohlo vrátit do fondu.
+     *
+     * @param uri URL adresa zdroje.
+     * @return proud dat těla odpovědi.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    public InputStream openStream(URI uri) throws IOException, InterruptedException {
+        Duration timeout = readTimeout;
+        return decode(send(uri, false, timeout), timeout);
+    }
+
+    /**
+     * Odešle podmíněný požadavek GET s validátory z předchozího stažení.
+     * <p>
+     * Pokud se zdroj od předchozího stažení nezměnil, server vrátí stav 304 a vrácená odpověď
+     * nemá tělo. Prázdné validátory nejsou odeslány.
+     *
+     * @param uri          URL adresa zdroje.
+     * @param etag         hodnota ETag z předchozího stažení, nebo null.
+     * @param lastModified hodnota Last-Modified z předchozího stažení, nebo null.
+     * @return odpověď serveru.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    public ConditionalResponse openIfModified(URI uri, String etag, String lastModified) throws IOException, InterruptedException {
+        return sendConditional(uri, etag, lastModified, false);
+    }
+
+    /**
+     * Odešle podmíněný požadavek GET na stránku s validátory z předchozího načtení.
+     * <p>
+     * Na rozdíl od metody openIfModified nabízí kompresi gzip a vrací znakovou sadu stránky.
+     *
+     * @param url          URL adresa stránky.
+     * @param etag         hodnota ETag z předchozího načtení, nebo null.
+     * @param lastModified hodnota Last-Modified z předchozího načtení, nebo null.
+     * @return odpověď serveru.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    public ConditionalResponse openPageIfModified(String url, String etag, String lastModified) throws IOException, InterruptedException {
+        return sendConditional(URI.create(url), etag, lastModified, true);
+    }
+
+    /**
+     * Odešle podmíněný požadavek GET.
+     *
+     * @param uri          URL adresa zdroje.
+     * @param etag         hodnota ETag z předchozího stažení, nebo null.
+     * @param lastModified hodnota Last-Modified z předchozího stažení, nebo null.
+     * @param gzip         zda má být v požadavku nabídnuta komprese gzip.
+     * @return odpověď serveru.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    private ConditionalResponse sendConditional(URI uri, String etag, String lastModified, boolean gzip) throws IOException, InterruptedException {
+        Duration timeout = readTimeout;
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(timeout).GET();
+        if (gzip) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        if (etag != null && !etag.isEmpty()) {
+            builder.header("If-None-Match", etag);
+        }
+        if (lastModified != null && !lastModified.isEmpty()) {
+            builder.header("If-Modified-Since", lastModified);
+        }
+        HttpResponse<InputStream> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() == 304) {
+            response.body().close();
+            return new ConditionalResponse(true, null, null, etag, lastModified);
+        }
+        checkStatus(response, uri);
+        return new ConditionalResponse(false, decode(response, timeout), declaredCharset(response),
+                response.headers().firstValue("ETag").orElse(""),
+                response.headers().firstValue("Last-Modified").orElse(""));
+    }
+
+    /**
+     * Odešle požadavek GET a zkontroluje stavový kód odpovědi.
+     *
+     * @param uri     URL adresa zdroje.
+     * @param gzip    zda má být v požadavku nabídnuta komprese gzip.
+     * @param timeout časový limit pro čekání na hlavičky odpovědi.
+     * @return odpověď serveru s tělem jako proudem dat.
+     * @throws IOException          pokud dojde k chybě při komunikaci nebo server vrátí chybový stav.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    private HttpResponse<InputStream> send(URI uri, boolean gzip, Duration timeout) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).timeout(timeout).GET();
+        if (gzip) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        HttpResponse<InputStream> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        checkStatus(response, uri);
+        return response;
+    }
+
+    /**
+     * Zkontroluje stavový kód odpovědi a při chybovém stavu uzavře tělo a vyhodí výjimku.
+     *
+     * @param response odpověď serveru.
+     * @param uri      URL adresa požadavku.
+     * @throws HttpStatusException pokud stavový kód není 2xx; výjimka nese i hodnotu hlavičky Retry-After.
+     * @throws IOException         pokud nelze uzavřít tělo odpovědi.
+     */
+    private static void checkStatus(HttpResponse<InputStream> response, URI uri) throws IOException {
+        if (response.statusCode() / 100 != 2) {
+            response.body().close();
+            throw new HttpStatusException(response.statusCode(), uri,
+                    HttpStatusException.parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null)));
+        }
+    }
+
+    /**
+     * Vrátí proud těla odpovědi, v případě komprese gzip již dekomprimovaný.
+     * <p>
+     * Proud je uzavřen, pokud server po dobu časového limitu nepošle žádná data.
+     *
+     * @param response odpověď serveru.
+     * @param timeout  časový limit nečinnosti při čtení těla odpovědi.
+     * @return proud dat těla odpovědi.
+     * @throws IOException pokud nelze komprimovaná data otevřít.
+     */
+    private static InputStream decode(HttpResponse<InputStream> response, Duration timeout) throws IOException {
+        InputStream body = new IdleTimeoutInputStream(response.body(), timeout);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("");
+        if (encoding.equalsIgnoreCase("gzip")) {
+            try {
+                return new GZIPInputStream(body);
+            } catch (IOException e) {
+                body.close();
+                throw e;
+            }
+        }
+        return body;
+    }
+
+    /**
+     * Zjistí znakovou sadu odpovědi z hlavičky Content-Type.
+     *
+     * @param response odpověď serveru.
+     * @return znaková sada odpovědi, nebo UTF-8, pokud ji nelze zjistit.
+     */
+    private static Charset charsetOf(HttpResponse<?> response) {
+        Charset charset = declaredCharset(response);
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Zjistí znakovou sadu uvedenou v hlavičce Content-Type.
+     *
+     * @param response odpověď serveru.
+     * @return znaková sada odpovědi, nebo null, pokud v hlavičce není uvedena nebo je neznámá.
+     */
+    private static Charset declaredCharset(HttpResponse<?> response) {
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index >= 0) {
+            String name = contentType.substring(index + 8).split(";")[0].trim().replace("\"", "");
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // Neznámá znaková sada
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Proud dat stránky spolu se znakovou sadou uvedenou serverem.
+     *
+     * @param body    dekomprimovaný proud dat těla odpovědi.
+     * @param charset znaková sada z hlavičky Content-Type, nebo null, pokud nebyla uvedena.
+     */
+    public record PageStream(InputStream body, Charset charset) {
+    }
+
+    /**
+     * Odpověď na podmíněný požadavek.
+     *
+     * @param notModified  true, pokud server vrátil stav 304 a zdroj se nezměnil.
+     * @param body         proud dat těla odpovědi, nebo null, pokud se zdroj nezměnil.
+     * @param charset      znaková sada z hlavičky Content-Type, nebo null, pokud nebyla uvedena.
+     * @param etag         hodnota hlavičky ETag odpovědi, nebo prázdný řetězec.
+     * @param lastModified hodnota hlavičky Last-Modified odpovědi, nebo prázdný řetězec.
+     */
+    public record ConditionalResponse(boolean notModified, InputStream body, Charset charset, String etag, String lastModified) {
+    }
+
+    /**
+     * Sdílená instance používaná třídami WebLoader a ImageSaver, pokud jim není předána jiná.
+     * <p>
+     * Instance je vytvořena až při prvním použití, protože nastavení aplikace samo čte výchozí
+     * časové limity z této třídy.
+     */
+    private static final class DefaultHolder {
+        private static final HttpTransport DEFAULT = create();
+
+        private static HttpTransport create() {
+            Settings settings = Settings.getDefault();
+            HttpTransport transport = new HttpTransport(settings.getConnectTimeout(), settings.getReadTimeout());
+            settings.addListener(changed -> transport.setReadTimeout(changed.getReadTimeout()));
+            return transport;
+        }
+    }
+}
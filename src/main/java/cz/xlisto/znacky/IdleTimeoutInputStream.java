@@ -0,0 +1,171 @@
+package cz.xlisto.znacky;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Třída IdleTimeoutInputStream ukončí čtení z proudu, pokud podkladový proud po danou dobu nevrátí žádná data.
+ * <p>
+ * Časový limit požadavku v java.net.http.HttpClient platí jen pro čekání na hlavičky odpovědi, čtení
+ * těla odpovědi omezeno není. Server, který po odeslání hlaviček přestane posílat data, by tak vlákno
+ * stahování zablokoval natrvalo. Sdílené hlídací vlákno proto pravidelně prochází otevřené proudy a proud,
+ * jehož metoda read čeká na data déle než časový limit, uzavře. Uzavření ukončí čekající čtení
+ * a metoda read pak vyhodí HttpTimeoutException.
+ * <p>
+ * Limit se měří pro každé volání metody read zvlášť, pomalý, ale plynulý přenos velkého souboru
+ * tedy přerušen není.
+ */
+class IdleTimeoutInputStream extends FilterInputStream {
+    /**
+     * Interval kontroly otevřených proudů v milisekundách.
+     */
+    private static final long CHECK_INTERVAL_MILLIS = 250;
+    /**
+     * Otevřené proudy, které hlídací vlákno kontroluje.
+     */
+    private static final Set<IdleTimeoutInputStream> OPEN = ConcurrentHashMap.newKeySet();
+    /**
+     * Hlídací vlákno sdílené všemi proudy, spuštěné při prvním použití třídy.
+     */
+    private static final ScheduledExecutorService WATCHDOG = startWatchdog();
+
+    /**
+     * Časový limit nečinnosti.
+     */
+    private final Duration timeout;
+    /**
+     * Okamžik začátku právě probíhajícího čtení podle System.nanoTime, nebo 0, pokud se nečte.
+     */
+    private volatile long readingSince;
+    /**
+     * Zda byl proud uzavřen hlídacím vláknem.
+     */
+    private volatile boolean timedOut;
+
+    /**
+     * Konstruktor třídy IdleTimeoutInputStream.
+     *
+     * @param in      podkladový proud.
+     * @param timeout nejdelší doba, po kterou smí jedno čtení čekat na data.
+     */
+    IdleTimeoutInputStream(InputStream in, Duration timeout) {
+        super(in);
+        this.timeout = timeout;
+        OPEN.add(this);
+    }
+
+    @Override
+    public int read() throws IOException {
+        begin();
+        try {
+            return super.read();
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            readingSince = 0;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        begin();
+        try {
+            return in.read(buffer, offset, length);
+        } catch (IOException e) {
+            throw translate(e);
+        } finally {
+            readingSince = 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        OPEN.remove(this);
+        super.close();
+    }
+
+    /**
+     * Zaznamená začátek čtení. Pokud již byl proud uzavřen pro nečinnost, vyhodí výjimku.
+     *
+     * @throws HttpTimeoutException pokud vypršel časový limit.
+     */
+    private void begin() throws HttpTimeoutException {
+        if (timedOut) {
+            throw timeoutException();
+        }
+        long now = System.nanoTime();
+        // Hodnota 0 znamená, že se nečte
+        readingSince = now != 0 ? now : 1;
+    }
+
+    /**
+     * Nahradí chybu způsobenou uzavřením proudu hlídacím vláknem výjimkou HttpTimeoutException.
+     *
+     * @param e chyba čtení.
+     * @return výjimka, kterou má metoda read vyhodit.
+     */
+    private IOException translate(IOException e) {
+        if (!timedOut) {
+            return e;
+        }
+        HttpTimeoutException timeoutException = timeoutException();
+        timeoutException.addSuppressed(e);
+        return timeoutException;
+    }
+
+    /**
+     * Vytvoří výjimku oznamující, že server po dobu časového limitu neposlal žádná data.
+     *
+     * @return výjimka s časovým limitem ve zprávě.
+     */
+    private HttpTimeoutException timeoutException() {
+        return new HttpTimeoutException("Server neposlal žádná data po dobu " + timeout.toMillis() + " ms");
+    }
+
+    /**
+     * Uzavře proud, pokud právě probíhající čtení čeká déle než časový limit.
+     *
+     * @param now aktuální čas podle System.nanoTime.
+     */
+    private void check(long now) {
+        long since = readingSince;
+        if (since == 0 || now - since < timeout.toNanos()) {
+            return;
+        }
+        timedOut = true;
+        OPEN.remove(this);
+        try {
+            in.close();
+        } catch (IOException e) {
+            // Proud je uzavírán kvůli nečinnosti, chyba při uzavření nemá vliv
+        }
+    }
+
+    /**
+     * Spustí hlídací vlákno, které pravidelně kontroluje otevřené proudy.
+     *
+     * @return plánovač hlídacího vlákna.
+     */
+    private static ScheduledExecutorService startWatchdog() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "idle-timeout-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (IdleTimeoutInputStream stream : OPEN) {
+                stream.check(now);
+            }
+        }, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+}
@@ -0,0 +1,539 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Třída ImagePostProcessor zpracovává uložené obrázky pro mobilní klienty: vytváří zmenšené varianty
+ * a optimalizuje obrázky PNG.
+ * <p>
+ * Obrázky jsou předávány ke zpracování hned po uložení (viz asDownloadListener), takže zpracování běží
+ * souběžně se stahováním dalších obrázků. Zpracování probíhá na vlastním ForkJoinPool: každý obrázek
+ * je dekódován jednou a jeho varianty a optimalizovaná kopie jsou pak kódovány souběžně jako samostatné
+ * podúlohy. Původní obrázky zůstávají beze změny, takže manifest stahování platí dál.
+ * <p>
+ * Výstupy v cílové složce:
+ * <ul>
+ *   <li>{@value #VARIANT_DIRECTORY}/&lt;šířka&gt;/&lt;název&gt;.png - obrázek zmenšený na zadanou šířku
+ *   se zachováním poměru stran. Obrázky užší než zadaná šířka se nezvětšují.</li>
+ *   <li>{@value #OPTIMIZED_DIRECTORY}/&lt;název&gt;.png - obrázek PNG zakódovaný znovu s nejvyšší kompresí,
+ *   převedený na paletu, pokud nemá více než 256 barev, nebo bez alfa kanálu, pokud je neprůhledný.
+ *   Pokud optimalizace obrázek nezmenší, je uložen původní obsah.</li>
+ * </ul>
+ * Všechny varianty jsou kódovány stejně úsporně jako optimalizované obrázky. Výstupy, které jsou novější
+ * než obrázek, se znovu nevytvářejí. Doba zpracování a počet zapsaných bajtů jsou zaznamenány do metrik
+ * fáze PROCESS (RunMetrics).
+ */
+public class ImagePostProcessor implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ImagePostProcessor.class);
+    /**
+     * Složka se zmenšenými variantami obrázků.
+     */
+    public static final String VARIANT_DIRECTORY = "variants";
+    /**
+     * Složka s optimalizovanými obrázky PNG.
+     */
+    public static final String OPTIMIZED_DIRECTORY = "optimized";
+    /**
+     * Největší počet barev, při kterém je obrázek převeden na paletu.
+     */
+    private static final int MAX_PALETTE = 256;
+
+    /**
+     * Cílová složka s uloženými obrázky.
+     */
+    private final Path directory;
+    /**
+     * Šířky zmenšených variant v pixelech.
+     */
+    private final int[] widths;
+    /**
+     * Zda se mají optimalizovat obrázky PNG.
+     */
+    private final boolean optimize;
+    /**
+     * Fond vláken pro zpracování obrázků.
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Metriky fáze zpracování obrázků.
+     */
+    private final PhaseMetrics metrics = RunMetrics.getDefault().phase(RunMetrics.Phase.PROCESS);
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder upToDate = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final LongAdder optimizedBytes = new LongAdder();
+    private final LongAdder variantBytes = new LongAdder();
+
+    /**
+     * Konstruktor třídy ImagePostProcessor.
+     *
+     * @param directory   cílová složka s uloženými obrázky.
+     * @param widths      šířky zmenšených variant v pixelech, může být prázdné.
+     * @param optimize    true, pokud se mají optimalizovat obrázky PNG.
+     * @param parallelism počet vláken pro zpracování obrázků.
+     */
+    public ImagePostProcessor(File directory, int[] widths, boolean optimize, int parallelism) {
+        this.directory = directory.toPath();
+        this.widths = widths.clone();
+        this.optimize = optimize;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("image-process-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Vytvoří zpracování obrázků podle nastavení aplikace (Settings).
+     * <p>
+     * Zpracování je možné jen pro obrázky uložené jako soubory, tedy pro způsoby uložení
+     * {@link OutputMode#DIRECTORY} a {@link OutputMode#CONTENT_ADDRESSED}.
+     *
+     * @param directory  cílová složka s uloženými obrázky.
+     * @param outputMode způsob uložení obrázků.
+     * @return zpracování obrázků, nebo null, pokud není v nastavení zapnuto nebo je pro způsob uložení nelze použít.
+     */
+    public static ImagePostProcessor fromSettings(File directory, OutputMode outputMode) {
+        Settings settings = Settings.getDefault();
+        return create(directory, outputMode, settings.getVariantWidths(), settings.isOptimizePng(), settings.getPostProcessThreads());
+    }
+
+    /**
+     * Vytvoří zpracování obrázků, pokud je nějaké zpracování požadováno a lze jej pro způsob uložení použít.
+     *
+     * @param directory   cílová složka s uloženými obrázky.
+     * @param outputMode  způsob uložení obrázků.
+     * @param widths      šířky zmenšených variant v pixelech, může být prázdné.
+     * @param optimize    true, pokud se mají optimalizovat obrázky PNG.
+     * @param parallelism počet vláken pro zpracování obrázků.
+     * @return zpracování obrázků, nebo null.
+     */
+    public static ImagePostProcessor create(File directory, OutputMode outputMode, int[] widths, boolean optimize, int parallelism) {
+        if (widths.length == 0 && !optimize) {
+            return null;
+        }
+        if (outputMode == OutputMode.ZIP || outputMode == OutputMode.TAR) {
+            logger.warn("Zpracování obrázků nelze použít při ukládání do archivu {}", outputMode.externalName());
+            return null;
+        }
+        return new ImagePostProcessor(directory, widths, optimize, parallelism);
+    }
+
+    /**
+     * Vrátí posluchače, který každý uložený nebo nezměněný obrázek předá ke zpracování.
+     *
+     * @return posluchač stahování.
+     */
+    public DownloadListener asDownloadListener() {
+        return new DownloadListener() {
+            @Override
+            public void onCompleted(SignEntry item, File file, long bytes) {
+                submit(file);
+            }
+
+            @Override
+            public void onSkipped(SignEntry item, File file) {
+                submit(file);
+            }
+        };
+    }
+
+    /**
+     * Zařadí obrázek ke zpracování. Metoda nečeká na dokončení zpracování.
+     *
+     * @param image uložený obrázek.
+     */
+    public void submit(File image) {
+        pool.execute(new ImageTask(image.toPath()));
+    }
+
+    /**
+     * Počká na zpracování všech zařazených obrázků a ukončí fond vláken.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("Čekám na dokončení zpracování obrázků");
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        logger.info("Zpracování obrázků dokončeno: {}", this);
+    }
+
+    /**
+     * @return počet zpracovaných obrázků.
+     */
+    public long getProcessed() {
+        return processed.sum();
+    }
+
+    /**
+     * @return počet obrázků, jejichž výstupy již byly aktuální.
+     */
+    public long getUpToDate() {
+        return upToDate.sum();
+    }
+
+    /**
+     * @return počet obrázků, které se nepodařilo zpracovat.
+     */
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * @return celková velikost zpracovaných obrázků v bajtech.
+     */
+    public long getInputBytes() {
+        return inputBytes.sum();
+    }
+
+    /**
+     * @return celková velikost optimalizovaných obrázků v bajtech.
+     */
+    public long getOptimizedBytes() {
+        return optimizedBytes.sum();
+    }
+
+    /**
+     * @return celková velikost zmenšených variant v bajtech.
+     */
+    public long getVariantBytes() {
+        return variantBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "zpracováno " + getProcessed() + ", aktuálních " + getUpToDate() + ", chyb " + getFailed()
+                + ", původní " + getInputBytes() + " B, optimalizované " + getOptimizedBytes()
+                + " B, varianty " + getVariantBytes() + " B";
+    }
+
+    /**
+     * Zpracování jednoho obrázku: dekódování a souběžné vytvoření všech výstupů.
+     */
+    private final class ImageTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        /**
+         * Uložený obrázek.
+         */
+        private final Path source;
+
+        private ImageTask(Path source) {
+            this.source = source;
+        }
+
+        @Override
+        protected void compute() {
+            long start = metrics.begin();
+            try {
+                String fileName = source.getFileName().toString();
+                String baseName = baseName(fileName);
+                boolean png = fileName.toLowerCase(Locale.ROOT).endsWith(".png");
+                List<Path> targets = new ArrayList<>();
+                if (optimize && png) {
+                    targets.add(directory.resolve(OPTIMIZED_DIRECTORY).resolve(fileName));
+                }
+                for (int width : widths) {
+                    targets.add(directory.resolve(VARIANT_DIRECTORY).resolve(Integer.toString(width)).resolve(baseName + ".png"));
+                }
+                long sourceModified = Files.getLastModifiedTime(source).toMillis();
+                if (isUpToDate(targets, sourceModified)) {
+                    upToDate.increment();
+                    metrics.end(start, 0);
+                    return;
+                }
+
+                BufferedImage image = ImageIO.read(source.toFile());
+                if (image == null) {
+                    throw new IOException("Nepodporovaný formát obrázku");
+                }
+                long sourceSize = Files.size(source);
+                List<OutputTask> outputs = new ArrayList<>();
+                int target = 0;
+                if (optimize && png) {
+                    outputs.add(new OutputTask(image, targets.get(target++), source, sourceSize, optimizedBytes));
+                }
+                for (int width : widths) {
+                    Path variant = targets.get(target++);
+                    if (width < image.getWidth()) {
+                        outputs.add(new OutputTask(scale(image, width), variant, null, 0, variantBytes));
+                    }
+                }
+                invokeAll(outputs);
+                long written = 0;
+                for (OutputTask output : outputs) {
+                    written += output.written;
+                }
+                processed.increment();
+                inputBytes.add(sourceSize);
+                metrics.end(start, written);
+            } catch (IOException | RuntimeException e) {
+                failed.increment();
+                metrics.failed(e);
+                logger.error("Obrázek {} se nepodařilo zpracovat: {}", source, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Zakódování a zápis jednoho výstupu obrázku.
+     */
+    private final class OutputTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final BufferedImage image;
+        private final Path target;
+        /**
+         * Původní obrázek, jehož obsah se použije, pokud jej zakódování nezmenší, nebo null.
+         */
+        private final Path fallback;
+        /**
+         * Velikost původního obrázku v bajtech.
+         */
+        private final long fallbackSize;
+        /**
+         * Čítač zapsaných bajtů daného druhu výstupu.
+         */
+        private final LongAdder counter;
+        /**
+         * Počet zapsaných bajtů.
+         */
+        private long written;
+
+        private OutputTask(BufferedImage image, Path target, Path fallback, long fallbackSize, LongAdder counter) {
+            this.image = image;
+            this.target = target;
+            this.fallback = fallback;
+            this.fallbackSize = fallbackSize;
+            this.counter = counter;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                byte[] encoded = encodePng(image);
+                Files.createDirectories(target.getParent());
+                // Dočasný soubor s jedinečným názvem a běžnými právy, výstupy mají být čitelné pro webový server
+                Path temp = target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + ".part");
+                try {
+                    if (fallback != null && encoded.length >= fallbackSize) {
+                        // Optimalizace obrázek nezmenšila, použije se původní obsah
+                        Files.copy(fallback, temp);
+                        written = fallbackSize;
+                    } else {
+                        Files.write(temp, encoded, StandardOpenOption.CREATE_NEW);
+                        written = encoded.length;
+                    }
+                    Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                counter.add(written);
+            } catch (IOException e) {
+                // Chyba je ohlášena úloze obrázku, která ji započítá
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Zjistí, zda všechny výstupy obrázku existují a jsou novější než obrázek.
+     *
+     * @param targets        výstupy obrázku.
+     * @param sourceModified čas poslední změny obrázku v milisekundách.
+     * @return true, pokud není třeba obrázek zpracovat.
+     * @throws IOException pokud nelze zjistit čas změny výstupu.
+     */
+    private static boolean isUpToDate(List<Path> targets, long sourceModified) throws IOException {
+        for (Path target : targets) {
+            if (!Files.isRegularFile(target) || Files.getLastModifiedTime(target).toMillis() < sourceModified) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zmenší obrázek na zadanou šířku se zachováním poměru stran.
+     * <p>
+     * Obrázek je zmenšován postupně na polovinu bilineární interpolací, dokud není nejvýše dvakrát větší
+     * než cílová velikost. Jediné zmenšení bilineární interpolací by u velkého poměru vynechalo většinu
+     * pixelů a hrany značek by byly zubaté.
+     *
+     * @param image původní obrázek.
+     * @param width cílová šířka v pixelech, menší než šířka obrázku.
+     * @return zmenšený obrázek.
+     */
+    static BufferedImage scale(BufferedImage image, int width) {
+        int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+        return scale(image, width, height);
+    }
+
+    /**
+     * Změní velikost obrázku přesně na zadané rozměry.
+     * <p>
+     * Rozměr, který se zmenšuje, je zmenšován postupně na polovinu stejně jako v {@link #scale(BufferedImage, int)},
+     * rozměr, který se zvětšuje, je zvětšen najednou.
+     *
+     * @param image  původní obrázek.
+     * @param width  cílová šířka v pixelech.
+     * @param height cílová výška v pixelech.
+     * @return obrázek o rozměrech width × height.
+     */
+    static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            int nextWidth = Math.max(width, currentWidth / 2);
+            int nextHeight = Math.max(height, currentHeight / 2);
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+            currentWidth = nextWidth;
+            currentHeight = nextHeight;
+        } while (currentWidth > width || currentHeight > height);
+        return current;
+    }
+
+    /**
+     * Zakóduje obrázek do formátu PNG co nejúsporněji.
+     * <p>
+     * Obrázek s nejvýše 256 barvami je převeden na paletu (1, 2, 4 nebo 8 bitů na pixel), neprůhledný
+     * obrázek je uložen bez alfa kanálu. Data jsou komprimována nejvyšší úrovní komprese.
+     *
+     * @param image obrázek.
+     * @return obsah souboru PNG.
+     * @throws IOException pokud kódování selže.
+     */
+    static byte[] encodePng(BufferedImage image) throws IOException {
+        BufferedImage reduced = reduceColors(image);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                // Nejnižší kvalita odpovídá nejvyšší úrovni komprese, PNG je vždy bezeztrátové
+                param.setCompressionQuality(0.0f);
+            }
+            writer.write(null, new IIOImage(reduced, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Převede obrázek na nejúspornější reprezentaci, která zachová všechny barvy.
+     *
+     * @param image obrázek.
+     * @return obrázek s paletou, obrázek bez alfa kanálu, nebo původní obrázek.
+     */
+    private static BufferedImage reduceColors(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        Map<Integer, Integer> palette = new HashMap<>();
+        boolean opaque = true;
+        for (int pixel : pixels) {
+            opaque &= (pixel >>> 24) == 0xff;
+            if (palette.size() <= MAX_PALETTE) {
+                palette.putIfAbsent(pixel, palette.size());
+            } else if (!opaque) {
+                break;
+            }
+        }
+
+        if (palette.size() <= MAX_PALETTE) {
+            int size = palette.size();
+            int bits = size <= 2 ? 1 : size <= 4 ? 2 : size <= 16 ? 4 : 8;
+            byte[] red = new byte[size];
+            byte[] green = new byte[size];
+            byte[] blue = new byte[size];
+            byte[] alpha = new byte[size];
+            palette.forEach((color, index) -> {
+                alpha[index] = (byte) (color >>> 24);
+                red[index] = (byte) (color >>> 16);
+                green[index] = (byte) (color >>> 8);
+                blue[index] = (byte) (int) color;
+            });
+            IndexColorModel model = opaque
+                    ? new IndexColorModel(bits, size, red, green, blue)
+                    : new IndexColorModel(bits, size, red, green, blue, alpha);
+            BufferedImage indexed = new BufferedImage(width, height,
+                    bits == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY, model);
+            WritableRaster raster = indexed.getRaster();
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    row[x] = palette.get(pixels[y * width + x]);
+                }
+                raster.setSamples(0, y, width, 1, 0, row);
+            }
+            return indexed;
+        }
+        if (opaque && image.getColorModel().hasAlpha()) {
+            BufferedImage rgb = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            rgb.setRGB(0, 0, width, height, pixels, 0, width);
+            return rgb;
+        }
+        return image;
+    }
+
+    /**
+     * Vrátí název souboru bez přípony.
+     *
+     * @param fileName název souboru.
+     * @return název bez přípony.
+     */
+    private static String baseName(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(0, dot) : fileName;
+    }
+}
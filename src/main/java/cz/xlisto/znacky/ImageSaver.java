@@ -1,88 +1,771 @@
 package cz.xlisto.znacky;
 
-import javafx.collections.ObservableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Properties;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
 
 /**
  * Třída ImageSaver poskytuje funkce pro ukládání obrázků z daných URL
  * do výchozí složky specifikované v konfiguračním souboru.
+ * <p>
+ * Obrázky jsou stahovány souběžně pomocí exekutoru. Počet současných spojení na jeden server
+ * je omezen, aby stahování nezahltilo zdrojový web. Průběh lze sledovat pomocí rozhraní
+ * DownloadListener a souhrnný výsledek vrací metoda saveImages jako instanci DownloadResult.
+ * <p>
+ * V cílové složce je udržován manifest (DownloadManifest) s validátory a otisky stažených obrázků.
+ * Při opakovaném spuštění jsou obrázky stahovány podmíněným požadavkem a nezměněné obrázky jsou přeskočeny.
+ * <p>
+ * Požadavky, které selžou přechodnou chybou, jsou opakovány podle RetryPolicy. Počet současných spojení
+ * na jeden server řídí AdaptiveLimiter: začíná na zadaném limitu, při zdravém serveru jej postupně zvyšuje
+ * a při odpovědích 429/503 nebo rostoucí době odezvy jej snižuje. Obrázky, které se nepodaří stáhnout
+ * ani po opakování, jsou zaznamenány v DownloadResult.
+ * <p>
+ * Způsob uložení určuje OutputMode. V režimu {@link OutputMode#CONTENT_ADDRESSED} jsou obrázky předány
+ * úložišti ContentAddressedStore, které stejný obsah uloží jen jednou. V režimech {@link OutputMode#ZIP}
+ * a {@link OutputMode#TAR} jsou obrázky zapsány přímo do jednoho archivu (ArchiveStore).
  */
 public class ImageSaver {
-    private static final String SETTINGS_FILE = "settings.ini";
-    private static final String DIRECTORY_KEY = "defaultDirectory";
     private static final Logger logger = LoggerFactory.getLogger(ImageSaver.class);
 
     /**
-     * Načte výchozí složku z konfiguračního souboru settings.ini.
+     * Výchozí počet vláken pro stahování obrázků.
+     */
+    public static final int DEFAULT_CONCURRENCY = 16;
+    /**
+     * Výchozí maximální počet současných spojení na jeden server.
+     */
+    public static final int DEFAULT_PER_HOST_LIMIT = 6;
+    /**
+     * Násobek počátečního limitu spojení na server, na který jej může adaptivní řízení zvýšit.
+     */
+    public static final int ADAPTIVE_HEADROOM = 2;
+    /**
+     * Maximální počet vyrovnávacích pamětí uchovávaných ve fondu.
+     */
+    private static final int POOLED_BUFFERS = 64;
+
+    /**
+     * Exekutor předaný zvenčí, nebo null, pokud si ImageSaver vytváří vlastní fond vláken pro každé stahování.
+     * <p>
+     * Na Javě 21 lze předat například Executors.newVirtualThreadPerTaskExecutor().
+     */
+    private final ExecutorService executor;
+    /**
+     * Počet vláken vlastního fondu, pokud není exekutor předán zvenčí.
+     */
+    private final int concurrency;
+    /**
+     * Počáteční počet současných spojení na jeden server.
+     */
+    private final int perHostLimit;
+    /**
+     * Adaptivní limity současných spojení, klíčem je název serveru.
+     */
+    private final Map<String, AdaptiveLimiter> hostLimits = new ConcurrentHashMap<>();
+    /**
+     * Pravidla pro opakování požadavků, které selhaly přechodnou chybou.
+     */
+    private final RetryPolicy retryPolicy;
+    /**
+     * Metriky fází stahování a zápisu obrázků.
+     */
+    private final RunMetrics metrics = RunMetrics.getDefault();
+    /**
+     * Fond vyrovnávacích pamětí pro kopírování obrázků do dočasných souborů, velikost určuje nastavení aplikace.
+     */
+    private final BufferPool buffers = new BufferPool(Settings.getDefault().getBufferSize(), POOLED_BUFFERS);
+    /**
+     * Sdílené HTTP spojení pro stahování obrázků.
+     */
+    private final HttpTransport transport;
+
+    /**
+     * Konstruktor třídy ImageSaver s počtem vláken a omezením spojení na server podle nastavení aplikace (Settings).
+     */
+    public ImageSaver() {
+        this(null, Settings.getDefault().getConcurrency(), Settings.getDefault().getPerHostLimit(),
+                HttpTransport.getDefault(), RetryPolicy.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy ImageSaver s vlastním počtem vláken.
+     *
+     * @param concurrency  počet vláken pro stahování obrázků.
+     * @param perHostLimit počáteční počet současných spojení na jeden server.
+     */
+    public ImageSaver(int concurrency, int perHostLimit) {
+        this(null, concurrency, perHostLimit, HttpTransport.getDefault(), RetryPolicy.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy ImageSaver s exekutorem předaným zvenčí.
+     * <p>
+     * Exekutor není po stažení ukončen, jeho životní cyklus řídí volající.
+     *
+     * @param executor     exekutor, na kterém budou obrázky stahovány.
+     * @param perHostLimit počáteční počet současných spojení na jeden server.
+     * @param transport    HTTP spojení, přes které jsou obrázky stahovány.
+     */
+    public ImageSaver(ExecutorService executor, int perHostLimit, HttpTransport transport) {
+        this(executor, 0, perHostLimit, transport, RetryPolicy.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy ImageSaver s exekutorem předaným zvenčí a vlastními pravidly pro opakování.
+     *
+     * @param executor     exekutor, na kterém budou obrázky stahovány.
+     * @param perHostLimit počáteční počet současných spojení na jeden server.
+     * @param transport    HTTP spojení, přes které jsou obrázky stahovány.
+     * @param retryPolicy  pravidla pro opakování požadavků, které selhaly přechodnou chybou.
+     */
+    public ImageSaver(ExecutorService executor, int perHostLimit, HttpTransport transport, RetryPolicy retryPolicy) {
+        this(executor, 0, perHostLimit, transport, retryPolicy);
+    }
+
+    private ImageSaver(ExecutorService executor, int concurrency, int perHostLimit, HttpTransport transport, RetryPolicy retryPolicy) {
+        this.executor = executor;
+        this.concurrency = concurrency;
+        this.perHostLimit = perHostLimit;
+        this.transport = transport;
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Uloží obrázky z daných URL do výchozí složky.
+     *
+     * @param urlList Seznam URL odkazů pro stažení obrázků.
+     */
+    public void saveImages(List<SignEntry> urlList) {
+        DownloadResult result = saveImages(urlList, new DownloadListener() {
+        });
+        logger.info("Ukládání dokončeno: {}\n{}", result, metrics.getSummary());
+    }
+
+    /**
+     * Souběžně uloží obrázky z daných URL do výchozí složky způsobem určeným nastavením aplikace (Settings).
+     * <p>
+     * Metoda čeká, dokud nejsou zpracovány všechny položky. Po každé položce je zavolán listener.
+     *
+     * @param urlList  Seznam URL odkazů pro stažení obrázků.
+     * @param listener posluchač informovaný o uložení nebo selhání každé položky.
+     * @return souhrnný výsledek stahování.
+     */
+    public DownloadResult saveImages(List<SignEntry> urlList, DownloadListener listener) {
+        Settings settings = Settings.getDefault();
+        return saveImages(urlList, settings.getDefaultDirectory(), listener, settings.getOutputMode());
+    }
+
+    /**
+     * Souběžně uloží obrázky z daných URL do zadané složky.
+     * <p>
+     * Metoda čeká, dokud nejsou zpracovány všechny položky. Po každé položce je zavolán listener.
+     *
+     * @param urlList   Seznam URL odkazů pro stažení obrázků.
+     * @param directory cílová složka.
+     * @param listener  posluchač informovaný o uložení nebo selhání každé položky.
+     * @return souhrnný výsledek stahování.
+     */
+    public DownloadResult saveImages(List<SignEntry> urlList, File directory, DownloadListener listener) {
+        return saveImages(urlList, directory, listener, OutputMode.DIRECTORY);
+    }
+
+    /**
+     * Souběžně uloží obrázky z daných URL do zadané složky zvoleným způsobem.
+     * <p>
+     * Metoda čeká, dokud nejsou zpracovány všechny položky. Po každé položce je zavolán listener.
      *
-     * @return Výchozí složka jako instance třídy File nebo null, pokud není nastavena.
+     * @param urlList    Seznam URL odkazů pro stažení obrázků.
+     * @param directory  cílová složka.
+     * @param listener   posluchač informovaný o uložení nebo selhání každé položky.
+     * @param outputMode způsob uložení obrázků.
+     * @return souhrnný výsledek stahování.
      */
-    private File loadDefaultDirectory() {
-        Properties properties = new Properties();
-        File settingsFile = new File(SETTINGS_FILE);
+    public DownloadResult saveImages(List<SignEntry> urlList, File directory, DownloadListener listener, OutputMode outputMode) {
+        Session session;
+        try {
+            session = openSession(directory, outputMode);
+        } catch (IOException e) {
+            logger.error("Nelze zahájit ukládání: {}", e.getMessage());
+            return new DownloadResult();
+        }
 
-        if (!settingsFile.exists()) {
-            return null;
+        ExecutorService service = executor != null ? executor : Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "image-saver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CountDownLatch remaining = new CountDownLatch(urlList.size());
+        List<Future<?>> tasks = new ArrayList<>(urlList.size());
+        try {
+            for (SignEntry entry : urlList) {
+                try {
+                    tasks.add(service.submit(() -> {
+                        try {
+                            session.save(entry, listener);
+                        } finally {
+                            remaining.countDown();
+                        }
+                    }));
+                } catch (RejectedExecutionException e) {
+                    session.getResult().recordFailure(entry);
+                    listener.onFailed(entry, e);
+                    remaining.countDown();
+                }
+            }
+            remaining.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            session.cancel();
+            logger.error("Ukládání obrázků bylo přerušeno");
+            // Rozpracované obrázky jsou přerušeny, úlohy, které dosud nezačaly, se již nespustí
+            for (Future<?> task : tasks) {
+                task.cancel(true);
+            }
+        } finally {
+            if (executor == null) {
+                service.shutdownNow();
+                awaitTermination(service);
+            }
+            // Uzavření relace počká na obrázky, jejichž ukládání již začalo (i ve vnějším exekutoru)
+            session.close();
         }
+        return session.getResult();
+    }
 
-        try (InputStream input = new FileInputStream(settingsFile)) {
-            properties.load(input);
-            String directoryPath = properties.getProperty(DIRECTORY_KEY);
-            if (directoryPath != null) {
-                return new File(directoryPath);
+    /**
+     * Počká na ukončení vláken vlastního exekutoru, i když je vlákno volajícího přerušeno.
+     * <p>
+     * Relace ukládání smí být uzavřena až po skončení všech vláken, jinak by rozpracovaný obrázek
+     * mohl zapsat soubor nebo záznam manifestu po uložení manifestu.
+     *
+     * @param service exekutor ukončený metodou shutdownNow.
+     */
+    private static void awaitTermination(ExecutorService service) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    if (service.awaitTermination(1, TimeUnit.MINUTES)) {
+                        return;
+                    }
+                    logger.warn("Čekání na dokončení rozpracovaných obrázků");
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
             }
-        } catch (IOException e) {
-            logger.error("Chyba při načítání souboru settings.ini {}", e.getMessage());
         }
-        return null;
     }
 
     /**
-     * Uloží obrázky z daných URL do výchozí složky.
+     * Zahájí ukládání do zadané složky zvoleným způsobem.
+     * <p>
+     * Vrácená relace (Session) ukládá jednotlivé obrázky ve vlákně volajícího, takže ji lze použít
+     * i tam, kde položky katalogu přicházejí postupně, například z fronty v CatalogPipeline.
+     * Relaci je nutné po zpracování všech položek uzavřít.
      *
-     * @param urlList Seznam URL odkazů pro stažení obrázků.
+     * @param directory  cílová složka.
+     * @param outputMode způsob uložení obrázků.
+     * @return otevřená relace ukládání.
+     * @throws IOException pokud cílová složka neexistuje nebo nelze otevřít úložiště.
      */
-    public void saveImages(ObservableList<String[]> urlList) {
-        File directory = loadDefaultDirectory();
+    public Session openSession(File directory, OutputMode outputMode) throws IOException {
         if (directory == null || !directory.exists()) {
-            logger.error("Výchozí složka není nastavena nebo neexistuje.");
-            return;
+            throw new FileNotFoundException("Výchozí složka není nastavena nebo neexistuje.");
         }
+        ImageStore store = switch (outputMode) {
+            case DIRECTORY -> null;
+            case CONTENT_ADDRESSED -> new ContentAddressedStore(directory);
+            case ZIP, TAR -> new ArchiveStore(directory, outputMode);
+        };
+        return new Session(directory, DownloadManifest.load(directory), store);
+    }
 
-        for (String[] urlArray : urlList) {
-            String urlString = urlArray[1];
-            String encodedURL;
-            encodedURL = URLEncoder.encode(urlString, StandardCharsets.UTF_8);
+    /**
+     * Třída Session představuje jedno ukládání obrázků do cílové složky.
+     * <p>
+     * Drží manifest cílové složky, případné úložiště obrázků a souhrnný výsledek. Metodu save lze volat
+     * souběžně z více vláken. Metoda close uloží manifest a dokončí úložiště; pokud bylo ukládání
+     * zrušeno metodou cancel, úložiště je místo dokončení zahozeno (například neúplný archiv).
+     * <p>
+     * Po zrušení nebo uzavření relace metoda save obrázky již neukládá. Metoda close počká, až doběhnou
+     * obrázky, jejichž ukládání již začalo, takže po uložení manifestu ani po zahození úložiště
+     * již žádný obrázek nezapisuje.
+     */
+    public final class Session implements Closeable {
+        /**
+         * Cílová složka.
+         */
+        private final File directory;
+        /**
+         * Manifest cílové složky.
+         */
+        private final DownloadManifest manifest;
+        /**
+         * Úložiště obrázků, nebo null pro uložení do samostatných souborů.
+         */
+        private final ImageStore store;
+        /**
+         * Souhrnný výsledek ukládání.
+         */
+        private final DownloadResult result = new DownloadResult();
+        /**
+         * Názvy souborů přidělené v tomto ukládání a URL adresy obrázků, kterým patří.
+         */
+        private final Map<String, String> fileNames = new ConcurrentHashMap<>();
+        /**
+         * URL adresy obrázků, jejichž ukládání v této relaci již začalo.
+         */
+        private final Set<String> started = ConcurrentHashMap.newKeySet();
+        /**
+         * Zda bylo ukládání zrušeno.
+         */
+        private volatile boolean cancelled;
+        /**
+         * Zda byla relace uzavřena. Čteno a měněno se zámkem saving.
+         */
+        private boolean closed;
+        /**
+         * Zámek, který metoda save drží sdíleně po dobu ukládání obrázku a metoda close výhradně,
+         * aby relace nebyla uzavřena během ukládání obrázku.
+         */
+        private final ReentrantReadWriteLock saving = new ReentrantReadWriteLock();
 
-            // Vrátí znaky, které mají v URL zůstat nezakódované (např. ':', '/', 'http')
-            encodedURL = encodedURL.replace("%3A", ":").replace("%2F", "/");
+        private Session(File directory, DownloadManifest manifest, ImageStore store) {
+            this.directory = directory;
+            this.manifest = manifest;
+            this.store = store;
+        }
 
+        /**
+         * Stáhne a uloží jeden obrázek ve vlákně volajícího a zaznamená výsledek.
+         * <p>
+         * Chyby nejsou vyhozeny, jsou zaznamenány v DownloadResult a ohlášeny posluchači.
+         * Pokud je vlákno přerušeno, příznak přerušení zůstane nastaven. Obrázek, jehož ukládání
+         * v této relaci již začalo, je vynechán a posluchači ohlášen není. Stejně tak je vynechán
+         * každý obrázek po zrušení nebo uzavření relace.
+         *
+         * @param entry    položka katalogu.
+         * @param listener posluchač informovaný o uložení nebo selhání položky.
+         */
+        public void save(SignEntry entry, DownloadListener listener) {
+            saving.readLock().lock();
             try {
-                URI uri = new URI(encodedURL);
-                URL url = uri.toURL();
-                String fileName = Paths.get(url.getPath().replace("%3Ca-hre-", "")).getFileName().toString(); // + odstranění specifické chyby u zastávky tramvaje
-                File outputFile = new File(directory, fileName);
-
-                try (InputStream in = url.openStream()) {
-                    Files.copy(in, outputFile.toPath());
-                    logger.info("Obrázek uložen: {}", outputFile.getAbsolutePath());
+                if (cancelled || closed) {
+                    logger.debug("Ukládání bylo zrušeno, obrázek se neukládá: {}", entry.url());
+                    return;
+                }
+                if (!started.add(entry.url())) {
+                    logger.debug("Obrázek se v tomto ukládání již ukládá: {}", entry.url());
+                    return;
+                }
+                saveStarted(entry, listener);
+            } finally {
+                saving.readLock().unlock();
+            }
+        }
+
+        /**
+         * Stáhne a uloží obrázek, jehož ukládání právě začalo, a zaznamená výsledek.
+         *
+         * @param entry    položka katalogu.
+         * @param listener posluchač informovaný o uložení nebo selhání položky.
+         */
+        private void saveStarted(SignEntry entry, DownloadListener listener) {
+            try {
+                URI uri = toUri(entry.url());
+                Saved saved = saveImage(entry, uri, claimFileName(entry.url(), uri), directory, manifest, store);
+                if (saved.skipped()) {
+                    result.recordSkipped();
+                    listener.onSkipped(entry, saved.file());
+                } else {
+                    result.recordSuccess(saved.bytes());
+                    listener.onCompleted(entry, saved.file(), saved.bytes());
+                }
+            } catch (IOException | URISyntaxException e) {
+                logger.error("Chyba při ukládání obrázku z URL: {}", entry.url(), e);
+                result.recordFailure(entry);
+                listener.onFailed(entry, e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.recordFailure(entry);
+                listener.onFailed(entry, e);
+            }
+        }
+
+        /**
+         * Přidělí obrázku název souboru v cílové složce.
+         * <p>
+         * Název je odvozen z poslední části URL adresy. Pokud jej v tomto ukládání již použila jiná
+         * URL adresa (stejně pojmenované obrázky z různých složek serveru), je k němu přidáno pořadové
+         * číslo, například A1-2.png, aby se obrázky navzájem nepřepsaly. Název zaznamenaný v manifestu
+         * při předchozím stažení má přednost, takže obrázek mezi běhy název nemění.
+         *
+         * @param url URL adresa obrázku.
+         * @param uri URI obrázku.
+         * @return název souboru.
+         */
+        private String claimFileName(String url, URI uri) {
+            String fileName = fileNameFor(uri);
+            int dot = fileName.lastIndexOf('.');
+            String stem = dot > 0 ? fileName.substring(0, dot) : fileName;
+            String extension = dot > 0 ? fileName.substring(dot) : "";
+
+            DownloadManifest.Entry previous = manifest.get(url);
+            if (previous != null && previous.fileName().matches(Pattern.quote(stem) + "(-\\d+)?" + Pattern.quote(extension))
+                    && claim(previous.fileName(), url)) {
+                return previous.fileName();
+            }
+            if (claim(fileName, url)) {
+                return fileName;
+            }
+            for (int i = 2; ; i++) {
+                String candidate = stem + "-" + i + extension;
+                if (claim(candidate, url)) {
+                    logger.warn("Název souboru {} již patří jinému obrázku, obrázek z URL {} bude uložen jako {}", fileName, url, candidate);
+                    return candidate;
+                }
+            }
+        }
+
+        /**
+         * Zaznamená název souboru pro danou URL adresu, pokud jej nepoužívá jiná URL adresa.
+         *
+         * @param fileName název souboru.
+         * @param url      URL adresa obrázku.
+         * @return true, pokud název patří dané URL adrese.
+         */
+        private boolean claim(String fileName, String url) {
+            String owner = fileNames.putIfAbsent(fileName, url);
+            return owner == null || owner.equals(url);
+        }
+
+        /**
+         * Zjistí, zda ukládání obrázku v této relaci již začalo.
+         *
+         * @param entry položka katalogu.
+         * @return true, pokud již byla položka předána metodě save.
+         */
+        public boolean isStarted(SignEntry entry) {
+            return started.contains(entry.url());
+        }
+
+        /**
+         * @return souhrnný výsledek ukládání.
+         */
+        public DownloadResult getResult() {
+            return result;
+        }
+
+        /**
+         * Označí ukládání jako zrušené, úložiště pak při uzavření nebude dokončeno.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Počká na dokončení rozpracovaných obrázků, uloží manifest a dokončí nebo zahodí úložiště obrázků.
+         */
+        @Override
+        public void close() {
+            saving.writeLock().lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                manifest.save();
+                if (store == null) {
+                    return;
+                }
+                if (cancelled) {
+                    store.abort();
+                } else {
+                    store.close();
                 }
             } catch (IOException e) {
-                logger.error("Chyba při ukládání obrázku z URL: {}", urlArray[1], e);
-            } catch (URISyntaxException e) {
-                logger.error("Chyba při sestavení URL: {}", urlArray[1], e);
+                logger.error("Chyba při uzavírání úložiště obrázků {}", e.getMessage());
+            } finally {
+                saving.writeLock().unlock();
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Stáhne a uloží jeden obrázek do dané složky.
+     * <p>
+     * Před otevřením spojení získá povolení adaptivního limiteru pro daný server, čímž omezuje
+     * počet současných spojení na jeden server. Doba odezvy a případné přetížení serveru jsou limiteru
+     * po každém pokusu ohlášeny. Limiter dostává jen dobu čekání na síť, doba zápisu na disk nebo do úložiště
+     * se do ní nezapočítává. Pokus, který selže přechodnou chybou sítě nebo serveru, je opakován podle
+     * RetryPolicy; mezi pokusy vlákno povolení limiteru nedrží. Chyba místního zápisu se neopakuje
+     * a limiteru se nehlásí jako přetížení.
+     * <p>
+     * Pokud manifest obsahuje záznam o obrázku a soubor v cílové složce má zaznamenanou velikost,
+     * je odeslán podmíněný požadavek. Obrázek je stahován do dočasného souboru a zároveň je počítán
+     * jeho otisk SHA-256. Soubor v cílové složce je nahrazen pouze tehdy, pokud se obsah změnil.
+     * Pokud je zadáno úložiště, obrázek je místo do dočasného souboru předán jemu.
+     *
+     * @param entry     položka katalogu.
+     * @param uri       URI obrázku.
+     * @param fileName  název souboru přidělený obrázku.
+     * @param directory složka, do které má být obrázek uložen.
+     * @param manifest  manifest cílové složky.
+     * @param store     úložiště obrázků, nebo null pro uložení do samostatných souborů.
+     * @return výsledek uložení obrázku.
+     * @throws IOException          pokud dojde k chybě při stahování nebo ukládání.
+     * @throws InterruptedException pokud je vlákno přerušeno při čekání na volné spojení.
+     */
+    private Saved saveImage(SignEntry entry, URI uri, String fileName, File directory, DownloadManifest manifest, ImageStore store) throws IOException, InterruptedException {
+        String urlString = entry.url();
+        File outputFile = new File(directory, fileName);
+
+        // Validátory se použijí jen tehdy, pokud soubor z předchozího stažení stále odpovídá manifestu
+        DownloadManifest.Entry previous = manifest.get(urlString);
+        boolean current = (store == null || store.retainsPrevious()) && previous != null && previous.fileName().equals(fileName)
+                && outputFile.isFile() && outputFile.length() == previous.size();
+        String etag = current ? previous.etag() : null;
+        String lastModified = current ? previous.lastModified() : null;
+
+        AdaptiveLimiter hostLimit = hostLimits.computeIfAbsent(String.valueOf(uri.getHost()),
+                host -> new AdaptiveLimiter(perHostLimit, 1, perHostLimit * ADAPTIVE_HEADROOM));
+        try {
+            return retryPolicy.execute(urlString, () -> {
+                hostLimit.acquire();
+                Saved saved = null;
+                boolean overloaded = false;
+                try {
+                    saved = transfer(entry, uri, outputFile, manifest, store, previous, current, etag, lastModified);
+                    return saved;
+                } catch (IOException e) {
+                    overloaded = RetryPolicy.isOverload(e);
+                    throw e;
+                } finally {
+                    if (saved != null) {
+                        hostLimit.onSuccess(saved.networkNanos());
+                    } else if (overloaded) {
+                        hostLimit.onOverload();
+                    } else {
+                        hostLimit.release();
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            // Chyba místního zápisu, viz transfer
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Provede jeden pokus o stažení obrázku do dočasného souboru a jeho přesun do cílové složky.
+     * <p>
+     * Doba čekání na server a čtení těla odpovědi je zaznamenána do metrik fáze DOWNLOAD,
+     * zbytek doby zpracování (zápis na disk nebo do úložiště) do metrik fáze WRITE.
+     *
+     * @param entry        položka katalogu.
+     * @param uri          URI obrázku.
+     * @param outputFile   cílový soubor.
+     * @param manifest     manifest cílové složky.
+     * @param store        úložiště obrázků, nebo null pro uložení do samostatného souboru.
+     * @param previous     záznam manifestu z předchozího stažení, nebo null.
+     * @param current      true, pokud soubor v cílové složce odpovídá záznamu manifestu.
+     * @param etag         hodnota ETag pro podmíněný požadavek, nebo null.
+     * @param lastModified hodnota Last-Modified pro podmíněný požadavek, nebo null.
+     * @return výsledek uložení obrázku s dobou čekání na síť.
+     * @throws IOException          pokud dojde k chybě při stahování.
+     * @throws UncheckedIOException pokud selže zápis na disk nebo do úložiště; obaluje původní IOException.
+     * @throws InterruptedException pokud je vlákno během čekání na odpověď přerušeno.
+     */
+    private Saved transfer(SignEntry entry, URI uri, File outputFile, DownloadManifest manifest, ImageStore store,
+                           DownloadManifest.Entry previous, boolean current, String etag, String lastModified) throws IOException, InterruptedException {
+        PhaseMetrics download = metrics.phase(RunMetrics.Phase.DOWNLOAD);
+        PhaseMetrics write = metrics.phase(RunMetrics.Phase.WRITE);
+        long start = download.begin();
+        HttpTransport.ConditionalResponse response;
+        try {
+            response = transport.openIfModified(uri, etag, lastModified);
+        } catch (IOException | InterruptedException e) {
+            download.failed(e);
+            throw e;
+        }
+        long headersNanos = System.nanoTime() - start;
+        if (response.notModified()) {
+            download.complete(0, headersNanos);
+            logger.debug("Obrázek beze změny: {}", outputFile.getAbsolutePath());
+            return new Saved(outputFile, 0, true, headersNanos);
+        }
+
+        long writeStart = write.begin();
+        TimedInputStream in = new TimedInputStream(response.body());
+        Saved saved;
+        try (in) {
+            saved = write(entry, outputFile, manifest, store, previous, current, response, in);
+        } catch (IOException | RuntimeException e) {
+            // Chyba při čtení proudu patří stahování, ostatní chyby zápisu
+            if (in.isReadFailed()) {
+                download.failed(e);
+                write.abandon();
+                throw e;
+            }
+            download.abandon();
+            write.failed(e);
+            // Chyba zápisu na disk nebo do úložiště vznikla mimo síť, RetryPolicy ji proto nesmí opakovat
+            if (e instanceof IOException local) {
+                throw new UncheckedIOException(local);
+            }
+            throw e;
+        }
+        long networkNanos = headersNanos + in.getReadNanos();
+        download.complete(in.getBytes(), networkNanos);
+        write.complete(saved.bytes(), System.nanoTime() - writeStart - in.getReadNanos());
+        return new Saved(saved.file(), saved.bytes(), saved.skipped(), networkNanos);
+    }
+
+    /**
+     * Uloží tělo odpovědi do úložiště, nebo do dočasného souboru, který pak přesune do cílové složky.
+     * <p>
+     * Dočasný soubor má jedinečný název, takže se souběžné zápisy téhož souboru navzájem nepřepíší.
+     *
+     * @param entry      položka katalogu.
+     * @param outputFile cílový soubor.
+     * @param manifest   manifest cílové složky.
+     * @param store      úložiště obrázků, nebo null pro uložení do samostatného souboru.
+     * @param previous   záznam manifestu z předchozího stažení, nebo null.
+     * @param current    true, pokud soubor v cílové složce odpovídá záznamu manifestu.
+     * @param response   odpověď serveru.
+     * @param body       tělo odpovědi.
+     * @return výsledek uložení obrázku.
+     * @throws IOException pokud dojde k chybě při stahování nebo ukládání.
+     */
+    private Saved write(SignEntry entry, File outputFile, DownloadManifest manifest, ImageStore store, DownloadManifest.Entry previous,
+                        boolean current, HttpTransport.ConditionalResponse response, InputStream body) throws IOException {
+        String urlString = entry.url();
+        String fileName = outputFile.getName();
+        if (store != null) {
+            ImageStore.StoredImage stored = store.store(entry, fileName, body);
+            manifest.put(new DownloadManifest.Entry(urlString, fileName, stored.size(), response.etag(), response.lastModified(), stored.sha256()));
+            if (current && stored.sha256().equals(previous.sha256())) {
+                logger.debug("Obrázek beze změny: {}", outputFile.getAbsolutePath());
+                return new Saved(outputFile, 0, true);
+            }
+            logger.info("Obrázek uložen: {} ({})", outputFile.getAbsolutePath(), stored.sha256());
+            return new Saved(outputFile, stored.written(), false);
+        }
+
+        Path temp = outputFile.toPath().resolveSibling(fileName + "." + UUID.randomUUID() + ".part");
+        MessageDigest digest = newSha256();
+        long size = 0;
+        byte[] buffer = buffers.acquire();
+        try (InputStream in = new DigestInputStream(body, digest);
+             OutputStream out = Files.newOutputStream(temp)) {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } finally {
+            buffers.release(buffer);
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        manifest.put(new DownloadManifest.Entry(urlString, fileName, size, response.etag(), response.lastModified(), sha256));
+
+        if (current && sha256.equals(previous.sha256())) {
+            // Server neposlal validátory nebo je nerespektuje, obsah je však stejný
+            Files.delete(temp);
+            logger.debug("Obrázek beze změny: {}", outputFile.getAbsolutePath());
+            return new Saved(outputFile, 0, true);
+        }
+        Files.move(temp, outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Obrázek uložen: {}", outputFile.getAbsolutePath());
+        return new Saved(outputFile, size, false);
+    }
+
+    /**
+     * Převede URL adresu obrázku z katalogu na URI s kódovanými znaky.
+     * <p>
+     * Adresy v katalogu mohou obsahovat mezery a znaky s diakritikou, které je nutné zakódovat.
+     *
+     * @param urlString URL adresa obrázku.
+     * @return URI obrázku.
+     * @throws URISyntaxException pokud URL obrázku není platná.
+     */
+    static URI toUri(String urlString) throws URISyntaxException {
+        String encodedURL = URLEncoder.encode(urlString, StandardCharsets.UTF_8);
+
+        // Vrátí znaky, které mají v URL zůstat nezakódované (např. ':', '/', 'http')
+        encodedURL = encodedURL.replace("%3A", ":").replace("%2F", "/");
+        return new URI(encodedURL);
+    }
+
+    /**
+     * Odvodí název souboru z poslední části cesty URI obrázku.
+     *
+     * @param uri URI obrázku.
+     * @return název souboru.
+     */
+    static String fileNameFor(URI uri) {
+        return Paths.get(uri.getRawPath().replace("%3Ca-hre-", "")).getFileName().toString(); // + odstranění specifické chyby u zastávky tramvaje
+    }
+
+    /**
+     * Vytvoří instanci algoritmu SHA-256.
+     *
+     * @return instance MessageDigest pro SHA-256.
+     */
+    private static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 musí podporovat každá implementace Javy
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Výsledek uložení jednoho obrázku.
+     *
+     * @param file         soubor s obrázkem.
+     * @param bytes        počet zapsaných bajtů.
+     * @param skipped      true, pokud byl obrázek přeskočen, protože se nezměnil.
+     * @param networkNanos doba čekání na síť v nanosekundách.
+     */
+    private record Saved(File file, long bytes, boolean skipped, long networkNanos) {
+        private Saved(File file, long bytes, boolean skipped) {
+            this(file, bytes, skipped, 0);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package cz.xlisto.znacky;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Rozhraní ImageStore představuje cíl, do kterého ImageSaver ukládá stažené obrázky jinak než jako
+ * samostatné soubory v cílové složce.
+ * <p>
+ * Metoda store je volána souběžně z vláken, která obrázky stahují, implementace proto musí být
+ * bezpečná pro více vláken. Metoda close je zavolána jednou po zpracování všech položek a dokončí
+ * zápis (například uloží index).
+ */
+public interface ImageStore extends Closeable {
+    /**
+     * Uloží obrázek čtený z proudu dat. Proud uzavírá volající.
+     *
+     * @param entry    položka katalogu.
+     * @param fileName název souboru odvozený z URL adresy obrázku.
+     * @param body     proud dat obrázku.
+     * @return údaje o uloženém obrázku.
+     * @throws IOException pokud dojde k chybě při čtení nebo zápisu.
+     */
+    StoredImage store(SignEntry entry, String fileName, InputStream body) throws IOException;
+
+    /**
+     * Určuje, zda úložiště zachovává obrázky z předchozího ukládání.
+     * <p>
+     * Pouze v takovém případě smí ImageSaver použít podmíněný požadavek a nezměněný obrázek přeskočit.
+     *
+     * @return true, pokud obrázky z předchozího ukládání zůstávají k dispozici.
+     */
+    default boolean retainsPrevious() {
+        return true;
+    }
+
+    /**
+     * Ukončí zrušené ukládání. Výchozí implementace úložiště normálně uzavře.
+     * <p>
+     * Úložiště, jehož neúplný obsah nemá smysl zachovat, například archiv, jej místo dokončení zahodí.
+     *
+     * @throws IOException pokud úložiště nelze uzavřít.
+     */
+    default void abort() throws IOException {
+        close();
+    }
+
+    /**
+     * Údaje o uloženém obrázku.
+     *
+     * @param sha256  otisk obsahu SHA-256 v šestnáctkovém zápisu.
+     * @param size    velikost obrázku v bajtech.
+     * @param written počet bajtů skutečně zapsaných na disk (0, pokud stejný obsah již byl uložen).
+     */
+    record StoredImage(String sha256, long size, long written) {
+    }
+}
@@ -0,0 +1,44 @@
+package cz.xlisto.znacky;
+
+import java.util.Locale;
+
+/**
+ * Výčet OutputMode určuje, jakým způsobem ImageSaver ukládá stažené obrázky.
+ */
+public enum OutputMode {
+    /**
+     * Každý obrázek je uložen do cílové složky jako samostatný soubor pojmenovaný podle URL adresy.
+     */
+    DIRECTORY,
+    /**
+     * Obrázky jsou uloženy podle otisku obsahu SHA-256 (ContentAddressedStore). Stejný obsah je na disku
+     * jen jednou a soubory pojmenované podle URL adresy jsou na něj pevnými odkazy.
+     */
+    CONTENT_ADDRESSED,
+    /**
+     * Obrázky jsou zapsány přímo do archivu ZIP (ArchiveStore) spolu s indexem kódů, popisů a URL adres.
+     */
+    ZIP,
+    /**
+     * Obrázky jsou zapsány přímo do archivu TAR (ArchiveStore) spolu s indexem kódů, popisů a URL adres.
+     */
+    TAR;
+
+    /**
+     * Převede název režimu z příkazového řádku nebo konfigurace (například "content-addressed") na hodnotu výčtu.
+     *
+     * @param name název režimu.
+     * @return režim ukládání.
+     * @throws IllegalArgumentException pokud režim neexistuje.
+     */
+    public static OutputMode fromName(String name) {
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+
+    /**
+     * @return název režimu pro příkazový řádek a konfiguraci, například "content-addressed".
+     */
+    public String externalName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
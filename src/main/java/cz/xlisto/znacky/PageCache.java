@@ -0,0 +1,345 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Třída PageCache uchovává na disku načtené stránky katalogu spolu s výsledkem jejich parsování.
+ * <p>
+ * Pro každou URL adresu je uložen soubor s validátory HTTP odpovědi (ETag a Last-Modified),
+ * otiskem obsahu SHA-256 a položkami nalezenými na stránce. Při dalším načítání je stránka
+ * stažena podmíněným požadavkem a pokud se nezměnila (stav 304 nebo stejný otisk obsahu),
+ * jsou použity uložené položky bez opětovného parsování.
+ * <p>
+ * Celková velikost mezipaměti je omezena. Po překročení limitu jsou odstraněny nejdéle
+ * nepoužité stránky (LRU). Pořadí použití je při otevření mezipaměti obnoveno podle
+ * času poslední změny souborů.
+ * <p>
+ * Třída je bezpečná pro použití z více vláken. Zámek chrání jen pořadí použití a velikosti souborů,
+ * čtení a zápis souborů probíhá mimo něj, takže souběžně načítané stránky na sebe nečekají.
+ * Stránka je zapsána do dočasného souboru s jedinečným názvem a poté atomicky přesunuta,
+ * čtení tedy vždy vidí celý soubor, starý nebo nový.
+ */
+public class PageCache {
+    /**
+     * Výchozí složka mezipaměti stránek.
+     */
+    public static final String DEFAULT_DIRECTORY = "cache/pages";
+    /**
+     * Výchozí maximální velikost mezipaměti v bajtech.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final String SUFFIX = ".page";
+    private static final String TEMP_SUFFIX = ".tmp";
+    /**
+     * Označení formátu souboru na prvním řádku. Soubory v jiném formátu nejsou použity.
+     */
+    private static final String FORMAT = "#znacky-page 2";
+    private static final Logger logger = LoggerFactory.getLogger(PageCache.class);
+
+    /**
+     * Uložená stránka katalogu.
+     *
+     * @param url          URL adresa stránky.
+     * @param etag         hodnota hlavičky ETag, nebo prázdný řetězec.
+     * @param lastModified hodnota hlavičky Last-Modified, nebo prázdný řetězec.
+     * @param sha256       otisk obsahu stránky SHA-256 v šestnáctkovém zápisu.
+     * @param page         výsledek parsování stránky.
+     */
+    public record CachedPage(String url, String etag, String lastModified, String sha256, CatalogPage page) {
+    }
+
+    /**
+     * Složka mezipaměti.
+     */
+    private final Path directory;
+    /**
+     * Maximální velikost mezipaměti v bajtech.
+     */
+    private final long maxBytes;
+    /**
+     * Velikosti uložených souborů v pořadí od nejdéle nepoužitého, klíčem je název souboru.
+     * Přístup k této mapě a k totalBytes je synchronizován na této mapě.
+     */
+    private final LinkedHashMap<String, Long> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Celková velikost uložených souborů.
+     */
+    private long totalBytes;
+
+    /**
+     * Konstruktor třídy PageCache.
+     * <p>
+     * Vytvoří složku mezipaměti, pokud neexistuje, a načte velikosti již uložených stránek.
+     *
+     * @param directory složka mezipaměti.
+     * @param maxBytes  maximální velikost mezipaměti v bajtech.
+     */
+    public PageCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        try {
+            Files.createDirectories(directory);
+            // Dočasné soubory zápisu přerušeného ukončením aplikace
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+                for (Path temp : stream) {
+                    Files.deleteIfExists(temp);
+                }
+            }
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                stream.forEach(files::add);
+            }
+            // Obnovení pořadí použití podle času poslední změny
+            files.sort((a, b) -> lastModified(a).compareTo(lastModified(b)));
+            for (Path file : files) {
+                long size = Files.size(file);
+                sizes.put(file.getFileName().toString(), size);
+                totalBytes += size;
+            }
+        } catch (IOException e) {
+            logger.error("Chyba při otevírání mezipaměti stránek {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Vrátí uloženou stránku pro danou URL adresu.
+     *
+     * @param url URL adresa stránky.
+     * @return uložená stránka, nebo null, pokud stránka v mezipaměti není.
+     */
+    public CachedPage get(String url) {
+        String name = fileName(url);
+        synchronized (sizes) {
+            // Dotaz přes get() zároveň posune stránku na konec pořadí použití
+            if (sizes.get(name) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(name);
+        try {
+            CachedPage cached = read(file);
+            if (cached == null || !cached.url().equals(url)) {
+                return null;
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return cached;
+        } catch (NoSuchFileException e) {
+            // Stránku mezitím odstranilo jiné vlákno
+            forget(name);
+            return null;
+        } catch (IOException e) {
+            logger.warn("Chyba při čtení stránky z mezipaměti {}", e.getMessage());
+            forget(name);
+            delete(name);
+            return null;
+        }
+    }
+
+    /**
+     * Uloží stránku do mezipaměti a případně odstraní nejdéle nepoužité stránky.
+     *
+     * @param cached stránka k uložení.
+     */
+    public void put(CachedPage cached) {
+        String name = fileName(cached.url());
+        Path file = directory.resolve(name);
+        Path temp = directory.resolve(name + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        long size;
+        try {
+            write(temp, cached);
+            size = Files.size(temp);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Chyba při ukládání stránky do mezipaměti {}", e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException deleteError) {
+                e.addSuppressed(deleteError);
+            }
+            return;
+        }
+        List<String> evicted;
+        synchronized (sizes) {
+            Long previous = sizes.put(name, size);
+            totalBytes += size - (previous != null ? previous : 0);
+            evicted = evict();
+        }
+        for (String eldest : evicted) {
+            delete(eldest);
+        }
+    }
+
+    /**
+     * Vyřadí z pořadí použití nejdéle nepoužité stránky, dokud velikost mezipaměti nepřekračuje limit.
+     * Volá se se zámkem, soubory vyřazených stránek odstraní volající až po jeho uvolnění.
+     *
+     * @return názvy souborů vyřazených stránek.
+     */
+    private List<String> evict() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> iterator = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            evicted.add(eldest.getKey());
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+        return evicted;
+    }
+
+    /**
+     * Vyřadí stránku z pořadí použití.
+     *
+     * @param name název souboru stránky.
+     */
+    private void forget(String name) {
+        synchronized (sizes) {
+            Long size = sizes.remove(name);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+
+    /**
+     * Odstraní soubor stránky.
+     *
+     * @param name název souboru stránky.
+     */
+    private void delete(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            logger.warn("Chyba při odstraňování stránky z mezipaměti {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Zapíše stránku do souboru.
+     * <p>
+     * Formát souboru: označení formátu, URL, ETag, Last-Modified, otisk, URL další stránky, stránkování
+     * (hodnoty oddělené tabulátorem, nebo prázdný řádek) a poté jedna položka na řádek.
+     *
+     * @param file   cílový soubor.
+     * @param cached stránka k uložení.
+     * @throws IOException pokud dojde k chybě při zápisu.
+     */
+    private static void write(Path file, CachedPage cached) throws IOException {
+        CatalogPage page = cached.page();
+        Pagination pagination = page.pagination();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(FORMAT);
+            writer.newLine();
+            writer.write(cached.url());
+            writer.newLine();
+            writer.write(clean(cached.etag()));
+            writer.newLine();
+            writer.write(clean(cached.lastModified()));
+            writer.newLine();
+            writer.write(cached.sha256());
+            writer.newLine();
+            writer.write(page.nextUrl() != null ? page.nextUrl() : "");
+            writer.newLine();
+            if (pagination != null) {
+                writer.write(pagination.getTemplate() + "\t" + pagination.getParam() + "\t" + pagination.getCurrent()
+                        + "\t" + pagination.getStep() + "\t" + pagination.getLast());
+            }
+            writer.newLine();
+            for (SignEntry entry : page.entries()) {
+                writer.write(clean(entry.code()) + "\t" + clean(entry.description()) + "\t" + clean(entry.url()));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Načte stránku ze souboru.
+     *
+     * @param file soubor se stránkou.
+     * @return načtená stránka, nebo null, pokud soubor nemá očekávaný formát.
+     * @throws IOException pokud dojde k chybě při čtení.
+     */
+    private static CachedPage read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            if (!FORMAT.equals(reader.readLine())) {
+                return null;
+            }
+            String url = reader.readLine();
+            String etag = reader.readLine();
+            String lastModified = reader.readLine();
+            String sha256 = reader.readLine();
+            String nextUrl = reader.readLine();
+            String paginationLine = reader.readLine();
+            if (paginationLine == null) {
+                return null;
+            }
+            Pagination pagination = null;
+            if (!paginationLine.isEmpty()) {
+                String[] parts = paginationLine.split("\t");
+                pagination = Pagination.of(parts[0], parts[1], Long.parseLong(parts[2]),
+                        Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+            }
+            List<SignEntry> entries = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3) {
+                    entries.add(new SignEntry(parts[0], parts[1], parts[2]));
+                }
+            }
+            CatalogPage page = new CatalogPage(Collections.unmodifiableList(entries), nextUrl.isEmpty() ? null : nextUrl, pagination);
+            return new CachedPage(url, etag, lastModified, sha256, page);
+        } catch (RuntimeException e) {
+            throw new IOException("Neplatný soubor mezipaměti " + file, e);
+        }
+    }
+
+    /**
+     * Vrátí název souboru mezipaměti pro danou URL adresu.
+     *
+     * @param url URL adresa stránky.
+     * @return otisk SHA-256 URL adresy s příponou.
+     */
+    private static String fileName(String url) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + SUFFIX;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static String clean(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,246 @@
+package cz.xlisto.znacky;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Třída Pagination popisuje stránkování katalogu pomocí číselného parametru v URL adrese.
+ * <p>
+ * Katalog je rozdělen na stránky, které se liší pouze hodnotou jednoho parametru (posunu) v URL.
+ * Z odkazu "další :" a z ostatních odkazů na první stránce lze zjistit název tohoto parametru,
+ * velikost kroku mezi stránkami a posun poslední známé stránky. Díky tomu je možné sestavit
+ * URL adresy všech stránek předem a načíst je souběžně.
+ */
+public final class Pagination {
+    /**
+     * Vzor pro vyhledání číselných parametrů v dotazové části URL adresy.
+     */
+    private static final Pattern NUMERIC_PARAM = Pattern.compile("[?&]([^=&#]+)=(\\d+)");
+
+    /**
+     * URL adresa další stránky, která slouží jako šablona pro sestavení adres ostatních stránek.
+     */
+    private final String template;
+    /**
+     * Název parametru, který určuje posun stránky.
+     */
+    private final String param;
+    /**
+     * Posun stránky, ze které bylo stránkování rozpoznáno.
+     */
+    private final long current;
+    /**
+     * Rozdíl posunu mezi dvěma po sobě jdoucími stránkami.
+     */
+    private final long step;
+    /**
+     * Posun poslední stránky, na kterou vede některý z odkazů.
+     */
+    private final long last;
+
+    private Pagination(String template, String param, long current, long step, long last) {
+        this.template = template;
+        this.param = param;
+        this.current = current;
+        this.step = step;
+        this.last = last;
+    }
+
+    /**
+     * Obnoví stránkování z dříve uložených hodnot, například z mezipaměti stránek.
+     *
+     * @param template URL adresa další stránky sloužící jako šablona.
+     * @param param    název parametru posunu.
+     * @param current  posun stránky, ze které bylo stránkování rozpoznáno.
+     * @param step     rozdíl posunu mezi stránkami.
+     * @param last     posun poslední známé stránky.
+     * @return stránkování.
+     */
+    static Pagination of(String template, String param, long current, long step, long last) {
+        return new Pagination(template, param, current, step, last);
+    }
+
+    /**
+     * Rozpozná stránkování z parsované stránky katalogu.
+     * <p>
+     * Metoda provede následující kroky:
+     * <ol>
+     *   <li>V URL adrese další stránky vyhledá číselné parametry, jejichž hodnota se liší od aktuální stránky.</li>
+     *   <li>Z rozdílu hodnot určí krok mezi stránkami.</li>
+     *   <li>Projde všechny odkazy na stránce se stejnou cestou a najde nejvyšší posun odpovídající kroku.</li>
+     *   <li>Za parametr posunu zvolí ten, který má mezi odkazy nejvíce různých hodnot.</li>
+     * </ol>
+     *
+     * @param doc     parsovaná stránka katalogu.
+     * @param pageUrl URL adresa parsované stránky.
+     * @param nextUrl URL adresa další stránky z odkazu "další :".
+     * @param baseUrl základní URL pro sestavení absolutních adres odkazů.
+     * @return rozpoznané stránkování, nebo null, pokud v odkazu není číselný parametr posunu.
+     */
+    public static Pagination detect(Document doc, String pageUrl, String nextUrl, String baseUrl) {
+        List<String> hrefs = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            hrefs.add(link.attr("href"));
+        }
+        return detect(hrefs, pageUrl, nextUrl, baseUrl);
+    }
+
+    /**
+     * Rozpozná stránkování ze seznamu odkazů nalezených na stránce katalogu.
+     * <p>
+     * Varianta metody pro streamované parsování, při kterém není k dispozici celý dokument.
+     *
+     * @param hrefs   hodnoty atributu href odkazů nalezených na stránce.
+     * @param pageUrl URL adresa parsované stránky.
+     * @param nextUrl URL adresa další stránky z odkazu "další :".
+     * @param baseUrl základní URL pro sestavení absolutních adres odkazů.
+     * @return rozpoznané stránkování, nebo null, pokud v odkazu není číselný parametr posunu.
+     */
+    public static Pagination detect(List<String> hrefs, String pageUrl, String nextUrl, String baseUrl) {
+        String path = pathOf(nextUrl);
+        List<String> links = new ArrayList<>();
+        for (String value : hrefs) {
+            String href = ParserHTML.resolveHref(value, baseUrl);
+            if (path.equals(pathOf(href))) {
+                links.add(href);
+            }
+        }
+
+        // Parametr posunu je ten, který má mezi odkazy na stránce nejvíce různých hodnot
+        Pagination best = null;
+        int bestDistinct = 0;
+        Matcher matcher = NUMERIC_PARAM.matcher(nextUrl);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            long next = Long.parseLong(matcher.group(2));
+            Long value = paramValue(pageUrl, name);
+            long current = value != null ? value : 0;
+            long step = next - current;
+            if (step <= 0) {
+                continue;
+            }
+
+            // Nejvyšší posun ze všech odkazů se stejnou cestou
+            long last = next;
+            Set<Long> distinct = new HashSet<>();
+            for (String href : links) {
+                Long offset = paramValue(href, name);
+                if (offset != null && (offset - current) % step == 0) {
+                    distinct.add(offset);
+                    last = Math.max(last, offset);
+                }
+            }
+            if (best == null || distinct.size() > bestDistinct) {
+                best = new Pagination(nextUrl, name, current, step, last);
+                bestDistinct = distinct.size();
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Sestaví URL adresu stránky s daným posunem.
+     *
+     * @param offset posun stránky.
+     * @return URL adresa stránky.
+     */
+    public String urlFor(long offset) {
+        Matcher matcher = Pattern.compile("([?&]" + Pattern.quote(param) + "=)\\d+").matcher(template);
+        return matcher.replaceFirst("$1" + offset);
+    }
+
+    /**
+     * Sestaví URL adresu stránky, která následuje za danou stránkou.
+     *
+     * @param pageUrl URL adresa stránky.
+     * @return URL adresa následující stránky, nebo null, pokud adresa neobsahuje parametr posunu.
+     */
+    public String urlAfter(String pageUrl) {
+        Long offset = paramValue(pageUrl, param);
+        return offset != null ? urlFor(offset + step) : null;
+    }
+
+    /**
+     * Vrátí URL adresy všech známých stránek, které následují za stránkou s daným posunem.
+     *
+     * @param offset posun stránky, za kterou adresy začínají (sama stránka není zahrnuta).
+     * @return seznam URL adres v pořadí katalogu.
+     */
+    public List<String> urlsAfter(long offset) {
+        List<String> urls = new ArrayList<>();
+        for (long o = offset + step; o <= last; o += step) {
+            urls.add(urlFor(o));
+        }
+        return urls;
+    }
+
+    /**
+     * @return URL adresa sloužící jako šablona pro sestavení adres stránek.
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return název parametru, který určuje posun stránky.
+     */
+    public String getParam() {
+        return param;
+    }
+
+    /**
+     * @return posun stránky, ze které bylo stránkování rozpoznáno.
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return rozdíl posunu mezi dvěma po sobě jdoucími stránkami.
+     */
+    public long getStep() {
+        return step;
+    }
+
+    /**
+     * @return posun poslední stránky, na kterou vede některý z odkazů.
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * Vrátí hodnotu číselného parametru z URL adresy.
+     *
+     * @param url  URL adresa.
+     * @param name název parametru.
+     * @return hodnota parametru, nebo null, pokud parametr v adrese není.
+     */
+    private static Long paramValue(String url, String name) {
+        Matcher matcher = NUMERIC_PARAM.matcher(url);
+        while (matcher.find()) {
+            if (matcher.group(1).equals(name)) {
+                return Long.parseLong(matcher.group(2));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Vrátí URL adresu bez dotazové části.
+     *
+     * @param url URL adresa.
+     * @return část URL adresy před znakem '?'.
+     */
+    private static String pathOf(String url) {
+        int query = url.indexOf('?');
+        return query >= 0 ? url.substring(0, query) : url;
+    }
+}
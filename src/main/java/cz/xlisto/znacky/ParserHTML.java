@@ -1,12 +1,18 @@
 package cz.xlisto.znacky;
 
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 /**
  * Třída ParserHTML slouží k parsování HTML obsahu a extrahování URL adres z &lt;img&gt; tagů.
  * <p>
@@ -17,41 +23,63 @@ import org.jsoup.select.Elements;
  * <ul>
  *   <li>Parsování HTML obsahu pomocí metody parseHTML.</li>
  *   <li>Získání seznamu URL adres nalezených v &lt;img&gt; tagách pomocí metody getUrlList.</li>
- *   <li>Aktualizace průběhu načítání voláním metody updateProgress na instanci ZnackyController.</li>
- *   <li>Vyhledání odkazu na další stránku pomocí textu "další :".</li>
+ *   <li>Započítání položek nalezených metodou parseHTML do průběhu načítání (ProgressReporter).</li>
+ *   <li>Vyhledání odkazu na další stránku podle pravidel zdroje katalogu (CatalogSource).</li>
+ *   <li>Parsování jednotlivých stránek pro souběžné načítání pomocí metody parsePage.</li>
+ *   <li>Streamované parsování přímo z proudu dat bez sestavení dokumentu pomocí třídy StreamingExtractor.</li>
  * </ul>
  * <p>
  * Třída využívá následující knihovny:
  * <ul>
  *   <li>org.jsoup.Jsoup pro parsování HTML obsahu.</li>
- *   <li>javafx.collections.FXCollections a javafx.collections.ObservableList pro práci se seznamem URL adres.</li>
  * </ul>
  */
 public class ParserHTML {
     /**
-     * Reference na instanci třídy ZnackyController, která je použita pro aktualizaci průběhu načítání.
+     * Reporter průběhu, do kterého jsou započítávány položky přidané do seznamu urlList, nebo null,
+     * pokud průběh není sledován. Položky stránek vrácených metodou parsePage započítá až
+     * WebLoader.merge po vyřazení duplicit.
+     * <p>
+     * Parser pouze zvyšuje čítač reporteru. Předání průběhu do uživatelského rozhraní řídí reporter
+     * ve vlastním vlákně, takže parsování nezahlcuje frontu událostí JavaFX.
      */
-    private final ZnackyController znackyController;
+    private final ProgressReporter progress;
+    /**
+     * Zdroj katalogu, jehož pravidla určují, které obrázky jsou značkami a který odkaz vede na další stránku.
+     */
+    private final CatalogSource source;
 
     /**
      * Seznam všech nalezených URL adres.
      * <p>
      * Tato proměnná obsahuje seznam URL adres, které byly nalezeny v &lt;img&gt; tagách
-     * během parsování HTML obsahu. Seznam je implementován jako ObservableList, což
-     * umožňuje sledování změn v seznamu.
+     * během parsování HTML obsahu. Seznam nezávisí na JavaFX, aby bylo možné parser použít
+     * i v režimu bez grafického rozhraní. Pro zobrazení v ListView jej obalí kontroler.
      */
-    private final ObservableList<String[]> urlList = FXCollections.observableArrayList();
+    private final List<SignEntry> urlList = new ArrayList<>();
 
     /**
      * Konstruktor třídy ParserHTML.
      * <p>
-     * Inicializuje instanci třídy ParserHTML s referencí na instanci ZnackyController.
-     * Tato reference je použita pro aktualizaci průběhu načítání během parsování HTML obsahu.
+     * Inicializuje instanci třídy ParserHTML s reporterem průběhu.
+     * Do reporteru jsou během parsování HTML obsahu započítávány nalezené položky.
+     *
+     * @param progress reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     */
+    public ParserHTML(ProgressReporter progress) {
+        this(progress, CatalogSource.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy ParserHTML pro zadaný zdroj katalogu.
      *
-     * @param znackyController instance třídy ZnackyController, která je použita pro aktualizaci průběhu načítání.
+     * @param progress reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     * @param source   zdroj katalogu, podle jehož pravidel je stránka parsována.
      */
-    public ParserHTML(ZnackyController znackyController) {
-        this.znackyController = znackyController;
+    public ParserHTML(ProgressReporter progress, CatalogSource source) {
+        this.progress = progress;
+        this.source = source;
+        this.baseUrl = source.baseUrl();
     }
 
     /**
@@ -59,8 +87,9 @@ public class ParserHTML {
      * <p>
      * Tato proměnná obsahuje základní URL adresu, která je použita jako výchozí bod
      * pro kombinaci s relativními cestami nalezenými během parsování HTML obsahu.
+     * Výchozí hodnotu určuje zdroj katalogu.
      */
-    String baseUrl = "http://www.celysvet.cz/";
+    String baseUrl;
 
     /**
      * Metoda pro parsování HTML obsahu a extrahování URL adres z &lt;img&gt; tagů.
@@ -73,50 +102,206 @@ public class ParserHTML {
      *   <li>Parsování HTML obsahu pomocí knihovny Jsoup.</li>
      *   <li>Výběr všech &lt;img&gt; tagů a extrahování hodnot atributu src.</li>
      *   <li>Přidání nalezených URL adres do seznamu urlList.</li>
-     *   <li>Aktualizace průběhu načítání voláním metody updateProgress na instanci ZnackyController.</li>
-     *   <li>Vyhledání odkazu na další stránku pomocí textu "další :".</li>
+     *   <li>Započítání nalezených položek do průběhu načítání (ProgressReporter).</li>
+     *   <li>Vyhledání odkazu na další stránku podle pravidel zdroje katalogu (u výchozího zdroje text "další :").</li>
      *   <li>Pokud je nalezen odkaz na další stránku, vrátí jeho URL adresu, jinak vrátí null.</li>
      * </ol>
      */
     public String parseHTML(String html) {
         // Parsování HTML obsahu
         Document doc = Jsoup.parse(html);
+        return extract(doc, urlList, baseUrl);
+    }
 
+    /**
+     * Metoda pro parsování jedné stránky katalogu bez zápisu do sdíleného seznamu urlList.
+     * <p>
+     * Metoda je určena pro souběžné načítání stránek. Nalezené položky vrací v instanci
+     * CatalogPage, takže je lze po dokončení všech stránek sloučit ve správném pořadí.
+     * Součástí výsledku je i rozpoznané stránkování, pokud je na stránce k dispozici.
+     *
+     * @param html    HTML obsah, který má být parsován.
+     * @param pageUrl URL adresa parsované stránky, slouží k rozpoznání stránkování.
+     * @return výsledek parsování stránky.
+     */
+    public CatalogPage parsePage(String html, String pageUrl) {
+        Document doc = Jsoup.parse(html);
+        List<SignEntry> entries = new ArrayList<>();
+        String base = baseOf(pageUrl);
+        String nextUrl = extract(doc, entries, base);
+        Pagination pagination = nextUrl != null ? Pagination.detect(doc, pageUrl, nextUrl, base) : null;
+        return new CatalogPage(entries, nextUrl, pagination);
+    }
+
+    /**
+     * Metoda pro streamované parsování stránky přímo z proudu dat.
+     * <p>
+     * Stránka není načtena do paměti ani převedena na dokument Jsoup. Obrázky jsou přidávány do
+     * seznamu urlList postupně, jak jsou v proudu nalezeny.
+     *
+     * @param in      proud dat stránky.
+     * @param charset znaková sada z hlavičky odpovědi, nebo null, pokud ji má parser zjistit ze stránky.
+     * @param pageUrl URL adresa parsované stránky, slouží k rozpoznání stránkování.
+     * @return URL adresa další stránky k načtení, pokud existuje, jinak null.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    public String parseHTML(InputStream in, Charset charset, String pageUrl) throws IOException {
+        return extract(in, charset, pageUrl, urlList).nextUrl();
+    }
+
+    /**
+     * Metoda pro streamované parsování jedné stránky katalogu bez zápisu do sdíleného seznamu urlList.
+     * <p>
+     * Streamovaná varianta metody parsePage, která čte stránku přímo z proudu dat.
+     *
+     * @param in      proud dat stránky.
+     * @param charset znaková sada z hlavičky odpovědi, nebo null, pokud ji má parser zjistit ze stránky.
+     * @param pageUrl URL adresa parsované stránky, slouží k rozpoznání stránkování.
+     * @return výsledek parsování stránky.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    public CatalogPage parsePage(InputStream in, Charset charset, String pageUrl) throws IOException {
+        return extract(in, charset, pageUrl, new ArrayList<>());
+    }
+
+    /**
+     * Projde stránku z proudu dat pomocí třídy StreamingExtractor.
+     * <p>
+     * Pro rozpoznání stránkování jsou uchovávány pouze odkazy s dotazovou částí, nikoli celá stránka.
+     *
+     * @param in      proud dat stránky.
+     * @param charset znaková sada z hlavičky odpovědi, nebo null.
+     * @param pageUrl URL adresa parsované stránky.
+     * @param target  seznam, do kterého jsou přidávány nalezené položky.
+     * @return výsledek parsování stránky.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    private CatalogPage extract(InputStream in, Charset charset, String pageUrl, List<SignEntry> target) throws IOException {
+        List<String> hrefs = new ArrayList<>();
+        String[] nextUrl = new String[1];
+        String base = baseOf(pageUrl);
+        StreamingExtractor.extract(in, charset, new StreamingExtractor.Handler() {
+            @Override
+            public void onImage(String alt, String src) {
+                addImage(alt, src, target);
+            }
+
+            @Override
+            public void onLink(String href, String text) {
+                if (href.indexOf('?') >= 0) {
+                    hrefs.add(href);
+                }
+                if (nextUrl[0] == null && source.isNextLink(text)) {
+                    nextUrl[0] = resolveHref(href, base);
+                }
+            }
+        });
+        Pagination pagination = nextUrl[0] != null ? Pagination.detect(hrefs, pageUrl, nextUrl[0], base) : null;
+        return new CatalogPage(target, nextUrl[0], pagination);
+    }
+
+    /**
+     * Vybere z dokumentu všechny &lt;img&gt; tagy, přidá je do cílového seznamu a vyhledá odkaz na další stránku.
+     *
+     * @param doc    parsovaný HTML dokument.
+     * @param target seznam, do kterého jsou přidávány nalezené položky.
+     * @param base   základní URL, ke které jsou připojovány relativní odkazy.
+     * @return URL adresa další stránky k načtení, pokud existuje, jinak null.
+     */
+    private String extract(Document doc, List<SignEntry> target, String base) {
         // Výběr všech <img> tagů
         Elements imgTags = doc.select("img");
 
-        // Přidání všech URL do ObservableList
+        // Přidání všech URL do seznamu
         // Pro každý <img> tag v seznamu imgTags:
-        // 1. Získá hodnotu atributu "alt" a odstraní z ní text "Dopravní značka:", poté ořízne bílé znaky.
-        // 2. Přidá do seznamu urlList nový řetězec obsahující formátovaný popis a URL adresu obrázku s nahrazením "low" za "hi".
-        // 3. Aktualizuje průběh načítání voláním metody updateProgress na instanci znackyController.
+        // 1. Vytvoří z atributů "alt" a "src" položku SignEntry s kódem značky, popisem a kanonickou URL.
+        // 2. Přidá položku do seznamu, pokud jde podle zdroje katalogu o značku.
+        // 3. Započítá položku do průběhu načítání.
 
         for (Element imgTag : imgTags) {
-            String description = imgTag.attr("alt").replace("Dopravní značka:", "").trim();
-            urlList.add(new String[]{formatText(description), imgTag.attr("src").replace("low", "hi")});
-            // Aktualizace průběhu
-            znackyController.updateProgress();
+            addImage(imgTag.attr("alt"), imgTag.attr("src"), target);
         }
 
-        // Najde odkaz s textem "další :", pokud je, existuje další stránka
-        Element nextLink = doc.selectFirst("a:contains(další :)");
-        if (nextLink != null) {
-            // Získání hodnoty atributu href a nahrazení ampersand entity
-            String href = nextLink.attr("href").replace("&amp;", "&");
-
-            // Odstranění nepotřebných částí URL (././)
-            if (href.startsWith("././")) {
-                href = href.substring(4);  // Odstraní "././" z začátku řetězce
+        // Najde odkaz na další stránku podle pravidel zdroje, pokud je, existuje další stránka
+        for (Element link : doc.select("a[href]")) {
+            if (source.isNextLink(link.text().toLowerCase(Locale.ROOT))) {
+                return resolveHref(link.attr("href"), base);
             }
+        }
+        return null;
+    }
 
-            // Kombinace základní URL a upravené cesty
-            return baseUrl + href;
-        } else {
+    /**
+     * Přidá nalezený obrázek do cílového seznamu a při přidání do seznamu urlList aktualizuje průběh načítání.
+     * <p>
+     * Obrázky, které podle zdroje katalogu nejsou značkami, jsou přeskočeny.
+     *
+     * @param alt    hodnota atributu alt &lt;img&gt; tagu.
+     * @param src    hodnota atributu src &lt;img&gt; tagu.
+     * @param target seznam, do kterého je položka přidána.
+     */
+    private void addImage(String alt, String src, List<SignEntry> target) {
+        SignEntry entry = source.toEntry(alt, src);
+        if (entry == null) {
+            return;
+        }
+        target.add(entry);
+        // Položky stránek (parsePage) mohou být duplicitní, započítá je až WebLoader.merge
+        if (progress != null && target == urlList) {
+            progress.addItem();
+        }
+    }
 
-            return null;
+    /**
+     * Určí základní URL pro relativní odkazy parsované stránky.
+     * <p>
+     * Základní URL je odvozena ze schématu a serveru parsované stránky, aby bylo možné katalog
+     * načítat i z jiného serveru (například z lokální náhrady katalogu při měření výkonu).
+     * Pokud adresu stránky nelze rozpoznat, použije se výchozí základní URL baseUrl.
+     *
+     * @param pageUrl URL adresa parsované stránky, nebo null.
+     * @return základní URL končící lomítkem.
+     */
+    private String baseOf(String pageUrl) {
+        if (pageUrl == null) {
+            return baseUrl;
+        }
+        try {
+            URI uri = URI.create(pageUrl);
+            if (uri.getScheme() == null || uri.getRawAuthority() == null) {
+                return baseUrl;
+            }
+            return uri.getScheme() + "://" + uri.getRawAuthority() + "/";
+        } catch (IllegalArgumentException e) {
+            return baseUrl;
         }
     }
 
+    /**
+     * Převede hodnotu atributu href odkazu v katalogu na absolutní URL adresu.
+     * <p>
+     * Hodnota atributu již musí mít dekódované entity (Jsoup i StreamingExtractor je dekódují),
+     * entity se proto znovu nedekódují.
+     *
+     * @param href    hodnota atributu href s dekódovanými entitami.
+     * @param baseUrl základní URL, ke které je relativní cesta připojena.
+     * @return absolutní URL adresa odkazu.
+     */
+    static String resolveHref(String href, String baseUrl) {
+        // Odstranění nepotřebných částí URL (././)
+        if (href.startsWith("././")) {
+            href = href.substring(4);  // Odstraní "././" z začátku řetězce
+        } else if (href.startsWith("/")) {
+            href = href.substring(1);
+        }
+
+        if (href.startsWith("http://") || href.startsWith("https://")) {
+            return href;
+        }
+
+        // Kombinace základní URL a upravené cesty
+        return baseUrl + href;
+    }
 
     /**
      * Formátuje vstupní text odstraněním mezer z části kódu a kombinací s popisem.
@@ -127,6 +312,9 @@ public class ParserHTML {
     public static String formatText(String input) {
         // Rozdělení vstupního řetězce na kód a popis
         String[] parts = input.split(" ", 2);
+        if (parts.length < 2) {
+            return input;
+        }
         String code = parts[0].replace(" ", "");
         String description = parts[1];
 
@@ -138,9 +326,9 @@ public class ParserHTML {
     /**
      * Metoda pro získání seznamu URL adres nalezených v &lt;img&gt; tagách.
      *
-     * @return ObservableList obsahující URL adresy nalezené v &lt;img&gt; tagách.
+     * @return seznam položek nalezených v &lt;img&gt; tagách.
      */
-    public ObservableList<String[]> getUrlList() {
+    public List<SignEntry> getUrlList() {
         return urlList;
     }
 }
@@ -0,0 +1,279 @@
+package cz.xlisto.znacky;
+
+import java.net.http.HttpTimeoutException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Třída PhaseMetrics sbírá metriky jedné fáze běhu, například načítání stránek nebo stahování obrázků.
+ * <p>
+ * Sleduje počet dokončených operací, počet zpracovaných bajtů, počet právě probíhajících operací,
+ * histogram doby operací a počty chyb podle příčiny. Záznam metrik je levný a neblokuje: čítače jsou
+ * LongAdder a histogram je pole atomických čítačů, takže souběžná vlákna nesoupeří o zámek.
+ * <p>
+ * Histogram má logaritmické koše po čtvrtinách mocnin dvou mikrosekund, percentily jsou tedy
+ * zaokrouhleny nahoru nejvýše o čtvrtinu své hodnoty. To stačí k odlišení, zda operace trvají
+ * jednotky, desítky nebo stovky milisekund, a histogram má pevnou velikost bez ohledu na počet operací.
+ * <p>
+ * Typické použití:
+ * <pre>{@code
+ * long start = metrics.begin();
+ * try {
+ *     ...
+ *     metrics.end(start, bytes);
+ * } catch (IOException e) {
+ *     metrics.failed(e);
+ *     throw e;
+ * }
+ * }</pre>
+ */
+public class PhaseMetrics implements PhaseMetricsMXBean {
+    /**
+     * Počet lineárních košů histogramu v každé mocnině dvou.
+     */
+    private static final int SUB_BUCKETS = 4;
+    /**
+     * Počet košů histogramu, pokrývá celý rozsah hodnoty long v mikrosekundách.
+     */
+    private static final int BUCKETS = 256;
+
+    /**
+     * Název fáze.
+     */
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(Long::max, 0);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * Histogram doby operací v mikrosekundách.
+     */
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    /**
+     * Počty chyb podle příčiny.
+     */
+    private final Map<String, LongAdder> errorsByCause = new ConcurrentHashMap<>();
+
+    /**
+     * Konstruktor třídy PhaseMetrics.
+     *
+     * @param name název fáze.
+     */
+    public PhaseMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return název fáze.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Zaznamená začátek operace.
+     *
+     * @return čas začátku pro metodu end.
+     */
+    public long begin() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Zaznamená úspěšné dokončení operace, jejíž doba je měřena od začátku.
+     *
+     * @param start čas začátku vrácený metodou begin.
+     * @param size  počet zpracovaných bajtů.
+     */
+    public void end(long start, long size) {
+        complete(size, System.nanoTime() - start);
+    }
+
+    /**
+     * Zaznamená úspěšné dokončení operace se zadanou dobou.
+     * <p>
+     * Používá se tam, kde se fáze prolínají, například při parsování stránky přímo z proudu dat,
+     * a doba fáze je proto spočítána jinak než jako čas od začátku operace.
+     *
+     * @param size  počet zpracovaných bajtů.
+     * @param nanos doba operace v nanosekundách.
+     */
+    public void complete(long size, long nanos) {
+        inFlight.decrementAndGet();
+        count.increment();
+        bytes.add(size);
+        long micros = Math.max(0, nanos / 1000);
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+        histogram.incrementAndGet(bucket(micros));
+    }
+
+    /**
+     * Zaznamená operaci, která skončila chybou.
+     *
+     * @param cause příčina chyby.
+     */
+    public void failed(Throwable cause) {
+        inFlight.decrementAndGet();
+        errors.increment();
+        errorsByCause.computeIfAbsent(causeName(cause), key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Zaznamená operaci, která byla ukončena bez výsledku kvůli chybě v jiné fázi.
+     * <p>
+     * Sníží pouze počet probíhajících operací, chyba je započítána fázi, ve které nastala.
+     */
+    public void abandon() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Vynuluje metriky. Probíhající operace zůstávají započítány.
+     */
+    public void reset() {
+        count.reset();
+        errors.reset();
+        bytes.reset();
+        totalMicros.reset();
+        maxMicros.reset();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        errorsByCause.clear();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long operations = count.sum();
+        return operations == 0 ? 0 : totalMicros.sum() / 1000.0 / operations;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return percentileMillis(0.50);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentileMillis(0.90);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentileMillis(0.99);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByCause() {
+        Map<String, Long> result = new TreeMap<>();
+        errorsByCause.forEach((cause, adder) -> result.put(cause, adder.sum()));
+        return result;
+    }
+
+    /**
+     * Vrátí percentil doby operace z histogramu jako horní mez koše, do kterého percentil padne.
+     *
+     * @param quantile požadovaný kvantil v rozsahu 0 až 1.
+     * @return percentil v milisekundách.
+     */
+    public double percentileMillis(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = histogram.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), maxMicros.get()) / 1000.0;
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Vrátí číslo koše histogramu pro danou dobu.
+     *
+     * @param micros doba v mikrosekundách.
+     * @return číslo koše.
+     */
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - 2) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Vrátí největší dobu, která patří do daného koše histogramu.
+     *
+     * @param bucket číslo koše.
+     * @return horní mez koše v mikrosekundách.
+     */
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + 2;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 2)) - 1;
+    }
+
+    /**
+     * Odvodí z výjimky název příčiny chyby pro počty chyb podle příčiny.
+     *
+     * @param cause výjimka.
+     * @return název příčiny, například "HTTP 503".
+     */
+    static String causeName(Throwable cause) {
+        if (cause instanceof HttpStatusException status) {
+            return "HTTP " + status.getStatusCode();
+        }
+        if (cause instanceof HttpTimeoutException) {
+            return "timeout";
+        }
+        return cause.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,61 @@
+package cz.xlisto.znacky;
+
+import java.util.Map;
+
+/**
+ * Rozhraní PhaseMetricsMXBean zpřístupňuje metriky jedné fáze běhu (PhaseMetrics) přes JMX.
+ * <p>
+ * Metriky lze sledovat například nástrojem JConsole nebo VisualVM pod názvem
+ * {@code cz.xlisto.znacky:type=Phase,name=<fáze>}.
+ */
+public interface PhaseMetricsMXBean {
+    /**
+     * @return počet úspěšně dokončených operací.
+     */
+    long getCount();
+
+    /**
+     * @return počet operací, které skončily chybou.
+     */
+    long getErrors();
+
+    /**
+     * @return celkový počet zpracovaných bajtů.
+     */
+    long getBytes();
+
+    /**
+     * @return počet právě probíhajících operací.
+     */
+    int getInFlight();
+
+    /**
+     * @return průměrná doba operace v milisekundách.
+     */
+    double getMeanMillis();
+
+    /**
+     * @return medián doby operace v milisekundách.
+     */
+    double getP50Millis();
+
+    /**
+     * @return 90. percentil doby operace v milisekundách.
+     */
+    double getP90Millis();
+
+    /**
+     * @return 99. percentil doby operace v milisekundách.
+     */
+    double getP99Millis();
+
+    /**
+     * @return nejdelší doba operace v milisekundách.
+     */
+    double getMaxMillis();
+
+    /**
+     * @return počty chyb podle příčiny, například "HTTP 503" nebo "HttpTimeoutException".
+     */
+    Map<String, Long> getErrorsByCause();
+}
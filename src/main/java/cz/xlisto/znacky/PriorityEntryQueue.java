@@ -0,0 +1,318 @@
+package cz.xlisto.znacky;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Třída PriorityEntryQueue je fronta položek čekajících na stažení, ve které mohou vybrané položky
+ * předběhnout ostatní.
+ * <p>
+ * Fronta má tři úrovně (Priority). Metoda take vždy vrátí nejstarší položku nejvyšší neprázdné úrovně,
+ * takže položky vybrané uživatelem jsou staženy dříve než položky zobrazené v seznamu a ty dříve než
+ * zbytek katalogu. Běžná úroveň je omezená a metoda put na ni čeká stejně jako na plnou
+ * ArrayBlockingQueue. Úroveň zobrazených položek je při každém zařazení nahrazena (zobrazují se jiné
+ * položky, dříve zobrazené již přednost nemají), takže nikdy není větší než jeden výřez seznamu.
+ * Úroveň vybraných položek plní jen výslovný výběr uživatele.
+ * <p>
+ * Přednostně zařazená položka je vrácena jen jednou. Fronta si u ní pamatuje stav (čeká nebo již
+ * byla vrácena), dokud ji nevyzvedne běžná úroveň: položka, která již byla vrácena, je pak přeskočena,
+ * a položka, která dosud čeká, je vrácena z běžné úrovně a z přednostní odebrána. Tím je stav
+ * zapomenut, takže počet pamatovaných položek odpovídá jen přednostně zařazeným položkám, ke kterým
+ * běžná úroveň ještě nedošla, nikoli velikosti katalogu.
+ * <p>
+ * Fronta nepozná položku, kterou již běžná úroveň vrátila; takovou položku by vrátila znovu.
+ * Volající (CatalogPipeline) proto již stahované položky přednostně nezařazuje.
+ * <p>
+ * Po uzavření metodou close fronta přednostní položky nepřijímá. Třída je bezpečná pro použití z více vláken.
+ */
+public class PriorityEntryQueue {
+    /**
+     * Úroveň přednosti položky.
+     */
+    public enum Priority {
+        /**
+         * Položky vybrané uživatelem.
+         */
+        SELECTED,
+        /**
+         * Položky zobrazené v seznamu.
+         */
+        VISIBLE,
+        /**
+         * Ostatní položky katalogu v pořadí katalogu.
+         */
+        NORMAL
+    }
+
+    /**
+     * Stav přednostně zařazené položky, ke které běžná úroveň dosud nedošla.
+     */
+    private enum State {
+        /**
+         * Položka čeká v úrovni SELECTED.
+         */
+        SELECTED,
+        /**
+         * Položka čeká v úrovni VISIBLE.
+         */
+        VISIBLE,
+        /**
+         * Položka již byla vrácena z přednostní úrovně.
+         */
+        DELIVERED
+    }
+
+    /**
+     * Kapacita běžné úrovně.
+     */
+    private final int capacity;
+    /**
+     * Fronty jednotlivých úrovní, indexované podle Priority.ordinal.
+     */
+    private final List<ArrayDeque<SignEntry>> lanes = new ArrayList<>();
+    /**
+     * Stav přednostně zařazených položek, ke kterým běžná úroveň dosud nedošla.
+     */
+    private final Map<SignEntry, State> states = new HashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    /**
+     * Zda byla fronta uzavřena.
+     */
+    private boolean closed;
+
+    /**
+     * Konstruktor třídy PriorityEntryQueue.
+     *
+     * @param capacity kapacita běžné úrovně.
+     */
+    public PriorityEntryQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Kapacita fronty musí být kladná: " + capacity);
+        }
+        this.capacity = capacity;
+        for (int i = 0; i < Priority.values().length; i++) {
+            lanes.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Vloží položku do běžné úrovně. Pokud je běžná úroveň plná, počká na volné místo.
+     *
+     * @param entry položka.
+     * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+     */
+    public void put(SignEntry entry) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            ArrayDeque<SignEntry> normal = lanes.get(Priority.NORMAL.ordinal());
+            while (normal.size() >= capacity) {
+                notFull.await();
+            }
+            normal.add(entry);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Vloží položku do běžné úrovně, pokud je v ní volné místo.
+     *
+     * @param entry položka.
+     * @return true, pokud byla položka vložena.
+     */
+    public boolean offer(SignEntry entry) {
+        lock.lock();
+        try {
+            ArrayDeque<SignEntry> normal = lanes.get(Priority.NORMAL.ordinal());
+            if (normal.size() >= capacity) {
+                return false;
+            }
+            normal.add(entry);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zařadí položky přednostně. Položky, které již byly přednostně vráceny, jsou vynechány.
+     * <p>
+     * Položky úrovně {@link Priority#SELECTED} jsou zařazeny před dříve vybrané položky, aby
+     * poslední výběr uživatele byl stažen jako první; zobrazená položka, která dosud čeká, je
+     * přesunuta mezi vybrané. Položky úrovně {@link Priority#VISIBLE} nahradí dosavadní obsah
+     * své úrovně: položky, které již nejsou zobrazené, ztratí přednost a stáhnou se v pořadí katalogu.
+     *
+     * @param entries  položky.
+     * @param priority úroveň přednosti, SELECTED nebo VISIBLE.
+     * @return počet nově zařazených položek, nebo -1, pokud je fronta uzavřena.
+     */
+    public int prioritize(Collection<SignEntry> entries, Priority priority) {
+        if (priority == Priority.NORMAL) {
+            throw new IllegalArgumentException("Přednostně lze zařadit jen položky úrovně SELECTED nebo VISIBLE");
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                return -1;
+            }
+            return priority == Priority.SELECTED ? select(entries) : show(entries);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zařadí vybrané položky na začátek úrovně SELECTED. Volá se se zámkem.
+     *
+     * @param entries vybrané položky.
+     * @return počet nově zařazených položek.
+     */
+    private int select(Collection<SignEntry> entries) {
+        ArrayDeque<SignEntry> selected = lanes.get(Priority.SELECTED.ordinal());
+        List<SignEntry> added = new ArrayList<>();
+        for (SignEntry entry : new LinkedHashSet<>(entries)) {
+            State state = states.get(entry);
+            if (state == State.SELECTED || state == State.DELIVERED) {
+                continue;
+            }
+            if (state == State.VISIBLE) {
+                // Zobrazená položka, která dosud nebyla stažena, byla nyní vybrána
+                lanes.get(Priority.VISIBLE.ordinal()).remove(entry);
+            }
+            states.put(entry, State.SELECTED);
+            added.add(entry);
+        }
+        for (int i = added.size() - 1; i >= 0; i--) {
+            selected.addFirst(added.get(i));
+        }
+        if (!added.isEmpty()) {
+            notEmpty.signalAll();
+        }
+        return added.size();
+    }
+
+    /**
+     * Nahradí obsah úrovně VISIBLE právě zobrazenými položkami. Volá se se zámkem.
+     *
+     * @param entries zobrazené položky.
+     * @return počet zobrazených položek, které v úrovni dosud nebyly.
+     */
+    private int show(Collection<SignEntry> entries) {
+        ArrayDeque<SignEntry> visible = lanes.get(Priority.VISIBLE.ordinal());
+        Set<SignEntry> shown = new LinkedHashSet<>(entries);
+        // Položky, které již nejsou zobrazené, se vrátí do pořadí katalogu
+        for (SignEntry entry : visible) {
+            if (!shown.contains(entry)) {
+                states.remove(entry);
+            }
+        }
+        visible.clear();
+        int added = 0;
+        for (SignEntry entry : shown) {
+            State state = states.get(entry);
+            if (state == State.SELECTED || state == State.DELIVERED) {
+                continue;
+            }
+            if (state == null) {
+                states.put(entry, State.VISIBLE);
+                added++;
+            }
+            visible.add(entry);
+        }
+        if (!visible.isEmpty()) {
+            notEmpty.signalAll();
+        }
+        return added;
+    }
+
+    /**
+     * Vyzvedne položku nejvyšší neprázdné úrovně. Pokud je fronta prázdná, počká na položku.
+     *
+     * @return položka.
+     * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+     */
+    public SignEntry take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                SignEntry entry = lanes.get(Priority.SELECTED.ordinal()).poll();
+                if (entry == null) {
+                    entry = lanes.get(Priority.VISIBLE.ordinal()).poll();
+                }
+                if (entry != null) {
+                    states.put(entry, State.DELIVERED);
+                    return entry;
+                }
+                entry = lanes.get(Priority.NORMAL.ordinal()).poll();
+                if (entry != null) {
+                    notFull.signal();
+                    // Běžná úroveň došla k položce, její stav již není potřeba
+                    State state = states.remove(entry);
+                    if (state == State.DELIVERED) {
+                        continue;
+                    }
+                    if (state == State.SELECTED) {
+                        lanes.get(Priority.SELECTED.ordinal()).remove(entry);
+                    } else if (state == State.VISIBLE) {
+                        lanes.get(Priority.VISIBLE.ordinal()).remove(entry);
+                    }
+                    return entry;
+                }
+                notEmpty.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Odebere z fronty všechny položky.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            for (ArrayDeque<SignEntry> lane : lanes) {
+                lane.clear();
+            }
+            states.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Uzavře frontu pro přednostní položky a vrátí přednostní položky, které v ní zůstaly.
+     * <p>
+     * Volá ji CatalogPipeline po skončení vláken stahování, aby položky zařazené těsně před
+     * jejich skončením nezůstaly nestažené.
+     *
+     * @return přednostní položky, které dosud nebyly vyzvednuty.
+     */
+    public List<SignEntry> close() {
+        lock.lock();
+        try {
+            closed = true;
+            List<SignEntry> remaining = new ArrayList<>(lanes.get(Priority.SELECTED.ordinal()));
+            remaining.addAll(lanes.get(Priority.VISIBLE.ordinal()));
+            lanes.get(Priority.SELECTED.ordinal()).clear();
+            lanes.get(Priority.VISIBLE.ordinal()).clear();
+            states.clear();
+            return remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package cz.xlisto.znacky;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Třída ProgressReporter počítá průběh načítání a stahování a v omezené frekvenci jej předává dál.
+ * <p>
+ * Vlákna, která stránky načítají nebo obrázky stahují, pouze zvyšují atomické čítače a nijak
+ * nezatěžují JavaFX Application Thread. Samostatné vlákno v pravidelném intervalu vytvoří
+ * snímek průběhu (Snapshot) a předá jej příjemci, nejvýše však N krát za sekundu a jen tehdy,
+ * pokud se průběh od posledního snímku změnil. Příjemce, který aktualizuje uživatelské rozhraní,
+ * tak posílá do fronty událostí JavaFX nejvýše N požadavků za sekundu bez ohledu na počet položek.
+ * <p>
+ * Stejnou třídu lze použít pro fázi načítání katalogu i pro fázi stahování obrázků.
+ */
+public class ProgressReporter {
+    /**
+     * Výchozí maximální počet předaných snímků za sekundu.
+     */
+    public static final int DEFAULT_UPDATES_PER_SECOND = 10;
+
+    /**
+     * Snímek průběhu v daném okamžiku.
+     *
+     * @param items          počet zpracovaných položek.
+     * @param pages          počet zpracovaných stránek.
+     * @param bytes          počet přenesených bajtů.
+     * @param failures       počet položek, které se nepodařilo zpracovat.
+     * @param elapsedMillis  doba od spuštění v milisekundách.
+     * @param itemsPerSecond průměrný počet položek za sekundu od spuštění.
+     * @param bytesPerSecond průměrný počet bajtů za sekundu od spuštění.
+     */
+    public record Snapshot(long items, long pages, long bytes, long failures, long elapsedMillis,
+                           double itemsPerSecond, double bytesPerSecond) {
+    }
+
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Příjemce snímků průběhu.
+     */
+    private final Consumer<Snapshot> sink;
+    /**
+     * Interval mezi snímky v milisekundách.
+     */
+    private final long intervalMillis;
+    /**
+     * Vlákno, které snímky vytváří, nebo null, pokud reporter neběží.
+     */
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> task;
+    /**
+     * Čas spuštění v nanosekundách.
+     */
+    private volatile long startNanos = System.nanoTime();
+    /**
+     * Součet čítačů při posledním předaném snímku, slouží k vynechání snímků beze změny.
+     */
+    private long lastVersion = -1;
+
+    /**
+     * Konstruktor třídy ProgressReporter.
+     *
+     * @param sink                 příjemce snímků průběhu, volaný z vlákna reporteru.
+     * @param maxUpdatesPerSecond  maximální počet předaných snímků za sekundu.
+     */
+    public ProgressReporter(Consumer<Snapshot> sink, int maxUpdatesPerSecond) {
+        this.sink = sink;
+        this.intervalMillis = Math.max(1, 1000 / Math.max(1, maxUpdatesPerSecond));
+    }
+
+    /**
+     * Spustí pravidelné předávání snímků průběhu a vynuluje čas spuštění.
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        task = scheduler.scheduleAtFixedRate(this::publish, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Zastaví předávání snímků a předá poslední snímek s konečným stavem.
+     */
+    public void stop() {
+        synchronized (this) {
+            if (scheduler != null) {
+                task.cancel(false);
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        }
+        publish();
+    }
+
+    /**
+     * Započítá zpracovanou položku.
+     */
+    public void addItem() {
+        items.incrementAndGet();
+    }
+
+    /**
+     * Započítá více zpracovaných položek najednou.
+     *
+     * @param count počet položek.
+     */
+    public void addItems(long count) {
+        items.addAndGet(count);
+    }
+
+    /**
+     * Započítá zpracovanou stránku.
+     */
+    public void addPage() {
+        pages.incrementAndGet();
+    }
+
+    /**
+     * Započítá přenesené bajty.
+     *
+     * @param count počet bajtů.
+     */
+    public void addBytes(long count) {
+        bytes.addAndGet(count);
+    }
+
+    /**
+     * Započítá položku, kterou se nepodařilo zpracovat.
+     */
+    public void addFailure() {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Vytvoří snímek aktuálního průběhu.
+     *
+     * @return snímek průběhu.
+     */
+    public Snapshot snapshot() {
+        long elapsed = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        long itemCount = items.get();
+        long byteCount = bytes.get();
+        return new Snapshot(itemCount, pages.get(), byteCount, failures.get(), elapsed,
+                itemCount * 1000.0 / elapsed, byteCount * 1000.0 / elapsed);
+    }
+
+    /**
+     * Vrátí posluchače stahování, který započítává uložené a přeskočené obrázky, jejich bajty a chyby.
+     *
+     * @return posluchač stahování napojený na tento reporter.
+     */
+    public DownloadListener asDownloadListener() {
+        return new DownloadListener() {
+            @Override
+            public void onCompleted(SignEntry item, File file, long size) {
+                addItem();
+                addBytes(size);
+            }
+
+            @Override
+            public void onSkipped(SignEntry item, File file) {
+                addItem();
+            }
+
+            @Override
+            public void onFailed(SignEntry item, Exception error) {
+                addFailure();
+            }
+        };
+    }
+
+    /**
+     * Předá snímek příjemci, pokud se průběh od posledního snímku změnil.
+     */
+    private synchronized void publish() {
+        Snapshot snapshot = snapshot();
+        long version = snapshot.items() + snapshot.pages() + snapshot.bytes() + snapshot.failures();
+        if (version == lastVersion) {
+            return;
+        }
+        lastVersion = version;
+        sink.accept(snapshot);
+    }
+}
@@ -0,0 +1,72 @@
+package cz.xlisto.znacky;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Třída RateLimiter omezuje počet požadavků za sekundu na jeden zdroj katalogu.
+ * <p>
+ * Požadavky jsou rozloženy rovnoměrně: každé volání metody acquire si rezervuje nejbližší volný
+ * časový úsek délky 1/rate sekundy a počká na jeho začátek. Limiter nepovoluje nárazové dávky
+ * požadavků, takže ani souběžné načítání více stránek nepřekročí nastavený počet požadavků za sekundu.
+ * <p>
+ * Třída je bezpečná pro použití z více vláken. Čekání probíhá mimo zámek, takže vlákno, které čeká
+ * na svůj úsek, neblokuje rezervaci úseků ostatním vláknům.
+ */
+public class RateLimiter {
+    /**
+     * Limiter, který počet požadavků neomezuje.
+     */
+    static final RateLimiter UNLIMITED = new RateLimiter(0);
+
+    /**
+     * Rozestup mezi požadavky v nanosekundách, nebo 0, pokud počet požadavků není omezen.
+     */
+    private final long intervalNanos;
+    /**
+     * Začátek nejbližšího volného úseku.
+     */
+    private long nextSlot = System.nanoTime();
+
+    /**
+     * Konstruktor třídy RateLimiter.
+     *
+     * @param requestsPerSecond maximální počet požadavků za sekundu, nebo 0, pokud počet není omezen.
+     */
+    public RateLimiter(double requestsPerSecond) {
+        if (requestsPerSecond < 0 || Double.isNaN(requestsPerSecond)) {
+            throw new IllegalArgumentException("Neplatný počet požadavků za sekundu: " + requestsPerSecond);
+        }
+        this.intervalNanos = requestsPerSecond == 0 ? 0 : (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+    }
+
+    /**
+     * Vrátí limiter pro zadaný počet požadavků za sekundu.
+     *
+     * @param requestsPerSecond maximální počet požadavků za sekundu, nebo 0, pokud počet není omezen.
+     * @return limiter.
+     */
+    public static RateLimiter of(double requestsPerSecond) {
+        return requestsPerSecond == 0 ? UNLIMITED : new RateLimiter(requestsPerSecond);
+    }
+
+    /**
+     * Počká, dokud není možné odeslat další požadavek.
+     *
+     * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+     */
+    public void acquire() throws InterruptedException {
+        if (intervalNanos == 0) {
+            return;
+        }
+        long slot;
+        synchronized (this) {
+            long now = System.nanoTime();
+            slot = Math.max(nextSlot, now);
+            nextSlot = slot + intervalNanos;
+        }
+        long wait = slot - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
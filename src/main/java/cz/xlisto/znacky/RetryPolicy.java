@@ -0,0 +1,196 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.SocketException;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Třída RetryPolicy opakuje HTTP požadavky, které selhaly přechodnou chybou.
+ * <p>
+ * Mezi pokusy čeká podle exponenciálního odstupu s náhodným rozptylem (full jitter), aby se opakované
+ * požadavky z mnoha vláken nesešly ve stejný okamžik. Pokud server v odpovědi 429 nebo 503 uvede
+ * hlavičku Retry-After, čeká se alespoň tuto dobu. Pokud server požaduje delší čekání než
+ * {@link #MAX_RETRY_AFTER}, požadavek se neopakuje a chyba je předána volajícímu.
+ * <p>
+ * Za přechodné chyby jsou považovány:
+ * <ul>
+ *   <li>stavové kódy 408, 425, 429, 500, 502, 503 a 504,</li>
+ *   <li>vypršení časového limitu (HttpTimeoutException),</li>
+ *   <li>chyby spojení: nepodařené navázání spojení, spojení přerušené serverem (connection reset)
+ *   a předčasný konec dat při čtení těla odpovědi (EOFException).</li>
+ * </ul>
+ * Ostatní chyby se neopakují: ostatní stavové kódy (například 404), chyby TLS a protokolu HTTP
+ * i chyby místního zápisu (plný disk, chyba archivu ZIP nebo úložiště), které opakování nevyřeší.
+ * Seznam je záměrně výčtem povolených chyb, neznámá chyba tedy opakována není.
+ */
+public class RetryPolicy {
+    private static final Logger logger = LoggerFactory.getLogger(RetryPolicy.class);
+
+    /**
+     * Výchozí maximální počet pokusů včetně prvního.
+     */
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    /**
+     * Výchozí základní doba čekání před prvním opakováním.
+     */
+    public static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(500);
+    /**
+     * Výchozí horní mez doby čekání mezi pokusy.
+     */
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(30);
+    /**
+     * Nejdelší doba z hlavičky Retry-After, po kterou je ještě rozumné na opakování čekat.
+     */
+    public static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+
+    /**
+     * Sdílená instance s výchozím nastavením.
+     */
+    private static final RetryPolicy DEFAULT = new RetryPolicy(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+
+    /**
+     * Maximální počet pokusů včetně prvního.
+     */
+    private final int maxAttempts;
+    /**
+     * Základní doba čekání před prvním opakováním v milisekundách.
+     */
+    private final long baseDelayMillis;
+    /**
+     * Horní mez doby čekání mezi pokusy v milisekundách.
+     */
+    private final long maxDelayMillis;
+
+    /**
+     * Konstruktor třídy RetryPolicy.
+     *
+     * @param maxAttempts maximální počet pokusů včetně prvního (1 znamená bez opakování).
+     * @param baseDelay   základní doba čekání před prvním opakováním.
+     * @param maxDelay    horní mez doby čekání mezi pokusy.
+     */
+    public RetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelay.toMillis();
+        this.maxDelayMillis = maxDelay.toMillis();
+    }
+
+    /**
+     * Vrátí sdílenou instanci s výchozím nastavením.
+     *
+     * @return sdílená instance.
+     */
+    public static RetryPolicy getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Provede akci a při přechodné chybě ji opakuje.
+     *
+     * @param description popis akce pro log, například URL adresa.
+     * @param action      akce, která má být provedena.
+     * @param <T>         typ výsledku akce.
+     * @return výsledek akce.
+     * @throws IOException          chyba posledního pokusu, nebo chyba, kterou nemá smysl opakovat.
+     * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+     */
+    public <T> T execute(String description, Attempt<T> action) throws IOException, InterruptedException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.run();
+            } catch (IOException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                long delay = delayMillis(attempt, e);
+                if (delay < 0) {
+                    throw e;
+                }
+                logger.warn("Pokus {}/{} selhal ({}), další za {} ms: {}", attempt, maxAttempts, e.getMessage(), delay, description);
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * Zjistí, zda jde o přechodnou chybu, po které má smysl požadavek opakovat.
+     *
+     * @param e chyba požadavku.
+     * @return true, pokud lze požadavek opakovat.
+     */
+    public static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException status) {
+            return switch (status.getStatusCode()) {
+                case 408, 425, 429, 500, 502, 503, 504 -> true;
+                default -> false;
+            };
+        }
+        // HttpClient chyby spojení často obaluje obecnou IOException, rozhoduje proto celý řetězec příčin
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SSLException) {
+                return false;
+            }
+            if (cause instanceof HttpTimeoutException || cause instanceof EOFException
+                    || (cause instanceof SocketException && !(cause instanceof BindException))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zjistí, zda chyba signalizuje přetížení serveru, na které má klient reagovat snížením souběžnosti.
+     *
+     * @param e chyba požadavku.
+     * @return true pro odpovědi 429 a 503 a pro vypršení časového limitu.
+     */
+    public static boolean isOverload(IOException e) {
+        if (e instanceof HttpStatusException status) {
+            return status.isThrottled();
+        }
+        return e instanceof HttpTimeoutException;
+    }
+
+    /**
+     * Spočítá dobu čekání před dalším pokusem.
+     *
+     * @param attempt pořadí právě neúspěšného pokusu (od 1).
+     * @param e       chyba pokusu.
+     * @return doba čekání v milisekundách, nebo -1, pokud server požaduje příliš dlouhé čekání.
+     */
+    long delayMillis(int attempt, IOException e) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (e instanceof HttpStatusException status && status.getRetryAfter() != null) {
+            if (status.getRetryAfter().compareTo(MAX_RETRY_AFTER) > 0) {
+                return -1;
+            }
+            delay = Math.max(delay, status.getRetryAfter().toMillis());
+        }
+        return delay;
+    }
+
+    /**
+     * Akce, kterou lze při přechodné chybě opakovat.
+     *
+     * @param <T> typ výsledku akce.
+     */
+    @FunctionalInterface
+    public interface Attempt<T> {
+        /**
+         * Provede jeden pokus.
+         *
+         * @return výsledek akce.
+         * @throws IOException          pokud pokus selže.
+         * @throws InterruptedException pokud je vlákno přerušeno.
+         */
+        T run() throws IOException, InterruptedException;
+    }
+}
@@ -0,0 +1,144 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Třída RunMetrics sdružuje metriky jednotlivých fází běhu aplikace.
+ * <p>
+ * Běh je rozdělen na pět fází:
+ * <ul>
+ *   <li>{@link Phase#FETCH} - načtení stránky katalogu ze serveru (čekání na odpověď a čtení těla),</li>
+ *   <li>{@link Phase#PARSE} - parsování stránky katalogu,</li>
+ *   <li>{@link Phase#DOWNLOAD} - stažení obrázku ze serveru (čekání na odpověď a čtení těla),</li>
+ *   <li>{@link Phase#WRITE} - zápis obrázku do cílové složky nebo úložiště,</li>
+ *   <li>{@link Phase#PROCESS} - volitelné zpracování uloženého obrázku (ImagePostProcessor), počet bajtů
+ *   je velikost zapsaných variant a optimalizovaných obrázků.</li>
+ * </ul>
+ * Stránky se parsují a obrázky zapisují průběžně během čtení z proudu dat. Doba fází FETCH a DOWNLOAD
+ * proto zahrnuje jen čekání na síť a doba fází PARSE a WRITE zbytek doby zpracování (viz TimedInputStream).
+ * Z poměru fází je tak vidět, zda pomalý běh brzdí server, parser nebo disk.
+ * <p>
+ * Metriky jsou zaregistrovány jako MXBeany v platformním MBean serveru, takže je lze sledovat za běhu
+ * nástrojem JConsole nebo VisualVM, a na konci běhu je lze vypsat jako souhrn metodou getSummary.
+ */
+public class RunMetrics implements RunMetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(RunMetrics.class);
+    /**
+     * Doména názvů MBeanů aplikace.
+     */
+    public static final String JMX_DOMAIN = "cz.xlisto.znacky";
+
+    /**
+     * Fáze běhu aplikace.
+     */
+    public enum Phase {
+        FETCH, PARSE, DOWNLOAD, WRITE, PROCESS;
+
+        /**
+         * @return název fáze v souhrnu a v názvu MBeanu.
+         */
+        public String externalName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Metriky sdílené celou aplikací.
+     */
+    private static final RunMetrics DEFAULT = new RunMetrics().register();
+
+    /**
+     * Metriky jednotlivých fází.
+     */
+    private final Map<Phase, PhaseMetrics> phases = new EnumMap<>(Phase.class);
+
+    /**
+     * Konstruktor třídy RunMetrics s prázdnými metrikami všech fází.
+     * <p>
+     * Metriky vytvořené tímto konstruktorem nejsou zaregistrovány v MBean serveru.
+     */
+    public RunMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new PhaseMetrics(phase.externalName()));
+        }
+    }
+
+    /**
+     * Vrátí metriky sdílené celou aplikací, zaregistrované v platformním MBean serveru.
+     *
+     * @return sdílené metriky.
+     */
+    public static RunMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Vrátí metriky dané fáze.
+     *
+     * @param phase fáze běhu.
+     * @return metriky fáze.
+     */
+    public PhaseMetrics phase(Phase phase) {
+        return phases.get(phase);
+    }
+
+    /**
+     * Zaregistruje metriky v platformním MBean serveru.
+     * <p>
+     * Pokud registrace selže, například protože MBeany se stejným názvem již existují,
+     * chyba je pouze zapsána do logu a metriky fungují dál bez JMX.
+     *
+     * @return tato instance.
+     */
+    private RunMetrics register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(JMX_DOMAIN + ":type=RunMetrics"));
+            for (PhaseMetrics metrics : phases.values()) {
+                server.registerMBean(metrics, new ObjectName(JMX_DOMAIN + ":type=Phase,name=" + metrics.getName()));
+            }
+        } catch (JMException | RuntimeException e) {
+            logger.warn("Metriky nelze zaregistrovat v JMX: {}", e.getMessage());
+        }
+        return this;
+    }
+
+    @Override
+    public void reset() {
+        for (PhaseMetrics metrics : phases.values()) {
+            metrics.reset();
+        }
+    }
+
+    /**
+     * Vrátí souhrn metrik jako textovou tabulku, jeden řádek na fázi.
+     * <p>
+     * Fáze bez jediné operace nebo chyby jsou vynechány.
+     *
+     * @return souhrn metrik.
+     */
+    @Override
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder(String.format(Locale.ROOT, "%-9s %8s %7s %12s %9s %9s %9s %9s %9s  %s%n",
+                "fáze", "počet", "chyby", "bajty", "průměr ms", "p50 ms", "p90 ms", "p99 ms", "max ms", "chyby podle příčiny"));
+        for (PhaseMetrics metrics : phases.values()) {
+            if (metrics.getCount() == 0 && metrics.getErrors() == 0) {
+                continue;
+            }
+            summary.append(String.format(Locale.ROOT, "%-9s %8d %7d %12d %9.1f %9.1f %9.1f %9.1f %9.1f  %s%n",
+                    metrics.getName(), metrics.getCount(), metrics.getErrors(), metrics.getBytes(),
+                    metrics.getMeanMillis(), metrics.getP50Millis(), metrics.getP90Millis(), metrics.getP99Millis(),
+                    metrics.getMaxMillis(), metrics.getErrorsByCause().isEmpty() ? "" : metrics.getErrorsByCause()));
+        }
+        return summary.toString();
+    }
+}
@@ -0,0 +1,17 @@
+package cz.xlisto.znacky;
+
+/**
+ * Rozhraní RunMetricsMXBean zpřístupňuje souhrn metrik běhu (RunMetrics) přes JMX
+ * pod názvem {@code cz.xlisto.znacky:type=RunMetrics}.
+ */
+public interface RunMetricsMXBean {
+    /**
+     * @return textový souhrn metrik všech fází.
+     */
+    String getSummary();
+
+    /**
+     * Vynuluje metriky všech fází.
+     */
+    void reset();
+}
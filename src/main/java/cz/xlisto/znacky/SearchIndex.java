@@ -0,0 +1,236 @@
+package cz.xlisto.znacky;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Třída SearchIndex umožňuje rychlé vyhledávání v položkách katalogu podle kódu a popisu značky.
+ * <p>
+ * Index je budován postupně, jak jsou položky přidávány při slučování stránek katalogu, takže je
+ * připraven ve chvíli, kdy načítání skončí. Obsahuje dvě seřazené mapy:
+ * <ul>
+ *   <li>prefixový index kódů značek (například "A1", "B20"),</li>
+ *   <li>invertovaný index slov popisu, kde ke každému slovu patří seznam čísel položek.</li>
+ * </ul>
+ * Obě mapy jsou seřazené, takže všechny kódy nebo slova začínající zadaným prefixem tvoří souvislý
+ * rozsah a lze je najít bez procházení všech položek. Kódy i slova jsou porovnávány bez ohledu
+ * na velikost písmen a diakritiku.
+ * <p>
+ * Dotaz je rozdělen na slova. Položka vyhovuje, pokud každé slovo dotazu je prefixem jejího kódu
+ * nebo některého slova jejího popisu. Výsledky jsou vráceny v pořadí katalogu.
+ */
+public class SearchIndex {
+    /**
+     * Tabulka převodu znaků do U+017F (latinka včetně českých znaků) na malá písmena bez diakritiky.
+     * <p>
+     * Je spočítána jednou pomocí třídy Normalizer, aby indexování nemuselo normalizovat každý text zvlášť.
+     * Znaky, které nejsou písmenem ani číslicí, jsou převedeny na nulu a slouží jako oddělovače slov.
+     */
+    private static final char[] FOLD = new char[0x180];
+
+    static {
+        for (char c = 0; c < FOLD.length; c++) {
+            if (!Character.isLetterOrDigit(c)) {
+                continue;
+            }
+            String folded = Normalizer.normalize(String.valueOf(c).toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+            FOLD[c] = folded.charAt(0);
+        }
+    }
+
+    /**
+     * Položky v pořadí přidání, index v seznamu je číslem položky.
+     */
+    private final List<SignEntry> entries = new ArrayList<>();
+    /**
+     * Prefixový index kódů: normalizovaný kód na čísla položek.
+     */
+    private final TreeMap<String, Postings> codes = new TreeMap<>();
+    /**
+     * Invertovaný index slov popisu: normalizované slovo na čísla položek.
+     */
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+
+    /**
+     * Prázdný konstruktor třídy SearchIndex.
+     */
+    public SearchIndex() {
+        // Prázdný konstruktor
+    }
+
+    /**
+     * Přidá položku do indexu.
+     *
+     * @param entry položka katalogu.
+     */
+    public synchronized void add(SignEntry entry) {
+        int id = entries.size();
+        entries.add(entry);
+        String code = normalize(entry.code()).replace(" ", "");
+        if (!code.isEmpty()) {
+            codes.computeIfAbsent(code, key -> new Postings()).add(id);
+        }
+        tokenize(entry.description(), word -> words.computeIfAbsent(word, key -> new Postings()).add(id));
+    }
+
+    /**
+     * Přidá do indexu všechny dané položky.
+     *
+     * @param added položky katalogu.
+     */
+    public synchronized void addAll(List<SignEntry> added) {
+        for (SignEntry entry : added) {
+            add(entry);
+        }
+    }
+
+    /**
+     * Vyhledá položky odpovídající dotazu.
+     * <p>
+     * Prázdný dotaz vrací všechny položky.
+     *
+     * @param query dotaz, slova oddělená mezerou.
+     * @return vyhovující položky v pořadí katalogu.
+     */
+    public synchronized List<SignEntry> search(String query) {
+        List<String> terms = new ArrayList<>();
+        tokenize(query == null ? "" : query, terms::add);
+        BitSet matches = null;
+        for (String term : terms) {
+            BitSet termMatches = new BitSet(entries.size());
+            collect(codes, term, termMatches);
+            collect(words, term, termMatches);
+            if (matches == null) {
+                matches = termMatches;
+            } else {
+                matches.and(termMatches);
+            }
+            if (matches.isEmpty()) {
+                return List.of();
+            }
+        }
+        if (matches == null) {
+            return new ArrayList<>(entries);
+        }
+        List<SignEntry> result = new ArrayList<>(matches.cardinality());
+        for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+            result.add(entries.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * @return počet položek v indexu.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Označí v bitové množině všechny položky, jejichž klíč v indexu začíná daným prefixem.
+     *
+     * @param index  prefixový nebo invertovaný index.
+     * @param prefix normalizovaný prefix.
+     * @param target bitová množina čísel položek.
+     */
+    private static void collect(TreeMap<String, Postings> index, String prefix, BitSet target) {
+        NavigableMap<String, Postings> range = index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        for (Map.Entry<String, Postings> entry : range.entrySet()) {
+            entry.getValue().markAll(target);
+        }
+    }
+
+    /**
+     * Rozdělí text na slova převedená na malá písmena bez diakritiky.
+     * <p>
+     * Slova jsou oddělena libovolným znakem, který není písmenem ani číslicí.
+     *
+     * @param text     vstupní text.
+     * @param consumer posluchač, kterému je předáno každé slovo.
+     */
+    static void tokenize(String text, Consumer<String> consumer) {
+        StringBuilder word = new StringBuilder(16);
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            if (c != 0) {
+                word.append(c);
+            } else if (word.length() > 0) {
+                consumer.accept(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) {
+            consumer.accept(word.toString());
+        }
+    }
+
+    /**
+     * Převede text na malá písmena bez diakritiky; oddělovače slov jsou zachovány jako mezery.
+     *
+     * @param text vstupní text.
+     * @return normalizovaný text.
+     */
+    static String normalize(String text) {
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = fold(text.charAt(i));
+            result.append(c != 0 ? c : ' ');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Převede znak na malé písmeno bez diakritiky.
+     *
+     * @param c vstupní znak.
+     * @return převedený znak, nebo 0, pokud znak není písmenem ani číslicí.
+     */
+    private static char fold(char c) {
+        if (c < FOLD.length) {
+            return FOLD[c];
+        }
+        if (!Character.isLetterOrDigit(c)) {
+            return 0;
+        }
+        return Normalizer.normalize(String.valueOf(Character.toLowerCase(c)), Normalizer.Form.NFD).charAt(0);
+    }
+
+    /**
+     * Rostoucí seznam čísel položek pro jeden klíč indexu.
+     */
+    private static final class Postings {
+        /**
+         * Čísla položek ve vzestupném pořadí.
+         */
+        private int[] ids = new int[2];
+        /**
+         * Počet čísel položek.
+         */
+        private int size;
+
+        void add(int id) {
+            // Položka se stejným slovem v popisu vícekrát je zapsána jen jednou
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        void markAll(BitSet target) {
+            for (int i = 0; i < size; i++) {
+                target.set(ids[i]);
+            }
+        }
+    }
+}
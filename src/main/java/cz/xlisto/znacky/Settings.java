@@ -0,0 +1,447 @@
+package cz.xlisto.znacky;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Třída Settings je jediným místem, odkud aplikace čte nastavení ze souboru settings.ini.
+ * <p>
+ * Soubor je načten jednou a hodnoty jsou drženy v paměti jako neměnný snímek, takže jejich čtení
+ * je levné a lze jej volat z libovolného vlákna. Metoda watch spustí sledování souboru pomocí
+ * WatchService: po každé změně souboru je snímek načten znovu a jsou informováni posluchači.
+ * Propustnost tak lze ladit pro konkrétní nasazení bez nového sestavení aplikace.
+ * <p>
+ * Nastavení v souboru settings.ini (formát java.util.Properties):
+ * <ul>
+ *   <li>defaultDirectory - výchozí cílová složka pro obrázky.</li>
+ *   <li>concurrency - počet vláken pro stahování obrázků.</li>
+ *   <li>perHostLimit - počáteční počet současných spojení na jeden server.</li>
+ *   <li>pageParallelism - maximální počet současně načítaných stránek katalogu.</li>
+ *   <li>connectTimeoutMillis - časový limit pro navázání spojení v milisekundách.</li>
+ *   <li>readTimeoutMillis - časový limit čtení odpovědi v milisekundách; platí pro čekání na hlavičky
+ *   odpovědi i pro každé čekání na další data těla odpovědi.</li>
+ *   <li>bufferSize - velikost vyrovnávací paměti pro zápis obrázku do souboru nebo úložiště v bajtech;
+ *   při zápisu do archivu ZIP nebo TAR je to počáteční velikost paměti, která drží celý obrázek.</li>
+ *   <li>pageCacheBytes - maximální velikost mezipaměti stránek katalogu v bajtech.</li>
+ *   <li>thumbnailCacheBytes - maximální velikost mezipaměti náhledů v bajtech.</li>
+ *   <li>outputMode - způsob uložení obrázků: directory, content-addressed, zip nebo tar.</li>
+ *   <li>variantWidths - šířky zmenšených variant obrázků v pixelech oddělené čárkami (ImagePostProcessor).</li>
+ *   <li>optimizePng - true, pokud se mají uložené obrázky PNG optimalizovat (ImagePostProcessor).</li>
+ *   <li>postProcessThreads - počet vláken pro zpracování obrázků.</li>
+ *   <li>atlas - true, pokud se mají uložené obrázky složit do atlasu (AtlasExporter).</li>
+ *   <li>atlasPageSize - maximální šířka a výška stránky atlasu v pixelech.</li>
+ *   <li>atlasSpriteSize - maximální šířka a výška značky v atlasu v pixelech, větší obrázky jsou zmenšeny.</li>
+ * </ul>
+ * Chybějící nebo neplatné hodnoty jsou nahrazeny výchozími hodnotami, neplatné hodnoty jsou zapsány do logu.
+ * <p>
+ * Nastavení stahování, načítání stránek a časový limit odpovědi se uplatní od dalšího načítání nebo
+ * ukládání. Časový limit pro navázání spojení a velikosti mezipamětí se uplatní po restartu aplikace.
+ */
+public class Settings {
+    private static final Logger logger = LoggerFactory.getLogger(Settings.class);
+    /**
+     * Název konfiguračního souboru.
+     */
+    public static final String DEFAULT_FILE = "settings.ini";
+
+    private static final String DIRECTORY_KEY = "defaultDirectory";
+    private static final String CONCURRENCY_KEY = "concurrency";
+    private static final String PER_HOST_KEY = "perHostLimit";
+    private static final String PAGE_PARALLELISM_KEY = "pageParallelism";
+    private static final String CONNECT_TIMEOUT_KEY = "connectTimeoutMillis";
+    private static final String READ_TIMEOUT_KEY = "readTimeoutMillis";
+    private static final String BUFFER_SIZE_KEY = "bufferSize";
+    private static final String PAGE_CACHE_KEY = "pageCacheBytes";
+    private static final String THUMBNAIL_CACHE_KEY = "thumbnailCacheBytes";
+    private static final String OUTPUT_MODE_KEY = "outputMode";
+    private static final String VARIANT_WIDTHS_KEY = "variantWidths";
+    private static final String OPTIMIZE_PNG_KEY = "optimizePng";
+    private static final String POST_PROCESS_THREADS_KEY = "postProcessThreads";
+    private static final String ATLAS_KEY = "atlas";
+    private static final String ATLAS_PAGE_SIZE_KEY = "atlasPageSize";
+    private static final String ATLAS_SPRITE_SIZE_KEY = "atlasSpriteSize";
+
+    /**
+     * Nastavení sdílené celou aplikací, načtené ze souboru settings.ini v pracovní složce.
+     */
+    private static final Settings DEFAULT = new Settings(Paths.get(DEFAULT_FILE));
+
+    /**
+     * Konfigurační soubor.
+     */
+    private final Path file;
+    /**
+     * Posluchači informovaní o každém novém načtení souboru.
+     */
+    private final List<Consumer<Settings>> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Aktuální snímek nastavení.
+     */
+    private volatile Values values;
+    /**
+     * Sledování změn souboru, nebo null, pokud soubor není sledován.
+     */
+    private WatchService watchService;
+
+    /**
+     * Konstruktor třídy Settings. Nastavení je načteno ze souboru ihned.
+     *
+     * @param file konfigurační soubor, nemusí existovat.
+     */
+    public Settings(Path file) {
+        this.file = file.toAbsolutePath();
+        this.values = load();
+    }
+
+    /**
+     * Vrátí nastavení sdílené celou aplikací.
+     *
+     * @return sdílené nastavení.
+     */
+    public static Settings getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Přidá posluchače, který je informován po každém novém načtení souboru.
+     *
+     * @param listener posluchač, je volán z vlákna, které soubor načetlo.
+     */
+    public void addListener(Consumer<Settings> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Znovu načte soubor a informuje posluchače.
+     */
+    public void reload() {
+        values = load();
+        for (Consumer<Settings> listener : listeners) {
+            listener.accept(this);
+        }
+    }
+
+    /**
+     * Spustí sledování konfiguračního souboru. Po každé změně souboru je nastavení načteno znovu.
+     * <p>
+     * Sledování běží v samostatném vlákně démona. Opakované volání nic nedělá.
+     */
+    public synchronized void watch() {
+        if (watchService != null) {
+            return;
+        }
+        Path directory = file.getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.error("Soubor {} nelze sledovat: {}", file, e.getMessage());
+            return;
+        }
+        WatchService service = watchService;
+        Thread thread = new Thread(() -> watchLoop(service), "settings-watch");
+        thread.setDaemon(true);
+        thread.start();
+        logger.info("Sleduji změny souboru {}", file);
+    }
+
+    /**
+     * Ukončí sledování konfiguračního souboru.
+     */
+    public synchronized void stopWatching() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Chyba při ukončení sledování souboru {}: {}", file, e.getMessage());
+        }
+        watchService = null;
+    }
+
+    /**
+     * Čeká na změny ve složce konfiguračního souboru a při změně souboru jej načte znovu.
+     *
+     * @param service sledování složky.
+     */
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path name && file.getFileName().equals(name)) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    reload();
+                    logger.info("Nastavení načteno znovu ze souboru {}", file);
+                }
+                if (!key.reset()) {
+                    logger.warn("Složku souboru {} již nelze sledovat", file);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // Sledování bylo ukončeno metodou stopWatching
+        }
+    }
+
+    /**
+     * Uloží výchozí složku do konfiguračního souboru. Ostatní hodnoty souboru zůstanou zachovány.
+     *
+     * @param directory složka, která má být uložena jako výchozí.
+     */
+    public synchronized void setDefaultDirectory(File directory) {
+        Properties properties = readProperties();
+        properties.setProperty(DIRECTORY_KEY, directory.getAbsolutePath());
+        try (OutputStream output = Files.newOutputStream(file)) {
+            properties.store(output, null);
+        } catch (IOException e) {
+            logger.error("Chyba při ukládání souboru settings.ini {}", e.getMessage());
+        }
+        reload();
+    }
+
+    /**
+     * @return výchozí cílová složka, nebo null, pokud není nastavena.
+     */
+    public File getDefaultDirectory() {
+        return values.defaultDirectory();
+    }
+
+    /**
+     * @return počet vláken pro stahování obrázků.
+     */
+    public int getConcurrency() {
+        return values.concurrency();
+    }
+
+    /**
+     * @return počáteční počet současných spojení na jeden server.
+     */
+    public int getPerHostLimit() {
+        return values.perHostLimit();
+    }
+
+    /**
+     * @return maximální počet současně načítaných stránek katalogu.
+     */
+    public int getPageParallelism() {
+        return values.pageParallelism();
+    }
+
+    /**
+     * @return časový limit pro navázání spojení.
+     */
+    public Duration getConnectTimeout() {
+        return values.connectTimeout();
+    }
+
+    /**
+     * @return časový limit čtení odpovědi serveru, tj. čekání na hlavičky i na další data těla odpovědi.
+     */
+    public Duration getReadTimeout() {
+        return values.readTimeout();
+    }
+
+    /**
+     * @return velikost vyrovnávací paměti pro zápis obrázku v bajtech.
+     */
+    public int getBufferSize() {
+        return values.bufferSize();
+    }
+
+    /**
+     * @return maximální velikost mezipaměti stránek katalogu v bajtech.
+     */
+    public long getPageCacheBytes() {
+        return values.pageCacheBytes();
+    }
+
+    /**
+     * @return maximální velikost mezipaměti náhledů v bajtech.
+     */
+    public long getThumbnailCacheBytes() {
+        return values.thumbnailCacheBytes();
+    }
+
+    /**
+     * @return způsob uložení obrázků.
+     */
+    public OutputMode getOutputMode() {
+        return values.outputMode();
+    }
+
+    /**
+     * @return šířky zmenšených variant obrázků v pixelech, prázdné pole, pokud se varianty nevytvářejí.
+     */
+    public int[] getVariantWidths() {
+        return values.variantWidths().clone();
+    }
+
+    /**
+     * @return true, pokud se mají uložené obrázky PNG optimalizovat.
+     */
+    public boolean isOptimizePng() {
+        return values.optimizePng();
+    }
+
+    /**
+     * @return počet vláken pro zpracování obrázků.
+     */
+    public int getPostProcessThreads() {
+        return values.postProcessThreads();
+    }
+
+    /**
+     * @return true, pokud se mají uložené obrázky složit do atlasu.
+     */
+    public boolean isAtlasExport() {
+        return values.atlasExport();
+    }
+
+    /**
+     * @return maximální šířka a výška stránky atlasu v pixelech.
+     */
+    public int getAtlasPageSize() {
+        return values.atlasPageSize();
+    }
+
+    /**
+     * @return maximální šířka a výška značky v atlasu v pixelech, nebo 0, pokud se obrázky nezmenšují.
+     */
+    public int getAtlasSpriteSize() {
+        return values.atlasSpriteSize();
+    }
+
+    /**
+     * Načte soubor a převede jeho hodnoty na snímek nastavení.
+     *
+     * @return snímek nastavení.
+     */
+    private Values load() {
+        Properties properties = readProperties();
+        String directory = properties.getProperty(DIRECTORY_KEY);
+        return new Values(
+                directory != null ? new File(directory) : null,
+                positiveInt(properties, CONCURRENCY_KEY, ImageSaver.DEFAULT_CONCURRENCY),
+                positiveInt(properties, PER_HOST_KEY, ImageSaver.DEFAULT_PER_HOST_LIMIT),
+                positiveInt(properties, PAGE_PARALLELISM_KEY, WebLoader.DEFAULT_PARALLELISM),
+                Duration.ofMillis(positiveLong(properties, CONNECT_TIMEOUT_KEY, HttpTransport.DEFAULT_CONNECT_TIMEOUT.toMillis())),
+                Duration.ofMillis(positiveLong(properties, READ_TIMEOUT_KEY, HttpTransport.DEFAULT_READ_TIMEOUT.toMillis())),
+                positiveInt(properties, BUFFER_SIZE_KEY, BufferPool.DEFAULT_BUFFER_SIZE),
+                positiveLong(properties, PAGE_CACHE_KEY, PageCache.DEFAULT_MAX_BYTES),
+                positiveLong(properties, THUMBNAIL_CACHE_KEY, ThumbnailCache.DEFAULT_MAX_BYTES),
+                outputMode(properties),
+                widths(properties),
+                Boolean.parseBoolean(properties.getProperty(OPTIMIZE_PNG_KEY, "false").trim()),
+                positiveInt(properties, POST_PROCESS_THREADS_KEY, Runtime.getRuntime().availableProcessors()),
+                Boolean.parseBoolean(properties.getProperty(ATLAS_KEY, "false").trim()),
+                positiveInt(properties, ATLAS_PAGE_SIZE_KEY, AtlasExporter.DEFAULT_PAGE_SIZE),
+                positiveInt(properties, ATLAS_SPRITE_SIZE_KEY, 0));
+    }
+
+    /**
+     * Načte obsah konfiguračního souboru.
+     *
+     * @return hodnoty souboru, nebo prázdné hodnoty, pokud soubor neexistuje nebo jej nelze načíst.
+     */
+    private Properties readProperties() {
+        Properties properties = new Properties();
+        if (!Files.exists(file)) {
+            return properties;
+        }
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (IOException e) {
+            logger.error("Chyba při načítání souboru settings.ini {}", e.getMessage());
+        }
+        return properties;
+    }
+
+    private static int positiveInt(Properties properties, String key, int defaultValue) {
+        return (int) Math.min(Integer.MAX_VALUE, positiveLong(properties, key, defaultValue));
+    }
+
+    private static long positiveLong(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Neplatná hodnota je zapsána do logu níže
+        }
+        logger.warn("Neplatná hodnota {}={} v souboru settings.ini, použije se {}", key, value, defaultValue);
+        return defaultValue;
+    }
+
+    private static int[] widths(Properties properties) {
+        String value = properties.getProperty(VARIANT_WIDTHS_KEY);
+        if (value == null || value.isBlank()) {
+            return new int[0];
+        }
+        try {
+            int[] widths = Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).distinct().toArray();
+            if (Arrays.stream(widths).allMatch(width -> width > 0)) {
+                return widths;
+            }
+        } catch (NumberFormatException e) {
+            // Neplatná hodnota je zapsána do logu níže
+        }
+        logger.warn("Neplatná hodnota {}={} v souboru settings.ini, varianty se nevytvoří", VARIANT_WIDTHS_KEY, value);
+        return new int[0];
+    }
+
+    private static OutputMode outputMode(Properties properties) {
+        String value = properties.getProperty(OUTPUT_MODE_KEY);
+        if (value == null || value.isBlank()) {
+            return OutputMode.DIRECTORY;
+        }
+        try {
+            return OutputMode.fromName(value.trim());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Neplatná hodnota {}={} v souboru settings.ini, použije se {}", OUTPUT_MODE_KEY, value,
+                    OutputMode.DIRECTORY.externalName());
+            return OutputMode.DIRECTORY;
+        }
+    }
+
+    /**
+     * Neměnný snímek nastavení.
+     */
+    private record Values(File defaultDirectory, int concurrency, int perHostLimit, int pageParallelism,
+                          Duration connectTimeout, Duration readTimeout, int bufferSize,
+                          long pageCacheBytes, long thumbnailCacheBytes, OutputMode outputMode,
+                          int[] variantWidths, boolean optimizePng, int postProcessThreads,
+                          boolean atlasExport, int atlasPageSize, int atlasSpriteSize) {
+    }
+}
@@ -0,0 +1,50 @@
+package cz.xlisto.znacky;
+
+/**
+ * Položka katalogu dopravních značek.
+ * <p>
+ * Nahrazuje dříve používanou dvojici řetězců {popis, URL}. Kód značky je rozpoznán z popisu
+ * při vytvoření položky, takže jej ostatní části aplikace nemusí znovu zjišťovat. URL adresa
+ * obrázku je uložena již v kanonickém tvaru (odkaz na obrázek ve vysokém rozlišení).
+ *
+ * @param code        kód značky, například "A1" nebo "IP10a", nebo prázdný řetězec, pokud jej nelze zjistit.
+ * @param description popis značky bez kódu.
+ * @param url         kanonická URL adresa obrázku značky.
+ */
+public record SignEntry(String code, String description, String url) {
+
+    /**
+     * Vytvoří položku z hodnot atributů &lt;img&gt; tagu podle pravidel výchozího zdroje katalogu.
+     *
+     * @param alt hodnota atributu alt.
+     * @param src hodnota atributu src.
+     * @return položka katalogu.
+     * @see CelysvetSource#toEntry(String, String)
+     */
+    public static SignEntry fromImage(String alt, String src) {
+        return CelysvetSource.INSTANCE.toEntry(alt, src);
+    }
+
+    /**
+     * Vytvoří položku z textu, ve kterém je kód značky oddělen od popisu první mezerou.
+     *
+     * @param label kód a popis značky, například "A1 Zatáčka vpravo".
+     * @param url   kanonická URL adresa obrázku značky.
+     * @return položka katalogu.
+     */
+    public static SignEntry fromLabel(String label, String url) {
+        int space = label.indexOf(' ');
+        String code = space > 0 ? label.substring(0, space) : label;
+        String description = space > 0 ? label.substring(space + 1) : "";
+        return new SignEntry(code, description, url);
+    }
+
+    /**
+     * Vrátí text zobrazovaný v seznamu, tedy kód značky následovaný popisem.
+     *
+     * @return kód a popis značky.
+     */
+    public String label() {
+        return description.isEmpty() ? code : code + " " + description;
+    }
+}
@@ -0,0 +1,66 @@
+package cz.xlisto.znacky;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Třída SignIndex eviduje položky katalogu a odstraňuje jejich duplicity.
+ * <p>
+ * Stejná značka se v katalogu může objevit na více stránkách. Položka je považována za duplicitní,
+ * pokud již byla přidána položka se stejnou kanonickou URL adresou obrázku, nebo se stejným
+ * (neprázdným) kódem značky. Duplicity jsou vyřazeny již při slučování stránek, takže se
+ * nezobrazují v seznamu a nejsou ani stahovány.
+ */
+public class SignIndex {
+    /**
+     * Kanonické URL adresy již přidaných položek.
+     */
+    private final Set<String> urls = new HashSet<>();
+    /**
+     * Kódy již přidaných položek.
+     */
+    private final Set<String> codes = new HashSet<>();
+    /**
+     * Počet vyřazených duplicitních položek.
+     */
+    private int duplicates;
+
+    /**
+     * Prázdný konstruktor třídy SignIndex.
+     */
+    public SignIndex() {
+        // Prázdný konstruktor
+    }
+
+    /**
+     * Přidá položku do indexu, pokud není duplicitní.
+     *
+     * @param entry položka katalogu.
+     * @return true, pokud byla položka přidána, false, pokud jde o duplicitu.
+     */
+    public synchronized boolean add(SignEntry entry) {
+        boolean newCode = entry.code().isEmpty() || !codes.contains(entry.code());
+        if (!newCode || !urls.add(entry.url())) {
+            duplicates++;
+            return false;
+        }
+        if (!entry.code().isEmpty()) {
+            codes.add(entry.code());
+        }
+        return true;
+    }
+
+    /**
+     * @return počet položek v indexu.
+     */
+    public synchronized int size() {
+        return urls.size();
+    }
+
+    /**
+     * @return počet vyřazených duplicitních položek.
+     */
+    public synchronized int getDuplicates() {
+        return duplicates;
+    }
+}
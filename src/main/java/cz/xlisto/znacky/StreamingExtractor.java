@@ -0,0 +1,435 @@
+package cz.xlisto.znacky;
+
+import org.jsoup.parser.Parser;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Třída StreamingExtractor čte HTML přímo z proudu dat a vyhledává v něm &lt;img&gt; tagy a odkazy.
+ * <p>
+ * Na rozdíl od parsování pomocí Jsoup nevytváří celý dokument ani nenačítá celou stránku do paměti.
+ * HTML prochází po znacích a každý nalezený obrázek nebo odkaz okamžitě předá obsluze (Handler).
+ * V paměti drží pouze právě čtený tag a text aktuálního odkazu.
+ * <p>
+ * Obsah prvků &lt;script&gt; a &lt;style&gt; a HTML komentáře jsou přeskočeny, stejně jako je ignoruje Jsoup.
+ */
+public class StreamingExtractor {
+    /**
+     * Počet bajtů na začátku stránky, ve kterých je vyhledávána deklarace znakové sady.
+     */
+    private static final int SNIFF_LIMIT = 1024;
+    /**
+     * Maximální délka textu odkazu, která je uchovávána.
+     */
+    private static final int MAX_LINK_TEXT = 256;
+    /**
+     * Vzor pro vyhledání znakové sady v meta tagu.
+     */
+    private static final Pattern META_CHARSET = Pattern.compile("charset\\s*=\\s*[\"']?([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Obsluha nalezených prvků stránky.
+     */
+    public interface Handler {
+        /**
+         * Volá se pro každý nalezený &lt;img&gt; tag.
+         *
+         * @param alt hodnota atributu alt, nebo prázdný řetězec.
+         * @param src hodnota atributu src, nebo prázdný řetězec.
+         */
+        void onImage(String alt, String src);
+
+        /**
+         * Volá se pro každý odkaz &lt;a&gt; s atributem href po načtení jeho textu.
+         *
+         * @param href hodnota atributu href.
+         * @param text text odkazu s normalizovanými bílými znaky, převedený na malá písmena.
+         */
+        void onLink(String href, String text);
+    }
+
+    /**
+     * Čtený proud znaků.
+     */
+    private final Reader reader;
+    /**
+     * Obsluha nalezených prvků.
+     */
+    private final Handler handler;
+    /**
+     * Vyrovnávací paměť pro čtení znaků.
+     */
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    /**
+     * Znak vrácený zpět do proudu, nebo -2, pokud žádný není.
+     */
+    private int pushback = -2;
+
+    private StreamingExtractor(Reader reader, Handler handler) {
+        this.reader = reader;
+        this.handler = handler;
+    }
+
+    /**
+     * Projde HTML z proudu dat a nalezené obrázky a odkazy předá obsluze.
+     * <p>
+     * Znaková sada je určena podle hlavičky odpovědi, značky BOM nebo meta tagu na začátku stránky.
+     *
+     * @param in       proud dat stránky.
+     * @param declared znaková sada z hlavičky Content-Type, nebo null, pokud nebyla uvedena.
+     * @param handler  obsluha nalezených prvků.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    public static void extract(InputStream in, Charset declared, Handler handler) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in);
+        Charset charset = declared != null ? declared : detectCharset(buffered);
+        extract(new InputStreamReader(buffered, charset), handler);
+    }
+
+    /**
+     * Projde HTML z proudu znaků a nalezené obrázky a odkazy předá obsluze.
+     *
+     * @param reader  proud znaků stránky.
+     * @param handler obsluha nalezených prvků.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    public static void extract(Reader reader, Handler handler) throws IOException {
+        new StreamingExtractor(reader, handler).run();
+    }
+
+    /**
+     * Zjistí znakovou sadu stránky ze značky BOM nebo z meta tagu na začátku stránky.
+     * <p>
+     * Proud je po zjištění vrácen na původní pozici.
+     *
+     * @param in proud dat stránky s podporou značky (mark).
+     * @return zjištěná znaková sada, nebo UTF-8, pokud ji nelze zjistit.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    static Charset detectCharset(BufferedInputStream in) throws IOException {
+        in.mark(SNIFF_LIMIT);
+        byte[] head = in.readNBytes(SNIFF_LIMIT);
+        in.reset();
+
+        if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+        if (matcher.find()) {
+            try {
+                return Charset.forName(matcher.group(1));
+            } catch (IllegalArgumentException e) {
+                // Neznámá znaková sada, použije se výchozí
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * Hlavní smyčka procházení HTML.
+     *
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    private void run() throws IOException {
+        String linkHref = null;
+        StringBuilder linkText = new StringBuilder();
+        int c;
+        while ((c = read()) != -1) {
+            if (c != '<') {
+                if (linkHref != null && linkText.length() < MAX_LINK_TEXT) {
+                    linkText.append((char) c);
+                }
+                continue;
+            }
+
+            c = read();
+            if (c == '!') {
+                skipDeclaration();
+                continue;
+            }
+            boolean closing = c == '/';
+            if (closing) {
+                c = read();
+            }
+            if (!Character.isLetter(c)) {
+                // Nejde o tag, znak '<' je součástí textu
+                unread(c);
+                continue;
+            }
+            String name = readName(c);
+
+            if (closing) {
+                skipTo('>');
+                if (name.equals("a") && linkHref != null) {
+                    handler.onLink(linkHref, normalize(linkText));
+                    linkHref = null;
+                }
+                continue;
+            }
+
+            Map<String, String> attributes = readAttributes();
+            switch (name) {
+                case "img" -> handler.onImage(attributes.getOrDefault("alt", ""), attributes.getOrDefault("src", ""));
+                case "a" -> {
+                    if (linkHref != null) {
+                        handler.onLink(linkHref, normalize(linkText));
+                    }
+                    linkHref = attributes.get("href");
+                    linkText.setLength(0);
+                }
+                case "script", "style" -> skipRawText(name);
+                default -> {
+                    // Ostatní tagy nejsou potřeba
+                }
+            }
+        }
+        if (linkHref != null) {
+            handler.onLink(linkHref, normalize(linkText));
+        }
+    }
+
+    /**
+     * Načte název tagu nebo atributu převedený na malá písmena.
+     *
+     * @param first první znak názvu.
+     * @return název.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    private String readName(int first) throws IOException {
+        StringBuilder name = new StringBuilder();
+        int c = first;
+        while (c != -1 && !Character.isWhitespace(c) && c != '>' && c != '/' && c != '=') {
+            name.append(Character.toLowerCase((char) c));
+            c = read();
+        }
+        unread(c);
+        return name.toString();
+    }
+
+    /**
+     * Načte atributy tagu až po znak '>'.
+     *
+     * @return atributy tagu s dekódovanými entitami.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    private Map<String, String> readAttributes() throws IOException {
+        Map<String, String> attributes = new HashMap<>();
+        int c;
+        while ((c = read()) != -1 && c != '>') {
+            if (Character.isWhitespace(c) || c == '/') {
+                continue;
+            }
+            String name = readName(c);
+            c = skipWhitespace();
+            if (c != '=') {
+                unread(c);
+                attributes.putIfAbsent(name, "");
+                continue;
+            }
+            c = skipWhitespace();
+            StringBuilder value = new StringBuilder();
+            if (c == '"' || c == '\'') {
+                int quote = c;
+                while ((c = read()) != -1 && c != quote) {
+                    value.append((char) c);
+                }
+            } else {
+                while (c != -1 && !Character.isWhitespace(c) && c != '>') {
+                    value.append((char) c);
+                    c = read();
+                }
+                unread(c);
+            }
+            attributes.putIfAbsent(name, unescape(value.toString(), true));
+        }
+        return attributes;
+    }
+
+    /**
+     * Přeskočí HTML komentář nebo deklaraci (například DOCTYPE).
+     *
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    private void skipDeclaration() throws IOException {
+        int c = read();
+        if (c == '-') {
+            c = read();
+            if (c == '-') {
+                // Komentář končí sekvencí "-->"
+                int dashes = 0;
+                while ((c = read()) != -1) {
+                    if (c == '>' && dashes >= 2) {
+                        return;
+                    }
+                    dashes = c == '-' ? dashes + 1 : 0;
+                }
+                return;
+            }
+        }
+        unread(c);
+        skipTo('>');
+    }
+
+    /**
+     * Přeskočí obsah prvku, jehož text není HTML (script, style), až po jeho uzavírací tag.
+     *
+     * @param name název prvku.
+     * @throws IOException pokud dojde k chybě při čtení proudu.
+     */
+    private void skipRawText(String name) throws IOException {
+        String end = "</" + name;
+        int matched = 0;
+        int c;
+        while ((c = read()) != -1) {
+            if (Character.toLowerCase((char) c) == end.charAt(matched)) {
+                matched++;
+                if (matched == end.length()) {
+                    skipTo('>');
+                    return;
+                }
+            } else {
+                matched = c == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private void skipTo(char target) throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && c != target);
+    }
+
+    private int skipWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int read() throws IOException {
+        if (pushback != -2) {
+            int c = pushback;
+            pushback = -2;
+            return c;
+        }
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread(int c) {
+        pushback = c;
+    }
+
+    /**
+     * Dekóduje entity a nahradí posloupnosti bílých znaků jednou mezerou.
+     * <p>
+     * Za bílý znak je považována i nezlomitelná mezera (&amp;nbsp;), stejně jako v metodě Element.text knihovny Jsoup.
+     *
+     * @param text text odkazu.
+     * @return normalizovaný text.
+     */
+    private static String normalize(CharSequence text) {
+        String decoded = unescape(text.toString(), false);
+        StringBuilder normalized = new StringBuilder(decoded.length());
+        boolean space = false;
+        for (int i = 0; i < decoded.length(); i++) {
+            char c = decoded.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Dekóduje HTML entity, pokud text nějakou obsahuje.
+     * <p>
+     * Běžné entity (&amp;amp;, &amp;lt;, &amp;gt;, &amp;quot;, &amp;apos;, &amp;nbsp; a číselné entity) jsou dekódovány
+     * přímo. Pouze pokud text obsahuje jinou pojmenovanou entitu, je použit dekodér Jsoup, který je
+     * pro krátké řetězce výrazně dražší.
+     *
+     * @param text      text k dekódování.
+     * @param attribute zda jde o hodnotu atributu.
+     * @return dekódovaný text.
+     */
+    private static String unescape(String text, boolean attribute) {
+        int amp = text.indexOf('&');
+        if (amp < 0) {
+            return text;
+        }
+        StringBuilder decoded = new StringBuilder(text.length());
+        decoded.append(text, 0, amp);
+        int i = amp;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            int semicolon = c == '&' ? text.indexOf(';', i) : -1;
+            if (semicolon < 0 || semicolon - i > 10) {
+                decoded.append(c);
+                i++;
+                continue;
+            }
+            String entity = text.substring(i + 1, semicolon);
+            String value = switch (entity) {
+                case "amp" -> "&";
+                case "lt" -> "<";
+                case "gt" -> ">";
+                case "quot" -> "\"";
+                case "apos" -> "'";
+                case "nbsp" -> "\u00A0";
+                default -> numericEntity(entity);
+            };
+            if (value == null) {
+                return Parser.unescapeEntities(text, attribute);
+            }
+            decoded.append(value);
+            i = semicolon + 1;
+        }
+        return decoded.toString();
+    }
+
+    /**
+     * Dekóduje číselnou entitu ve tvaru #123 nebo #x7B.
+     *
+     * @param entity text entity bez znaků '&amp;' a ';'.
+     * @return dekódovaný znak, nebo null, pokud nejde o platnou číselnou entitu.
+     */
+    private static String numericEntity(String entity) {
+        if (entity.length() < 2 || entity.charAt(0) != '#') {
+            return null;
+        }
+        try {
+            boolean hex = entity.charAt(1) == 'x' || entity.charAt(1) == 'X';
+            int codePoint = hex ? Integer.parseInt(entity.substring(2), 16) : Integer.parseInt(entity.substring(1));
+            return Character.isValidCodePoint(codePoint) ? new String(Character.toChars(codePoint)) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package cz.xlisto.znacky;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Třída ThumbnailCache načítá na pozadí náhledy obrázků značek a uchovává je v paměti.
+ * <p>
+ * Náhledy jsou dekódovány rovnou ve zmenšené velikosti {@link #THUMBNAIL_SIZE}, takže v paměti nikdy
+ * není celý obrázek v plném rozlišení. Dekódované obrázky jsou uloženy v mezipaměti LRU, jejíž velikost
+ * je omezena počtem bajtů pixelů (šířka × výška × 4), nikoli počtem položek.
+ * <p>
+ * Náhledy se načítají pouze na žádost buněk ListView, tedy jen pro viditelné položky. Fronta požadavků
+ * je zpracovávána od nejnovějšího (LIFO), aby při rychlém posunu seznamu měly přednost právě zobrazené
+ * buňky. Požadavek vrací Future, kterou buňka zruší, pokud je mezitím použita pro jinou položku.
+ */
+public class ThumbnailCache {
+    private static final Logger logger = LoggerFactory.getLogger(ThumbnailCache.class);
+
+    /**
+     * Šířka a výška náhledu v pixelech.
+     */
+    public static final int THUMBNAIL_SIZE = 48;
+    /**
+     * Výchozí maximální velikost dekódovaných náhledů v paměti v bajtech.
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    /**
+     * Výchozí počet vláken pro načítání náhledů.
+     */
+    public static final int DEFAULT_THREADS = 4;
+
+    /**
+     * Maximální velikost dekódovaných náhledů v bajtech.
+     */
+    private final long maxBytes;
+    /**
+     * Náhledy v pořadí od nejdéle nepoužitého, klíčem je URL adresa obrázku.
+     */
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(256, 0.75f, true);
+    /**
+     * Celková velikost náhledů v mezipaměti v bajtech.
+     */
+    private long totalBytes;
+    /**
+     * Vlákna pro stahování a dekódování náhledů.
+     */
+    private final ExecutorService loader;
+    /**
+     * HTTP spojení pro stahování obrázků.
+     */
+    private final HttpTransport transport;
+
+    /**
+     * Konstruktor třídy ThumbnailCache s výchozím počtem vláken a sdíleným HTTP spojením.
+     *
+     * @param maxBytes maximální velikost dekódovaných náhledů v paměti v bajtech.
+     */
+    public ThumbnailCache(long maxBytes) {
+        this(maxBytes, DEFAULT_THREADS, HttpTransport.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy ThumbnailCache.
+     *
+     * @param maxBytes  maximální velikost dekódovaných náhledů v paměti v bajtech.
+     * @param threads   počet vláken pro načítání náhledů.
+     * @param transport HTTP spojení pro stahování obrázků.
+     */
+    public ThumbnailCache(long maxBytes, int threads, HttpTransport transport) {
+        this.maxBytes = maxBytes;
+        this.transport = transport;
+        // Fronta LIFO: nejnověji vyžádané (právě viditelné) náhledy se načítají jako první
+        this.loader = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<>() {
+            @Override
+            public boolean offer(Runnable runnable) {
+                return offerFirst(runnable);
+            }
+        }, runnable -> {
+            Thread thread = new Thread(runnable, "thumbnail-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Vrátí náhled z mezipaměti a označí jej jako naposledy použitý.
+     *
+     * @param url URL adresa obrázku.
+     * @return náhled, nebo null, pokud v mezipaměti není.
+     */
+    public synchronized Image get(String url) {
+        return images.get(url);
+    }
+
+    /**
+     * Načte náhled na pozadí a po načtení jej předá posluchači ve vlákně JavaFX.
+     * <p>
+     * Pokud je požadavek zrušen dříve, než se náhled načte, posluchač není zavolán.
+     * Chyba při načítání je zapsána do logu a posluchač není zavolán.
+     *
+     * @param url      URL adresa obrázku.
+     * @param onLoaded posluchač, kterému je načtený náhled předán ve vlákně JavaFX.
+     * @return Future, kterou lze požadavek zrušit.
+     */
+    public Future<?> load(String url, Consumer<Image> onLoaded) {
+        return loader.submit(() -> {
+            Image image = get(url);
+            if (image == null) {
+                image = decode(url);
+                if (image == null || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                put(url, image);
+            }
+            Image loaded = image;
+            Platform.runLater(() -> onLoaded.accept(loaded));
+        });
+    }
+
+    /**
+     * Stáhne obrázek a dekóduje jej ve velikosti náhledu.
+     *
+     * @param url URL adresa obrázku.
+     * @return náhled, nebo null, pokud obrázek nelze načíst nebo bylo načítání přerušeno.
+     */
+    private Image decode(String url) {
+        try (InputStream in = transport.openStream(ImageSaver.toUri(url))) {
+            Image image = new Image(in, THUMBNAIL_SIZE, THUMBNAIL_SIZE, true, true);
+            if (image.isError()) {
+                logger.warn("Náhled {} nelze dekódovat: {}", url, image.getException() != null ? image.getException().getMessage() : "");
+                return null;
+            }
+            return image;
+        } catch (InterruptedException e) {
+            // Buňka byla mezitím použita pro jinou položku
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException | URISyntaxException e) {
+            logger.warn("Náhled {} nelze načíst: {}", url, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Vloží náhled do mezipaměti a odstraní nejdéle nepoužité náhledy nad limit velikosti.
+     *
+     * @param url   URL adresa obrázku.
+     * @param image dekódovaný náhled.
+     */
+    private synchronized void put(String url, Image image) {
+        Image previous = images.put(url, image);
+        if (previous != null) {
+            totalBytes -= sizeOf(previous);
+        }
+        totalBytes += sizeOf(image);
+        Iterator<Map.Entry<String, Image>> iterator = images.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Image> eldest = iterator.next();
+            if (eldest.getKey().equals(url)) {
+                continue;
+            }
+            totalBytes -= sizeOf(eldest.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * @return celková velikost náhledů v mezipaměti v bajtech.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Odhadne velikost dekódovaného obrázku v paměti (4 bajty na pixel).
+     *
+     * @param image dekódovaný obrázek.
+     * @return velikost v bajtech.
+     */
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+}
@@ -0,0 +1,94 @@
+package cz.xlisto.znacky;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Třída TimedInputStream měří, kolik času a bajtů připadá na čtení z podkladového proudu.
+ * <p>
+ * Parser a ukládání čtou tělo HTTP odpovědi průběžně, takže čekání na síť a zpracování dat se střídají.
+ * Součet doby strávené v metodách read odpovídá čekání na síť, zbytek celkové doby připadá na zpracování.
+ * Proud je čten vždy jedním vláknem, čítače proto nejsou synchronizované.
+ * <p>
+ * Proud si také pamatuje, zda čtení skončilo chybou. Volající tak rozliší chybu sítě od chyby při
+ * zpracování dat, například při zápisu na disk.
+ */
+class TimedInputStream extends FilterInputStream {
+    /**
+     * Doba strávená čtením v nanosekundách.
+     */
+    private long readNanos;
+    /**
+     * Počet přečtených bajtů.
+     */
+    private long bytes;
+    /**
+     * Zda čtení z podkladového proudu skončilo chybou.
+     */
+    private boolean readFailed;
+
+    /**
+     * Konstruktor třídy TimedInputStream.
+     *
+     * @param in podkladový proud.
+     */
+    TimedInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        try {
+            int value = super.read();
+            if (value >= 0) {
+                bytes++;
+            }
+            return value;
+        } catch (IOException e) {
+            readFailed = true;
+            throw e;
+        } finally {
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        long start = System.nanoTime();
+        try {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                bytes += read;
+            }
+            return read;
+        } catch (IOException e) {
+            readFailed = true;
+            throw e;
+        } finally {
+            readNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * @return doba strávená čtením v nanosekundách.
+     */
+    long getReadNanos() {
+        return readNanos;
+    }
+
+    /**
+     * @return počet přečtených bajtů.
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return true, pokud čtení z podkladového proudu skončilo chybou.
+     */
+    boolean isReadFailed() {
+        return readFailed;
+    }
+}
@@ -1,14 +1,26 @@
 package cz.xlisto.znacky;
 
-import javafx.collections.ObservableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.net.URL;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Třída WebLoader slouží k načítání obsahu webových stránek z daných URL adres.
@@ -19,14 +31,18 @@ import java.io.InputStreamReader;
  * Hlavní funkce třídy:
  * <ul>
  *   <li>Načítání obsahu webové stránky z dané URL pomocí metody loadWeb.</li>
+ *   <li>Souběžné načítání všech stránek katalogu pomocí metody loadWebConcurrently.</li>
+ *   <li>Předávání načtených stránek dalšímu zpracování (například CatalogPipeline) pomocí metody crawl.</li>
+ *   <li>Souběžné načítání více zdrojů katalogu (CatalogSource) a jejich sloučení pomocí metod crawlSources a loadSources.</li>
  *   <li>Získání seznamu URL adres nalezených parserem pomocí metody getUrlList.</li>
+ *   <li>Opakování stránek, které selhaly přechodnou chybou, podle RetryPolicy.</li>
+ *   <li>Evidence stránek, které se nepodařilo načíst, pomocí metody getFailedPages.</li>
  * </ul>
  * <p>
  * Třída využívá následující knihovny:
  * <ul>
- *   <li>java.net.HttpURLConnection pro zpracování HTTP požadavků.</li>
+ *   <li>HttpTransport pro zpracování HTTP požadavků přes sdílený fond spojení.</li>
  *   <li>org.slf4j.Logger pro logování chyb a informací.</li>
- *   <li>javafx.collections.ObservableList pro práci se seznamem URL adres.</li>
  * </ul>
  */
 public class WebLoader {
@@ -44,17 +60,132 @@ public class WebLoader {
      * pro parsování HTML obsahu načteného z webových stránek.
      */
     private final ParserHTML parser;
+    /**
+     * Zdroj katalogu, pro který je vytvořen parser, s vlastním omezením počtu požadavků.
+     */
+    private final Site site;
+    /**
+     * Výchozí maximální počet současně načítaných stránek katalogu.
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+    /**
+     * URL adresa webové stránky s databází dopravních značek.
+     */
+    public static final String DEFAULT_CATALOG_URL = "http://www.celysvet.cz/test-znalosti-dopravnich-znacek-databaze";
+
+    /**
+     * Příjemce stránek načtených metodou crawl.
+     */
+    @FunctionalInterface
+    public interface PageSink {
+        /**
+         * Převezme načtenou stránku. Může blokovat, dokud není stránka zpracována nebo zařazena do fronty.
+         *
+         * @param page načtená stránka katalogu.
+         * @throws InterruptedException pokud je vlákno během čekání přerušeno.
+         */
+        void accept(CatalogPage page) throws InterruptedException;
+    }
+    /**
+     * Sdílené HTTP spojení pro načítání stránek.
+     */
+    private final HttpTransport transport;
+    /**
+     * Mezipaměť načtených stránek, nebo null, pokud se stránky nemají ukládat.
+     */
+    private final PageCache pageCache;
+    /**
+     * Index položek, který při slučování stránek vyřazuje duplicitní značky.
+     */
+    private final SignIndex index = new SignIndex();
+    /**
+     * Vyhledávací index položek podle kódu a slov popisu, budovaný postupně při slučování stránek.
+     */
+    private final SearchIndex searchIndex = new SearchIndex();
+    /**
+     * Reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     */
+    private final ProgressReporter progress;
+    /**
+     * Pravidla pro opakování stránek, které selhaly přechodnou chybou.
+     */
+    private final RetryPolicy retryPolicy;
+    /**
+     * Metriky fází načítání a parsování stránek.
+     */
+    private final RunMetrics metrics = RunMetrics.getDefault();
+    /**
+     * URL adresy stránek, které se nepodařilo načíst ani po opakovaných pokusech.
+     * <p>
+     * Neúplně načtený katalog tak není zaměněn za úplný a volající může chybějící stránky ohlásit.
+     */
+    private final List<String> failedPages = Collections.synchronizedList(new ArrayList<>());
 
     /**
      * Konstruktor třídy WebLoader.
      * <p>
-     * Inicializuje instanci třídy WebLoader s referencí na instanci ZnackyController.
-     * Tato reference je použita pro vytvoření instance ParserHTML, která je zodpovědná za parsování HTML obsahu.
+     * Inicializuje instanci třídy WebLoader s reporterem průběhu.
+     * Reporter je předán instanci ParserHTML, která je zodpovědná za parsování HTML obsahu.
+     *
+     * @param progress reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     */
+    public WebLoader(ProgressReporter progress) {
+        this(progress, HttpTransport.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy WebLoader s vlastním HTTP spojením.
+     *
+     * @param progress  reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     * @param transport HTTP spojení, přes které jsou stránky načítány.
+     */
+    public WebLoader(ProgressReporter progress, HttpTransport transport) {
+        this(progress, transport, null);
+    }
+
+    /**
+     * Konstruktor třídy WebLoader s vlastním HTTP spojením a mezipamětí stránek.
+     *
+     * @param progress  reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     * @param transport HTTP spojení, přes které jsou stránky načítány.
+     * @param pageCache mezipaměť načtených stránek, nebo null, pokud se stránky nemají ukládat.
+     */
+    public WebLoader(ProgressReporter progress, HttpTransport transport, PageCache pageCache) {
+        this(progress, transport, pageCache, RetryPolicy.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy WebLoader s vlastním HTTP spojením, mezipamětí stránek a pravidly pro opakování.
      *
-     * @param znackyController instance třídy ZnackyController, která je použita pro aktualizaci průběhu načítání.
+     * @param progress    reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     * @param transport   HTTP spojení, přes které jsou stránky načítány.
+     * @param pageCache   mezipaměť načtených stránek, nebo null, pokud se stránky nemají ukládat.
+     * @param retryPolicy pravidla pro opakování stránek, které selhaly přechodnou chybou.
      */
-    public WebLoader(ZnackyController znackyController) {
-        this.parser = new ParserHTML(znackyController);
+    public WebLoader(ProgressReporter progress, HttpTransport transport, PageCache pageCache, RetryPolicy retryPolicy) {
+        this(progress, transport, pageCache, retryPolicy, CatalogSource.getDefault());
+    }
+
+    /**
+     * Konstruktor třídy WebLoader pro zadaný zdroj katalogu.
+     * <p>
+     * Metody loadWeb, loadWebConcurrently a crawl načítají stránky podle pravidel tohoto zdroje
+     * a s jeho omezením počtu požadavků za sekundu.
+     *
+     * @param progress    reporter průběhu načítání, nebo null, pokud průběh není sledován.
+     * @param transport   HTTP spojení, přes které jsou stránky načítány.
+     * @param pageCache   mezipaměť načtených stránek, nebo null, pokud se stránky nemají ukládat.
+     * @param retryPolicy pravidla pro opakování stránek, které selhaly přechodnou chybou.
+     * @param source      zdroj katalogu.
+     */
+    public WebLoader(ProgressReporter progress, HttpTransport transport, PageCache pageCache, RetryPolicy retryPolicy,
+                     CatalogSource source) {
+        this.parser = new ParserHTML(progress, source);
+        this.site = new Site(source, parser, RateLimiter.of(source.requestsPerSecond()));
+        this.progress = progress;
+        this.transport = transport;
+        this.pageCache = pageCache;
+        this.retryPolicy = retryPolicy;
     }
 
     /**
@@ -62,55 +193,471 @@ public class WebLoader {
      * <p>
      * Tato metoda provede následující kroky:
      * <ol>
-     *   <li>Vytvoří objekt URL a otevře spojení.</li>
-     *   <li>Nastaví metodu požadavku na GET.</li>
-     *   <li>Načte odpověď z webové stránky pomocí BufferedReader.</li>
-     *   <li>Obsah stránky uloží do StringBuilderu.</li>
-     *   <li>Zavolá metodu parseHTML třídy ParserHTML s načteným obsahem stránky.</li>
-     *   <li>Pokud metoda parseHTML vrátí další URL, rekurzivně zavolá loadWeb s touto URL.</li>
-     *   <li>V případě chyby při načítání webu zapíše chybu do logu.</li>
+     *   <li>Načte stránku metodou fetchPage, která ji parsuje přímo z proudu dat nebo použije mezipaměť.</li>
+     *   <li>Přidá nalezené položky do seznamu URL adres a vyřadí přitom duplicity.</li>
+     *   <li>Pokud stránka odkazuje na další URL, pokračuje stejným způsobem s touto URL.</li>
+     *   <li>V případě chyby při načítání webu zapíše chybu do logu a stránku zaznamená mezi nenačtené.</li>
      * </ol>
+     * Stránky jsou načítány v cyklu, takže hloubka zásobníku nezávisí na počtu stránek katalogu.
+     * Stránka, na kterou již některá dřívější stránka odkazovala, není načtena znovu.
      *
      * @param url URL adresa webové stránky, kterou chceme načíst.
      */
     public void loadWeb(String url) {
-        try {
-            // Vytvoření objektu URL a otevření spojení
-            URL obj = new URI(url).toURL();
-            HttpURLConnection connection = (HttpURLConnection) obj.openConnection();
+        Set<String> visited = new HashSet<>();
+        String pageUrl = url;
+        while (pageUrl != null && visited.add(pageUrl)) {
+            try {
+                // Streamované parsování stránky přímo z odpovědi serveru
+                CatalogPage page = fetchPage(site, pageUrl);
+                merge(page);
+                pageUrl = page.nextUrl();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Načítání webu bylo přerušeno");
+                return;
+            } catch (Exception e) {
+                recordFailedPage(pageUrl, e);
+                return;
+            }
+        }
+    }
 
-            // Nastavení metody požadavku (GET nebo POST)
-            connection.setRequestMethod("GET");
+    /**
+     * Metoda pro souběžné načtení všech stránek katalogu.
+     * <p>
+     * Načtené stránky sloučí do seznamu URL adres v pořadí katalogu a vyřadí přitom duplicity.
+     * Postup načítání popisuje metoda crawl.
+     *
+     * @param url         URL adresa první stránky katalogu.
+     * @param parallelism maximální počet současně načítaných stránek.
+     */
+    public void loadWebConcurrently(String url, int parallelism) {
+        crawl(url, parallelism, this::merge);
+    }
 
-            // Načtení odpovědi z webové stránky
-            BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-            String inputLine;
-            StringBuilder response = new StringBuilder();
+    /**
+     * Souběžně načte všechny stránky katalogu a v pořadí katalogu je předá příjemci.
+     * <p>
+     * Na rozdíl od metody loadWeb nečeká na každou stránku zvlášť. Tato metoda provede následující kroky:
+     * <ol>
+     *   <li>Načte první stránku a rozpozná z ní stránkování (parametr posunu, krok a poslední stránku).</li>
+     *   <li>Sestaví URL adresy všech známých stránek a načte je souběžně pomocí omezeného počtu vláken.</li>
+     *   <li>Načtené stránky předá příjemci v pořadí katalogu.</li>
+     *   <li>Pokud načtené stránky dávky odkazují na další dosud nenačtené stránky, pokračuje stejným způsobem
+     *   s nimi. Odkazy se sbírají ze všech načtených stránek dávky, nejen z poslední.</li>
+     *   <li>Pokud se některou stránku nepodaří načíst, zkusí podle stránkování i stránku za ní, aby jedna
+     *   chybějící stránka na konci dávky neukončila načítání celého katalogu.</li>
+     *   <li>Pokud stránkování nelze rozpoznat, pokračuje postupně podle odkazu "další :".</li>
+     * </ol>
+     * Najednou je rozpracováno nejvýše dvojnásobek parallelism stránek. Pokud příjemce stránky
+     * nestíhá převzít (například protože je předává do plné fronty), načítání dalších stránek se
+     * zastaví, takže v paměti nikdy není více než tento počet nepředaných stránek.
+     * <p>
+     * Stránky, které se nepodaří načíst ani po opakování, jsou zaznamenány a lze je zjistit metodou getFailedPages.
+     *
+     * @param url         URL adresa první stránky katalogu.
+     * @param parallelism maximální počet současně načítaných stránek.
+     * @param sink        příjemce načtených stránek.
+     */
+    public void crawl(String url, int parallelism, PageSink sink) {
+        crawl(site, url, parallelism, sink);
+    }
 
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
+    /**
+     * Souběžně načte katalogy několika zdrojů a všechny načtené stránky předá příjemci.
+     * <p>
+     * Každý zdroj je načítán ve vlastním vlákně postupem metody crawl, s vlastním počtem současně
+     * načítaných stránek (CatalogSource.parallelism) a vlastním omezením počtu požadavků za sekundu
+     * (CatalogSource.requestsPerSecond). Pomalý nebo přísně omezený web tak nezdržuje ostatní zdroje.
+     * <p>
+     * Stránky jednoho zdroje jsou předány v pořadí jeho katalogu, stránky různých zdrojů se mohou
+     * prolínat. Příjemce proto musí být bezpečný pro volání z více vláken.
+     *
+     * @param sources zdroje katalogu.
+     * @param sink    příjemce načtených stránek.
+     */
+    public void crawlSources(List<CatalogSource> sources, PageSink sink) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, sources.size()), runnable -> {
+            Thread thread = new Thread(runnable, "web-loader-source");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Future<?>> crawls = new ArrayList<>();
+        try {
+            for (CatalogSource source : sources) {
+                Site sourceSite = source == site.source() ? site
+                        : new Site(source, new ParserHTML(progress, source), RateLimiter.of(source.requestsPerSecond()));
+                crawls.add(executor.submit(() -> crawl(sourceSite, source.catalogUrl(), source.parallelism(), sink)));
             }
-            in.close();
+            for (Future<?> crawl : crawls) {
+                crawl.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Načítání zdrojů katalogu bylo přerušeno");
+        } catch (ExecutionException | CancellationException e) {
+            // Metoda crawl chyby stránek zaznamenává sama, sem se dostane jen neočekávaná chyba
+            logger.error("Načítání zdroje katalogu selhalo", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-            // Zavolání metody parseHTML s načteným obsahem stránky
-            String nextUrl = parser.parseHTML(response.toString());
-            if (nextUrl != null) {
-                loadWeb(nextUrl);
+    /**
+     * Souběžně načte katalogy několika zdrojů a sloučí je do jednoho seznamu URL adres bez duplicit.
+     * <p>
+     * Postup načítání popisuje metoda crawlSources. Značka, která je ve více zdrojích, je v seznamu
+     * jen jednou, a to z té stránky, která byla sloučena dříve.
+     *
+     * @param sources zdroje katalogu.
+     */
+    public void loadSources(List<CatalogSource> sources) {
+        crawlSources(sources, page -> {
+            synchronized (index) {
+                merge(page);
             }
+        });
+    }
 
+    /**
+     * Souběžně načte všechny stránky katalogu jednoho zdroje a v pořadí katalogu je předá příjemci.
+     *
+     * @param site        zdroj katalogu s parserem a omezením počtu požadavků.
+     * @param url         URL adresa první stránky katalogu.
+     * @param parallelism maximální počet současně načítaných stránek.
+     * @param sink        příjemce načtených stránek.
+     * @see #crawl(String, int, PageSink)
+     */
+    private void crawl(Site site, String url, int parallelism, PageSink sink) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "web-loader-" + site.source().name());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int window = parallelism * 2;
+        Set<String> visited = new HashSet<>();
+        try {
+            visited.add(url);
+            CatalogPage page = fetchPage(site, url);
+            sink.accept(page);
 
+            List<CatalogPage> loaded = List.of(page);
+            List<String> failed = new ArrayList<>();
+            // Stránky odvozené ze stránkování za nenačtenou stránkou, na které žádná stránka neodkazuje
+            Set<String> guessed = new HashSet<>();
+            Pagination pagination = page.pagination();
+            while (true) {
+                for (CatalogPage loadedPage : loaded) {
+                    if (loadedPage.pagination() != null) {
+                        pagination = loadedPage.pagination();
+                    }
+                }
+                List<String> batch = nextBatch(loaded, visited);
+                if (pagination != null) {
+                    for (String failedUrl : failed) {
+                        String successor = pagination.urlAfter(failedUrl);
+                        if (successor != null && visited.add(successor)) {
+                            batch.add(successor);
+                            guessed.add(successor);
+                        }
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                // Souběžné načtení dávky stránek s omezeným počtem rozpracovaných stránek
+                // a předání výsledků v pořadí katalogu
+                Deque<Future<CatalogPage>> pending = new ArrayDeque<>();
+                int submitted = 0;
+                int completed = 0;
+                List<CatalogPage> batchPages = new ArrayList<>();
+                failed = new ArrayList<>();
+                while (completed < batch.size()) {
+                    while (submitted < batch.size() && pending.size() < window) {
+                        String pageUrl = batch.get(submitted++);
+                        pending.add(executor.submit(() -> fetchPage(site, pageUrl)));
+                    }
+                    try {
+                        CatalogPage batchPage = pending.removeFirst().get();
+                        sink.accept(batchPage);
+                        batchPages.add(batchPage);
+                    } catch (ExecutionException e) {
+                        String failedUrl = batch.get(completed);
+                        if (guessed.contains(failedUrl) && e.getCause() instanceof HttpStatusException status
+                                && status.getStatusCode() == 404) {
+                            // Odvozená stránka nemusí existovat, například pokud nenačtená stránka byla poslední
+                            logger.info("Stránka {} za nenačtenou stránkou neexistuje", failedUrl);
+                        } else {
+                            recordFailedPage(failedUrl, e.getCause());
+                            failed.add(failedUrl);
+                        }
+                    }
+                    completed++;
+                }
+                loaded = batchPages;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Načítání webu bylo přerušeno");
         } catch (Exception e) {
-            logger.error("Chyba při načítání webu: {}", e.getMessage());
+            // Chyby dalších stránek zachytí sloučení dávky, sem se dostane jen chyba první stránky
+            recordFailedPage(url, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sestaví další dávku stránek z odkazů načtených stránek předchozí dávky.
+     * <p>
+     * Z každé stránky, která odkazuje na další stránku, jsou vzaty všechny stránky známé ze stránkování
+     * a odkaz "další :" (pokud stránkování nelze rozpoznat, je to jediný odkaz). Již navštívené stránky
+     * jsou vynechány, takže dávka obsahuje jen nové stránky v pořadí katalogu.
+     *
+     * @param loaded  načtené stránky předchozí dávky v pořadí katalogu.
+     * @param visited URL adresy již navštívených stránek, doplněné o stránky nové dávky.
+     * @return URL adresy stránek další dávky, nebo prázdný seznam, pokud žádná další stránka není.
+     */
+    private static List<String> nextBatch(List<CatalogPage> loaded, Set<String> visited) {
+        List<String> batch = new ArrayList<>();
+        for (CatalogPage page : loaded) {
+            if (page.nextUrl() == null) {
+                continue;
+            }
+            Pagination pagination = page.pagination();
+            if (pagination != null) {
+                for (String pageUrl : pagination.urlsAfter(pagination.getCurrent())) {
+                    if (visited.add(pageUrl)) {
+                        batch.add(pageUrl);
+                    }
+                }
+            }
+            if (visited.add(page.nextUrl())) {
+                batch.add(page.nextUrl());
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Načte a streamovaně zparsuje jednu stránku katalogu pomocí sdíleného HTTP spojení.
+     * <p>
+     * Pokud je nastavena mezipaměť stránek, je stránka načtena podmíněným požadavkem. Při odpovědi 304
+     * nebo při stejném otisku obsahu jsou použity uložené položky a stránka není znovu parsována.
+     * V tomto případě je tělo odpovědi načteno celé, aby bylo možné otisk spočítat před parsováním.
+     * <p>
+     * Stránka, jejíž načtení selže přechodnou chybou (například 503 nebo vypršení časového limitu),
+     * je načtena znovu podle RetryPolicy. Před každým pokusem se čeká na omezení počtu požadavků zdroje.
+     *
+     * @param site zdroj katalogu s parserem a omezením počtu požadavků.
+     * @param url  URL adresa webové stránky.
+     * @return výsledek parsování stránky.
+     * @throws IOException          pokud se stránku nepodaří načíst ani po opakovaných pokusech.
+     * @throws InterruptedException pokud je vlákno během načítání přerušeno.
+     */
+    private CatalogPage fetchPage(Site site, String url) throws IOException, InterruptedException {
+        CatalogPage page = retryPolicy.execute(url, () -> {
+            site.rateLimiter().acquire();
+            return loadPage(site.parser(), url);
+        });
+        if (progress != null) {
+            progress.addPage();
+        }
+        return page;
+    }
+
+    /**
+     * Načte jednu stránku katalogu přímo ze serveru nebo s využitím mezipaměti stránek.
+     * <p>
+     * Doba načítání a parsování je zaznamenána do metrik fází FETCH a PARSE, velikost přenesené
+     * stránky do průběhu načítání.
+     *
+     * @param parser parser stránek zdroje katalogu.
+     * @param url    URL adresa webové stránky.
+     * @return výsledek parsování stránky.
+     * @throws IOException          pokud dojde k chybě při načítání nebo parsování stránky.
+     * @throws InterruptedException pokud je vlákno během načítání přerušeno.
+     */
+    private CatalogPage loadPage(ParserHTML parser, String url) throws IOException, InterruptedException {
+        PhaseMetrics fetch = metrics.phase(RunMetrics.Phase.FETCH);
+        PhaseMetrics parse = metrics.phase(RunMetrics.Phase.PARSE);
+        if (pageCache == null) {
+            long start = fetch.begin();
+            HttpTransport.PageStream page;
+            try {
+                page = transport.openPage(url);
+            } catch (IOException | InterruptedException e) {
+                fetch.failed(e);
+                throw e;
+            }
+            long headersNanos = System.nanoTime() - start;
+            // Stránka je parsována přímo z proudu dat, doba čtení proudu se proto počítá do fáze FETCH
+            long parseStart = parse.begin();
+            TimedInputStream in = new TimedInputStream(page.body());
+            CatalogPage parsed;
+            try (in) {
+                parsed = parser.parsePage(in, page.charset(), url);
+            } catch (IOException e) {
+                fetch.failed(e);
+                parse.abandon();
+                throw e;
+            } catch (RuntimeException e) {
+                fetch.abandon();
+                parse.failed(e);
+                throw e;
+            }
+            fetch.complete(in.getBytes(), headersNanos + in.getReadNanos());
+            parse.complete(in.getBytes(), System.nanoTime() - parseStart - in.getReadNanos());
+            if (progress != null) {
+                progress.addBytes(in.getBytes());
+            }
+            return parsed;
+        }
+
+        PageCache.CachedPage cached = pageCache.get(url);
+        long start = fetch.begin();
+        HttpTransport.ConditionalResponse response;
+        byte[] body;
+        try {
+            response = transport.openPageIfModified(url,
+                    cached != null ? cached.etag() : null, cached != null ? cached.lastModified() : null);
+            if (response.notModified() && cached != null) {
+                fetch.end(start, 0);
+                return cached.page();
+            }
+            try (InputStream in = response.body()) {
+                body = in.readAllBytes();
+            }
+        } catch (IOException | InterruptedException e) {
+            fetch.failed(e);
+            throw e;
+        }
+        fetch.end(start, body.length);
+        if (progress != null) {
+            progress.addBytes(body.length);
+        }
+        String sha256;
+        try {
+            sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 musí podporovat každá implementace Javy
+            throw new IllegalStateException(e);
+        }
+        CatalogPage page;
+        if (cached != null && sha256.equals(cached.sha256())) {
+            page = cached.page();
+        } else {
+            long parseStart = parse.begin();
+            try {
+                page = parser.parsePage(new ByteArrayInputStream(body), response.charset(), url);
+            } catch (IOException | RuntimeException e) {
+                parse.failed(e);
+                throw e;
+            }
+            parse.end(parseStart, body.length);
+        }
+        pageCache.put(new PageCache.CachedPage(url, response.etag(), response.lastModified(), sha256, page));
+        return page;
+    }
+
+    /**
+     * Sloučí položky stránky do seznamu URL adres a vyřadí přitom duplicitní položky.
+     * <p>
+     * Do průběhu načítání jsou započítány jen nové položky, počet položek tak odpovídá velikosti katalogu.
+     * <p>
+     * Metodu volá vždy jen jedno vlákno, které předává stránky v pořadí katalogu, nebo jsou volání
+     * synchronizována (metoda loadSources).
+     *
+     * @param page načtená stránka katalogu.
+     * @return nové položky stránky, které dosud v katalogu nebyly.
+     */
+    List<SignEntry> merge(CatalogPage page) {
+        List<SignEntry> unique = new ArrayList<>(page.entries().size());
+        for (SignEntry entry : page.entries()) {
+            if (index.add(entry)) {
+                unique.add(entry);
+            }
+        }
+        parser.getUrlList().addAll(unique);
+        searchIndex.addAll(unique);
+        if (progress != null) {
+            progress.addItems(unique.size());
         }
+        return unique;
+    }
 
+    /**
+     * Zaznamená stránku, kterou se nepodařilo načíst, a započítá ji do průběhu jako chybu.
+     *
+     * @param url   URL adresa stránky.
+     * @param cause příčina chyby.
+     */
+    private void recordFailedPage(String url, Throwable cause) {
+        logger.error("Stránku {} se nepodařilo načíst: {}", url, cause.getMessage());
+        failedPages.add(url);
+        if (progress != null) {
+            progress.addFailure();
+        }
+    }
+
+    /**
+     * Vrátí URL adresy stránek, které se nepodařilo načíst ani po opakovaných pokusech.
+     * <p>
+     * Pokud seznam není prázdný, načtený katalog je neúplný.
+     *
+     * @return seznam URL adres nenačtených stránek.
+     */
+    public List<String> getFailedPages() {
+        synchronized (failedPages) {
+            return new ArrayList<>(failedPages);
+        }
+    }
+
+    /**
+     * Vrátí počet duplicitních položek, které byly při slučování stránek vyřazeny.
+     *
+     * @return počet vyřazených duplicit.
+     */
+    public int getDuplicateCount() {
+        return index.getDuplicates();
+    }
+
+    /**
+     * Vrátí vyhledávací index načtených položek.
+     * <p>
+     * Index obsahuje stejné položky jako seznam getUrlList a je doplňován průběžně při načítání stránek.
+     *
+     * @return vyhledávací index.
+     */
+    public SearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @return zdroj katalogu, podle jehož pravidel načítají stránky metody loadWeb a crawl.
+     */
+    public CatalogSource getSource() {
+        return site.source();
     }
 
     /**
      * Metoda pro získání seznamu URL adres z parseru.
      *
-     * @return ObservableList obsahující URL adresy, které byly nalezeny parserem.
+     * @return seznam položek, které byly nalezeny parserem.
      */
-    public ObservableList<String[]> getUrlList() {
+    public List<SignEntry> getUrlList() {
         return parser.getUrlList();
     }
+
+    /**
+     * Zdroj katalogu připravený k načítání.
+     *
+     * @param source      zdroj katalogu.
+     * @param parser      parser stránek podle pravidel zdroje.
+     * @param rateLimiter omezení počtu požadavků na stránky zdroje.
+     */
+    private record Site(CatalogSource source, ParserHTML parser, RateLimiter rateLimiter) {
+    }
 }
@@ -40,13 +40,15 @@ public class ZnackyApplication extends Application {
      * Metoda start je vstupním bodem JavaFX aplikace.
      * <p>
      * Tato metoda načte FXML soubor `znacky-view.fxml` pomocí FXMLLoader, vytvoří hlavní scénu aplikace
-     * a zobrazí ji v hlavním okně (Stage).
+     * a zobrazí ji v hlavním okně (Stage). Zároveň spustí sledování souboru settings.ini, takže změny
+     * nastavení se uplatní bez restartu aplikace.
      *
      * @param stage hlavní okno aplikace, do kterého bude vložena hlavní scéna.
      * @throws IOException pokud dojde k chybě při načítání FXML souboru.
      */
     @Override
     public void start(Stage stage) throws IOException {
+        Settings.getDefault().watch();
         FXMLLoader fxmlLoader = new FXMLLoader(ZnackyApplication.class.getResource("znacky-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load());
         stage.setTitle("Dopravní značky - downloader");
@@ -0,0 +1,351 @@
+package cz.xlisto.znacky;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Třída ZnackyCli je vstupním bodem aplikace v režimu bez grafického rozhraní.
+ * <p>
+ * Načte katalog dopravních značek a uloží obrázky do zadané složky, aniž by spouštěla JavaFX.
+ * Obrázky se stahují průběžně již během načítání katalogu (CatalogPipeline). Ukončení procesu
+ * (například Ctrl+C) zruší načítání i stahování a zahodí neúplný archiv.
+ * Používá stejné třídy WebLoader, ParserHTML a ImageSaver jako grafická aplikace, které
+ * na JavaFX nezávisí. Je proto vhodná pro spouštění v kontejnerech a z plánovače úloh.
+ * <p>
+ * Průběh je vypisován na standardní výstup jako jeden objekt JSON na řádek, logy jsou
+ * vypisovány na standardní chybový výstup. Na konci běhu je na standardní chybový výstup vypsán
+ * souhrn metrik jednotlivých fází (RunMetrics).
+ * <p>
+ * Argumenty příkazového řádku:
+ * <ul>
+ *   <li>--url &lt;adresa&gt; - URL adresa první stránky katalogu (výchozí je databáze na celysvet.cz).</li>
+ *   <li>--variants &lt;šířky&gt; - šířky zmenšených variant obrázků v pixelech oddělené čárkami (ImagePostProcessor).</li>
+ *   <li>--optimize-png &lt;true|false&gt; - zda se mají uložené obrázky PNG optimalizovat.</li>
+ *   <li>--atlas &lt;true|false&gt; - zda se mají uložené obrázky po dokončení složit do atlasu (AtlasExporter).</li>
+ *   <li>--source &lt;název&gt; - zdroj katalogu (CatalogSource), lze zadat opakovaně nebo jako seznam oddělený
+ *   čárkami, hodnota all vybere všechny dostupné zdroje. Zdroje jsou načítány souběžně, každý se svými limity,
+ *   a argumenty --url a --pages se pak nepoužijí.</li>
+ *   <li>--out &lt;složka&gt; - cílová složka pro obrázky, povinný argument, pokud není v settings.ini nastavena výchozí složka.</li>
+ *   <li>--concurrency &lt;n&gt; - počet současně stahovaných obrázků.</li>
+ *   <li>--per-host &lt;n&gt; - maximální počet současných spojení na jeden server.</li>
+ *   <li>--pages &lt;n&gt; - maximální počet současně načítaných stránek katalogu.</li>
+ *   <li>--output &lt;režim&gt; - způsob uložení obrázků: directory (výchozí), content-addressed, zip nebo tar.</li>
+ *   <li>--sync &lt;keep|delete|archive&gt; - místo úplného stažení synchronizuje cílovou složku s předchozím
+ *   snímkem katalogu (CatalogSync): katalog se nejprve načte celý, stáhnou se jen přidané a změněné obrázky
+ *   a s obrázky odebraných značek se naloží podle hodnoty argumentu. Jen pro způsob uložení directory.</li>
+ * </ul>
+ * Výchozí hodnoty argumentů jsou převzaty z nastavení aplikace (Settings, soubor settings.ini).
+ */
+public class ZnackyCli {
+    /**
+     * Návratový kód při úspěšném dokončení.
+     */
+    static final int EXIT_OK = 0;
+    /**
+     * Návratový kód, pokud se některé stránky katalogu nepodařilo načíst nebo některé obrázky uložit.
+     */
+    static final int EXIT_FAILURES = 1;
+    /**
+     * Návratový kód při chybných argumentech.
+     */
+    static final int EXIT_USAGE = 2;
+    /**
+     * Maximální doba v sekundách, po kterou ukončení procesu čeká na dokončení zrušeného zpracování.
+     */
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    private String url = WebLoader.DEFAULT_CATALOG_URL;
+    private File out = Settings.getDefault().getDefaultDirectory();
+    private int concurrency = Settings.getDefault().getConcurrency();
+    private int perHost = Settings.getDefault().getPerHostLimit();
+    private int pages = Settings.getDefault().getPageParallelism();
+    private OutputMode outputMode = Settings.getDefault().getOutputMode();
+    private int[] variantWidths = Settings.getDefault().getVariantWidths();
+    private boolean optimizePng = Settings.getDefault().isOptimizePng();
+    private boolean atlas = Settings.getDefault().isAtlasExport();
+    /**
+     * Naložení s odebranými značkami při synchronizaci, nebo null, pokud se nesynchronizuje.
+     */
+    private CatalogSync.Removal sync;
+    /**
+     * Zdroje katalogu zadané argumentem --source, nebo prázdný seznam, pokud se načítá jen adresa --url.
+     */
+    private final List<CatalogSource> sources = new ArrayList<>();
+
+    /**
+     * Výstup, na který je vypisován průběh.
+     */
+    private final PrintStream stdout;
+
+    /**
+     * Konstruktor třídy ZnackyCli.
+     *
+     * @param stdout výstup, na který je vypisován průběh.
+     */
+    public ZnackyCli(PrintStream stdout) {
+        this.stdout = stdout;
+    }
+
+    /**
+     * Hlavní metoda režimu bez grafického rozhraní.
+     *
+     * @param args argumenty příkazového řádku.
+     */
+    public static void main(String[] args) {
+        System.exit(new ZnackyCli(System.out).run(args));
+    }
+
+    /**
+     * Zpracuje argumenty, načte katalog a uloží obrázky.
+     *
+     * @param args argumenty příkazového řádku.
+     * @return návratový kód procesu.
+     */
+    public int run(String[] args) {
+        try {
+            parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Použití: --out <složka> [--url <adresa>] [--concurrency <n>] [--per-host <n>] [--pages <n>] [--output directory|content-addressed|zip|tar] [--variants <šířky>] [--optimize-png true|false] [--atlas true|false] [--sync keep|delete|archive] [--source <název>|all]");
+            return EXIT_USAGE;
+        }
+        if (!out.isDirectory() && !out.mkdirs()) {
+            System.err.println("Nelze vytvořit cílovou složku " + out);
+            return EXIT_USAGE;
+        }
+
+        // Načtení katalogu a souběžné stažení obrázků
+        ProgressReporter crawlProgress = new ProgressReporter(snapshot -> print("crawl", snapshot), 2);
+        ProgressReporter downloadProgress = new ProgressReporter(snapshot -> print("download", snapshot), 2);
+        WebLoader webLoader = new WebLoader(crawlProgress);
+        CatalogPipeline pipeline = new CatalogPipeline(webLoader, new ImageSaver(concurrency, perHost), pages, concurrency);
+        CountDownLatch finished = new CountDownLatch(1);
+        Thread shutdownHook = new Thread(() -> {
+            // Zpracování je zrušeno a hlavní vlákno dostane čas uložit manifest a zahodit neúplný archiv
+            pipeline.cancel();
+            try {
+                finished.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "znacky-cli-cancel");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        // Zpracování uložených obrázků běží souběžně se stahováním
+        ImagePostProcessor postProcessor = ImagePostProcessor.create(out, outputMode, variantWidths, optimizePng,
+                Settings.getDefault().getPostProcessThreads());
+        // Atlas se skládá až z kompletní sady obrázků po skončení stahování
+        AtlasExporter atlasExporter = atlas ? AtlasExporter.create(out, outputMode,
+                Settings.getDefault().getAtlasPageSize(), Settings.getDefault().getAtlasSpriteSize()) : null;
+        DownloadListener listener = downloadProgress.asDownloadListener()
+                .andThen(postProcessor != null ? postProcessor.asDownloadListener() : null)
+                .andThen(atlasExporter != null ? atlasExporter.asDownloadListener() : null);
+        crawlProgress.start();
+        downloadProgress.start();
+        DownloadResult result;
+        CatalogSync.Report syncReport = null;
+        try {
+            if (sync != null) {
+                syncReport = sync(webLoader, pipeline, listener);
+                result = syncReport != null ? syncReport.download() : new DownloadResult();
+            } else {
+                result = sources.isEmpty()
+                        ? pipeline.run(url, out, outputMode, listener)
+                        : pipeline.runSources(sources, out, outputMode, listener);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            return EXIT_FAILURES;
+        } finally {
+            if (postProcessor != null) {
+                postProcessor.close();
+            }
+            crawlProgress.stop();
+            downloadProgress.stop();
+            removeShutdownHook(shutdownHook);
+            finished.countDown();
+        }
+        boolean atlasFailure = false;
+        if (atlasExporter != null && !pipeline.isCancelled()) {
+            try {
+                int sprites = atlasExporter.export();
+                stdout.printf(Locale.ROOT, "{\"phase\":\"atlas\",\"sprites\":%d}%n", sprites);
+            } catch (IOException e) {
+                System.err.println("Atlas nelze uložit: " + e.getMessage());
+                atlasFailure = true;
+            }
+        }
+        List<SignEntry> entries = webLoader.getUrlList();
+
+        int failedPages = webLoader.getFailedPages().size();
+        stdout.printf(Locale.ROOT, "{\"phase\":\"done\",\"entries\":%d,\"duplicates\":%d,\"failedPages\":%d,\"saved\":%d,\"skipped\":%d,\"failed\":%d,\"bytes\":%d}%n",
+                entries.size(), webLoader.getDuplicateCount(), failedPages, result.getSuccesses(), result.getSkipped(),
+                result.getFailures(), result.getBytes());
+        if (syncReport != null) {
+            stdout.printf(Locale.ROOT, "{\"phase\":\"sync\",\"added\":%d,\"changed\":%d,\"removed\":%d,\"unchanged\":%d,\"failed\":%d,\"report\":\"%s\"}%n",
+                    syncReport.added(), syncReport.changed(), syncReport.removed(), syncReport.unchanged(),
+                    result.getFailures(), syncReport.report().toString().replace("\\", "\\\\").replace("\"", "\\\""));
+        }
+        if (postProcessor != null) {
+            stdout.printf(Locale.ROOT, "{\"phase\":\"process\",\"processed\":%d,\"upToDate\":%d,\"failed\":%d,\"inputBytes\":%d,\"optimizedBytes\":%d,\"variantBytes\":%d}%n",
+                    postProcessor.getProcessed(), postProcessor.getUpToDate(), postProcessor.getFailed(),
+                    postProcessor.getInputBytes(), postProcessor.getOptimizedBytes(), postProcessor.getVariantBytes());
+        }
+        stdout.flush();
+        System.err.print(RunMetrics.getDefault().getSummary());
+        boolean processFailures = postProcessor != null && postProcessor.getFailed() > 0;
+        return result.getFailures() > 0 || failedPages > 0 || processFailures || atlasFailure ? EXIT_FAILURES : EXIT_OK;
+    }
+
+    /**
+     * Vypíše snímek průběhu jako jeden řádek JSON.
+     *
+     * @param phase    název fáze (crawl nebo download).
+     * @param snapshot snímek průběhu.
+     */
+    private void print(String phase, ProgressReporter.Snapshot snapshot) {
+        stdout.printf(Locale.ROOT, "{\"phase\":\"%s\",\"items\":%d,\"pages\":%d,\"bytes\":%d,\"failures\":%d,\"elapsedMs\":%d,\"itemsPerSec\":%.1f,\"bytesPerSec\":%.0f}%n",
+                phase, snapshot.items(), snapshot.pages(), snapshot.bytes(), snapshot.failures(),
+                snapshot.elapsedMillis(), snapshot.itemsPerSecond(), snapshot.bytesPerSecond());
+        stdout.flush();
+    }
+
+    /**
+     * Zpracuje argumenty příkazového řádku.
+     *
+     * @param args argumenty příkazového řádku.
+     * @throws IllegalArgumentException pokud jsou argumenty neplatné.
+     */
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String name = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Chybí hodnota argumentu " + name);
+            }
+            String value = args[++i];
+            switch (name) {
+                case "--url" -> url = value;
+                case "--out" -> out = new File(value);
+                case "--concurrency" -> concurrency = positive(name, value);
+                case "--per-host" -> perHost = positive(name, value);
+                case "--pages" -> pages = positive(name, value);
+                case "--output" -> outputMode = outputMode(value);
+                case "--source" -> addSources(value);
+                case "--variants" -> variantWidths = widths(name, value);
+                case "--optimize-png" -> optimizePng = Boolean.parseBoolean(value);
+                case "--atlas" -> atlas = Boolean.parseBoolean(value);
+                case "--sync" -> sync = removal(value);
+                default -> throw new IllegalArgumentException("Neznámý argument " + name);
+            }
+        }
+        if (out == null) {
+            throw new IllegalArgumentException("Chybí argument --out");
+        }
+        if (sync != null && outputMode != OutputMode.DIRECTORY) {
+            throw new IllegalArgumentException("Synchronizace je dostupná jen pro způsob uložení directory");
+        }
+    }
+
+    /**
+     * Načte celý katalog a synchronizuje s ním cílovou složku.
+     * <p>
+     * Synchronizace potřebuje k vyhodnocení odebraných značek celý katalog, stránky se proto načítají
+     * souběžně, ale obrázky se stahují až po načtení poslední stránky.
+     * <p>
+     * Načítání i stahování běží přes CatalogPipeline, takže je ukončení procesu (Ctrl+C) zruší stejně
+     * jako běžné stahování. Zrušené stahování ještě uloží manifest a snímek, nestažené značky v něm
+     * zůstanou v předchozí podobě.
+     *
+     * @param webLoader načítání katalogu.
+     * @param pipeline  zpracování, přes které se katalog načte a obrázky stáhnou.
+     * @param listener  posluchač informovaný o každé značce.
+     * @return výsledek synchronizace, nebo null, pokud bylo zpracování zrušeno během načítání katalogu.
+     * @throws IOException pokud nelze zapsat snímek nebo seznam změn.
+     */
+    private CatalogSync.Report sync(WebLoader webLoader, CatalogPipeline pipeline, DownloadListener listener) throws IOException {
+        if (sources.isEmpty()) {
+            pipeline.load(url);
+        } else {
+            pipeline.loadSources(sources);
+        }
+        if (pipeline.isCancelled()) {
+            return null;
+        }
+        boolean complete = webLoader.getFailedPages().isEmpty();
+        CatalogSync catalogSync = new CatalogSync((items, directory, itemListener) ->
+                pipeline.run(items, directory, OutputMode.DIRECTORY, itemListener), sync);
+        return catalogSync.sync(webLoader.getUrlList(), out, listener, complete);
+    }
+
+    /**
+     * Přidá zdroje katalogu zadané jedním argumentem --source.
+     *
+     * @param value název zdroje, seznam názvů oddělených čárkami, nebo all.
+     * @throws IllegalArgumentException pokud některý zdroj neexistuje.
+     */
+    private void addSources(String value) {
+        if (value.equalsIgnoreCase("all")) {
+            sources.addAll(CatalogSource.loadAll());
+            return;
+        }
+        for (String name : value.split(",")) {
+            CatalogSource source = CatalogSource.find(name.trim());
+            if (!sources.contains(source)) {
+                sources.add(source);
+            }
+        }
+    }
+
+    private static void removeShutdownHook(Thread hook) {
+        try {
+            Runtime.getRuntime().removeShutdownHook(hook);
+        } catch (IllegalStateException e) {
+            // Aplikace se již ukončuje
+        }
+    }
+
+    private static int[] widths(String name, String value) {
+        if (value.isBlank()) {
+            return new int[0];
+        }
+        String[] parts = value.split(",");
+        int[] widths = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            widths[i] = positive(name, parts[i].trim());
+        }
+        return widths;
+    }
+
+    private static CatalogSync.Removal removal(String value) {
+        try {
+            return CatalogSync.Removal.fromName(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Neznámé naložení s odebranými značkami: " + value);
+        }
+    }
+
+    private static OutputMode outputMode(String value) {
+        try {
+            return OutputMode.fromName(value);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Neznámý způsob uložení: " + value);
+        }
+    }
+
+    private static int positive(String name, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Zpracováno níže
+        }
+        throw new IllegalArgumentException("Argument " + name + " musí být kladné číslo: " + value);
+    }
+}
@@ -2,6 +2,8 @@ package cz.xlisto.znacky;
 
 
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -9,6 +11,8 @@ import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
+import javafx.scene.control.SelectionMode;
+import javafx.scene.control.TextField;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
@@ -17,7 +21,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
-import java.util.Properties;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
 
 /**
  * Třída ZnackyController slouží jako kontroler pro hlavní okno aplikace.
@@ -31,7 +41,10 @@ import java.util.Properties;
  *   <li>Načítání obsahu webové stránky pomocí metody onLoadImgButtonClick.</li>
  *   <li>Zobrazení načítacího dialogu během načítání obsahu.</li>
  *   <li>Aktualizace ListView s nalezenými URL adresami po dokončení načítání.</li>
- *   <li>Aktualizace průběhu načítání v labelu progress.</li>
+ *   <li>Aktualizace průběhu načítání v labelu progress v omezené frekvenci pomocí ProgressReporter.</li>
+ *   <li>Filtrování zobrazených položek podle kódu a popisu značky pomocí vyhledávacího pole a SearchIndex.</li>
+ *   <li>Ukládání obrázků na pozadí s možností zrušení pomocí CatalogPipeline.</li>
+ *   <li>Výběr více položek a jejich přednostní uložení, i během probíhajícího ukládání celého katalogu.</li>
  * </ul>
  * <p>
  * Třída využívá následující knihovny:
@@ -45,20 +58,6 @@ import java.util.Properties;
  * </ul>
  */
 public class ZnackyController {
-    /**
-     * Název konfiguračního souboru pro ukládání výchozí složky.
-     * <p>
-     * Tato konstanta obsahuje název souboru, ve kterém jsou ukládány konfigurační
-     * informace pro aplikaci. Soubor je uložen v kořenovém adresáři aplikace.
-     */
-    private static final String SETTINGS_FILE = "settings.ini";
-    /**
-     * Klíč pro ukládání výchozí složky do souboru settings.ini.
-     * <p>
-     * Tato konstanta obsahuje klíč, pod kterým je uložena cesta k výchozí složce
-     * do souboru settings.ini.
-     */
-    private static final String DIRECTORY_KEY = "defaultDirectory";
     /**
      * Logger pro zaznamenávání chyb a informací během načítání webových stránek.
      * <p>
@@ -73,7 +72,7 @@ public class ZnackyController {
      * nalezených na webové stránce s dopravními značkami.
      */
     @FXML
-    public ListView<String[]> listView;
+    public ListView<SignEntry> listView;
     /**
      * Label pro zobrazení uvítacího textu.
      * <p>
@@ -98,12 +97,12 @@ public class ZnackyController {
      */
     private WebLoader webLoader;
     /**
-     * URL adresa webové stránky s databází dopravních značek.
+     * Zdroje katalogu dopravních značek.
      * <p>
-     * Tato proměnná obsahuje URL adresu, která je použita pro načítání obsahu
-     * webové stránky s dopravními značkami.
+     * Tato proměnná obsahuje všechny zdroje nalezené pomocí ServiceLoader (CatalogSource). Zdroje jsou
+     * načítány souběžně a jejich položky sloučeny do jednoho seznamu bez duplicit.
      */
-    private final String url = "http://www.celysvet.cz/test-znalosti-dopravnich-znacek-databaze";
+    private final List<CatalogSource> sources = CatalogSource.loadAll();
     /**
      * Tlačítko pro uložení obrázků.
      * <p>
@@ -112,6 +111,72 @@ public class ZnackyController {
      */
     @FXML
     private Button saveButton;
+    /**
+     * Tlačítko pro uložení vybraných obrázků.
+     * <p>
+     * Tato komponenta je inicializována pomocí FXML a je aktivní, pokud je v ListView vybrána alespoň jedna položka.
+     */
+    @FXML
+    private Button saveSelectedButton;
+    /**
+     * Vyhledávací pole pro filtrování položek podle kódu nebo slov popisu značky.
+     * <p>
+     * Tato komponenta je inicializována pomocí FXML. Při každé změně textu je seznam položek
+     * v ListView nahrazen výsledkem vyhledávání v indexu SearchIndex.
+     */
+    @FXML
+    private TextField searchField;
+    /**
+     * Všechny načtené položky katalogu bez ohledu na filtr vyhledávání.
+     */
+    private List<SignEntry> catalog = List.of();
+    /**
+     * Vyhledávací index načtených položek, nebo null, pokud katalog ještě nebyl načten.
+     */
+    private SearchIndex searchIndex;
+    /**
+     * Mezipaměť načtených stránek katalogu.
+     * <p>
+     * Je sdílena všemi načteními během běhu aplikace, takže opakované načtení katalogu
+     * použije uložené výsledky parsování nezměněných stránek.
+     */
+    private final PageCache pageCache = new PageCache(Paths.get(PageCache.DEFAULT_DIRECTORY), Settings.getDefault().getPageCacheBytes());
+    /**
+     * Mezipaměť náhledů obrázků zobrazených v ListView.
+     * <p>
+     * Je sdílena všemi buňkami seznamu a její velikost je omezena počtem bajtů dekódovaných obrázků.
+     */
+    private final ThumbnailCache thumbnails = new ThumbnailCache(Settings.getDefault().getThumbnailCacheBytes());
+    /**
+     * Probíhající ukládání obrázků, nebo null, pokud ukládání neprobíhá.
+     * <p>
+     * Proměnná je čtena a měněna pouze ve vlákně JavaFX.
+     */
+    private CatalogPipeline savePipeline;
+    /**
+     * Zda probíhající ukládání ukládá celý katalog. Čteno a měněno pouze ve vlákně JavaFX.
+     */
+    private boolean savingCatalog;
+    /**
+     * Položky probíhajícího ukládání včetně přednostně přidaných vybraných položek, pro zobrazení průběhu.
+     * Čteno a měněno pouze ve vlákně JavaFX.
+     */
+    private final Set<SignEntry> saveItems = new HashSet<>();
+    /**
+     * Zda je naplánováno přednostní zařazení zobrazených položek. Čteno a měněno pouze ve vlákně JavaFX.
+     */
+    private boolean visibleUpdatePending;
+    /**
+     * Počet běžících úloh načítání a ukládání. Čteno a měněno pouze ve vlákně JavaFX.
+     * <p>
+     * Úlohy mohou běžet souběžně a sdílejí metriky běhu (RunMetrics). Metriky se proto vynulují jen
+     * při spuštění úlohy, když žádná jiná neběží, a souhrn pak zahrnuje všechny souběžné úlohy.
+     */
+    private int runningTasks;
+    /**
+     * Buňky seznamu vytvořené továrnou buněk, pro zjištění právě zobrazených položek.
+     */
+    private final Set<CustomListCell> cells = Collections.newSetFromMap(new WeakHashMap<>());
 
     /**
      * Prázdný konstruktor třídy ZnackyController.
@@ -123,16 +188,16 @@ public class ZnackyController {
     }
 
     /**
-     * Aktualizuje text v labelu progress s počtem načtených URL adres.
+     * Aktualizuje text v labelu progress podle snímku průběhu načítání.
      * <p>
-     * Tato metoda je volána z asynchronní úlohy, která načítá obsah webové stránky.
+     * Tato metoda je volána z vlákna reporteru průběhu (ProgressReporter) nejvýše
+     * {@value ProgressReporter#DEFAULT_UPDATES_PER_SECOND} krát za sekundu.
      * Používá Platform.runLater() pro zajištění, že aktualizace GUI proběhne na JavaFX Application Thread.
-     * <p>
-     * Metoda získá aktuální počet URL adres v seznamu urlList z instance WebLoader
-     * a nastaví tento počet jako text v labelu progress.
+     *
+     * @param snapshot snímek průběhu s počtem nalezených odkazů a načtených stránek.
      */
-    public void updateProgress() {
-        Platform.runLater(() -> progress.setText("Načteno " + webLoader.getUrlList().size() + " odkazů"));
+    private void updateProgress(ProgressReporter.Snapshot snapshot) {
+        Platform.runLater(() -> progress.setText("Načteno " + snapshot.items() + " odkazů, " + snapshot.pages() + " stránek"));
     }
 
     /**
@@ -154,7 +219,8 @@ public class ZnackyController {
      */
     @FXML
     protected void onLoadImgButtonClick() {
-        webLoader = new WebLoader(this);
+        ProgressReporter reporter = new ProgressReporter(this::updateProgress, ProgressReporter.DEFAULT_UPDATES_PER_SECOND);
+        webLoader = new WebLoader(reporter, HttpTransport.getDefault(), pageCache);
         welcomeText.setText("Načítám obsah webu");
 
         // Vytvoří nové okno pro zobrazení načítání
@@ -183,24 +249,36 @@ public class ZnackyController {
         // Zobrazí načítací dialog
         loaderStage.show();
 
-
+        startRun();
         Task<Void> task = new Task<>() {
             @Override
             protected Void call() {
-                webLoader.loadWeb(url);
+                reporter.start();
+                try {
+                    webLoader.loadSources(sources);
+                } finally {
+                    reporter.stop();
+                    logger.info("Načítání katalogu dokončeno:\n{}", RunMetrics.getDefault().getSummary());
+                }
                 return null;
             }
 
             @Override
             protected void succeeded() {
                 Platform.runLater(() -> {
+                    finishRun();
                     loaderStage.close();
-                    welcomeText.setText("Načítání dokončeno");
-                    listView.setItems(webLoader.getUrlList());
+                    int failedPages = webLoader.getFailedPages().size();
+                    welcomeText.setText(failedPages == 0 ? "Načítání dokončeno"
+                            : "Načítání dokončeno, nenačteno stránek: " + failedPages);
+                    catalog = webLoader.getUrlList();
+                    searchIndex = webLoader.getSearchIndex();
+                    listView.setItems(FXCollections.observableArrayList(searchIndex.search(searchField.getText())));
 
-                    // Po úspěšném načtení seznamu odkazů aktivujte tlačítko "Ulož"
-                    if (!listView.getItems().isEmpty()) {
+                    // Po úspěšném načtení seznamu odkazů aktivujte tlačítko "Ulož" a vyhledávání
+                    if (!catalog.isEmpty()) {
                         saveButton.setDisable(false);
+                        searchField.setDisable(false);
                     }
                 });
             }
@@ -208,6 +286,7 @@ public class ZnackyController {
             @Override
             protected void failed() {
                 Platform.runLater(() -> {
+                    finishRun();
                     loaderStage.close();
                     welcomeText.setText("Načítání selhalo");
                 });
@@ -221,7 +300,7 @@ public class ZnackyController {
      * Metoda pro zpracování události kliknutí na tlačítko pro výběr složky.
      * <p>
      * Tato metoda otevře dialogové okno pro výběr složky a nastaví výchozí složku
-     * na základě hodnoty uložené v souboru settings.ini. Pokud není výchozí složka
+     * na základě hodnoty uložené v nastavení aplikace (Settings). Pokud není výchozí složka
      * nastavena, použije se uživatelská složka.
      * <p>
      * Po výběru složky se její cesta uloží do souboru settings.ini.
@@ -231,8 +310,8 @@ public class ZnackyController {
         DirectoryChooser directoryChooser = new DirectoryChooser();
         directoryChooser.setTitle("Vyberte složku");
 
-        // Načtení výchozí složky ze souboru settings.ini
-        File defaultDirectory = loadDefaultDirectory();
+        // Výchozí složka z nastavení aplikace
+        File defaultDirectory = Settings.getDefault().getDefaultDirectory();
         if (defaultDirectory != null && defaultDirectory.exists()) {
             directoryChooser.setInitialDirectory(defaultDirectory);
         } else {
@@ -251,67 +330,213 @@ public class ZnackyController {
 
         if (selectedDirectory != null) {
             // Uložení vybrané složky do souboru settings.ini
-            saveDefaultDirectory(selectedDirectory);
+            Settings.getDefault().setDefaultDirectory(selectedDirectory);
         }
     }
 
     /**
      * Metoda pro zpracování události kliknutí na tlačítko pro uložení obrázků.
      * <p>
-     * Tato metoda vytvoří instanci třídy ImageSaver a zavolá její metodu saveImages
-     * s položkami z ListView. Uloží obrázky z nalezených URL adres do výchozí složky.
+     * Pokud ukládání neprobíhá, spustí na pozadí ukládání všech načtených položek katalogu
+     * bez ohledu na filtr vyhledávání do výchozí složky pomocí CatalogPipeline (viz startSave).
+     * Položky zobrazené v seznamu se během ukládání stahují přednostně, takže při posouvání seznamu
+     * se obrázky ukládají nejdříve tam, kam se uživatel právě dívá.
+     * <p>
+     * Pokud ukládání probíhá, zruší jej. Obrázky uložené před zrušením zůstanou zachovány.
      */
     @FXML
     protected void onSaveButtonClick() {
-        ImageSaver imageSaver = new ImageSaver();
-        imageSaver.saveImages(listView.getItems());
+        if (savePipeline != null) {
+            savePipeline.cancel();
+            saveButton.setDisable(true);
+            welcomeText.setText("Ruším ukládání");
+            return;
+        }
+        startSave(catalog, true);
+    }
+
+    /**
+     * Metoda pro zpracování události kliknutí na tlačítko pro uložení vybraných obrázků.
+     * <p>
+     * Pokud ukládání neprobíhá, spustí ukládání položek vybraných v seznamu. Pokud ukládání probíhá,
+     * například ukládání celého katalogu, vybrané položky v něm předběhnou všechny ostatní položky
+     * čekající na stažení (CatalogPipeline.prioritize), místo aby čekaly za tisíci položkami katalogu.
+     */
+    @FXML
+    protected void onSaveSelectedButtonClick() {
+        List<SignEntry> selected = new ArrayList<>(listView.getSelectionModel().getSelectedItems());
+        if (selected.isEmpty()) {
+            return;
+        }
+        if (savePipeline == null) {
+            startSave(selected, false);
+            return;
+        }
+        if (savePipeline.prioritize(selected, PriorityEntryQueue.Priority.SELECTED) < 0) {
+            welcomeText.setText("Ukládání se ukončuje, vybrané obrázky uložte po jeho skončení");
+            return;
+        }
+        saveItems.addAll(selected);
+        welcomeText.setText("Vybrané obrázky (" + selected.size() + ") se uloží přednostně");
     }
 
     /**
-     * Načte výchozí složku z konfiguračního souboru settings.ini.
+     * Spustí na pozadí ukládání zadaných položek do výchozí složky pomocí CatalogPipeline.
      * <p>
-     * Tato metoda načte hodnotu klíče defaultDirectory ze souboru settings.ini
-     * a vrátí ji jako instanci třídy File. Pokud soubor settings.ini neexistuje
-     * nebo klíč defaultDirectory není nastaven, vrátí null.
+     * Počet vláken, omezení spojení na server, způsob uložení a případné zpracování obrázků
+     * (ImagePostProcessor) určuje nastavení aplikace (Settings), stejně jako sestavení atlasu
+     * po dokončení (AtlasExporter), které má smysl jen pro celý katalog. Během ukládání zobrazuje
+     * průběh v uvítacím labelu a tlačítko pro uložení slouží ke zrušení ukládání.
      *
-     * @return Výchozí složka jako instance třídy File nebo null, pokud není nastavena.
+     * @param items         položky k uložení.
+     * @param wholeCatalog  true, pokud se ukládá celý katalog.
      */
-    private File loadDefaultDirectory() {
-        Properties properties = new Properties();
-        File settingsFile = new File(SETTINGS_FILE);
+    private void startSave(List<SignEntry> items, boolean wholeCatalog) {
+        Settings settings = Settings.getDefault();
+        File directory = settings.getDefaultDirectory();
+        OutputMode outputMode = settings.getOutputMode();
+        CatalogPipeline pipeline = new CatalogPipeline(null, new ImageSaver(settings.getConcurrency(), settings.getPerHostLimit()),
+                settings.getPageParallelism(), settings.getConcurrency());
+        ProgressReporter reporter = new ProgressReporter(snapshot -> Platform.runLater(() ->
+                welcomeText.setText("Uloženo " + snapshot.items() + " z " + saveItems.size() + " obrázků, chyb " + snapshot.failures())),
+                ProgressReporter.DEFAULT_UPDATES_PER_SECOND);
+        ImagePostProcessor postProcessor = directory != null ? ImagePostProcessor.fromSettings(directory, outputMode) : null;
+        AtlasExporter atlasExporter = directory != null && wholeCatalog ? AtlasExporter.fromSettings(directory, outputMode) : null;
+        DownloadListener listener = reporter.asDownloadListener()
+                .andThen(postProcessor != null ? postProcessor.asDownloadListener() : null)
+                .andThen(atlasExporter != null ? atlasExporter.asDownloadListener() : null);
+        startRun();
+        savePipeline = pipeline;
+        savingCatalog = wholeCatalog;
+        saveItems.clear();
+        saveItems.addAll(items);
+        saveButton.setText("Zruš");
+        welcomeText.setText("Ukládám obrázky");
+        if (wholeCatalog) {
+            // Položky, které jsou právě zobrazené, se stáhnou jako první
+            pipeline.prioritize(shownItems(), PriorityEntryQueue.Priority.VISIBLE);
+        }
+
+        Task<DownloadResult> task = new Task<>() {
+            @Override
+            protected DownloadResult call() throws IOException {
+                reporter.start();
+                DownloadResult result;
+                try {
+                    result = pipeline.run(items, directory, outputMode, listener);
+                } finally {
+                    if (postProcessor != null) {
+                        postProcessor.close();
+                    }
+                    reporter.stop();
+                    logger.info("Ukládání dokončeno:\n{}", RunMetrics.getDefault().getSummary());
+                }
+                if (atlasExporter != null && !pipeline.isCancelled()) {
+                    Platform.runLater(() -> welcomeText.setText("Skládám atlas"));
+                    atlasExporter.export();
+                }
+                return result;
+            }
 
-        // Zkontrolovat, zda soubor existuje
-        if (!settingsFile.exists()) {
-            return null;
+            @Override
+            protected void succeeded() {
+                DownloadResult result = getValue();
+                finishSave((pipeline.isCancelled() ? "Ukládání zrušeno: " : "Ukládání dokončeno: ") + result);
+            }
+
+            @Override
+            protected void failed() {
+                finishSave("Ukládání selhalo: " + getException().getMessage());
+            }
+        };
+        Thread thread = new Thread(task, "image-save");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Po zobrazení položky v buňce seznamu zařadí právě zobrazené položky ke stažení před ostatní položky katalogu.
+     * <p>
+     * Volá ji CustomListCell ve vlákně JavaFX. Při posouvání seznamu se buňky aktualizují po desítkách,
+     * zařazení je proto provedeno jednou za všechny, až po jejich aktualizaci. Zobrazené položky nahradí
+     * dříve zobrazené, takže se přednostně stahuje jen to, co uživatel právě vidí. Uplatní se jen při
+     * ukládání celého katalogu, při ukládání vybraných položek se zobrazené položky neukládají.
+     *
+     * @param item zobrazená položka.
+     */
+    private void onItemShown(SignEntry item) {
+        if (savePipeline == null || !savingCatalog || visibleUpdatePending) {
+            return;
         }
+        visibleUpdatePending = true;
+        Platform.runLater(() -> {
+            visibleUpdatePending = false;
+            if (savePipeline != null && savingCatalog) {
+                savePipeline.prioritize(shownItems(), PriorityEntryQueue.Priority.VISIBLE);
+            }
+        });
+    }
 
-        try (InputStream input = new FileInputStream(settingsFile)) {
-            properties.load(input);
-            String directoryPath = properties.getProperty(DIRECTORY_KEY);
-            if (directoryPath != null) {
-                return new File(directoryPath);
+    /**
+     * @return položky, které buňky seznamu právě zobrazují.
+     */
+    private List<SignEntry> shownItems() {
+        List<SignEntry> shown = new ArrayList<>();
+        for (CustomListCell cell : cells) {
+            if (!cell.isEmpty() && cell.getItem() != null && cell.isVisible()) {
+                shown.add(cell.getItem());
             }
-        } catch (IOException e) {
-            logger.error("Chyba při načítání souboru settings.ini {}", e.getMessage());
         }
-        return null;
+        return shown;
+    }
+
+    /**
+     * Zaznamená spuštění úlohy načítání nebo ukládání. Pokud žádná jiná úloha neběží,
+     * vynuluje metriky běhu. Volá se ve vlákně JavaFX.
+     */
+    private void startRun() {
+        if (runningTasks++ == 0) {
+            RunMetrics.getDefault().reset();
+        }
     }
 
     /**
-     * Uloží výchozí složku do konfiguračního souboru settings.ini.
+     * Zaznamená skončení úlohy načítání nebo ukládání. Volá se ve vlákně JavaFX.
+     */
+    private void finishRun() {
+        runningTasks--;
+    }
+
+    /**
+     * Obnoví tlačítko pro uložení po skončení ukládání a zobrazí výsledek.
+     *
+     * @param message zpráva o výsledku ukládání.
+     */
+    private void finishSave(String message) {
+        finishRun();
+        savePipeline = null;
+        savingCatalog = false;
+        saveItems.clear();
+        saveButton.setText("Ulož");
+        saveButton.setDisable(catalog.isEmpty());
+        welcomeText.setText(message);
+    }
+
+    /**
+     * Zobrazí v ListView položky odpovídající dotazu z vyhledávacího pole.
      * <p>
-     * Tato metoda uloží cestu k zadané složce jako hodnotu klíče defaultDirectory
-     * do souboru settings.ini.
+     * Vyhledávání probíhá v indexu SearchIndex, takže netrvá déle než jeden snímek ani u velmi
+     * rozsáhlého katalogu. Prázdný dotaz zobrazí všechny položky.
      *
-     * @param directory Složka, která má být uložena jako výchozí.
+     * @param query text vyhledávacího pole.
      */
-    private void saveDefaultDirectory(File directory) {
-        Properties properties = new Properties();
-        properties.setProperty(DIRECTORY_KEY, directory.getAbsolutePath());
-        try (OutputStream output = new FileOutputStream(SETTINGS_FILE)) {
-            properties.store(output, null);
-        } catch (IOException e) {
-            logger.error("Chyba při ukládání souboru settings.ini {}", e.getMessage());
+    private void applyFilter(String query) {
+        if (searchIndex == null) {
+            return;
+        }
+        listView.getItems().setAll(searchIndex.search(query));
+        if (!listView.getItems().isEmpty()) {
+            listView.scrollTo(0);
         }
     }
 
@@ -321,10 +546,20 @@ public class ZnackyController {
      * Tato metoda je volána automaticky po načtení FXML souboru a slouží k nastavení
      * vlastností a chování komponent uživatelského rozhraní.
      * <p>
-     * V tomto případě nastavuje továrnu buněk pro ListView na instanci CustomListCell.
+     * V tomto případě nastavuje továrnu buněk pro ListView na instanci CustomListCell se sdílenou mezipamětí náhledů,
+     * výběr více položek, aktivaci tlačítka pro uložení vybraných obrázků a filtrování seznamu při změně
+     * textu vyhledávacího pole.
      */
     @FXML
     public void initialize() {
-        listView.setCellFactory(param -> new CustomListCell());
+        listView.setCellFactory(param -> {
+            CustomListCell cell = new CustomListCell(thumbnails, this::onItemShown);
+            cells.add(cell);
+            return cell;
+        });
+        listView.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+        listView.getSelectionModel().getSelectedItems().addListener((ListChangeListener<SignEntry>) change ->
+                saveSelectedButton.setDisable(listView.getSelectionModel().getSelectedItems().isEmpty()));
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> applyFilter(newValue));
     }
 }
\ No newline at end of file
@@ -1,12 +1,23 @@
 package cz.xlisto.znacky;
 
+import java.util.Arrays;
+
 /**
  * Třída ZnackyLauncher slouží jako spouštěcí třída pro aplikaci ZnackyApplication.
  * <p>
  * Tato třída obsahuje hlavní metodu, která volá hlavní metodu třídy ZnackyApplication.
  * Je užitečná pro oddělení spouštěcí logiky od hlavní aplikační třídy.
+ * <p>
+ * Pokud je prvním argumentem {@value #HEADLESS_FLAG}, spustí místo grafické aplikace
+ * režim bez grafického rozhraní (ZnackyCli) se zbývajícími argumenty. JavaFX se v tomto
+ * případě vůbec neinicializuje.
  */
 public class ZnackyLauncher {
+    /**
+     * Argument, kterým se spouští režim bez grafického rozhraní.
+     */
+    public static final String HEADLESS_FLAG = "--headless";
+
     /**
      * Prázdný konstruktor třídy ZnackyLauncher.
      * <p>
@@ -20,11 +31,16 @@ public class ZnackyLauncher {
      * Hlavní metoda aplikace.
      * <p>
      * Tato metoda slouží jako vstupní bod pro spuštění aplikace ZnackyApplication.
-     * Volá hlavní metodu třídy ZnackyApplication s argumenty příkazového řádku.
+     * Volá hlavní metodu třídy ZnackyApplication s argumenty příkazového řádku,
+     * nebo hlavní metodu třídy ZnackyCli, pokud je prvním argumentem {@value #HEADLESS_FLAG}.
      *
-     * @param args argumenty příkazového řádku (nejsou použity).
+     * @param args argumenty příkazového řádku.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(HEADLESS_FLAG)) {
+            ZnackyCli.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         ZnackyApplication.main(args);
     }
 
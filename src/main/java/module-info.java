@@ -9,9 +9,14 @@
  *   <li>java.desktop - pro integraci s desktopovými funkcemi.</li>
  *   <li>ch.qos.logback.classic - pro logování aplikace.</li>
  *   <li>org.slf4j - pro rozhraní logování.</li>
+ *   <li>java.net.http - pro sdílené HTTP spojení při načítání stránek a stahování obrázků.</li>
+ *   <li>java.management - pro zpřístupnění metrik běhu přes JMX.</li>
  * </ul>
  * <p>
  * Modul také otevírá balíček `cz.xlisto.znacky` pro modul javafx.fxml a exportuje tento balíček.
+ * <p>
+ * Zdroje katalogu (CatalogSource) jsou vyhledávány pomocí ServiceLoader. Modul sám poskytuje
+ * zdroj CelysvetSource, další zdroje mohou poskytnout jiné moduly.
  */
 module cz.xlisto.znacky {
     requires javafx.controls;
@@ -20,8 +25,13 @@ module cz.xlisto.znacky {
     requires java.desktop;
     requires ch.qos.logback.classic;
     requires org.slf4j;
+    requires java.net.http;
+    requires java.management;
 
 
     opens cz.xlisto.znacky to javafx.fxml;
     exports cz.xlisto.znacky;
+
+    uses cz.xlisto.znacky.CatalogSource;
+    provides cz.xlisto.znacky.CatalogSource with cz.xlisto.znacky.CelysvetSource;
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Testy řízení počtu současných požadavků (AdaptiveLimiter).
+ */
+class AdaptiveLimiterTest {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    void increasesLimitWhileServerIsFast() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 8);
+
+        // Každý úspěšný požadavek zvýší limit o 1/limit: 2 -> 2,5 -> 2,9 -> 3,24
+        succeed(limiter, 2);
+        assertEquals(2, limiter.getLimit());
+        succeed(limiter, 1);
+        assertEquals(3, limiter.getLimit());
+        succeed(limiter, 100);
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void halvesLimitOnOverloadOncePerLatency() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, 1, 8);
+        succeed(limiter, 1);
+        Thread.sleep(50);
+
+        overload(limiter);
+        assertEquals(4, limiter.getLimit());
+        // Druhé přetížení ve stejné době odezvy limit znovu nesníží
+        overload(limiter);
+        assertEquals(4, limiter.getLimit());
+
+        Thread.sleep(50);
+        overload(limiter);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void neverDropsBelowMinimum() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 2, 8);
+        Thread.sleep(10);
+
+        overload(limiter);
+
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void decreasesLimitWhenLatencyGrows() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(8, 1, 8);
+        succeed(limiter, 1);
+        // Snížení je možné až po uplynutí vyhlazené doby odezvy (po vzorku níže asi 100 ms)
+        Thread.sleep(150);
+
+        limiter.acquire();
+        limiter.onSuccess(LATENCY * 40);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    private static void succeed(AdaptiveLimiter limiter, int count) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            limiter.acquire();
+            limiter.onSuccess(LATENCY);
+        }
+    }
+
+    private static void overload(AdaptiveLimiter limiter) throws InterruptedException {
+        limiter.acquire();
+        limiter.onOverload();
+    }
+}
@@ -0,0 +1,170 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy zápisu obrázků do archivu ZIP a TAR (ArchiveStore). Archiv je po uzavření přečten zpět.
+ */
+class ArchiveStoreTest {
+    private static final SignEntry FIRST = new SignEntry("A 1", "Zatáčka vpravo", "http://www.celysvet.cz/hi/A1.png");
+    private static final SignEntry SECOND = new SignEntry("B 20a", "Nejvyšší dovolená rychlost", "http://www.celysvet.cz/hi/B20a.png");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesStoredZipEntries() throws IOException {
+        byte[] small = "obsah".getBytes(StandardCharsets.UTF_8);
+        byte[] large = randomBytes(300_000);
+        ArchiveStore store = new ArchiveStore(directory.toFile(), OutputMode.ZIP);
+
+        ImageStore.StoredImage stored = store.store(FIRST, "A1.png", new ByteArrayInputStream(small));
+        store.store(SECOND, "B20a.png", new ByteArrayInputStream(large));
+        store.close();
+
+        assertEquals(small.length, stored.written());
+        assertFalse(Files.exists(directory.resolve("znacky.zip.part")));
+        try (ZipFile zip = new ZipFile(store.getArchive().toFile(), StandardCharsets.UTF_8)) {
+            assertEntry(zip, "A1.png", small);
+            assertEntry(zip, "B20a.png", large);
+            String index = new String(zip.getInputStream(zip.getEntry(ArchiveStore.INDEX_ENTRY)).readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(index.contains("A 1\tZatáčka vpravo\t" + FIRST.url() + "\tA1.png\t" + small.length + "\t" + stored.sha256() + "\n"));
+        }
+    }
+
+    @Test
+    void writesTarEntriesWithValidHeaders() throws IOException {
+        byte[] small = "obsah".getBytes(StandardCharsets.UTF_8);
+        byte[] exact = randomBytes(1024);
+        ArchiveStore store = new ArchiveStore(directory.toFile(), OutputMode.TAR);
+
+        store.store(FIRST, "A1.png", new ByteArrayInputStream(small));
+        store.store(SECOND, "B20a.png", new ByteArrayInputStream(exact));
+        store.close();
+
+        Map<String, byte[]> entries = readTar(Files.readAllBytes(store.getArchive()));
+        assertEquals(List.of("A1.png", "B20a.png", ArchiveStore.INDEX_ENTRY), List.copyOf(entries.keySet()));
+        assertArrayEquals(small, entries.get("A1.png"));
+        assertArrayEquals(exact, entries.get("B20a.png"));
+        assertTrue(new String(entries.get(ArchiveStore.INDEX_ENTRY), StandardCharsets.UTF_8).contains("\tB20a.png\t1024\t"));
+    }
+
+    @Test
+    void skipsDuplicateEntryName() throws IOException {
+        ArchiveStore store = new ArchiveStore(directory.toFile(), OutputMode.TAR);
+
+        store.store(FIRST, "A1.png", new ByteArrayInputStream(new byte[]{1}));
+        ImageStore.StoredImage duplicate = store.store(SECOND, "A1.png", new ByteArrayInputStream(new byte[]{2}));
+        store.close();
+
+        assertEquals(0, duplicate.written());
+        assertArrayEquals(new byte[]{1}, readTar(Files.readAllBytes(store.getArchive())).get("A1.png"));
+    }
+
+    @Test
+    void abortKeepsPreviousArchive() throws IOException {
+        ArchiveStore previous = new ArchiveStore(directory.toFile(), OutputMode.ZIP);
+        previous.store(FIRST, "A1.png", new ByteArrayInputStream(new byte[]{1}));
+        previous.close();
+        byte[] archived = Files.readAllBytes(previous.getArchive());
+
+        ArchiveStore aborted = new ArchiveStore(directory.toFile(), OutputMode.ZIP);
+        aborted.store(SECOND, "B20a.png", new ByteArrayInputStream(new byte[]{2}));
+        aborted.abort();
+
+        assertArrayEquals(archived, Files.readAllBytes(previous.getArchive()));
+        assertFalse(Files.exists(directory.resolve("znacky.zip.part")));
+    }
+
+    private static void assertEntry(ZipFile zip, String name, byte[] content) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        assertEquals(content.length, entry.getSize());
+        assertEquals(content.length, entry.getCompressedSize());
+        assertEquals(crc.getValue(), entry.getCrc());
+        assertArrayEquals(content, zip.getInputStream(entry).readAllBytes());
+    }
+
+    /**
+     * Přečte archiv TAR a u každé hlavičky ověří kontrolní součet, typ a označení formátu ustar.
+     *
+     * @return obsah položek podle názvu v pořadí archivu.
+     */
+    private static Map<String, byte[]> readTar(byte[] tar) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        assertEquals(0, tar.length % 512);
+        int offset = 0;
+        while (true) {
+            byte[] header = Arrays.copyOfRange(tar, offset, offset + 512);
+            if (isZero(header)) {
+                // Konec archivu tvoří dva prázdné bloky
+                assertTrue(isZero(Arrays.copyOfRange(tar, offset + 512, offset + 1024)));
+                assertEquals(tar.length, offset + 1024);
+                return entries;
+            }
+            int checksum = 0;
+            for (int i = 0; i < header.length; i++) {
+                checksum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+            }
+            assertEquals(checksum, octal(header, 148, 8));
+            assertEquals('0', header[156]);
+            assertEquals("ustar\0", new String(header, 257, 6, StandardCharsets.US_ASCII));
+            assertEquals(0644, octal(header, 100, 8));
+            String name = new String(header, 0, indexOfZero(header, 0, 100), StandardCharsets.UTF_8);
+            int size = (int) octal(header, 124, 12);
+            entries.put(name, Arrays.copyOfRange(tar, offset + 512, offset + 512 + size));
+            offset += 512 + (size + 511) / 512 * 512;
+        }
+    }
+
+    private static long octal(byte[] header, int offset, int length) {
+        String digits = new String(header, offset, indexOfZero(header, offset, length) - offset, StandardCharsets.US_ASCII).trim();
+        return Long.parseLong(digits, 8);
+    }
+
+    private static int indexOfZero(byte[] header, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (header[i] == 0) {
+                return i;
+            }
+        }
+        return offset + length;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,142 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy skládání obrázků do atlasu (AtlasExporter): rozmístění bez překryvů, zmenšení a vynechání
+ * obrázků větších než stránka. Umístění se ověřuje podle indexu i podle vykreslených stránek.
+ */
+class AtlasExporterTest {
+    private static final Pattern SPRITE = Pattern.compile(
+            "\"([^\"]+)\": \\{\"page\": (\\d+), \"x\": (\\d+), \"y\": (\\d+), \"w\": (\\d+), \"h\": (\\d+)");
+    private static final int PAGE_SIZE = 256;
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Umístění obrázku podle indexu atlasu.
+     */
+    private record Placement(int page, int x, int y, int width, int height) {
+        boolean overlaps(Placement other) {
+            // Každý obrázek si v atlasu drží i mezeru vpravo a dole
+            return page == other.page
+                    && x < other.x + other.width + AtlasExporter.PADDING && other.x < x + width + AtlasExporter.PADDING
+                    && y < other.y + other.height + AtlasExporter.PADDING && other.y < y + height + AtlasExporter.PADDING;
+        }
+    }
+
+    @Test
+    void packsSpritesWithoutOverlap() throws IOException {
+        Random random = new Random(3);
+        AtlasExporter exporter = new AtlasExporter(directory.toFile(), PAGE_SIZE, 0);
+        Map<String, Integer> colors = new HashMap<>();
+        for (int i = 0; i < 150; i++) {
+            int rgb = 0xff000000 | (i * 0x010307 + 0x102030) & 0xffffff;
+            String code = "A " + i;
+            colors.put(code, rgb);
+            exporter.add(new SignEntry(code, "Značka " + i, ""), image("A" + i + ".png", 4 + random.nextInt(60), 4 + random.nextInt(60), rgb));
+        }
+
+        assertEquals(150, exporter.export());
+
+        Map<String, Placement> placements = readIndex();
+        assertEquals(colors.keySet(), placements.keySet());
+        List<Placement> all = new ArrayList<>(placements.values());
+        for (int i = 0; i < all.size(); i++) {
+            for (int j = i + 1; j < all.size(); j++) {
+                assertFalse(all.get(i).overlaps(all.get(j)), all.get(i) + " překrývá " + all.get(j));
+            }
+        }
+        assertTrue(all.stream().anyMatch(placement -> placement.page() > 0));
+
+        Map<Integer, BufferedImage> pages = new HashMap<>();
+        for (Map.Entry<String, Placement> entry : placements.entrySet()) {
+            Placement placement = entry.getValue();
+            BufferedImage page = pages.computeIfAbsent(placement.page(), this::readPage);
+            assertTrue(page.getWidth() <= PAGE_SIZE && page.getHeight() <= PAGE_SIZE);
+            assertTrue(placement.x() + placement.width() <= page.getWidth());
+            assertTrue(placement.y() + placement.height() <= page.getHeight());
+            for (int y = placement.y(); y < placement.y() + placement.height(); y++) {
+                for (int x = placement.x(); x < placement.x() + placement.width(); x++) {
+                    assertEquals(colors.get(entry.getKey()), page.getRGB(x, y), entry.getKey() + " [" + x + ", " + y + "]");
+                }
+            }
+        }
+    }
+
+    @Test
+    void scalesSpritesLargerThanSpriteSize() throws IOException {
+        AtlasExporter exporter = new AtlasExporter(directory.toFile(), PAGE_SIZE, 50);
+        exporter.add(new SignEntry("A 1", "Zatáčka vpravo", ""), image("A1.png", 200, 100, 0xffff0000));
+        exporter.add(new SignEntry("A 2", "Zatáčka vlevo", ""), image("A2.png", 20, 30, 0xff00ff00));
+
+        exporter.export();
+
+        Map<String, Placement> placements = readIndex();
+        assertEquals(50, placements.get("A 1").width());
+        assertEquals(25, placements.get("A 1").height());
+        assertEquals(20, placements.get("A 2").width());
+        assertEquals(30, placements.get("A 2").height());
+    }
+
+    @Test
+    void skipsSpriteLargerThanPage() throws IOException {
+        AtlasExporter exporter = new AtlasExporter(directory.toFile(), PAGE_SIZE, 0);
+        exporter.add(new SignEntry("A 1", "Zatáčka vpravo", ""), image("A1.png", PAGE_SIZE + 1, 10, 0xffff0000));
+        exporter.add(new SignEntry("A 2", "Zatáčka vlevo", ""), image("A2.png", PAGE_SIZE - AtlasExporter.PADDING, 10, 0xff00ff00));
+
+        assertEquals(1, exporter.export());
+        assertEquals(List.of("A 2"), List.copyOf(readIndex().keySet()));
+    }
+
+    private File image(String name, int width, int height, int rgb) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, rgb);
+            }
+        }
+        File file = directory.resolve(name).toFile();
+        ImageIO.write(image, "png", file);
+        return file;
+    }
+
+    private Map<String, Placement> readIndex() throws IOException {
+        String json = Files.readString(directory.resolve(AtlasExporter.ATLAS_DIRECTORY).resolve(AtlasExporter.INDEX_FILE));
+        Map<String, Placement> placements = new HashMap<>();
+        Matcher matcher = SPRITE.matcher(json);
+        while (matcher.find()) {
+            placements.put(matcher.group(1), new Placement(Integer.parseInt(matcher.group(2)), Integer.parseInt(matcher.group(3)),
+                    Integer.parseInt(matcher.group(4)), Integer.parseInt(matcher.group(5)), Integer.parseInt(matcher.group(6))));
+        }
+        return placements;
+    }
+
+    private BufferedImage readPage(int page) {
+        try {
+            return ImageIO.read(directory.resolve(AtlasExporter.ATLAS_DIRECTORY).resolve("atlas-" + page + ".png").toFile());
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
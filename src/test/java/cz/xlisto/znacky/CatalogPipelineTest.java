@@ -0,0 +1,167 @@
+package cz.xlisto.znacky;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy průběžného stahování položek (CatalogPipeline) proti místnímu serveru, včetně zrušení
+ * během stahování.
+ */
+class CatalogPipelineTest {
+    private static final int IMAGES = 50;
+    private static final int DOWNLOADERS = 2;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String baseUrl;
+    /**
+     * Počet požadavků na obrázky, které server přijal.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+    /**
+     * Odpočítává přijaté požadavky, dokud server odpovídá se zdržením.
+     */
+    private final CountDownLatch requested = new CountDownLatch(DOWNLOADERS);
+    /**
+     * Uvolní požadavky, na které server neodpovídá; do té doby server žádný obrázek nepošle.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+    /**
+     * Zda server na požadavky odpovídá až po uvolnění.
+     */
+    private volatile boolean stalled;
+    private final ExecutorService runner = Executors.newSingleThreadExecutor();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            if (stalled) {
+                requested.countDown();
+                try {
+                    release.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = exchange.getRequestURI().getPath().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            } catch (IOException e) {
+                // Klient spojení po zrušení ukončil
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        runner.shutdownNow();
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    @Test
+    void savesAllItems() throws IOException {
+        CatalogPipeline pipeline = new CatalogPipeline(null, new ImageSaver(), 1, DOWNLOADERS);
+
+        DownloadResult result = pipeline.run(items(), directory.toFile(), OutputMode.DIRECTORY, new DownloadListener() {
+        });
+
+        assertEquals(IMAGES, result.getSuccesses());
+        assertEquals(IMAGES, savedImages().size());
+        assertFalse(pipeline.isCancelled());
+    }
+
+    @Test
+    void cancelStopsRunningDownloads() throws Exception {
+        stalled = true;
+        CatalogPipeline pipeline = new CatalogPipeline(null, new ImageSaver(), 1, DOWNLOADERS);
+        Future<DownloadResult> run = runner.submit(() -> pipeline.run(items(), directory.toFile(), OutputMode.DIRECTORY,
+                new DownloadListener() {
+                }));
+        assertTrue(requested.await(10, TimeUnit.SECONDS));
+
+        pipeline.cancel();
+        DownloadResult result = run.get(10, TimeUnit.SECONDS);
+
+        assertTrue(pipeline.isCancelled());
+        assertEquals(0, result.getSuccesses());
+        assertEquals(DOWNLOADERS, requests.get());
+        assertEquals(List.of(), savedImages());
+        assertEquals(-1, pipeline.prioritize(items(), PriorityEntryQueue.Priority.SELECTED));
+        // Ani uvolněné odpovědi serveru již nic neuloží
+        release.countDown();
+        Thread.sleep(200);
+        assertEquals(List.of(), savedImages());
+    }
+
+    @Test
+    void cancelDiscardsPartialArchive() throws Exception {
+        stalled = true;
+        CatalogPipeline pipeline = new CatalogPipeline(null, new ImageSaver(), 1, DOWNLOADERS);
+        Future<DownloadResult> run = runner.submit(() -> pipeline.run(items(), directory.toFile(), OutputMode.ZIP,
+                new DownloadListener() {
+                }));
+        assertTrue(requested.await(10, TimeUnit.SECONDS));
+
+        pipeline.cancel();
+        run.get(10, TimeUnit.SECONDS);
+
+        assertEquals(List.of(), listFiles());
+    }
+
+    private List<SignEntry> items() {
+        List<SignEntry> items = new ArrayList<>(IMAGES);
+        for (int i = 0; i < IMAGES; i++) {
+            items.add(new SignEntry("A " + i, "Značka " + i, baseUrl + "A" + i + ".png"));
+        }
+        return items;
+    }
+
+    private List<Path> savedImages() throws IOException {
+        return listFiles().stream().filter(file -> file.toString().endsWith(".png")).toList();
+    }
+
+    /**
+     * @return soubory v cílové složce kromě manifestu.
+     */
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> !file.getFileName().toString().equals(DownloadManifest.FILE_NAME)).toList();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy synchronizace cílové složky s katalogem (CatalogSync).
+ * <p>
+ * Obrázky místo ImageSaver „stahuje“ FakeDownloader, který soubor zapíše a zaznamená do manifestu.
+ */
+class CatalogSyncTest {
+    private static final SignEntry A = entry("A 1a", "a1a");
+    private static final SignEntry B = entry("B 1", "b1");
+    private static final SignEntry C = entry("C 2", "c2");
+
+    @TempDir
+    Path directory;
+
+    private final FakeDownloader downloader = new FakeDownloader();
+    private final CatalogSync sync = new CatalogSync(downloader, CatalogSync.Removal.DELETE);
+
+    @Test
+    void firstSyncAddsWholeCatalog() throws IOException {
+        CatalogSync.Report report = sync(List.of(A, B, C), true);
+
+        assertEquals(3, report.added());
+        assertEquals(0, report.unchanged());
+        assertEquals(List.of(A, B, C), downloader.downloaded);
+        assertTrue(Files.exists(directory.resolve(CatalogSync.SNAPSHOT_FILE)));
+    }
+
+    @Test
+    void unchangedCatalogIsNotDownloaded() throws IOException {
+        sync(List.of(A, B, C), true);
+        downloader.downloaded.clear();
+        List<SignEntry> skipped = new ArrayList<>();
+
+        CatalogSync.Report report = sync.sync(List.of(A, B, C), directory.toFile(), new DownloadListener() {
+            @Override
+            public void onSkipped(SignEntry item, File file) {
+                skipped.add(item);
+            }
+        }, true);
+
+        assertEquals(3, report.unchanged());
+        assertEquals(0, report.added() + report.changed() + report.removed());
+        assertTrue(downloader.downloaded.isEmpty());
+        assertEquals(List.of(A, B, C), skipped);
+    }
+
+    @Test
+    void classifiesAddedChangedAndRemovedEntries() throws IOException {
+        sync(List.of(A, B, C), true);
+        downloader.downloaded.clear();
+        SignEntry movedB = entry("B 1", "b1-novy");
+        SignEntry d = entry("D 3", "d3");
+
+        CatalogSync.Report report = sync(List.of(A, movedB, d), true);
+
+        assertEquals(1, report.added());
+        assertEquals(1, report.changed());
+        assertEquals(1, report.removed());
+        assertEquals(1, report.unchanged());
+        assertEquals(List.of(movedB, d), downloader.downloaded);
+        assertFalse(Files.exists(directory.resolve("c2.png")));
+        assertFalse(Files.exists(directory.resolve("b1.png")));
+        assertTrue(Files.exists(directory.resolve("b1-novy.png")));
+        assertEquals(Set.of("added\tD 3", "changed\tB 1", "removed\tC 2"), changes(report));
+    }
+
+    @Test
+    void modifiedFileIsDownloadedAgain() throws IOException {
+        sync(List.of(A, B), true);
+        downloader.downloaded.clear();
+        Files.writeString(directory.resolve("a1a.png"), "upravený obsah");
+
+        CatalogSync.Report report = sync(List.of(A, B), true);
+
+        assertEquals(1, report.changed());
+        assertEquals(List.of(A), downloader.downloaded);
+    }
+
+    @Test
+    void incompleteCatalogDoesNotRemoveMissingEntries() throws IOException {
+        sync(List.of(A, B, C), true);
+
+        CatalogSync.Report incomplete = sync(List.of(A, B), false);
+        assertEquals(0, incomplete.removed());
+        assertTrue(Files.exists(directory.resolve("c2.png")));
+
+        // Značka zůstala ve snímku, takže ji úplný katalog vyhodnotí jako odebranou
+        CatalogSync.Report complete = sync(List.of(A, B), true);
+        assertEquals(1, complete.removed());
+        assertFalse(Files.exists(directory.resolve("c2.png")));
+    }
+
+    @Test
+    void failedDownloadIsRetriedByNextSync() throws IOException {
+        downloader.failing.add(B);
+        CatalogSync.Report failed = sync(List.of(A, B, C), true);
+        assertEquals(Set.of("added\tA 1a", "failed\tB 1", "added\tC 2"), changes(failed));
+        assertEquals(1, failed.download().getFailures());
+
+        downloader.failing.clear();
+        downloader.downloaded.clear();
+        CatalogSync.Report retried = sync(List.of(A, B, C), true);
+
+        assertEquals(1, retried.added());
+        assertEquals(2, retried.unchanged());
+        assertEquals(List.of(B), downloader.downloaded);
+    }
+
+    private CatalogSync.Report sync(List<SignEntry> entries, boolean complete) throws IOException {
+        return sync.sync(entries, directory.toFile(), new DownloadListener() {
+        }, complete);
+    }
+
+    /**
+     * @return druh změny a kód značky z každého řádku seznamu změn.
+     */
+    private static Set<String> changes(CatalogSync.Report report) throws IOException {
+        Set<String> changes = new HashSet<>();
+        for (String line : Files.readAllLines(report.report(), StandardCharsets.UTF_8)) {
+            if (!line.startsWith("#")) {
+                String[] parts = line.split("\t", -1);
+                changes.add(parts[0] + "\t" + parts[1]);
+            }
+        }
+        return changes;
+    }
+
+    private static SignEntry entry(String code, String name) {
+        return new SignEntry(code, "Značka " + code, "https://example.com/" + name + ".png");
+    }
+
+    /**
+     * Stažení, které obsah souboru sestaví z URL adresy a zaznamená jej do manifestu stejně jako ImageSaver.
+     */
+    private static class FakeDownloader implements CatalogSync.Downloader {
+        private final List<SignEntry> downloaded = new ArrayList<>();
+        private final Set<SignEntry> failing = new HashSet<>();
+
+        @Override
+        public DownloadResult download(List<SignEntry> entries, File directory, DownloadListener listener) throws IOException {
+            DownloadResult result = new DownloadResult();
+            DownloadManifest manifest = DownloadManifest.load(directory);
+            for (SignEntry entry : entries) {
+                downloaded.add(entry);
+                if (failing.contains(entry)) {
+                    result.recordFailure(entry);
+                    listener.onFailed(entry, new IOException("Server neodpověděl"));
+                    continue;
+                }
+                String fileName = entry.url().substring(entry.url().lastIndexOf('/') + 1);
+                byte[] content = entry.url().getBytes(StandardCharsets.UTF_8);
+                File file = new File(directory, fileName);
+                Files.write(file.toPath(), content);
+                manifest.put(new DownloadManifest.Entry(entry.url(), fileName, content.length, "", "",
+                        Integer.toHexString(entry.url().hashCode())));
+                result.recordSuccess(content.length);
+                listener.onCompleted(entry, file, content.length);
+            }
+            manifest.save();
+            return result;
+        }
+    }
+}
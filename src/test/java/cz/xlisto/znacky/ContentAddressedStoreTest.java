@@ -0,0 +1,117 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy úložiště obrázků podle otisku obsahu (ContentAddressedStore).
+ */
+class ContentAddressedStoreTest {
+    private static final byte[] CONTENT = "obsah obrázku".getBytes(StandardCharsets.UTF_8);
+    private static final SignEntry FIRST = new SignEntry("A 1", "Zatáčka vpravo", "http://www.celysvet.cz/a/A1.png");
+    private static final SignEntry SECOND = new SignEntry("A 1", "Zatáčka vpravo", "http://www.celysvet.cz/b/A1.png");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesDuplicateContentOnce() throws IOException {
+        ContentAddressedStore store = new ContentAddressedStore(directory.toFile());
+
+        ImageStore.StoredImage first = store.store(FIRST, "A1.png", new ByteArrayInputStream(CONTENT));
+        ImageStore.StoredImage second = store.store(SECOND, "A1-2.png", new ByteArrayInputStream(CONTENT));
+        store.close();
+
+        assertEquals(sha256(CONTENT), first.sha256());
+        assertEquals(first.sha256(), second.sha256());
+        assertEquals(CONTENT.length, first.written());
+        assertEquals(0, second.written());
+        assertEquals(List.of(store.blobPath(first.sha256())), blobs());
+        assertTrue(Files.isSameFile(directory.resolve("A1.png"), store.blobPath(first.sha256())));
+        assertTrue(Files.isSameFile(directory.resolve("A1-2.png"), store.blobPath(first.sha256())));
+        assertArrayEquals(CONTENT, Files.readAllBytes(directory.resolve("A1-2.png")));
+    }
+
+    @Test
+    void replacesLinkWhenContentChanges() throws IOException {
+        ContentAddressedStore store = new ContentAddressedStore(directory.toFile());
+        store.store(FIRST, "A1.png", new ByteArrayInputStream(CONTENT));
+        byte[] changed = "nový obsah".getBytes(StandardCharsets.UTF_8);
+
+        ImageStore.StoredImage stored = store.store(FIRST, "A1.png", new ByteArrayInputStream(changed));
+
+        assertEquals(changed.length, stored.written());
+        assertArrayEquals(changed, Files.readAllBytes(directory.resolve("A1.png")));
+        assertEquals(sha256(changed), store.get("A1.png").sha256());
+        assertEquals(2, blobs().size());
+    }
+
+    @Test
+    void streamsLargeImageThroughTemporaryFile() throws IOException {
+        byte[] large = new byte[ContentAddressedStore.SPILL_THRESHOLD + 1000];
+        new Random(1).nextBytes(large);
+        ContentAddressedStore store = new ContentAddressedStore(directory.toFile());
+
+        ImageStore.StoredImage stored = store.store(FIRST, "A1.png", new ByteArrayInputStream(large));
+
+        assertEquals(sha256(large), stored.sha256());
+        assertEquals(large.length, stored.written());
+        assertArrayEquals(large, Files.readAllBytes(directory.resolve("A1.png")));
+        assertEquals(List.of(store.blobPath(stored.sha256())), blobs());
+    }
+
+    @Test
+    void withoutHardLinksNamesAreOnlyInIndex() throws IOException {
+        ContentAddressedStore store = new ContentAddressedStore(directory.toFile(), false);
+
+        ImageStore.StoredImage first = store.store(FIRST, "A1.png", new ByteArrayInputStream(CONTENT));
+        ImageStore.StoredImage second = store.store(SECOND, "A1-2.png", new ByteArrayInputStream(CONTENT));
+        store.close();
+
+        assertEquals(CONTENT.length, first.written());
+        assertEquals(0, second.written());
+        assertEquals(List.of(store.blobPath(first.sha256())), blobs());
+        assertArrayEquals(CONTENT, Files.readAllBytes(store.blobPath(first.sha256())));
+        assertFalse(Files.exists(directory.resolve("A1.png")));
+        assertFalse(Files.exists(directory.resolve("A1-2.png")));
+
+        ContentAddressedStore reopened = new ContentAddressedStore(directory.toFile());
+        assertEquals(new ContentAddressedStore.IndexEntry("A 1", "A1-2.png", first.sha256(), CONTENT.length, SECOND.url()),
+                reopened.get("A1-2.png"));
+        assertEquals(FIRST.url(), reopened.get("A1.png").url());
+    }
+
+    /**
+     * @return soubory s uloženým obsahem.
+     */
+    private List<Path> blobs() throws IOException {
+        try (Stream<Path> files = Files.walk(directory.resolve(ContentAddressedStore.BLOB_DIRECTORY))) {
+            return files.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package cz.xlisto.znacky;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Testy ukládání obrázků (ImageSaver) proti místnímu serveru: přidělování názvů souborů
+ * a přeskočení nezměněných obrázků podle manifestu.
+ */
+class ImageSaverTest {
+    private HttpServer server;
+    private String baseUrl;
+    /**
+     * Obsah obrázků podle cesty na serveru.
+     */
+    private final Map<String, String> images = new ConcurrentHashMap<>();
+    /**
+     * Počet odpovědí, ve kterých server poslal obsah obrázku.
+     */
+    private final AtomicInteger downloads = new AtomicInteger();
+    /**
+     * Zda server posílá ETag a odpovídá na podmíněné požadavky stavem 304.
+     */
+    private volatile boolean validators;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext("/", exchange -> {
+            String content = images.get(exchange.getRequestURI().getPath());
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            String etag = "\"" + content.hashCode() + "\"";
+            if (validators) {
+                exchange.getResponseHeaders().set("ETag", etag);
+                if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+            }
+            byte[] body = content.getBytes(StandardCharsets.UTF_8);
+            downloads.incrementAndGet();
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void collidingNamesGetDistinctFiles() throws IOException {
+        SignEntry first = image("/a/A1.png", "první");
+        SignEntry second = image("/b/A1.png", "druhý");
+
+        DownloadResult result = save(List.of(first, second));
+
+        assertEquals(2, result.getSuccesses());
+        assertEquals("první", read("A1.png"));
+        assertEquals("druhý", read("A1-2.png"));
+    }
+
+    @Test
+    void namesFromManifestAreKeptOnNextRun() throws IOException {
+        SignEntry first = image("/a/A1.png", "první");
+        SignEntry second = image("/b/A1.png", "druhý");
+        save(List.of(first, second));
+
+        // V opačném pořadí by druhý obrázek dostal název A1.png, nebýt záznamu v manifestu
+        DownloadResult result = save(List.of(second, first));
+
+        assertEquals(0, result.getFailures());
+        assertEquals("první", read("A1.png"));
+        assertEquals("druhý", read("A1-2.png"));
+        assertEquals(2, directory.toFile().list((dir, name) -> name.endsWith(".png")).length);
+    }
+
+    @Test
+    void unchangedImagesAreSkippedWithConditionalRequest() {
+        validators = true;
+        List<SignEntry> entries = List.of(image("/A1.png", "a"), image("/A2.png", "b"));
+        save(entries);
+
+        DownloadResult result = save(entries);
+
+        assertEquals(2, result.getSkipped());
+        assertEquals(0, result.getSuccesses());
+        assertEquals(2, downloads.get());
+    }
+
+    @Test
+    void unchangedContentIsSkippedWithoutValidators() throws IOException {
+        SignEntry unchanged = image("/A1.png", "a");
+        SignEntry changed = image("/A2.png", "b");
+        save(List.of(unchanged, changed));
+        images.put("/A2.png", "c");
+
+        DownloadResult result = save(List.of(unchanged, changed));
+
+        assertEquals(1, result.getSkipped());
+        assertEquals(1, result.getSuccesses());
+        assertEquals("a", read("A1.png"));
+        assertEquals("c", read("A2.png"));
+    }
+
+    @Test
+    void fileChangedOnDiskIsDownloadedAgain() throws IOException {
+        validators = true;
+        SignEntry entry = image("/A1.png", "obsah");
+        save(List.of(entry));
+        Files.writeString(directory.resolve("A1.png"), "poškozený obsah");
+
+        DownloadResult result = save(List.of(entry));
+
+        assertEquals(1, result.getSuccesses());
+        assertEquals("obsah", read("A1.png"));
+    }
+
+    private SignEntry image(String path, String content) {
+        images.put(path, content);
+        return new SignEntry("A1", "Značka", baseUrl + path);
+    }
+
+    /**
+     * Uloží obrázky jedním vláknem, aby bylo pořadí přidělování názvů dané pořadím položek.
+     */
+    private DownloadResult save(List<SignEntry> entries) {
+        File target = directory.toFile();
+        return new ImageSaver(1, 1).saveImages(entries, target, new DownloadListener() {
+        }, OutputMode.DIRECTORY);
+    }
+
+    private String read(String fileName) throws IOException {
+        return Files.readString(directory.resolve(fileName));
+    }
+}
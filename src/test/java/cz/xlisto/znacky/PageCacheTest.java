@@ -0,0 +1,120 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Testy mezipaměti stránek katalogu (PageCache): uložení, načtení a vyřazení nejdéle nepoužitých stránek.
+ */
+class PageCacheTest {
+    private static final String BASE = "http://www.celysvet.cz/znacky?od=";
+
+    @TempDir
+    Path directory;
+    /**
+     * Složka pro změření velikosti souboru stránky.
+     */
+    @TempDir
+    Path measured;
+
+    @Test
+    void returnsStoredPage() {
+        PageCache cache = new PageCache(directory, PageCache.DEFAULT_MAX_BYTES);
+        Pagination pagination = Pagination.of(BASE + "20", "od", 0, 20, 180);
+        CatalogPage page = new CatalogPage(List.of(new SignEntry("A 1", "Zatáčka vpravo", "http://www.celysvet.cz/hi/A1.png")),
+                BASE + "20", pagination);
+        cache.put(new PageCache.CachedPage(BASE + "0", "\"etag\"", "", "abc", page));
+
+        PageCache.CachedPage cached = cache.get(BASE + "0");
+
+        assertNotNull(cached);
+        assertEquals("\"etag\"", cached.etag());
+        assertEquals("abc", cached.sha256());
+        assertEquals(page.entries(), cached.page().entries());
+        assertEquals(BASE + "20", cached.page().nextUrl());
+        assertEquals(180, cached.page().pagination().getLast());
+        assertNull(cache.get(BASE + "20"));
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedPage() {
+        PageCache cache = new PageCache(directory, 3 * pageSize() + pageSize() / 2);
+        cache.put(page("a"));
+        cache.put(page("b"));
+        cache.put(page("c"));
+        // Použití stránky a ji posune za stránky b a c
+        assertNotNull(cache.get(BASE + "a"));
+
+        cache.put(page("d"));
+
+        assertNull(cache.get(BASE + "b"));
+        assertNotNull(cache.get(BASE + "a"));
+        assertNotNull(cache.get(BASE + "c"));
+        assertNotNull(cache.get(BASE + "d"));
+        assertEquals(3, directory.toFile().list().length);
+    }
+
+    @Test
+    void restoresUsageOrderWhenReopened() throws IOException {
+        long maxBytes = 3 * pageSize() + pageSize() / 2;
+        PageCache cache = new PageCache(directory, maxBytes);
+        cache.put(page("a"));
+        cache.put(page("b"));
+        cache.put(page("c"));
+        Files.setLastModifiedTime(file("a"), FileTime.fromMillis(3_000_000));
+        Files.setLastModifiedTime(file("b"), FileTime.fromMillis(1_000_000));
+        Files.setLastModifiedTime(file("c"), FileTime.fromMillis(2_000_000));
+
+        PageCache reopened = new PageCache(directory, maxBytes);
+        reopened.put(page("d"));
+
+        assertNull(reopened.get(BASE + "b"));
+        assertNotNull(reopened.get(BASE + "a"));
+        assertNotNull(reopened.get(BASE + "c"));
+    }
+
+    private static PageCache.CachedPage page(String id) {
+        CatalogPage page = new CatalogPage(List.of(new SignEntry("A " + id, "Značka " + id, "http://www.celysvet.cz/hi/A" + id + ".png")),
+                null, null);
+        return new PageCache.CachedPage(BASE + id, "", "", "0".repeat(64), page);
+    }
+
+    /**
+     * @return velikost souboru jedné stránky; stránky vytvořené metodou page mají stejnou velikost.
+     */
+    private long pageSize() {
+        new PageCache(measured, PageCache.DEFAULT_MAX_BYTES).put(page("x"));
+        try {
+            return Files.size(measured.resolve(fileName("x")));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private Path file(String id) {
+        return directory.resolve(fileName(id));
+    }
+
+    private static String fileName(String id) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest((BASE + id).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash) + ".page";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
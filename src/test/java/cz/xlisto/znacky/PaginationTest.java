@@ -0,0 +1,65 @@
+package cz.xlisto.znacky;
+
+import org.jsoup.Jsoup;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Testy rozpoznání stránkování katalogu (Pagination).
+ */
+class PaginationTest {
+    private static final String BASE = "https://example.com/";
+    private static final String PAGE = BASE + "znacky?kat=5&od=0";
+    private static final String NEXT = BASE + "znacky?kat=5&od=20";
+
+    @Test
+    void detectsOffsetParameterStepAndLastPage() {
+        List<String> hrefs = List.of("/znacky?kat=5&od=20", "/znacky?kat=5&od=40", "/znacky?kat=5&od=100",
+                "/jine?od=500", "/znacky?kat=6&od=0");
+
+        Pagination pagination = Pagination.detect(hrefs, PAGE, NEXT, BASE);
+
+        assertEquals("od", pagination.getParam());
+        assertEquals(0, pagination.getCurrent());
+        assertEquals(20, pagination.getStep());
+        assertEquals(100, pagination.getLast());
+        assertEquals(List.of(BASE + "znacky?kat=5&od=40", BASE + "znacky?kat=5&od=60",
+                BASE + "znacky?kat=5&od=80", BASE + "znacky?kat=5&od=100"), pagination.urlsAfter(20));
+    }
+
+    @Test
+    void ignoresOffsetsOutsideStep() {
+        Pagination pagination = Pagination.detect(List.of("/znacky?kat=5&od=20", "/znacky?kat=5&od=110"), PAGE, NEXT, BASE);
+
+        assertEquals(20, pagination.getLast());
+    }
+
+    @Test
+    void documentAndHrefListGiveSameResult() {
+        String html = "<a href=\"/znacky?kat=5&amp;od=20\">další :</a> <a href=\"././znacky?kat=5&amp;od=60\">4</a>";
+
+        Pagination fromDocument = Pagination.detect(Jsoup.parse(html), PAGE, NEXT, BASE);
+        Pagination fromHrefs = Pagination.detect(List.of("/znacky?kat=5&od=20", "././znacky?kat=5&od=60"), PAGE, NEXT, BASE);
+
+        assertEquals(60, fromDocument.getLast());
+        assertEquals(fromHrefs.getLast(), fromDocument.getLast());
+        assertEquals(fromHrefs.getParam(), fromDocument.getParam());
+    }
+
+    @Test
+    void buildsUrlOfFollowingPage() {
+        Pagination pagination = Pagination.detect(List.of("/znacky?kat=5&od=20"), PAGE, NEXT, BASE);
+
+        assertEquals(BASE + "znacky?kat=5&od=200", pagination.urlAfter(BASE + "znacky?kat=5&od=180"));
+        assertNull(pagination.urlAfter(BASE + "znacky?kat=5"));
+    }
+
+    @Test
+    void returnsNullWithoutNumericParameter() {
+        assertNull(Pagination.detect(List.of(), PAGE, BASE + "znacky?kat=5&strana=dalsi", BASE));
+    }
+}
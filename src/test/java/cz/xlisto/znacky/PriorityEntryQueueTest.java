@@ -0,0 +1,142 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy fronty položek s přednostními úrovněmi (PriorityEntryQueue).
+ */
+class PriorityEntryQueueTest {
+    private static final List<SignEntry> ENTRIES = entries(6);
+
+    @Test
+    void takesSelectedThenVisibleThenNormal() throws InterruptedException {
+        PriorityEntryQueue queue = filledQueue();
+
+        assertEquals(1, queue.prioritize(List.of(ENTRIES.get(4)), PriorityEntryQueue.Priority.VISIBLE));
+        assertEquals(1, queue.prioritize(List.of(ENTRIES.get(5)), PriorityEntryQueue.Priority.SELECTED));
+
+        assertEquals(List.of(ENTRIES.get(5), ENTRIES.get(4), ENTRIES.get(0), ENTRIES.get(1), ENTRIES.get(2),
+                ENTRIES.get(3)), takeAll(queue, 6));
+    }
+
+    @Test
+    void latestSelectionComesFirst() throws InterruptedException {
+        PriorityEntryQueue queue = filledQueue();
+
+        queue.prioritize(List.of(ENTRIES.get(4), ENTRIES.get(5)), PriorityEntryQueue.Priority.SELECTED);
+        queue.prioritize(List.of(ENTRIES.get(2), ENTRIES.get(3)), PriorityEntryQueue.Priority.SELECTED);
+
+        assertEquals(List.of(ENTRIES.get(2), ENTRIES.get(3), ENTRIES.get(4), ENTRIES.get(5)), takeAll(queue, 4));
+    }
+
+    @Test
+    void deliversPrioritizedEntryOnlyOnce() throws InterruptedException {
+        PriorityEntryQueue queue = filledQueue();
+
+        queue.prioritize(List.of(ENTRIES.get(3)), PriorityEntryQueue.Priority.SELECTED);
+        assertEquals(ENTRIES.get(3), queue.take());
+        // Již vrácená položka není zařazena znovu
+        assertEquals(0, queue.prioritize(List.of(ENTRIES.get(3)), PriorityEntryQueue.Priority.SELECTED));
+        assertEquals(0, queue.prioritize(List.of(ENTRIES.get(3)), PriorityEntryQueue.Priority.VISIBLE));
+
+        // Běžná úroveň již vrácenou položku přeskočí
+        assertEquals(List.of(ENTRIES.get(0), ENTRIES.get(1), ENTRIES.get(2), ENTRIES.get(4), ENTRIES.get(5)),
+                takeAll(queue, 5));
+    }
+
+    @Test
+    void entryPrioritizedBeforeItReachesNormalLaneIsDeliveredOnce() throws InterruptedException {
+        PriorityEntryQueue queue = new PriorityEntryQueue(10);
+        queue.put(ENTRIES.get(0));
+
+        queue.prioritize(List.of(ENTRIES.get(1)), PriorityEntryQueue.Priority.SELECTED);
+        queue.put(ENTRIES.get(1));
+        queue.put(ENTRIES.get(2));
+
+        assertEquals(List.of(ENTRIES.get(1), ENTRIES.get(0), ENTRIES.get(2)), takeAll(queue, 3));
+        assertTrue(queue.close().isEmpty());
+    }
+
+    @Test
+    void visibleLaneIsReplacedOnEachUpdate() throws InterruptedException {
+        PriorityEntryQueue queue = filledQueue();
+
+        assertEquals(2, queue.prioritize(List.of(ENTRIES.get(4), ENTRIES.get(5)), PriorityEntryQueue.Priority.VISIBLE));
+        // Seznam byl posunut, položka 4 již není zobrazená
+        assertEquals(1, queue.prioritize(List.of(ENTRIES.get(5), ENTRIES.get(3)), PriorityEntryQueue.Priority.VISIBLE));
+
+        assertEquals(List.of(ENTRIES.get(5), ENTRIES.get(3), ENTRIES.get(0), ENTRIES.get(1), ENTRIES.get(2),
+                ENTRIES.get(4)), takeAll(queue, 6));
+    }
+
+    @Test
+    void selectingVisibleEntryMovesItToSelectedLane() throws InterruptedException {
+        PriorityEntryQueue queue = filledQueue();
+
+        queue.prioritize(List.of(ENTRIES.get(3), ENTRIES.get(4)), PriorityEntryQueue.Priority.VISIBLE);
+        assertEquals(1, queue.prioritize(List.of(ENTRIES.get(4)), PriorityEntryQueue.Priority.SELECTED));
+
+        assertEquals(List.of(ENTRIES.get(4), ENTRIES.get(3), ENTRIES.get(0)), takeAll(queue, 3));
+    }
+
+    @Test
+    void closeReturnsWaitingPrioritizedEntries() {
+        PriorityEntryQueue queue = new PriorityEntryQueue(10);
+        queue.prioritize(List.of(ENTRIES.get(0)), PriorityEntryQueue.Priority.SELECTED);
+        queue.prioritize(List.of(ENTRIES.get(1)), PriorityEntryQueue.Priority.VISIBLE);
+
+        assertEquals(List.of(ENTRIES.get(0), ENTRIES.get(1)), queue.close());
+        assertEquals(-1, queue.prioritize(List.of(ENTRIES.get(2)), PriorityEntryQueue.Priority.SELECTED));
+    }
+
+    @Test
+    void rejectsNormalPriority() {
+        PriorityEntryQueue queue = new PriorityEntryQueue(10);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> queue.prioritize(List.of(ENTRIES.get(0)), PriorityEntryQueue.Priority.NORMAL));
+    }
+
+    @Test
+    void offerFailsWhenNormalLaneIsFull() {
+        PriorityEntryQueue queue = new PriorityEntryQueue(1);
+
+        assertTrue(queue.offer(ENTRIES.get(0)));
+        assertFalse(queue.offer(ENTRIES.get(1)));
+    }
+
+    /**
+     * @return fronta se všemi položkami v běžné úrovni.
+     */
+    private static PriorityEntryQueue filledQueue() throws InterruptedException {
+        PriorityEntryQueue queue = new PriorityEntryQueue(ENTRIES.size());
+        for (SignEntry entry : ENTRIES) {
+            queue.put(entry);
+        }
+        return queue;
+    }
+
+    private static List<SignEntry> takeAll(PriorityEntryQueue queue, int count) throws InterruptedException {
+        List<SignEntry> taken = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            taken.add(queue.take());
+        }
+        return taken;
+    }
+
+    private static List<SignEntry> entries(int count) {
+        List<SignEntry> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(new SignEntry("Z " + i, "Značka " + i, "https://example.com/z" + i + ".png"));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,111 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLHandshakeException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.nio.file.AccessDeniedException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy opakování požadavků (RetryPolicy) a převodu hlavičky Retry-After (HttpStatusException).
+ */
+class RetryPolicyTest {
+    private static final URI URI = java.net.URI.create("https://example.com/a.png");
+
+    private final RetryPolicy policy = new RetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(1000));
+
+    @Test
+    void delayGrowsExponentiallyUpToMaximum() {
+        IOException error = new HttpTimeoutException("timeout");
+        for (int i = 0; i < 100; i++) {
+            assertBetween(0, 100, policy.delayMillis(1, error));
+            assertBetween(0, 400, policy.delayMillis(3, error));
+            assertBetween(0, 1000, policy.delayMillis(10, error));
+            assertBetween(0, 1000, policy.delayMillis(100, error));
+        }
+    }
+
+    @Test
+    void delayRespectsRetryAfter() {
+        HttpStatusException throttled = new HttpStatusException(429, URI, Duration.ofSeconds(2));
+
+        assertEquals(2000, policy.delayMillis(1, throttled));
+    }
+
+    @Test
+    void delayIsNegativeWhenRetryAfterIsTooLong() {
+        HttpStatusException throttled = new HttpStatusException(503, URI, RetryPolicy.MAX_RETRY_AFTER.plusSeconds(1));
+
+        assertEquals(-1, policy.delayMillis(1, throttled));
+    }
+
+    @Test
+    void parsesRetryAfterSeconds() {
+        assertEquals(Duration.ofSeconds(120), HttpStatusException.parseRetryAfter("120"));
+        assertEquals(Duration.ofSeconds(5), HttpStatusException.parseRetryAfter(" 5 "));
+        assertEquals(Duration.ZERO, HttpStatusException.parseRetryAfter("-3"));
+    }
+
+    @Test
+    void parsesRetryAfterDate() {
+        String future = ZonedDateTime.now().plusSeconds(60).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+        String past = ZonedDateTime.now().minusSeconds(60).format(DateTimeFormatter.RFC_1123_DATE_TIME);
+
+        assertBetween(50, 60, HttpStatusException.parseRetryAfter(future).toSeconds());
+        assertEquals(Duration.ZERO, HttpStatusException.parseRetryAfter(past));
+    }
+
+    @Test
+    void ignoresMissingOrInvalidRetryAfter() {
+        assertNull(HttpStatusException.parseRetryAfter(null));
+        assertNull(HttpStatusException.parseRetryAfter(" "));
+        assertNull(HttpStatusException.parseRetryAfter("brzy"));
+    }
+
+    @Test
+    void retriesTransientStatusCodes() {
+        for (int status : new int[]{408, 425, 429, 500, 502, 503, 504}) {
+            assertTrue(RetryPolicy.isRetryable(new HttpStatusException(status, URI, null)), "stav " + status);
+        }
+        for (int status : new int[]{400, 401, 403, 404, 410, 501}) {
+            assertFalse(RetryPolicy.isRetryable(new HttpStatusException(status, URI, null)), "stav " + status);
+        }
+    }
+
+    @Test
+    void retriesNetworkFailures() {
+        assertTrue(RetryPolicy.isRetryable(new HttpTimeoutException("timeout")));
+        assertTrue(RetryPolicy.isRetryable(new EOFException()));
+        assertTrue(RetryPolicy.isRetryable(new ConnectException("Connection refused")));
+        assertTrue(RetryPolicy.isRetryable(new IOException("obalená chyba", new SocketException("Connection reset"))));
+    }
+
+    @Test
+    void doesNotRetryLocalOrPermanentFailures() {
+        assertFalse(RetryPolicy.isRetryable(new IOException("neznámá chyba")));
+        assertFalse(RetryPolicy.isRetryable(new AccessDeniedException("/cil/a.png")));
+        assertFalse(RetryPolicy.isRetryable(new BindException("Address already in use")));
+        assertFalse(RetryPolicy.isRetryable(new SSLHandshakeException("certifikát")));
+        SSLHandshakeException handshake = new SSLHandshakeException("certifikát");
+        handshake.initCause(new SocketException("Connection reset"));
+        assertFalse(RetryPolicy.isRetryable(new IOException(handshake)));
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value >= min && value <= max, value + " není v rozsahu " + min + " až " + max);
+    }
+}
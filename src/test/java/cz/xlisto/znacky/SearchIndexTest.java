@@ -0,0 +1,128 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Testy vyhledávání v položkách katalogu (SearchIndex).
+ */
+class SearchIndexTest {
+    private static final SignEntry A1 = new SignEntry("A 1a", "Zatáčka vpravo", "http://www.celysvet.cz/hi/A1a.png");
+    private static final SignEntry A10 = new SignEntry("A 10", "Světelné signály", "http://www.celysvet.cz/hi/A10.png");
+    private static final SignEntry B20 = new SignEntry("B 20a", "Nejvyšší dovolená rychlost", "http://www.celysvet.cz/hi/B20a.png");
+    private static final SignEntry P4 = new SignEntry("P 4", "Dej přednost v jízdě!", "http://www.celysvet.cz/hi/P4.png");
+
+    @Test
+    void findsCodesByPrefix() {
+        SearchIndex index = index(A1, A10, B20, P4);
+
+        assertEquals(List.of(A1, A10), index.search("A1"));
+        assertEquals(List.of(A10), index.search("a10"));
+        assertEquals(List.of(B20), index.search("B"));
+    }
+
+    @Test
+    void findsDescriptionWordsIgnoringCaseAndDiacritics() {
+        SearchIndex index = index(A1, A10, B20, P4);
+
+        assertEquals(List.of(A1), index.search("ZATACKA"));
+        assertEquals(List.of(A10), index.search("svetel"));
+        assertEquals(List.of(P4), index.search("jízdě"));
+        assertEquals(List.of(B20), index.search("rych"));
+    }
+
+    @Test
+    void everyTermMustMatch() {
+        SearchIndex index = index(A1, A10, B20, P4);
+
+        assertEquals(List.of(B20), index.search("nejvyšší b20"));
+        assertEquals(List.of(), index.search("zatáčka b20"));
+        assertEquals(List.of(), index.search("vlevo"));
+    }
+
+    @Test
+    void emptyQueryReturnsAllEntriesInCatalogOrder() {
+        SearchIndex index = index(P4, A1, B20);
+
+        assertEquals(List.of(P4, A1, B20), index.search(""));
+        assertEquals(List.of(P4, A1, B20), index.search("  , "));
+        assertEquals(List.of(P4, A1, B20), index.search(null));
+    }
+
+    @Test
+    void entriesAddedLaterAreFound() {
+        SearchIndex index = index(A1);
+        assertEquals(List.of(A1), index.search("a"));
+
+        index.addAll(List.of(A10, B20));
+
+        assertEquals(List.of(A1, A10), index.search("a"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void matchesLinearScanOnGeneratedCatalog() {
+        String[] words = {"zatáčka", "vpravo", "vlevo", "světelné", "signály", "nejvyšší", "rychlost", "zákaz",
+                "vjezdu", "všech", "vozidel", "přednost", "jízdě", "stůj", "kruhový", "objezd"};
+        Random random = new Random(42);
+        List<SignEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String code = (char) ('A' + random.nextInt(8)) + " " + random.nextInt(40) + (random.nextBoolean() ? "a" : "");
+            StringBuilder description = new StringBuilder();
+            for (int w = 1 + random.nextInt(4); w > 0; w--) {
+                description.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            entries.add(new SignEntry(code, description.toString().trim(), "http://www.celysvet.cz/hi/" + i + ".png"));
+        }
+        SearchIndex index = new SearchIndex();
+        index.addAll(entries);
+
+        for (int q = 0; q < 500; q++) {
+            StringBuilder query = new StringBuilder();
+            for (int t = 1 + random.nextInt(2); t > 0; t--) {
+                String term = random.nextInt(3) == 0
+                        ? (char) ('a' + random.nextInt(8)) + String.valueOf(random.nextInt(40))
+                        : words[random.nextInt(words.length)];
+                query.append(term, 0, 1 + random.nextInt(term.length())).append(' ');
+            }
+            assertEquals(linearScan(entries, query.toString()), index.search(query.toString()), query.toString());
+        }
+    }
+
+    private static SearchIndex index(SignEntry... entries) {
+        SearchIndex index = new SearchIndex();
+        index.addAll(Arrays.asList(entries));
+        return index;
+    }
+
+    /**
+     * Vyhledá položky procházením celého katalogu podle popisu v dokumentaci třídy SearchIndex.
+     */
+    private static List<SignEntry> linearScan(List<SignEntry> entries, String query) {
+        List<String> terms = Arrays.stream(fold(query).split(" ")).filter(term -> !term.isEmpty()).toList();
+        List<SignEntry> result = new ArrayList<>();
+        for (SignEntry entry : entries) {
+            String code = fold(entry.code()).replace(" ", "");
+            List<String> descriptionWords = Arrays.asList(fold(entry.description()).split(" "));
+            boolean matches = terms.stream().allMatch(term -> code.startsWith(term)
+                    || descriptionWords.stream().anyMatch(word -> word.startsWith(term)));
+            if (matches) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private static String fold(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "").replaceAll("[^\\p{L}\\p{N}]", " ");
+    }
+}
@@ -0,0 +1,38 @@
+package cz.xlisto.znacky;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Testy odstraňování duplicit položek katalogu (SignIndex).
+ */
+class SignIndexTest {
+
+    @Test
+    void rejectsSameUrlOrSameCode() {
+        SignIndex index = new SignIndex();
+
+        assertTrue(index.add(new SignEntry("A 1a", "Zatáčka vpravo", "https://example.com/a1a.png")));
+        assertFalse(index.add(new SignEntry("A 1a", "Zatáčka vpravo", "https://example.com/jina/a1a.png")));
+        assertFalse(index.add(new SignEntry("A 1b", "Zatáčka vlevo", "https://example.com/a1a.png")));
+        assertTrue(index.add(new SignEntry("A 1b", "Zatáčka vlevo", "https://example.com/a1b.png")));
+
+        assertEquals(2, index.size());
+        assertEquals(2, index.getDuplicates());
+    }
+
+    @Test
+    void entriesWithoutCodeAreComparedByUrl() {
+        SignIndex index = new SignIndex();
+
+        assertTrue(index.add(new SignEntry("", "Bez kódu", "https://example.com/x.png")));
+        assertTrue(index.add(new SignEntry("", "Bez kódu", "https://example.com/y.png")));
+        assertFalse(index.add(new SignEntry("", "Bez kódu", "https://example.com/x.png")));
+
+        assertEquals(2, index.size());
+        assertEquals(1, index.getDuplicates());
+    }
+}
@@ -0,0 +1,92 @@
+package cz.xlisto.znacky;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Testy streamovaného parsování (StreamingExtractor), které musí nalézt stejné obrázky a odkazy jako Jsoup.
+ */
+class StreamingExtractorTest {
+
+    @Test
+    void matchesJsoupOnCatalogPage() throws IOException {
+        assertMatchesJsoup("""
+                <!DOCTYPE html>
+                <html><head><title>Značky</title>
+                <script>var s = "<a href='skript'>ne</a>";</script>
+                <style>a > img { border: 0 }</style></head>
+                <body>
+                <!-- <img alt="komentář" src="komentar.png"> -->
+                <img alt="A 1a Zatáčka vpravo" src="obrazky/a1a.png">
+                <IMG SRC='obrazky/a1b.png' ALT=A&nbsp;1b>
+                <img src="obrazky/bez-popisu.png">
+                <a href="detail?id=1&amp;kat=2">Detail   <b>značky</b></a>
+                <a href="znacky?kat=5&amp;od=20">další&nbsp;:</a>
+                <a href="x?a=&amp;amp;b">&lt;Zpět&gt; &#268;&#x10C;</a>
+                <a name="kotva">bez odkazu</a>
+                </body></html>
+                """);
+    }
+
+    @Test
+    void treatsNonBreakingSpaceAsWhitespace() throws IOException {
+        List<String> links = extract("<a href=\"n\">&nbsp;Další&nbsp;&nbsp;: </a>").links;
+
+        assertEquals(List.of("n|další :"), links);
+    }
+
+    @Test
+    void decodesAmpersandInHrefOnlyOnce() throws IOException {
+        List<String> links = extract("<a href=\"p?a=1&amp;b=2&amp;amp;c=3\">x</a>").links;
+
+        assertEquals(List.of("p?a=1&b=2&amp;c=3|x"), links);
+    }
+
+    private static void assertMatchesJsoup(String html) throws IOException {
+        Document doc = Jsoup.parse(html);
+        List<String> images = new ArrayList<>();
+        for (Element img : doc.select("img")) {
+            images.add(img.attr("alt") + "|" + img.attr("src"));
+        }
+        List<String> links = new ArrayList<>();
+        for (Element link : doc.select("a[href]")) {
+            links.add(link.attr("href") + "|" + link.text().toLowerCase(Locale.ROOT));
+        }
+
+        Collected collected = extract(html);
+
+        assertEquals(images, collected.images);
+        assertEquals(links, collected.links);
+    }
+
+    private static Collected extract(String html) throws IOException {
+        Collected collected = new Collected();
+        StreamingExtractor.extract(new StringReader(html), collected);
+        return collected;
+    }
+
+    private static class Collected implements StreamingExtractor.Handler {
+        private final List<String> images = new ArrayList<>();
+        private final List<String> links = new ArrayList<>();
+
+        @Override
+        public void onImage(String alt, String src) {
+            images.add(alt + "|" + src);
+        }
+
+        @Override
+        public void onLink(String href, String text) {
+            links.add(href + "|" + text);
+        }
+    }
+}
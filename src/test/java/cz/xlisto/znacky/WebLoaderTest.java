@@ -0,0 +1,123 @@
+package cz.xlisto.znacky;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Testy souběžného načítání katalogu (WebLoader) proti místnímu serveru.
+ * <p>
+ * Server stránkuje po blocích deseti stránek: každá stránka odkazuje jen na stránky svého bloku
+ * a odkazem "další :" na následující stránku, takže na první stránku dalšího bloku odkazuje
+ * jen poslední stránka předchozího bloku.
+ */
+class WebLoaderTest {
+    private static final int PAGES = 30;
+    private static final int IMAGES_PER_PAGE = 2;
+    private static final int BLOCK = 10;
+    private static final String PATH = "katalog";
+
+    private HttpServer server;
+    private String baseUrl;
+    /**
+     * Stránka, na kterou server odpoví stavem 404, nebo -1.
+     */
+    private volatile int failingPage = -1;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+        server.createContext("/" + PATH, exchange -> {
+            Matcher matcher = Pattern.compile("od=(\\d+)").matcher(String.valueOf(exchange.getRequestURI().getRawQuery()));
+            int page = matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+            if (page == failingPage || page >= PAGES) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            byte[] body = page(page).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void loadsAllPages() {
+        WebLoader loader = load();
+
+        assertEquals(PAGES * IMAGES_PER_PAGE, loader.getUrlList().size());
+        assertEquals(List.of(), loader.getFailedPages());
+    }
+
+    @Test
+    void continuesPastPageThatFailedAtEndOfBlock() {
+        failingPage = BLOCK - 1;
+
+        WebLoader loader = load();
+
+        assertEquals((PAGES - 1) * IMAGES_PER_PAGE, loader.getUrlList().size());
+        assertEquals(List.of(pageUrl(BLOCK - 1)), loader.getFailedPages());
+    }
+
+    @Test
+    void failedLastPageIsTheOnlyFailure() {
+        failingPage = PAGES - 1;
+
+        WebLoader loader = load();
+
+        assertEquals((PAGES - 1) * IMAGES_PER_PAGE, loader.getUrlList().size());
+        assertEquals(List.of(pageUrl(PAGES - 1)), loader.getFailedPages());
+    }
+
+    private WebLoader load() {
+        WebLoader loader = new WebLoader(null);
+        loader.loadWebConcurrently(pageUrl(0), 4);
+        return loader;
+    }
+
+    private String pageUrl(int page) {
+        return baseUrl + PATH + "?kat=1&od=" + page;
+    }
+
+    /**
+     * Sestaví stránku katalogu ve formátu výchozího zdroje s odkazy na stránky jejího bloku.
+     */
+    private String page(int page) {
+        StringBuilder html = new StringBuilder("<html><body>\n");
+        for (int i = 0; i < IMAGES_PER_PAGE; i++) {
+            int number = page * IMAGES_PER_PAGE + i;
+            html.append("<img src=\"").append(baseUrl).append("obrazky/low/A").append(number)
+                    .append(".png\" alt=\"Dopravní značka: A ").append(number).append(" Značka ").append(number).append("\">\n");
+        }
+        int first = page / BLOCK * BLOCK;
+        for (int p = first; p < Math.min(first + BLOCK, PAGES); p++) {
+            html.append("<a href=\"").append(pageUrl(p).replace("&", "&amp;")).append("\">").append(p + 1).append("</a>\n");
+        }
+        if (page + 1 < PAGES) {
+            html.append("<a href=\"").append(pageUrl(page + 1).replace("&", "&amp;")).append("\">další :</a>\n");
+        }
+        return html.append("</body></html>\n").toString();
+    }
+}